@@ -18,20 +18,34 @@ import java.util.UUID;
  * Signs requests with HMAC-SHA256 using headers:
  * X-API-KEY, X-API-TS, X-API-NONCE, X-API-SIG .
  * StringToSign = keyId + \n + ts + \n + nonce + \n + METHOD + \n + PATH + \n + sha256(body)
+ * body = octets exacts du fil : compressés si la requête porte Content-Encoding (le serveur vérifie avant de décompresser).
+ * Flux NDJSON (corps de taille inconnue) : sha256(body) est remplacé par {@link #STREAM_BODY} et l'intégrité
+ * est portée par la ligne finale {"_trailer":{lines,sha256,sig}}, sig = HMAC(keyId \n nonce \n lines \n sha256).
  */
 @RequiredArgsConstructor
 public class ApiAuthSigner {
     private final String keyId;
     private final String secret;
+    /** Mac initialisé une fois par thread avec la clé (doFinal le remet à zéro). */
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::newMac);
+
+    /** Hash de corps convenu pour les flux NDJSON signés par trailer. */
+    public static final String STREAM_BODY = "NDJSON-STREAM";
 
     public void sign(HttpHeaders h, String method, String path, byte[] body) {
+        signHashed(h, method, path, sha256Hex(body == null ? new byte[0] : body));
+    }
+
+    /**
+     * Variante sur un hash de corps déjà calculé (voir {@link SignedBody}, qui hache en sérialisant).
+     */
+    public void signHashed(HttpHeaders h, String method, String path, String bodySha256Hex) {
         Assert.hasText(keyId, "keyId");
         Assert.hasText(secret, "secret");
         long ts = Instant.now().getEpochSecond();
         String nonce = UUID.randomUUID().toString();
-        String bodyHash = sha256Hex(body == null ? new byte[0] : body);
-        String s2s = keyId + "\n" + ts + "\n" + nonce + "\n" + method.toUpperCase() + "\n" + path + "\n" + bodyHash;
-        String sig = hmacBase64(secret, s2s);
+        String s2s = keyId + "\n" + ts + "\n" + nonce + "\n" + method.toUpperCase() + "\n" + path + "\n" + bodySha256Hex;
+        String sig = Base64.getEncoder().encodeToString(mac.get().doFinal(s2s.getBytes(StandardCharsets.UTF_8)));
         h.set("X-API-KEY", keyId);
         h.set("X-API-TS", String.valueOf(ts));
         h.set("X-API-NONCE", nonce);
@@ -39,6 +53,29 @@ public class ApiAuthSigner {
         h.setContentType(MediaType.APPLICATION_JSON);
     }
 
+    /** En-têtes d'un POST NDJSON ; le nonce posé ici est repris par {@link #trailerSignature}. */
+    public void signStream(HttpHeaders h, String path) {
+        signHashed(h, "POST", path, STREAM_BODY);
+        h.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+    }
+
+    /** Signature du trailer : lie le nombre de lignes et leur SHA-256 à la requête (nonce). */
+    public String trailerSignature(String nonce, long lines, String linesSha256Hex) {
+        String s2t = keyId + "\n" + nonce + "\n" + lines + "\n" + linesSha256Hex;
+        return Base64.getEncoder().encodeToString(mac.get().doFinal(s2t.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        Assert.hasText(secret, "secret");
+        try {
+            Mac m = Mac.getInstance("HmacSHA256");
+            m.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return m;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static String sha256Hex(byte[] data) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
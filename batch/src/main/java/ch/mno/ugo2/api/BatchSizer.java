@@ -0,0 +1,162 @@
+package ch.mno.ugo2.api;
+
+import ch.mno.ugo2.util.StateStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Taille de chunk adaptative par endpoint de l'API web :
+ * - croissance (×1.25) tant que la latence serveur par item reste au niveau de la meilleure observée ;
+ * - réduction (×0.75) si elle dérive nettement, division par deux sur timeout, 408 ou 5xx (une fois par chunk,
+ *   retries épuisés) ; un 413 ramène la taille à la moitié du chunk refusé, que l'appelant redécoupe ;
+ * - bornée par un nombre d'items et par un budget d'octets JSON (taille moyenne d'un item mesurée) ;
+ * - tailles et mesures conservées dans le state store pour repartir près de l'optimum au run suivant.
+ */
+@Slf4j
+public class BatchSizer {
+
+    static final String SECTION = "batching";
+    /** Latence par item jugée "stable" jusqu'à ce facteur de la meilleure observée. */
+    static final double FLAT = 1.3;
+    /** Au-delà de ce facteur, le serveur sature : on réduit. */
+    static final double SLOW = 2.0;
+    private static final double ALPHA = 0.3;
+
+    private final StateStore store;
+    private final int minItems;
+    private final int maxItems;
+    private final long maxBytes;
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+
+    public BatchSizer(StateStore store, int minItems, int maxItems, long maxBytes) {
+        this.store = store;
+        this.maxItems = Math.max(1, maxItems);
+        this.minItems = Math.min(this.maxItems, Math.max(1, minItems));
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+    }
+
+    public synchronized Endpoint endpoint(String path) {
+        return endpoints.computeIfAbsent(path, this::load);
+    }
+
+    /** Journalise les tailles retenues et persiste l'état (fin d'un envoi chunké). */
+    public synchronized void flush() {
+        endpoints.values().forEach(Endpoint::persist);
+        store.save();
+    }
+
+    /** Timeout, 408, 413 ou 5xx : symptômes d'un chunk trop lourd pour le serveur. */
+    static boolean sizeRelated(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof WebApiException w) {
+                return w.getStatus() == 408 || w.getStatus() == 413 || w.getStatus() >= 500;
+            }
+            if (t instanceof TimeoutException || t instanceof io.netty.handler.timeout.TimeoutException) return true;
+        }
+        return false;
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private Endpoint load(String path) {
+        Endpoint ep = new Endpoint(path);
+        if (store.get(SECTION, path) instanceof Map<?, ?> m) {
+            try {
+                ep.size = clamp(((Number) m.get("size")).intValue());
+                ep.bytesPerItem = ((Number) m.get("bytesPerItem")).doubleValue();
+                ep.nanosPerItem = ((Number) m.get("nanosPerItem")).doubleValue();
+                log.info("[batching] {} resumes at {} items/chunk ({} bytes/item)", path, ep.size, Math.round(ep.bytesPerItem));
+            } catch (Exception e) {
+                log.debug("[batching] {} unreadable state, starting fresh: {}", path, e.toString());
+            }
+        }
+        return ep;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minItems, Math.min(maxItems, size));
+    }
+
+    /** État d'un endpoint ; méthodes appelées depuis les chunks en vol, d'où la synchronisation. */
+    public final class Endpoint {
+        private final String path;
+        private int size;
+        private double bytesPerItem;
+        /** Meilleure latence serveur par item observée (ns), remontée lentement pour suivre la réalité. */
+        private double nanosPerItem;
+        private int grows;
+        private int shrinks;
+
+        private Endpoint(String path) {
+            this.path = path;
+            this.size = clamp(Math.max(minItems, maxItems / 4));
+        }
+
+        /** Taille du prochain chunk : taille courante, bornée par le budget d'octets. */
+        public synchronized int next() {
+            int size = this.size;
+            if (bytesPerItem > 0 && maxBytes != Long.MAX_VALUE) {
+                size = (int) Math.min(size, maxBytes / bytesPerItem);
+            }
+            return clamp(size);
+        }
+
+        /**
+         * Chunk accepté.
+         *
+         * @param jsonBytes taille JSON (non compressée) du chunk
+         * @param nanos     latence de la tentative réussie
+         */
+        public synchronized void onSuccess(int items, long jsonBytes, long nanos) {
+            if (items <= 0) return;
+            double bpi = jsonBytes / (double) items;
+            bytesPerItem = bytesPerItem <= 0 ? bpi : bytesPerItem + ALPHA * (bpi - bytesPerItem);
+            double perItem = nanos / (double) items;
+            double best = nanosPerItem;
+            nanosPerItem = best <= 0 || perItem < best ? perItem : best * 1.02;
+            if (best <= 0 || items < this.size * 0.9) return;   // premier échantillon ou chunk partiel : pas de décision
+            if (perItem <= best * FLAT) {
+                resize(Math.max(size + 1, (int) (size * 1.25)), true);
+            } else if (perItem > best * SLOW) {
+                resize((int) (size * 0.75), false);
+            }
+        }
+
+        /** Chunk en échec (retries épuisés) : réduction de moitié si l'erreur trahit un chunk trop gros. */
+        public synchronized void onFailure(Throwable e) {
+            if (sizeRelated(e)) resize(size / 2, false);
+        }
+
+        /** Chunk de {@code items} refusé en 413 et redécoupé en deux par l'appelant : taille au plus à cette moitié. */
+        public synchronized void onTooLarge(int items) {
+            if (items > 1) resize(Math.min(size, items / 2), false);
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        private void resize(int target, boolean grow) {
+            int before = size;
+            size = clamp(target);
+            if (size == before) return;
+            if (grow) grows++;
+            else shrinks++;
+            log.debug("[batching] {} chunk size {} -> {}", path, before, size);
+        }
+
+        private synchronized void persist() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("size", size);
+            m.put("bytesPerItem", bytesPerItem);
+            m.put("nanosPerItem", nanosPerItem);
+            store.put(SECTION, path, m);
+            log.info("[batching] {} size={} bytesPerItem={} msPer1kItems={} grows={} shrinks={}",
+                    path, size, Math.round(bytesPerItem), Math.round(nanosPerItem / 1000), grows, shrinks);
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package ch.mno.ugo2.api;
 
 import ch.mno.ugo2.common.AbstractClient;
-import org.springframework.core.ParameterizedTypeReference;
+import ch.mno.ugo2.common.GraphRateLimits;
+import ch.mno.ugo2.instagram.dto.IgMedia;
+import ch.mno.ugo2.instagram.dto.IgMediaPage;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * Instagram Graph API (v23.0) pagination for media list.
@@ -19,53 +26,45 @@ public class InstagramClient  extends AbstractClient {
         super(WebClient.builder().build());
     }
 
+    /** Client Graph partagé avec Facebook (même hôte, même pool de connexions). */
+    @Autowired
+    public InstagramClient(WebClient facebookWebClient) {
+        super(facebookWebClient);
+    }
+
     /**
-     * Liste les médias IG pour un user (URL complète déjà paramétrée).
-     * Suit les liens 'paging.next' et renvoie une liste plate de maps.
+     * Pagination paresseuse et typée de /media : la page suivante n'est demandée que si le consommateur
+     * en redemande et tant que le plus ancien média de la page courante ne satisfait pas {@code stop}
+     * (l'API renvoie les médias du plus récent au plus ancien).
      *
      * @param url première page (contient fields, limit, access_token)
      * @param maxPages limite dure ; null ou <=0 pour "illimité"
+     * @param stop ex. "publié avant la fenêtre" ; null = toutes les pages
      */
-    public List<Map<String,Object>> listMedia(String url, Integer maxPages) {
-        List<Map<String,Object>> items = new ArrayList<>();
-        Pager p = new Pager(url, maxPages);
-
-        while (p.canContinue()) {
-            Map<String,Object> resp = fetchPage(p.url());
-            if (resp == null) {
-                p.onNullResponse();
-                continue;
-            }
-            items.addAll(readData(resp.get("data")));
-            p.advanceFrom(resp);
-        }
-        return items;
+    public Flux<IgMedia> streamMedia(String url, Integer maxPages, Predicate<IgMedia> stop) {
+        int max = (maxPages == null || maxPages <= 0) ? Integer.MAX_VALUE : maxPages;
+        record Cursor(IgMediaPage page, int index) {}
+        return fetchMediaPage(url)
+                .map(p -> new Cursor(p, 1))
+                .expand(c -> {
+                    String next = c.page().next();
+                    if (next == null || next.isEmpty() || c.index() >= max || reachedStop(c.page(), stop)) return Mono.empty();
+                    return fetchMediaPage(next).map(p -> new Cursor(p, c.index() + 1));
+                })
+                .concatMapIterable(c -> c.page().data() == null ? List.of() : c.page().data());
     }
 
-    private static List<Map<String, Object>> readData(Object data) {
-        List<Map<String, Object>> items = new ArrayList<>();
-        if (data instanceof List<?> list) {
-            for (Object o: list) {
-                if (o instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String,Object> m = (Map<String,Object>) o;
-                    items.add(m);
-                }
-            }
-        }
-        return items;
+    private static boolean reachedStop(IgMediaPage page, Predicate<IgMedia> stop) {
+        if (stop == null || page.data() == null || page.data().isEmpty()) return false;
+        IgMedia oldest = page.data().getLast();
+        return oldest != null && stop.test(oldest);
     }
 
     /**
-     * Point d’extension pour les tests : lecture d’une page (GET + decode).
-     * Extraction minimale de l’appel http initialement inline (aucun autre changement).
+     * Point d’extension pour les tests : lecture typée d’une page de médias.
      */
-    protected Map<String,Object> fetchPage(String url) {
-        return http.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<Map<String,Object>>() {})
-                .block();
+    protected Mono<IgMediaPage> fetchMediaPage(String url) {
+        return get(url, IgMediaPage.class);
     }
 
     /**
@@ -73,13 +72,30 @@ public class InstagramClient  extends AbstractClient {
      * Retourne un map name->value (première valeur).
      */
     public Map<String, Long> readInsights(String url) {
-        Map<String,Object> resp = http.get()
-                .uri(url)
-                .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<Map<String,Object>>() {})
-                .block();
-        if (resp == null) return java.util.Collections.emptyMap();
-        return mapInsights(resp);
+        return insights(url, 0, Duration.ZERO).block();
+    }
+
+    /**
+     * Version non bloquante de {@link #readInsights(String)} : en cas de limitation de débit Graph API
+     * (HTTP 429, codes de {@link GraphRateLimits}), nouvelle tentative avec backoff exponentiel + jitter.
+     * Les autres erreurs sont propagées telles quelles.
+     */
+    @SuppressWarnings("unchecked")
+    public Mono<Map<String, Long>> insights(String url, int rateLimitRetries, Duration minBackoff) {
+        Mono<Map<String, Long>> call = get(url, Map.class)
+                .map(resp -> mapInsights((Map<String, Object>) resp))
+                .defaultIfEmpty(java.util.Collections.emptyMap());
+        if (rateLimitRetries <= 0) return call;
+        return call.retryWhen(Retry.backoff(rateLimitRetries, minBackoff)
+                .maxBackoff(minBackoff.multipliedBy(16))
+                .jitter(0.3)
+                .filter(InstagramClient::isRateLimited)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /** Erreur de limitation de débit (HTTP 429 ou code de {@link GraphRateLimits}). */
+    public static boolean isRateLimited(Throwable error) {
+        return GraphRateLimits.isRateLimited(error);
     }
 
     static Map<String, Long> mapInsights(Map<String, Object> resp) {
@@ -109,35 +125,8 @@ public class InstagramClient  extends AbstractClient {
         return out;
     }
 
-
-    private static final class Pager {
-        private String nextUrl;
-        private int pages;
-        private final int maxPages; // <=0 = illimité
-
-        Pager(String startUrl, Integer maxPages) {
-            this.nextUrl = startUrl;
-            this.maxPages = (maxPages == null ? 0 : maxPages);
-            this.pages = 0;
-        }
-
-        boolean canContinue() {
-            return nextUrl != null && !nextUrl.isEmpty() && (maxPages <= 0 || pages < maxPages);
-        }
-
-        String url() { return nextUrl; }
-
-        void onNullResponse() { this.nextUrl = null; }
-
-        void advanceFrom(Map<String,Object> resp) {
-            String next = null;
-            Object paging = resp.get("paging");
-            if (paging instanceof Map<?,?> pm) {
-                Object n = pm.get("next");
-                if (n instanceof String s) next = s;
-            }
-            this.nextUrl = next;
-            this.pages++;
-        }
+    @Override
+    protected String quotaPlatform() {
+        return "INSTAGRAM";
     }
 }
@@ -4,6 +4,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 public final class Jsons {
     private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
     private Jsons(){}
@@ -11,4 +14,21 @@ public final class Jsons {
         try { return MAPPER.writeValueAsBytes(o); }
         catch (JsonProcessingException e) { throw new RuntimeException(e); }
     }
+    public static <T> T read(String json, Class<T> type) {
+        try { return MAPPER.readValue(json, type); }
+        catch (JsonProcessingException e) { throw new RuntimeException(e); }
+    }
+    public static <T> T read(byte[] json, Class<T> type) {
+        try { return MAPPER.readValue(json, type); }
+        catch (IOException e) { throw new RuntimeException(e); }
+    }
+    /** Sérialise en flux (sans tableau intermédiaire) ; le flux n'est pas fermé. */
+    public static void write(Object o, OutputStream out) throws IOException {
+        MAPPER.writeValue(new NonClosing(out), o);
+    }
+    private static final class NonClosing extends java.io.FilterOutputStream {
+        NonClosing(OutputStream out) { super(out); }
+        @Override public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+        @Override public void close() throws IOException { out.flush(); }
+    }
 }
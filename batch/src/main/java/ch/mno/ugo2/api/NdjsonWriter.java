@@ -0,0 +1,142 @@
+package ch.mno.ugo2.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodeur d'un envoi NDJSON : une ligne JSON par élément, par groupes → un buffer poolé par groupe (un chunk HTTP).
+ * Le SHA-256 porte sur les lignes non compressées (trailer exclu), le serveur le recalcule en lisant.
+ * Avec gzip, un seul flux deflate couvre tout l'envoi, vidé (SYNC_FLUSH) à chaque groupe pour partir sans attendre.
+ * Non thread-safe : un encodeur par requête, groupes encodés en séquence.
+ */
+final class NdjsonWriter {
+
+    static final String TRAILER = "_trailer";
+    private static final NettyDataBufferFactory FACTORY = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    private final BufferSink sink = new BufferSink();
+    private final boolean compress;
+    private final MessageDigest sha;
+    /** Flux du fil (gzip ou direct), créé au premier groupe : l'en-tête gzip doit tomber dans un buffer. */
+    private OutputStream wire;
+    private GZIPOutputStream gzip;
+    /** Lignes hachées ; flush neutralisé (Jackson vide après chaque valeur, ce qui casserait la compression). */
+    private OutputStream lines;
+    private long count;
+
+    NdjsonWriter(boolean gzip) {
+        try {
+            this.sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        this.compress = gzip;
+    }
+
+    String encoding() {
+        return compress ? "gzip" : null;
+    }
+
+    long lines() {
+        return count;
+    }
+
+    /** Encode un groupe d'éléments (une ligne chacun). */
+    DataBuffer encode(List<?> items) {
+        ByteBuf buf = sink.start(alloc);
+        try {
+            open();
+            for (Object item : items) {
+                Jsons.write(item, lines);
+                lines.write('\n');
+                count++;
+            }
+            wire.flush();
+            return FACTORY.wrap(buf);
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Dernière ligne {"_trailer":{lines,sha256,sig}} (hors digest) et fin du flux gzip.
+     *
+     * @param signer (lignes, sha256 hex) → signature
+     */
+    DataBuffer trailer(BiFunction<Long, String, String> signer) {
+        String digest = HexFormat.of().formatHex(sha.digest());
+        Map<String, Object> t = new LinkedHashMap<>();
+        t.put("lines", count);
+        t.put("sha256", digest);
+        t.put("sig", signer.apply(count, digest));
+        ByteBuf buf = sink.start(alloc);
+        try {
+            open();
+            wire.write(Jsons.toBytes(Map.of(TRAILER, t)));
+            wire.write("\n".getBytes(StandardCharsets.UTF_8));
+            if (gzip != null) gzip.finish();
+            wire.flush();
+            return FACTORY.wrap(buf);
+        } catch (IOException e) {
+            buf.release();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void open() throws IOException {
+        if (wire != null) return;
+        gzip = compress ? new GZIPOutputStream(sink, 8192, true) : null;
+        wire = gzip != null ? gzip : sink;
+        DigestOutputStream digest = new DigestOutputStream(wire, sha);
+        lines = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                digest.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                digest.write(b, off, len);
+            }
+        };
+    }
+
+    /** Écrit dans le buffer du groupe courant. */
+    private static final class BufferSink extends OutputStream {
+        private ByteBuf target;
+
+        ByteBuf start(ByteBufAllocator alloc) {
+            target = alloc.buffer(16 * 1024);
+            return target;
+        }
+
+        @Override
+        public void write(int b) {
+            target.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target.writeBytes(b, off, len);
+        }
+    }
+}
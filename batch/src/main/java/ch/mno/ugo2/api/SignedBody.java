@@ -0,0 +1,217 @@
+package ch.mno.ugo2.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Corps de requête sérialisé et haché en une seule passe :
+ * JSON écrit en flux (Jackson) → gzip éventuel → morceaux de 64 KiB pris dans le pool Netty,
+ * le SHA-256 des octets du fil étant mis à jour au fil de l'écriture.
+ * Aucun tableau de la taille du corps n'est alloué ; les morceaux sont rendus au pool par {@link #close()}.
+ */
+public final class SignedBody implements AutoCloseable {
+
+    static final int CHUNK = 64 * 1024;
+    private static final NettyDataBufferFactory FACTORY = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final CompositeByteBuf wire;
+    private final String sha256Hex;
+    private final long jsonBytes;
+    private final String encoding;
+
+    private SignedBody(CompositeByteBuf wire, String sha256Hex, long jsonBytes, String encoding) {
+        this.wire = wire;
+        this.sha256Hex = sha256Hex;
+        this.jsonBytes = jsonBytes;
+        this.encoding = encoding;
+    }
+
+    /**
+     * @param payload       objet à sérialiser, ou {@code byte[]} de JSON déjà sérialisé (copié tel quel)
+     * @param gzipFromBytes compresse en gzip dès que le JSON atteint ce nombre d'octets (négatif = jamais) ;
+     *                      les corps plus petits partent tels quels
+     */
+    public static SignedBody write(Object payload, int gzipFromBytes) {
+        return write(payload, gzipFromBytes, PooledByteBufAllocator.DEFAULT);
+    }
+
+    static SignedBody write(Object payload, int gzipFromBytes, ByteBufAllocator alloc) {
+        MessageDigest sha = SHA256.get();
+        sha.reset();
+        WireStream wire = new WireStream(alloc, sha);
+        try {
+            CountingStream json = gzipFromBytes < 0 ? new CountingStream(wire) : new CountingStream(new LazyGzipStream(wire, gzipFromBytes));
+            try (json) {
+                if (payload instanceof byte[] raw) json.write(raw);   // JSON déjà sérialisé
+                else Jsons.write(payload, json);
+            }
+            String encoding = json.out instanceof LazyGzipStream g && g.compressing() ? "gzip" : null;
+            return new SignedBody(wire.buf, HexFormat.of().formatHex(sha.digest()), json.count, encoding);
+        } catch (IOException | RuntimeException e) {
+            wire.buf.release();
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+    }
+
+    /** SHA-256 (hex) des octets du fil, pour la signature. */
+    public String sha256Hex() { return sha256Hex; }
+
+    /** "gzip" ou null (JSON brut). */
+    public String encoding() { return encoding; }
+
+    public long jsonBytes() { return jsonBytes; }
+
+    public int wireBytes() { return wire.readableBytes(); }
+
+    /**
+     * Vue à envoyer pour une tentative : le client HTTP la libère après écriture,
+     * le contenu reste disponible pour un retry jusqu'à {@link #close()}.
+     */
+    public DataBuffer attempt() {
+        return FACTORY.wrap(wire.retainedDuplicate());
+    }
+
+    @Override
+    public void close() {
+        if (wire.refCnt() > 0) wire.release();
+    }
+
+    /* ------------------- internals ------------------- */
+
+    /** Écrit dans des morceaux poolés ajoutés à un buffer composite, en mettant à jour le digest. */
+    private static final class WireStream extends OutputStream {
+        final CompositeByteBuf buf;
+        private final ByteBufAllocator alloc;
+        private final MessageDigest sha;
+        private ByteBuf current;
+
+        WireStream(ByteBufAllocator alloc, MessageDigest sha) {
+            this.alloc = alloc;
+            this.sha = sha;
+            this.buf = alloc.compositeBuffer(Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void write(int b) {
+            ensure().writeByte(b);
+            sha.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            sha.update(b, off, len);
+            while (len > 0) {
+                ByteBuf c = ensure();
+                int n = Math.min(len, c.writableBytes());
+                c.writeBytes(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private ByteBuf ensure() {
+            if (current == null || !current.isWritable()) {
+                if (current != null) buf.addComponent(true, current);
+                current = alloc.buffer(CHUNK, CHUNK);
+            }
+            return current;
+        }
+
+        @Override
+        public void close() {
+            if (current != null) {
+                buf.addComponent(true, current);
+                current = null;
+            }
+        }
+    }
+
+    /** Garde les premiers octets en clair ; bascule en gzip (en rejouant ce préfixe) une fois le seuil atteint. */
+    private static final class LazyGzipStream extends OutputStream {
+        private final OutputStream wire;
+        private final int threshold;
+        private final ByteArrayOutputStream prefix;
+        private GZIPOutputStream gzip;
+
+        LazyGzipStream(OutputStream wire, int threshold) {
+            this.wire = wire;
+            this.threshold = threshold;
+            this.prefix = new ByteArrayOutputStream(Math.min(threshold, 8192));
+        }
+
+        boolean compressing() { return gzip != null; }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (gzip != null) {
+                gzip.write(b, off, len);
+                return;
+            }
+            prefix.write(b, off, len);
+            if (prefix.size() >= threshold) {
+                gzip = new GZIPOutputStream(wire, 8192);
+                prefix.writeTo(gzip);
+                prefix.reset();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (gzip != null) {
+                gzip.close();
+            } else {
+                prefix.writeTo(wire);
+                wire.close();
+            }
+        }
+    }
+
+    private static final class CountingStream extends OutputStream {
+        final OutputStream out;
+        long count;
+
+        CountingStream(OutputStream out) { this.out = out; }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
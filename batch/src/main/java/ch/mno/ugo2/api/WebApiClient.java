@@ -3,20 +3,32 @@ package ch.mno.ugo2.api;
 import ch.mno.ugo2.dto.MetricsUpsertItem;
 import ch.mno.ugo2.dto.OverrideItem;
 import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.dto.SourceWindowItem;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -26,14 +38,77 @@ public class WebApiClient {
     private final WebClient webClient;
     private final ApiAuthSigner signer;
     private final int maxBatch;
+    /** Chunks envoyés simultanément par appel chunké (1 = en série). */
+    private final int inFlight;
+    /** Seuil de compression gzip des corps (octets) ; encodage négocié une fois via /api/v1/health. */
+    private volatile int compressMinBytes;
+    private volatile Mono<String> requestEncoding;
+    /** Dimensionnement adaptatif des chunks par endpoint (null = maxBatch fixe). */
+    private volatile BatchSizer sizer;
+
+    private static final String IDENTITY = "identity";
+    private static final String GZIP = "gzip";
+
+    public WebApiClient(WebClient webClient, ApiAuthSigner signer, int maxBatch) {
+        this(webClient, signer, maxBatch, 1);
+    }
 
     @Builder
     public static WebApiClient create(String baseUrl, String keyId, String secret, int maxBatch) {
-        WebClient wc = WebClient.builder()
+        return create(WebClient.builder(), baseUrl, keyId, secret, maxBatch, 1);
+    }
+
+    /**
+     * Variante sur un builder préconfiguré (transport partagé, voir HttpTransport).
+     *
+     * @param inFlight nombre de chunks en vol simultanément (fenêtre d'envoi)
+     */
+    public static WebApiClient create(WebClient.Builder builder, String baseUrl, String keyId, String secret, int maxBatch, int inFlight) {
+        WebClient wc = builder
                 .baseUrl(baseUrl)
                 .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
                 .build();
-        return new WebApiClient(wc, new ApiAuthSigner(keyId, secret), maxBatch > 0 ? maxBatch : 1000);
+        return new WebApiClient(wc, new ApiAuthSigner(keyId, secret), maxBatch > 0 ? maxBatch : 1000, Math.max(1, inFlight));
+    }
+
+    /**
+     * Compresse en gzip les corps d'au moins {@code minBytes} octets, si l'API annonce "gzip"
+     * dans capabilities.request_encodings de /api/v1/health (sinon JSON brut, comme avant).
+     */
+    public WebApiClient enableRequestCompression(int minBytes) {
+        this.compressMinBytes = Math.max(0, minBytes);
+        this.requestEncoding = negotiateEncoding().cache();
+        return this;
+    }
+
+    /**
+     * Remplace le {@code maxBatch} fixe par une taille adaptée par endpoint (voir {@link BatchSizer}).
+     */
+    public WebApiClient enableAdaptiveBatching(BatchSizer sizer) {
+        this.sizer = sizer;
+        return this;
+    }
+
+    private Mono<String> negotiateEncoding() {
+        return webClient.get().uri("/api/v1/health")
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(health -> {
+                    for (JsonNode enc : health.path("capabilities").path("request_encodings")) {
+                        if (GZIP.equalsIgnoreCase(enc.asText())) return GZIP;
+                    }
+                    return IDENTITY;
+                })
+                .onErrorResume(e -> {
+                    log.warn("API capabilities unavailable, sending uncompressed bodies: {}", e.toString());
+                    return Mono.just(IDENTITY);
+                })
+                .doOnNext(enc -> log.info("API request encoding: {}", enc));
+    }
+
+    private Mono<String> requestEncoding() {
+        Mono<String> enc = requestEncoding;
+        return enc == null ? Mono.just(IDENTITY) : enc;
     }
 
     public Mono<Void> health() {
@@ -61,12 +136,160 @@ public class WebApiClient {
                 .retryWhen(Retry.backoff(2, Duration.ofSeconds(1)));
     }
 
+    public static final String SOURCES_PATH = "/api/v1/sources:batchUpsert";
+    public static final String METRICS_PATH = "/api/v1/metrics:batchUpsert";
+
     public Mono<Void> batchUpsertSources(List<SourceUpsertItem> items) {
-        return sendChunkedWrapped("/api/v1/sources:batchUpsert", "sources", items);
+        return sendChunkedWrapped(SOURCES_PATH, "sources", items);
+    }
+
+    /**
+     * Upsert des snapshots par chunks ; retourne le statut rapporté par le serveur pour chaque snapshot
+     * ({@code i} = position dans {@code items}), dans l'ordre d'envoi.
+     */
+    public Mono<List<ItemResult>> batchUpsertMetrics(List<MetricsUpsertItem> items) {
+        List<ItemResult> results = Collections.synchronizedList(new ArrayList<>());
+        return sendChunks(METRICS_PATH, items, slice -> Map.of("snapshots", slice),
+                        (resp, from) -> results.addAll(itemResults(resp, from)))
+                .then(Mono.fromSupplier(() -> {
+                    List<ItemResult> out = new ArrayList<>(results);
+                    out.sort(Comparator.comparingInt(r -> r.i));
+                    return out;
+                }));
+    }
+
+    /**
+     * Statuts par élément ("items") d'une réponse /metrics:batchUpsert, positions décalées de {@code offset}.
+     * Réponse illisible = aucun statut (rien n'est alors considéré comme accepté).
+     */
+    public static List<ItemResult> itemResults(String response, int offset) {
+        if (response == null || response.isBlank()) return List.of();
+        try {
+            BatchUpsertResp r = Jsons.read(response, BatchUpsertResp.class);
+            if (r.items == null) return List.of();
+            if (offset != 0) r.items.forEach(it -> it.i += offset);
+            return r.items;
+        } catch (RuntimeException e) {
+            log.warn("API {} unreadable response: {}", METRICS_PATH, e.toString());
+            return List.of();
+        }
+    }
+
+    /** Statut d'un snapshot dans la réponse de /metrics:batchUpsert. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ItemResult {
+        public int i;
+        /** "stored", "skipped" ou "error" */
+        public String status;
+        public String message;
+
+        /** Stocké, ou écarté par le serveur faute de variation : inutile de le renvoyer. */
+        public boolean accepted() {
+            return "stored".equals(status) || "skipped".equals(status);
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class BatchUpsertResp {
+        public List<ItemResult> items;
+    }
+
+    public static final String METRICS_STREAM_PATH = "/api/v1/metrics:stream";
+    /** Lignes par chunk HTTP d'un envoi NDJSON. */
+    private static final int STREAM_GROUP = 500;
+    /** Lignes au plus par requête NDJSON (MetricsIngestService::MAX_STREAM_LINES côté web : borne sa transaction). */
+    public static final int STREAM_MAX_LINES = 100_000;
+
+    /**
+     * Une requête NDJSON de snapshots (Transfer-Encoding: chunked), mémoire constante des deux côtés :
+     * une ligne par snapshot, groupes de {@value #STREAM_GROUP} lignes par chunk, gzip si l'API l'annonce,
+     * puis une ligne trailer signée (nombre de lignes + SHA-256, voir {@link ApiAuthSigner#signStream}).
+     * Le serveur insère par groupes multi-lignes dans une transaction, validée après vérification du trailer ;
+     * les erreurs par ligne (numérotées à partir de 1) reviennent dans la réponse.
+     * Au plus {@value #STREAM_MAX_LINES} lignes ; {@code lines} doit pouvoir être relu (spool disque de l'outbox) :
+     * les échecs transitoires sont rejoués avec la même Idempotency-Key, comme un envoi chunké.
+     */
+    public Mono<StreamResp> streamMetrics(Flux<MetricsUpsertItem> lines) {
+        String idempotencyKey = UUID.randomUUID().toString();
+        return Mono.defer(() -> streamOnce(lines, idempotencyKey))
+                .retryWhen(Retry.backoff(2, Duration.ofSeconds(1))
+                        .filter(e -> !(e instanceof WebApiException w && w.isPermanent()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
     }
 
-    public Mono<Void> batchUpsertMetrics(List<MetricsUpsertItem> items) {
-        return sendChunkedWrapped("/api/v1/metrics:batchUpsert", "snapshots", items);
+    private Mono<StreamResp> streamOnce(Flux<MetricsUpsertItem> items, String idempotencyKey) {
+        final String path = METRICS_STREAM_PATH;
+        return requestEncoding().flatMap(enc -> {
+            NdjsonWriter w = new NdjsonWriter(GZIP.equals(enc));
+            AtomicReference<String> nonce = new AtomicReference<>();
+            long started = System.nanoTime();
+            Flux<DataBuffer> body = items.buffer(STREAM_GROUP)
+                    .map(w::encode)
+                    .concatWith(Mono.fromSupplier(() -> w.trailer((n, sha) -> signer.trailerSignature(nonce.get(), n, sha))))
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+            return webClient.post()
+                    .uri(path)
+                    .headers(h -> {
+                        signer.signStream(h, path);
+                        nonce.set(h.getFirst("X-API-NONCE"));
+                        h.set("Idempotency-Key", idempotencyKey);
+                        if (w.encoding() != null) h.set(HttpHeaders.CONTENT_ENCODING, w.encoding());
+                    })
+                    .body(BodyInserters.fromDataBuffers(body))
+                    .exchangeToMono(resp -> {
+                        if (resp.statusCode().is2xxSuccessful()) return resp.bodyToMono(StreamResp.class);
+                        int code = resp.statusCode().value();
+                        return resp.bodyToMono(String.class).defaultIfEmpty("").flatMap(b -> {
+                            log.warn("API {} -> {} after {} lines body={}", path, code, w.lines(), b);
+                            return Mono.<StreamResp>error(new WebApiException(path, code, b));
+                        });
+                    })
+                    .doOnNext(r -> log.info("API {} lines={} ok={} ko={} stored={} skipped={} wallMs={}{}", path, r.lines, r.ok, r.ko,
+                            r.stored, r.skipped, (System.nanoTime() - started) / 1_000_000L, w.encoding() == null ? "" : ", " + w.encoding()));
+        });
+    }
+
+    /**
+     * Réponse de /metrics:stream ; {@code errors} est plafonné côté serveur ({@code errors_truncated}).
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class StreamResp {
+        public long lines;
+        public long ok;
+        public long ko;
+        public long stored;
+        public long skipped;
+        public List<LineError> errors = List.of();
+        public boolean errors_truncated;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class LineError {
+        public long line;
+        public String message;
+    }
+
+    /** Taille du prochain chunk pour cet endpoint (adaptative si activée, sinon maxBatch). */
+    public int chunkSize(String path) {
+        BatchSizer sizer = this.sizer;
+        return sizer == null ? maxBatch : sizer.endpoint(path).next();
+    }
+
+    /**
+     * POST d'un corps JSON déjà sérialisé (chunk relu depuis l'outbox) avec sa clé d'idempotence d'origine :
+     * même signature, compression et retries qu'un envoi chunké.
+     *
+     * @return corps de la réponse (statuts par élément pour {@link #METRICS_PATH}, voir {@link #itemResults})
+     */
+    public Mono<String> sendPrepared(String path, byte[] json, int items, String idempotencyKey) {
+        BatchSizer sizer = this.sizer;
+        return send(path, json, items, idempotencyKey, sizer == null ? null : sizer.endpoint(path));
+    }
+
+    /** Persiste les tailles de chunk apprises (après une série de {@link #sendPrepared}). */
+    public void flushBatching() {
+        BatchSizer sizer = this.sizer;
+        if (sizer != null) sizer.flush();
     }
 
     public Mono<Void> applyOverrides(List<OverrideItem> items) {
@@ -118,49 +341,225 @@ public class WebApiClient {
         public List<String> missing; // bien typé
     }
 
-    // -------- internals --------
+    /**
+     * Sources existantes publiées dans [from, to] (bornes "yyyy-MM-dd HH:mm:ss" UTC, null = ouvert),
+     * lues par pages de {@code pageSize} (pagination par id) pour la réconciliation locale.
+     */
+    public Flux<SourceWindowItem> fetchSourcesWindow(String from, String to, int pageSize) {
+        return fetchSources(from, to, null, pageSize);
+    }
 
-    private <T> Mono<Void> sendChunked(String path, List<T> all) {
-        if (all == null || all.isEmpty()) return Mono.empty();
-        int from = 0;
-        Mono<Void> chain = Mono.empty();
-        while (from < all.size()) {
-            int to = Math.min(from + maxBatch, all.size());
-            List<T> slice = all.subList(from, to);
-            chain = chain.then(send(path, slice));
-            from = to;
-        }
-        return chain;
+    /** Sources modifiées, ou dont la vidéo a changé (verrouillage), depuis {@code updatedSince} ; null = toutes. */
+    public Flux<SourceWindowItem> fetchSourcesUpdatedSince(String updatedSince, int pageSize) {
+        return fetchSources(null, null, updatedSince, pageSize);
     }
 
-    private <T> Mono<Void> send(String path, Object payload) {
-        byte[] body = Jsons.toBytes(payload);
-        String idempotencyKey = UUID.randomUUID().toString();
-        int items = (payload instanceof List<?> l) ? l.size() :
-                (payload instanceof Map<?, ?> m && m.values().stream().findFirst().orElse(null) instanceof List<?> l2 ? ((List<?>) m.values().stream().findFirst().get()).size() : -1);
-        log.info("API POST {} (items={}, bytes={})", path, items, body.length);
+    private Flux<SourceWindowItem> fetchSources(String from, String to, String updatedSince, int pageSize) {
+        final String path = "/api/v1/sources:window";
+        return fetchSourcesPage(path, from, to, updatedSince, 0L, pageSize)
+                .expand(page -> page.next_after_id == null ? Mono.empty()
+                        : fetchSourcesPage(path, from, to, updatedSince, page.next_after_id, pageSize))
+                .concatMapIterable(page -> page.items == null ? List.of() : page.items);
+    }
+
+    private Mono<SourcesWindowResp> fetchSourcesPage(String path, String from, String to, String updatedSince,
+                                                     long afterId, int pageSize) {
+        Map<String, Object> req = new LinkedHashMap<>();
+        if (from != null) req.put("from", from);
+        if (to != null) req.put("to", to);
+        if (updatedSince != null) req.put("updatedSince", updatedSince);
+        req.put("afterId", afterId);
+        req.put("limit", pageSize);
+        byte[] body = Jsons.toBytes(req);
 
         return webClient.post()
                 .uri(path)
                 .headers(h -> {
                     signer.sign(h, "POST", path, body);
-                    h.set("Idempotency-Key", idempotencyKey);
+                    h.set("Idempotency-Key", UUID.randomUUID().toString());
                 })
                 .bodyValue(body)
-                .exchangeToMono(resp -> handle(resp, path))
-                .retryWhen(Retry.backoff(2, Duration.ofSeconds(1)));
+                .retrieve()
+                .bodyToMono(SourcesWindowResp.class)
+                .doOnError(WebClientResponseException.class, e ->
+                        log.warn("API {} -> {} body={}", path, e.getRawStatusCode(), e.getResponseBodyAsString()));
+    }
+
+    /**
+     * DTO JSON pour /sources:window
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class SourcesWindowResp {
+        public List<SourceWindowItem> items;
+        public Long next_after_id;
+    }
+
+    // -------- internals --------
+
+    private <T> Mono<Void> sendChunked(String path, List<T> all) {
+        return sendChunks(path, all, slice -> slice);
+    }
+
+    private <T> Mono<Void> sendChunks(String path, List<T> all, Function<List<T>, Object> envelope) {
+        return sendChunks(path, all, envelope, (resp, from) -> {});
+    }
+
+    /** Tranche de la liste envoyée et position de son premier élément. */
+    private record Slice<T>(int from, List<T> items) {}
+
+    /**
+     * Envoie des tranches avec au plus {@code inFlight} chunks en vol.
+     * Taille des tranches : {@code maxBatch} fixe, ou choisie chunk par chunk par le {@link BatchSizer} s'il est actif
+     * (un 413 découpe alors le chunk refusé en deux au lieu d'échouer).
+     * Chaque chunk garde sa clé d'idempotence et ses retries ; le premier échec définitif annule les suivants.
+     * Latence par chunk et débit global sont journalisés pour régler la fenêtre.
+     *
+     * @param onChunk reçoit le corps de la réponse de chaque chunk accepté et la position de son premier élément dans {@code all}
+     */
+    private <T> Mono<Void> sendChunks(String path, List<T> all, Function<List<T>, Object> envelope, ObjIntConsumer<String> onChunk) {
+        if (all == null || all.isEmpty()) return Mono.empty();
+        BatchSizer sizer = this.sizer;
+        BatchSizer.Endpoint ep = sizer == null ? null : sizer.endpoint(path);
+        // tranches découpées à la demande : chaque nouveau chunk prend la taille courante
+        Flux<Slice<T>> slices = Flux.generate(() -> 0, (from, sink) -> {
+            if (from >= all.size()) {
+                sink.complete();
+                return from;
+            }
+            int to = Math.min(all.size(), from + (ep == null ? maxBatch : ep.next()));
+            sink.next(new Slice<>(from, all.subList(from, to)));
+            return to;
+        });
+
+        UploadStats stats = new UploadStats(path, all.size());
+        return slices.index()
+                .flatMap(t -> {
+                    Slice<T> slice = t.getT2();
+                    long started = System.nanoTime();
+                    return sendSlice(path, slice.from(), slice.items(), envelope, ep, onChunk)
+                            .doOnSuccess(v -> stats.chunkDone(t.getT1().intValue(), slice.items().size(), System.nanoTime() - started));
+                }, inFlight)
+                .then()
+                .doOnSuccess(v -> stats.log(inFlight))
+                .doOnError(e -> log.warn("API {} stopped after {} chunks ({}/{} items): {}",
+                        path, stats.done(), stats.items(), all.size(), e.toString()))
+                .doFinally(s -> {
+                    if (sizer != null) sizer.flush();
+                });
+    }
+
+    private <T> Mono<Void> sendSlice(String path, int from, List<T> slice, Function<List<T>, Object> envelope,
+                                     BatchSizer.Endpoint ep, ObjIntConsumer<String> onChunk) {
+        Mono<Void> sent = send(path, envelope.apply(slice), slice.size(), UUID.randomUUID().toString(), ep)
+                .doOnNext(resp -> onChunk.accept(resp, from))
+                .then();
+        if (ep == null || slice.size() < 2) return sent;
+        return sent.onErrorResume(e -> e instanceof WebApiException w && w.getStatus() == 413, e -> {
+            int half = slice.size() / 2;
+            log.info("API {} chunk of {} items too large, splitting", path, slice.size());
+            return sendSlice(path, from, slice.subList(0, half), envelope, ep, onChunk)
+                    .then(sendSlice(path, from + half, slice.subList(half, slice.size()), envelope, ep, onChunk));
+        });
     }
 
-    private Mono<Void> handle(ClientResponse resp, String path) {
+    /** Latences et débit d'un envoi chunké. */
+    private static final class UploadStats {
+        private final String path;
+        private final int total;
+        private final long started = System.nanoTime();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        UploadStats(String path, int total) {
+            this.path = path;
+            this.total = total;
+        }
+
+        int done() {
+            return done.get();
+        }
+
+        long items() {
+            return items.get();
+        }
+
+        void chunkDone(int index, int size, long nanos) {
+            done.incrementAndGet();
+            long sent = items.addAndGet(size);
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            log.info("API {} chunk {} items={} ({}/{}) latencyMs={}", path, index + 1, size, sent, total, nanos / 1_000_000L);
+        }
+
+        void log(int window) {
+            long wallMs = Math.max(1, (System.nanoTime() - started) / 1_000_000L);
+            log.info("API {} chunks={} items={} window={} wallMs={} avgChunkMs={} maxChunkMs={} itemsPerSec={}",
+                    path, done.get(), items.get(), window, wallMs, totalNanos.get() / Math.max(1, done.get()) / 1_000_000L,
+                    maxNanos.get() / 1_000_000L, items.get() * 1000 / wallMs);
+        }
+    }
+
+    private Mono<Void> send(String path, Object payload) {
+        int items = (payload instanceof List<?> l) ? l.size() :
+                (payload instanceof Map<?, ?> m && m.values().stream().findFirst().orElse(null) instanceof List<?> l2 ? ((List<?>) m.values().stream().findFirst().get()).size() : -1);
+        return send(path, payload, items, UUID.randomUUID().toString(), null).then();
+    }
+
+    /**
+     * @param ep reçoit la latence de la tentative réussie, ou l'échec une fois les retries épuisés (null = pas de dimensionnement)
+     * @return corps de la réponse 2xx (vide s'il n'y en a pas)
+     */
+    private Mono<String> send(String path, Object payload, int items, String idempotencyKey, BatchSizer.Endpoint ep) {
+        // sérialisé, compressé et haché une seule fois (buffers poolés), réutilisé par les retries puis rendu au pool
+        return requestEncoding().flatMap(enc -> Mono.using(
+                () -> SignedBody.write(payload, GZIP.equals(enc) ? compressMinBytes : -1),
+                body -> {
+                    log.info("API POST {} (items={}, bytes={}, wireBytes={}{})", path, items, body.jsonBytes(), body.wireBytes(),
+                            body.encoding() == null ? "" : ", " + body.encoding());
+                    AtomicLong attemptStarted = new AtomicLong();
+                    return Mono.defer(() -> {
+                                attemptStarted.set(System.nanoTime());
+                                return webClient.post()
+                                        .uri(path)
+                                        .headers(h -> {
+                                            // signature sur les octets du fil (compressés le cas échéant)
+                                            signer.signHashed(h, "POST", path, body.sha256Hex());
+                                            h.setContentLength(body.wireBytes());
+                                            h.set("Idempotency-Key", idempotencyKey);
+                                            if (body.encoding() != null) h.set(HttpHeaders.CONTENT_ENCODING, body.encoding());
+                                        })
+                                        .body(BodyInserters.fromDataBuffers(Mono.fromSupplier(body::attempt)))
+                                        .exchangeToMono(resp -> handle(resp, path));
+                            })
+                            // même Idempotency-Key à chaque tentative ; pas de retry sur un refus définitif (4xx)
+                            .retryWhen(Retry.backoff(2, Duration.ofSeconds(1))
+                                    .filter(e -> !(e instanceof WebApiException w && w.isPermanent()))
+                                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                            .doOnError(e -> {
+                                if (ep == null) return;
+                                // 413 : le chunk est redécoupé par l'appelant (sendSlice, outbox), la taille suit cette moitié
+                                if (e instanceof WebApiException w && w.getStatus() == 413) ep.onTooLarge(items);
+                                else ep.onFailure(e);
+                            })
+                            .doOnSuccess(v -> {
+                                if (ep != null) ep.onSuccess(items, body.jsonBytes(), System.nanoTime() - attemptStarted.get());
+                            });
+                },
+                SignedBody::close));
+    }
+
+    private Mono<String> handle(ClientResponse resp, String path) {
         int code = resp.statusCode().value();
         if (resp.statusCode().is2xxSuccessful()) {
             log.info("API {} -> {}", path, code);
-            return resp.releaseBody();
+            return resp.bodyToMono(String.class).defaultIfEmpty("");
         }
         return resp.bodyToMono(String.class).defaultIfEmpty("")
                 .flatMap(b -> {
                     log.warn("API {} -> {} body={}", path, code, b);
-                    return Mono.error(new RuntimeException("API " + path + " failed: " + code));
+                    return Mono.error(new WebApiException(path, code, b));
                 });
     }
 
@@ -169,17 +568,7 @@ public class WebApiClient {
      * Envoi chunké avec enveloppe {"wrapperKey":[slice]} pour respecter le schéma PHP.
      */
     private <T> Mono<Void> sendChunkedWrapped(String path, String wrapperKey, List<T> all) {
-        if (all == null || all.isEmpty()) return Mono.empty();
-        int from = 0;
-        Mono<Void> chain = Mono.empty();
-        while (from < all.size()) {
-            int to = Math.min(from + maxBatch, all.size());
-            List<T> slice = all.subList(from, to);
-            Map<String, Object> wrapped = Map.of(wrapperKey, slice);
-            chain = chain.then(send(path, wrapped));
-            from = to;
-        }
-        return chain;
+        return sendChunks(path, all, slice -> Map.of(wrapperKey, slice));
     }
 
     public Mono<Void> runReconcile(String fromIso, String toIso, int hoursWindow, boolean dryRun) {
@@ -0,0 +1,26 @@
+package ch.mno.ugo2.api;
+
+import lombok.Getter;
+
+/**
+ * Réponse non-2xx de l'API ugo2.
+ * Un 4xx (hors 408/425/429) est définitif : la même requête échouerait encore, inutile de la rejouer.
+ */
+@Getter
+public class WebApiException extends RuntimeException {
+
+    private final String path;
+    private final int status;
+    private final String body;
+
+    public WebApiException(String path, int status, String body) {
+        super("API " + path + " failed: " + status);
+        this.path = path;
+        this.status = status;
+        this.body = body;
+    }
+
+    public boolean isPermanent() {
+        return status >= 400 && status < 500 && status != 408 && status != 425 && status != 429;
+    }
+}
@@ -1,5 +1,7 @@
 package ch.mno.ugo2.api;
 
+import ch.mno.ugo2.common.QuotaGate;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 
@@ -12,12 +14,22 @@ import java.util.List;
 @Component
 public class WordPressClient {
   private final WebClient http;
+  private QuotaGate quota;
   public WordPressClient(WebClient.Builder builder) {
     this.http = builder.build();
   }
+  @Autowired(required = false)
+  public void setQuotaGate(QuotaGate quota) {
+    this.quota = quota;
+  }
   public List<String> listPostsAll(String baseUrl, int maxPages) {
     List<String> pages = new ArrayList<>();
     for (int p=1; p<=maxPages; p++) {
+      try {
+        if (quota != null) quota.acquire("WORDPRESS", "posts", 1);
+      } catch (RuntimeException budgetExhausted) {
+        break; // budget épuisé : on garde les pages lues
+      }
       String url = baseUrl + "/wp-json/wp/v2/posts?per_page=50&page=" + p + "&_fields=id,date,link,title,excerpt,slug";
       String body = http.get().uri(url).retrieve().bodyToMono(String.class).block();
       if (body==null || body.trim().equals("[]")) break;
@@ -1,11 +1,14 @@
 package ch.mno.ugo2.cli;
 
 import ch.mno.ugo2.service.BatchOrchestrator;
+import ch.mno.ugo2.service.IngestOutbox;
+import ch.mno.ugo2.service.WebApiSinkService;
 import jakarta.annotation.PostConstruct;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.stereotype.Component;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 
 import java.util.concurrent.Callable;
 
@@ -16,21 +19,24 @@ public class UgoCli {
   private final BatchOrchestrator orchestrator;
   private final SanityCheckCommand sanityCmd;
   private final SanitySourcesCommand sanitySourcesCmd;
+  private final WebApiSinkService sink;
 
   public UgoCli(ApplicationArguments springArgs,
                 BatchOrchestrator orchestrator,
                 SanityCheckCommand sanityCmd,
-                SanitySourcesCommand sanitySourcesCmd) {
+                SanitySourcesCommand sanitySourcesCmd,
+                WebApiSinkService sink) {
     this.springArgs = springArgs;
     this.orchestrator = orchestrator;
     this.sanityCmd = sanityCmd;
     this.sanitySourcesCmd = sanitySourcesCmd;
+    this.sink = sink;
   }
 
   @PostConstruct
   void runIfArgsPresent() {
     if (springArgs.getSourceArgs().length == 0) return;
-    int exit = new CommandLine(new Root(orchestrator, sanityCmd, sanitySourcesCmd))
+    int exit = new CommandLine(new Root(orchestrator, sanityCmd, sanitySourcesCmd, sink))
             .execute(springArgs.getSourceArgs());
     System.exit(exit);
   }
@@ -40,9 +46,10 @@ public class UgoCli {
     private final BatchOrchestrator orchestrator;
     private final SanityCheckCommand sanityCmd;
     private final SanitySourcesCommand sanitySourcesCmd;
+    private final WebApiSinkService sink;
 
-    Root(BatchOrchestrator o, SanityCheckCommand s, SanitySourcesCommand ss) {
-      this.orchestrator = o; this.sanityCmd = s; this.sanitySourcesCmd = ss;
+    Root(BatchOrchestrator o, SanityCheckCommand s, SanitySourcesCommand ss, WebApiSinkService sink) {
+      this.orchestrator = o; this.sanityCmd = s; this.sanitySourcesCmd = ss; this.sink = sink;
     }
 
     @Command(name="batch:run", description="Collecte les plateformes, réconcilie et rafraîchit les agrégats")
@@ -51,6 +58,16 @@ public class UgoCli {
       return 0;
     }
 
+    @Command(name="batch:drain", description="Rejoue les chunks en attente dans l'outbox vers l'API (après une panne)")
+    int drain(@Option(names = "--window", defaultValue = "0", description = "Chunks en vol (0 = ugo2.api.drainInFlight)") int window) {
+      try {
+        IngestOutbox.Drained d = sink.drainBacklog(window);
+        if (d == null) { System.err.println("Outbox désactivée (ugo2.api.outbox=false)"); return 1; }
+        System.out.printf("Outbox: %d chunks envoyés, %d rejetés, %d en attente%n", d.shipped(), d.dead(), d.pending());
+        return d.pending() == 0 ? 0 : 2;
+      } catch (Exception e) { System.err.println(e.getMessage()); return 1; }
+    }
+
     @Command(name="sanity:check", description="Vérifie /health + auth HMAC")
     int sanityCheck() {
       try { return sanityCmd.call(); }
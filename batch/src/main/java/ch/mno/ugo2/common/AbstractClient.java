@@ -1,16 +1,30 @@
 package ch.mno.ugo2.common;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -18,6 +32,9 @@ public class AbstractClient {
 
     protected final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
     protected final WebClient http;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private HttpResponseCache cache;
+    private QuotaGate quota;
 
     protected JsonNode toJsonNode(String body) {
         try {
@@ -29,65 +46,84 @@ public class AbstractClient {
 
 
     /**
-     * GET JSON avec prise en charge du 304:
-     * - on tente avec If-None-Match si etag != null
-     * - si 304 Not Modified, on refait la requête SANS ETag pour récupérer le corps
+     * GET JSON avec prise en charge du 304 (voir {@link #get(URI, String, Class)}) ;
+     * l'arbre est construit directement depuis les buffers de la réponse, sans String intermédiaire.
      */
     protected Mono<JsonNode> getJson(URI uri, String etag) {
-        String safeUri = uri.toString().replaceAll("([?&]key=)[^&]+", "$1***");
-        log.debug("GET {}", safeUri);
-
-        return http.get().uri(uri).headers(h -> {
-            if (etag != null) h.set(HttpHeaders.IF_NONE_MATCH, etag);
-        }).exchangeToMono(resp -> {
-            int code = resp.statusCode().value();
-
-            // 2xx -> lire le corps
-            if (resp.statusCode().is2xxSuccessful()) {
-                return resp.bodyToMono(String.class).map(this::toJsonNode);
-            }
+        return get(uri, etag, JsonNode.class);
+    }
 
-            // 304 -> fallback sans ETag
-            if (code == HttpStatus.NOT_MODIFIED.value()) {
-                log.debug("HTTP 304 Not Modified — fallback GET without ETag");
-                return http.get().uri(uri).retrieve().bodyToMono(String.class).map(this::toJsonNode);
-            }
 
-            // autres erreurs -> message lisible
-            return resp.bodyToMono(String.class).defaultIfEmpty("").flatMap(b -> Mono.error(new RuntimeException("API error " + code + " body=" + b)));
-        }).timeout(Duration.ofSeconds(20));
+    /**
+     * GET générique avec prise en charge du 304 :
+     * - avec cache : If-None-Match = ETag mémorisé pour l'URI, 304 servi depuis le cache sans autre requête ;
+     * - sans cache (ou entrée absente) : If-None-Match = etag fourni, 304 → requête refaite sans ETag.
+     */
+    protected <T> Mono<T> get(URI uri, String etag, Class<T> clazz) {
+        String safeUri = uri.toString().replaceAll("([?&]key=)[^&]+", "$1***");
+        log.debug("GET {}", safeUri);
+        return cachedGet(uri.toString(), () -> http.get().uri(uri), etag, clazz, true);
     }
 
+    /**
+     * Variante pour une URL complète déjà encodée (ex. liens paging.next de la Graph API).
+     */
+    protected <T> Mono<T> get(String url, Class<T> clazz) {
+        return cachedGet(url, () -> http.get().uri(url), null, clazz, true);
+    }
 
     /**
-     * GET générique avec prise en charge du 304:
-     * - tente avec If-None-Match si etag != null
-     * - si 304 Not Modified, refait la requête sans ETag pour récupérer le corps
+     * GET sans ETag ni cache de réponses (ex. statistiques, dont l'ETag ne suit pas toutes les variations).
      */
-    protected <T> Mono<T> get(URI uri, String etag, Class<T> clazz) {
+    protected <T> Mono<T> getUncached(URI uri, Class<T> clazz) {
         String safeUri = uri.toString().replaceAll("([?&]key=)[^&]+", "$1***");
         log.debug("GET {}", safeUri);
+        return cachedGet(uri.toString(), () -> http.get().uri(uri), null, clazz, false);
+    }
+
+    private <T> Mono<T> cachedGet(String url, Supplier<WebClient.RequestHeadersSpec<?>> request, String etag, Class<T> clazz,
+                                  boolean useCache) {
+        return throttle(() -> {
+            acquireQuota(url, 1);
+            return exchangeCached(url, request, etag, clazz, useCache);
+        });
+    }
 
-        return http.get()
-                .uri(uri)
+    private <T> Mono<T> exchangeCached(String url, Supplier<WebClient.RequestHeadersSpec<?>> request, String etag, Class<T> clazz,
+                                       boolean useCache) {
+        String key = cache == null || !useCache ? null : HttpResponseCache.keyOf(url);
+        HttpResponseCache.Entry cached = key == null ? null : cache.lookup(key);
+        String ifNoneMatch = cached != null ? cached.etag() : etag;
+
+        return request.get()
                 .headers(h -> {
-                    if (etag != null) h.set(HttpHeaders.IF_NONE_MATCH, etag);
+                    if (ifNoneMatch != null) h.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
                 })
                 .exchangeToMono(resp -> {
                     int code = resp.statusCode().value();
+                    onResponse(resp.statusCode(), resp.headers().asHttpHeaders());
 
-                    // 2xx -> lire le corps en clazz
+                    // 2xx -> lire le corps (et le mémoriser si la réponse porte un ETag)
                     if (resp.statusCode().is2xxSuccessful()) {
-                        return resp.bodyToMono(clazz);
+                        String responseEtag = resp.headers().asHttpHeaders().getETag();
+                        // miss : entrée connue mais périmée, ou réponse désormais mémorisable ; le reste ne concerne pas le cache
+                        if (key == null || (cached == null && responseEtag == null)) return readBody(resp, clazz);
+                        return resp.bodyToMono(byte[].class)
+                                .map(bytes -> {
+                                    cache.miss();
+                                    cache.store(key, responseEtag, bytes);
+                                    return decode(bytes, clazz);
+                                });
                     }
 
-                    // 304 -> fallback sans ETag
-                    if (code == HttpStatus.NOT_MODIFIED.value()) {
+                    // 304 -> corps mémorisé, sinon requête refaite sans ETag (même chemin : débit, quota, cache)
+                    if (code == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+                        cache.hit(cached);
+                        return resp.releaseBody().then(Mono.fromCallable(() -> decode(cached.body(), clazz)));
+                    }
+                    if (code == HttpStatus.NOT_MODIFIED.value() && ifNoneMatch != null) {
                         log.debug("HTTP 304 Not Modified — fallback GET without ETag");
-                        return http.get()
-                                .uri(uri)
-                                .retrieve()
-                                .bodyToMono(clazz);
+                        return resp.releaseBody().then(cachedGet(url, request, null, clazz, useCache));
                     }
 
                     // autres erreurs -> message lisible
@@ -99,6 +135,131 @@ public class AbstractClient {
                 .timeout(Duration.ofSeconds(20));
     }
 
+    /**
+     * Décode le corps directement depuis les DataBuffer reçus : les buffers sont assemblés sans copie
+     * (buffer composite) et lus par le parseur Jackson en flux ; les champs absents du DTO sont sautés
+     * sans être matérialisés. Ni String ni byte[] intermédiaire.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> Mono<T> readBody(ClientResponse resp, Class<T> clazz) {
+        if (clazz == String.class || clazz == byte[].class) return resp.bodyToMono(clazz);
+        return DataBufferUtils.join(resp.body(BodyExtractors.toDataBuffers()))
+                .map(buffer -> {
+                    try (InputStream in = buffer.asInputStream(true)) {
+                        return (T) reader(clazz).readValue(in);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private ObjectReader reader(Class<?> clazz) {
+        return readers.computeIfAbsent(clazz, c -> objectMapper.readerFor(c)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T decode(byte[] body, Class<T> clazz) {
+        if (clazz == String.class) return (T) new String(body, StandardCharsets.UTF_8);
+        if (clazz == byte[].class) return (T) body;
+        try {
+            return reader(clazz).readValue(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Branche le cache de réponses (un par client) ; sans cache, comportement HTTP inchangé. */
+    @Autowired(required = false)
+    public void setResponseCaches(HttpResponseCaches caches) {
+        this.cache = caches == null ? null : caches.forClient(getClass().getSimpleName());
+    }
+
+    /** Compteurs hit/miss/octets économisés du cache de ce client (null si pas de cache). */
+    public HttpResponseCache.Stats cacheStats() {
+        return cache == null ? null : cache.stats();
+    }
+
+
+    /**
+     * GET conditionnel : Mono vide si 304 Not Modified (le contenu connu de l'appelant reste valable).
+     */
+    protected <T> Mono<T> getIfModified(URI uri, String etag, Class<T> clazz) {
+        String safeUri = uri.toString().replaceAll("([?&]key=)[^&]+", "$1***");
+        log.debug("GET (conditional) {}", safeUri);
+
+        return throttle(() -> {
+                    acquireQuota(uri.toString(), 1);
+                    return http.get()
+                            .uri(uri)
+                            .headers(h -> {
+                                if (etag != null) h.set(HttpHeaders.IF_NONE_MATCH, etag);
+                            })
+                            .exchangeToMono(resp -> {
+                                int code = resp.statusCode().value();
+                                onResponse(resp.statusCode(), resp.headers().asHttpHeaders());
+                                if (resp.statusCode().is2xxSuccessful()) {
+                                    return readBody(resp, clazz);
+                                }
+                                if (code == HttpStatus.NOT_MODIFIED.value()) {
+                                    log.debug("HTTP 304 Not Modified — keep cached content");
+                                    return resp.releaseBody().then(Mono.<T>empty());
+                                }
+                                return resp.bodyToMono(String.class)
+                                        .defaultIfEmpty("")
+                                        .flatMap(b -> Mono.error(new RuntimeException(
+                                                "API error " + code + " body=" + b)));
+                            });
+                })
+                .timeout(Duration.ofSeconds(20));
+    }
+
+    /**
+     * Point d'entrée de chaque requête : par défaut exécutée immédiatement,
+     * un client peut la soumettre à une limite de concurrence ({@link AdaptiveLimiter}).
+     */
+    protected <T> Mono<T> throttle(Supplier<Mono<T>> call) {
+        return Mono.defer(call);
+    }
+
+    /**
+     * Statut et en-têtes de chaque réponse reçue (ex. en-têtes d'usage des limites de débit) ; rien par défaut.
+     */
+    protected void onResponse(HttpStatusCode status, HttpHeaders headers) {
+    }
+
+    /**
+     * Plateforme pour le décompte des quotas ({@link QuotaGate}) ; null = appels non décomptés.
+     */
+    protected String quotaPlatform() {
+        return null;
+    }
+
+    /**
+     * Endpoint facturé d'une URL : dernier segment du chemin ("playlistItems", "video_insights"…),
+     * "node" pour un objet Graph lu par son ID.
+     */
+    protected String quotaEndpoint(String url) {
+        String path = URI.create(url).getPath();
+        if (path == null || path.isEmpty()) return "node";
+        String last = path.substring(path.lastIndexOf('/') + 1);
+        return last.isEmpty() || last.matches("[0-9_]+") ? "node" : last;
+    }
+
+    /**
+     * Réserve {@code count} appels (sous-requêtes) ; lève l'exception du {@link QuotaGate} si le budget est épuisé.
+     */
+    protected void acquireQuota(String url, int count) {
+        String platform = quotaPlatform();
+        if (quota == null || platform == null) return;
+        quota.acquire(platform, quotaEndpoint(url), count);
+    }
+
+    @Autowired(required = false)
+    public void setQuotaGate(QuotaGate quota) {
+        this.quota = quota;
+    }
+
 
     protected <T> T safeParse(String body, Class<T> type) {
         try {
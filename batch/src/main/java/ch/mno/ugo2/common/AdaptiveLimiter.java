@@ -0,0 +1,181 @@
+package ch.mno.ugo2.common;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limite de requêtes en vol ajustée en AIMD à partir d'un taux d'usage (0–100 %) remonté par la plateforme :
+ * - usage sous {@code lowWatermark} : +1 requête en vol (au plus une hausse par fenêtre de {@code limit} réponses) ;
+ * - usage au-dessus de {@code highWatermark} ou throttling : limite divisée par deux, une fois par fenêtre — les
+ *   réponses des requêtes déjà en vol lors d'une baisse (parties au rythme précédent) n'en déclenchent pas d'autre ;
+ * - entre les deux : limite inchangée.
+ * Les appels au-delà de la limite attendent leur tour (FIFO) sans bloquer de thread.
+ */
+@Slf4j
+public final class AdaptiveLimiter {
+
+    private final String name;
+    private final int min;
+    private final int max;
+    private final double lowWatermark;
+    private final double highWatermark;
+
+    private int limit;
+    private int inFlight;
+    private int peakInFlight;
+    private int responsesSinceChange;
+    private int decreaseHold;
+    private long increases;
+    private long decreases;
+    private double lastUsage = -1;
+    private double peakUsage;
+    private long regainUntilMillis;
+    private final Deque<Permit> waiting = new ArrayDeque<>();
+
+    public record Stats(int limit, int inFlight, int peakInFlight, int waiting,
+                        long increases, long decreases, double lastUsage, double peakUsage) {}
+
+    public AdaptiveLimiter(String name, int min, int initial, int max, double lowWatermark, double highWatermark) {
+        this.name = name;
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.limit = Math.min(this.max, Math.max(this.min, initial));
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    /** Exécute l'appel dès qu'une place est libre ; la place est rendue à la fin (succès, erreur ou annulation). */
+    public <T> Mono<T> run(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Permit p = new Permit();
+            return Mono.<Void>create(sink -> enqueue(p, sink))
+                    .then(Mono.defer(call))
+                    // place rendue avant que l'aval ne voie la fin ; doFinally couvre l'annulation
+                    .doOnTerminate(p::close)
+                    .doFinally(s -> p.close());
+        });
+    }
+
+    /** Taux d'usage observé sur une réponse (max des compteurs de la plateforme, en %). */
+    public void onUsage(double usagePct) {
+        if (usagePct < 0) return;
+        int before;
+        int after;
+        synchronized (this) {
+            lastUsage = usagePct;
+            peakUsage = Math.max(peakUsage, usagePct);
+            before = limit;
+            boolean hold = holding();
+            if (usagePct >= highWatermark) {
+                if (!hold) decrease();
+            } else if (usagePct < lowWatermark && ++responsesSinceChange >= limit && limit < max) {
+                limit++;
+                increases++;
+                responsesSinceChange = 0;
+            }
+            after = limit;
+        }
+        if (after != before) log.info("[{}] usage={}% concurrency {} -> {}", name, Math.round(usagePct), before, after);
+        drain();
+    }
+
+    /** Throttling explicite (une requête refusée : HTTP 429, codes de limitation) : diminution, attente éventuelle avant reprise. */
+    public void onThrottled(Duration regainAccess) {
+        int before;
+        int after;
+        synchronized (this) {
+            before = limit;
+            if (!holding()) decrease();
+            after = limit;
+        }
+        onRegainAccess(regainAccess);
+        log.warn("[{}] throttled, concurrency {} -> {} (regain in {})", name, before, after, regainAccess);
+    }
+
+    /** Délai annoncé par la plateforme avant reprise, sans changer la limite. */
+    public synchronized void onRegainAccess(Duration regainAccess) {
+        if (regainAccess != null && !regainAccess.isNegative()) {
+            regainUntilMillis = Math.max(regainUntilMillis, System.currentTimeMillis() + regainAccess.toMillis());
+        }
+    }
+
+    /** Délai restant avant que la plateforme ne rende l'accès (zéro si aucun). */
+    public synchronized Duration regainDelay() {
+        return Duration.ofMillis(Math.max(0, regainUntilMillis - System.currentTimeMillis()));
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(limit, inFlight, peakInFlight, waiting.size(), increases, decreases, lastUsage, peakUsage);
+    }
+
+    /* ------------------- internals ------------------- */
+
+    /** Vrai (et décompté) tant que la réponse appartient à la fenêtre de la dernière baisse. */
+    private boolean holding() {
+        if (decreaseHold == 0) return false;
+        decreaseHold--;
+        return true;
+    }
+
+    private void decrease() {
+        responsesSinceChange = 0;
+        decreaseHold = Math.max(0, inFlight - 1);     // la requête courante est encore comptée en vol
+        if (limit > min) {
+            limit = Math.max(min, limit / 2);
+            decreases++;
+        }
+    }
+
+    private void enqueue(Permit p, MonoSink<Void> sink) {
+        p.sink = sink;
+        sink.onCancel(p::close);
+        synchronized (this) {
+            waiting.addLast(p);
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            Permit next;
+            synchronized (this) {
+                if (inFlight >= limit || waiting.isEmpty()) return;
+                next = waiting.pollFirst();
+                if (!next.state.compareAndSet(Permit.WAITING, Permit.GRANTED)) continue;
+                inFlight++;
+                peakInFlight = Math.max(peakInFlight, inFlight);
+            }
+            next.sink.success();
+        }
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private final class Permit {
+        static final int WAITING = 0, GRANTED = 1, CLOSED = 2;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        MonoSink<Void> sink;
+
+        void close() {
+            if (state.compareAndSet(GRANTED, CLOSED)) {
+                release();
+            } else if (state.compareAndSet(WAITING, CLOSED)) {
+                synchronized (AdaptiveLimiter.this) {
+                    waiting.remove(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ch.mno.ugo2.common;
+
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Codes d'erreur Graph API (Facebook et Instagram) signalant une limitation de débit :
+ * 4 (application), 17 (utilisateur), 32 (page), 613 (limite spécifique), 800xx (business use case :
+ * 80001 pages, 80002 Instagram, 80004 gestion des publicités, …).
+ */
+public final class GraphRateLimits {
+    private GraphRateLimits() {}
+
+    public static final Set<Integer> CODES = Set.of(4, 17, 32, 613,
+            80000, 80001, 80002, 80003, 80004, 80005, 80006, 80008, 80009, 80014);
+
+    private static final Pattern CODE = Pattern.compile("\"code\"\\s*:\\s*(\\d+)");
+
+    public static boolean isRateLimitCode(Integer code) {
+        return code != null && CODES.contains(code);
+    }
+
+    /** HTTP 429 ou code de limitation dans le message d'erreur (corps Graph recopié par le client). */
+    public static boolean isRateLimited(Throwable error) {
+        String message = String.valueOf(error.getMessage());
+        if (message.contains("API error 429")) return true;
+        Matcher m = CODE.matcher(message);
+        while (m.find()) {
+            if (m.group(1).length() <= 6 && CODES.contains(Integer.parseInt(m.group(1)))) return true;
+        }
+        return false;
+    }
+}
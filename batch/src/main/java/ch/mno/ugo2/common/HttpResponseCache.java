@@ -0,0 +1,241 @@
+package ch.mno.ugo2.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Cache de réponses HTTP conditionnelles (ETag) d'un client :
+ * - clé = URI sans secrets (key, access_token, appsecret_proof) ;
+ * - niveau mémoire borné (entrées + octets), éviction LRU ;
+ * - niveau disque optionnel (un fichier par clé) pour réutiliser les ETags d'un run à l'autre, borné lui aussi :
+ *   fichiers plus vieux que {@code maxAge} supprimés à l'ouverture, puis les moins récemment utilisés (date de
+ *   modification, rafraîchie à chaque lecture) au-delà de {@code maxDiskBytes}.
+ * Le corps est conservé brut et décodé à chaque usage : les DTO renvoyés restent indépendants.
+ */
+@Slf4j
+public final class HttpResponseCache {
+
+    public record Entry(String etag, byte[] body) {}
+
+    public record Stats(long hits, long misses, long bytesSaved, int memoryEntries) {}
+
+    private final String name;
+    private final Path dir;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxDiskBytes;
+    private final Duration maxAge;
+    private final LinkedHashMap<String, Entry> lru = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    /** Octets sur disque ; -1 tant que le répertoire n'a pas été parcouru. */
+    private long diskBytes = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    public HttpResponseCache(String name, Path dir, int maxEntries, long maxBytes) {
+        this(name, dir, maxEntries, maxBytes, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param dir          répertoire disque, ou null pour un cache mémoire seul
+     * @param maxDiskBytes plafond du niveau disque
+     * @param maxAge       âge maximal d'un fichier (null = sans limite)
+     */
+    public HttpResponseCache(String name, Path dir, int maxEntries, long maxBytes, long maxDiskBytes, Duration maxAge) {
+        this.name = name;
+        this.dir = dir;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.maxDiskBytes = Math.max(1, maxDiskBytes);
+        this.maxAge = maxAge;
+    }
+
+    public String name() { return name; }
+
+    /** Clé de cache : URI sans les paramètres secrets. */
+    public static String keyOf(String uri) {
+        String k = uri.replaceAll("([?&])(key|access_token|appsecret_proof)=[^&]*&?", "$1");
+        return k.endsWith("?") || k.endsWith("&") ? k.substring(0, k.length() - 1) : k;
+    }
+
+    public Entry lookup(String key) {
+        synchronized (lru) {
+            Entry e = lru.get(key);
+            if (e != null) return e;
+        }
+        Entry e = readDisk(key);
+        if (e != null) remember(key, e);
+        return e;
+    }
+
+    public void store(String key, String etag, byte[] body) {
+        if (etag == null || body == null) return;
+        Entry e = new Entry(etag, body);
+        remember(key, e);
+        writeDisk(key, e);
+    }
+
+    /** 304 servi depuis le cache. */
+    public void hit(Entry e) {
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(e.body().length);
+    }
+
+    public void miss() {
+        misses.incrementAndGet();
+    }
+
+    public Stats stats() {
+        synchronized (lru) {
+            return new Stats(hits.get(), misses.get(), bytesSaved.get(), lru.size());
+        }
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private void remember(String key, Entry e) {
+        synchronized (lru) {
+            Entry old = lru.put(key, e);
+            if (old != null) memoryBytes -= old.body().length;
+            memoryBytes += e.body().length;
+            Iterator<Map.Entry<String, Entry>> it = lru.entrySet().iterator();
+            while ((lru.size() > maxEntries || memoryBytes > maxBytes) && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                if (eldest.getKey().equals(key)) continue;
+                memoryBytes -= eldest.getValue().body().length;
+                it.remove();
+            }
+        }
+    }
+
+    private Path file(String key) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return dir.resolve(HexFormat.of().formatHex(h, 0, 16) + ".bin");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Entry readDisk(String key) {
+        if (dir == null) return null;
+        Path f = file(key);
+        synchronized (this) {
+            scanDisk();
+        }
+        if (!Files.exists(f)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(f)))) {
+            if (!key.equals(in.readUTF())) return null;
+            String etag = in.readUTF();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis()));   // récence pour l'éviction
+            return new Entry(etag, body);
+        } catch (IOException e) {
+            log.debug("[http-cache] {} unreadable entry {}: {}", name, f, e.toString());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, Entry e) {
+        if (dir == null) return;
+        Path f = file(key);
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeUTF(key);
+                out.writeUTF(e.etag());
+                out.writeInt(e.body().length);
+                out.write(e.body());
+            }
+            synchronized (this) {
+                scanDisk();
+                long previous = Files.exists(f) ? Files.size(f) : 0;
+                Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                diskBytes += Files.size(f) - previous;
+                if (diskBytes > maxDiskBytes) evictDisk(f);
+            }
+        } catch (IOException ex) {
+            log.warn("[http-cache] {} cannot persist {}: {}", name, f, ex.toString());
+        }
+    }
+
+    /** Premier accès disque du run : supprime les fichiers expirés et mesure le reste. */
+    private void scanDisk() {
+        if (diskBytes >= 0) return;
+        diskBytes = 0;
+        long expired = 0;
+        long cutoff = maxAge == null ? Long.MIN_VALUE : System.currentTimeMillis() - maxAge.toMillis();
+        for (DiskFile d : diskFiles()) {
+            if (d.modified() < cutoff && delete(d.path())) expired++;
+            else diskBytes += d.size();
+        }
+        if (expired > 0) log.info("[http-cache] {} removed {} expired entries", name, expired);
+        if (diskBytes > maxDiskBytes) evictDisk(null);
+    }
+
+    /** Supprime les fichiers les moins récemment utilisés jusqu'à 90 % du plafond (marge pour amortir le parcours). */
+    private void evictDisk(Path keep) {
+        long target = maxDiskBytes - maxDiskBytes / 10;
+        List<DiskFile> files = new ArrayList<>(diskFiles());
+        files.sort(Comparator.comparingLong(DiskFile::modified));
+        int evicted = 0;
+        for (DiskFile d : files) {
+            if (diskBytes <= target) break;
+            if (d.path().equals(keep) || !delete(d.path())) continue;
+            diskBytes -= d.size();
+            evicted++;
+        }
+        log.debug("[http-cache] {} evicted {} disk entries ({} bytes left)", name, evicted, diskBytes);
+    }
+
+    private record DiskFile(Path path, long size, long modified) {}
+
+    private List<DiskFile> diskFiles() {
+        List<DiskFile> out = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return out;
+        try (Stream<Path> s = Files.list(dir)) {
+            s.filter(p -> p.getFileName().toString().endsWith(".bin")).forEach(p -> {
+                try {
+                    BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+                    out.add(new DiskFile(p, a.size(), a.lastModifiedTime().toMillis()));
+                } catch (IOException ignored) {
+                    // fichier supprimé entre-temps
+                }
+            });
+        } catch (IOException e) {
+            log.warn("[http-cache] {} cannot list {}: {}", name, dir, e.toString());
+        }
+        return out;
+    }
+
+    private static boolean delete(Path p) {
+        try {
+            return Files.deleteIfExists(p);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
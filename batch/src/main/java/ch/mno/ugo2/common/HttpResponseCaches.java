@@ -0,0 +1,60 @@
+package ch.mno.ugo2.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Un {@link HttpResponseCache} par client (sous-répertoire dédié), pour des compteurs séparés.
+ */
+@Slf4j
+public class HttpResponseCaches {
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxDiskBytes;
+    private final Duration maxAge;
+    private final Map<String, HttpResponseCache> caches = new ConcurrentHashMap<>();
+
+    public HttpResponseCaches(boolean enabled, Path dir, int maxEntries, long maxBytes) {
+        this(enabled, dir, maxEntries, maxBytes, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param dir          répertoire racine, ou null pour des caches mémoire seuls
+     * @param maxDiskBytes plafond disque par client
+     * @param maxAge       âge maximal d'une entrée disque (null = sans limite)
+     */
+    public HttpResponseCaches(boolean enabled, Path dir, int maxEntries, long maxBytes, long maxDiskBytes, Duration maxAge) {
+        this.enabled = enabled;
+        this.dir = dir;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxAge = maxAge;
+    }
+
+    /** Cache du client, ou null si le cache est désactivé. */
+    public HttpResponseCache forClient(String name) {
+        if (!enabled) return null;
+        return caches.computeIfAbsent(name,
+                n -> new HttpResponseCache(n, dir == null ? null : dir.resolve(n), maxEntries, maxBytes, maxDiskBytes, maxAge));
+    }
+
+    public Map<String, HttpResponseCache.Stats> stats() {
+        Map<String, HttpResponseCache.Stats> out = new LinkedHashMap<>();
+        caches.forEach((n, c) -> out.put(n, c.stats()));
+        return out;
+    }
+
+    public void logStats() {
+        stats().forEach((n, s) -> log.info("[http-cache] {} hits={} misses={} bytesSaved={} memoryEntries={}",
+                n, s.hits(), s.misses(), s.bytesSaved(), s.memoryEntries()));
+    }
+}
@@ -0,0 +1,145 @@
+package ch.mno.ugo2.common;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientMetricsRecorder;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transport HTTP partagé par tous les clients (plateformes, API ugo2, WordPress) :
+ * - un {@link ConnectionProvider} nommé par hôte, créé à la demande et réutilisé par chaque WebClient
+ *   de cet hôte (sockets et sessions TLS conservées d'un appel à l'autre) ;
+ * - keep-alive borné (maxIdleTime / maxLifeTime, éviction en tâche de fond) ;
+ * - décompression gzip/deflate, HTTP/2 négocié par ALPN, limite mémoire des corps décodés ;
+ * - compteurs de pool et de connexions sans registre de métriques ({@link #stats()}, {@link #logStats()}).
+ */
+@Slf4j
+public class HttpTransport implements AutoCloseable {
+
+    /** Réglages du transport (voir ugo2.http.*). */
+    public record Settings(int maxConnections, Map<String, Integer> maxConnectionsByPool,
+                           int pendingAcquireMaxCount, Duration pendingAcquireTimeout,
+                           Duration maxIdleTime, Duration maxLifeTime, Duration evictInBackground,
+                           int connectTimeoutMillis, Duration responseTimeout,
+                           boolean compression, boolean http2, int maxInMemorySize, boolean metrics) {}
+
+    /** Compteurs d'un pool : connexions ouvertes, handshakes TLS, octets, état courant du pool. */
+    public record Stats(long connectionsOpened, long tlsHandshakes, long bytesReceived, long bytesSent, long errors,
+                        int acquired, int idle, int pending, int maxConnections) {}
+
+    private final Settings settings;
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+    private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+
+    public HttpTransport(Settings settings) {
+        this.settings = settings;
+    }
+
+    /** Builder WebClient adossé au pool de l'hôte (ex. "graph.facebook.com"). */
+    public WebClient.Builder builder(String pool) {
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient(pool)))
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(settings.maxInMemorySize()));
+    }
+
+    /** Client Reactor Netty de l'hôte, partagé (un seul pool par nom). */
+    public HttpClient httpClient(String pool) {
+        return clients.computeIfAbsent(pool, this::create);
+    }
+
+    public Map<String, Stats> stats() {
+        Map<String, Stats> out = new LinkedHashMap<>();
+        counters.forEach((name, c) -> {
+            ConnectionPoolMetrics m = pools.get(name);
+            out.put(name, new Stats(c.connections.sum(), c.tlsHandshakes.sum(), c.received.sum(), c.sent.sum(), c.errors.sum(),
+                    m == null ? 0 : m.acquiredSize(), m == null ? 0 : m.idleSize(),
+                    m == null ? 0 : m.pendingAcquireSize(), m == null ? maxConnections(name) : m.maxAllocatedSize()));
+        });
+        return out;
+    }
+
+    public void logStats() {
+        stats().forEach((n, s) -> log.info("[http] {} connections={} tlsHandshakes={} bytesIn={} bytesOut={} errors={} acquired={} idle={} pending={} max={}",
+                n, s.connectionsOpened(), s.tlsHandshakes(), s.bytesReceived(), s.bytesSent(), s.errors(),
+                s.acquired(), s.idle(), s.pending(), s.maxConnections()));
+    }
+
+    @Override
+    public void close() {
+        providers.values().forEach(ConnectionProvider::dispose);
+        providers.clear();
+        clients.clear();
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private int maxConnections(String pool) {
+        return Math.max(1, settings.maxConnectionsByPool().getOrDefault(pool, settings.maxConnections()));
+    }
+
+    private HttpClient create(String pool) {
+        ConnectionProvider.Builder pb = ConnectionProvider.builder("ugo2-" + pool)
+                .maxConnections(maxConnections(pool))
+                .pendingAcquireMaxCount(settings.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(settings.pendingAcquireTimeout())
+                .maxIdleTime(settings.maxIdleTime())
+                .maxLifeTime(settings.maxLifeTime())
+                .lifo();
+        if (!settings.evictInBackground().isZero()) pb.evictInBackground(settings.evictInBackground());
+        if (settings.metrics()) pb.metrics(true, () -> (poolName, id, remote, metrics) -> pools.put(pool, metrics));
+        ConnectionProvider provider = pb.build();
+        providers.put(pool, provider);
+
+        HttpClient client = HttpClient.create(provider)
+                .compress(settings.compression())
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, settings.connectTimeoutMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(settings.responseTimeout());
+        if (settings.http2()) client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        if (settings.metrics()) {
+            Counters c = counters.computeIfAbsent(pool, p -> new Counters());
+            client = client.metrics(true, () -> c);
+        }
+        log.debug("[http] pool {} maxConnections={} http2={} compression={}",
+                pool, maxConnections(pool), settings.http2(), settings.compression());
+        return client;
+    }
+
+    /** Enregistreur Reactor Netty minimal : compteurs cumulés par pool, pas d'histogrammes. */
+    private static final class Counters implements HttpClientMetricsRecorder {
+        final LongAdder connections = new LongAdder();
+        final LongAdder tlsHandshakes = new LongAdder();
+        final LongAdder received = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        @Override public void recordConnectTime(SocketAddress remote, Duration time, String status) { connections.increment(); }
+        @Override public void recordTlsHandshakeTime(SocketAddress remote, Duration time, String status) { tlsHandshakes.increment(); }
+        @Override public void recordResolveAddressTime(SocketAddress remote, Duration time, String status) { }
+        // octets comptés au niveau HTTP (variantes avec URI) pour ne pas les compter deux fois
+        @Override public void recordDataReceived(SocketAddress remote, long bytes) { }
+        @Override public void recordDataSent(SocketAddress remote, long bytes) { }
+        @Override public void incrementErrorsCount(SocketAddress remote) { errors.increment(); }
+        @Override public void recordDataReceived(SocketAddress remote, String uri, long bytes) { received.add(bytes); }
+        @Override public void recordDataSent(SocketAddress remote, String uri, long bytes) { sent.add(bytes); }
+        @Override public void incrementErrorsCount(SocketAddress remote, String uri) { errors.increment(); }
+        @Override public void recordDataReceivedTime(SocketAddress remote, String uri, String method, String status, Duration time) { }
+        @Override public void recordDataSentTime(SocketAddress remote, String uri, String method, Duration time) { }
+        @Override public void recordResponseTime(SocketAddress remote, String uri, String method, String status, Duration time) { }
+    }
+}
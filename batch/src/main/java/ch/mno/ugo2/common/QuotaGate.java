@@ -0,0 +1,10 @@
+package ch.mno.ugo2.common;
+
+/**
+ * Décompte des appels sortants d'un client, branché par le batch (budgets par plateforme).
+ */
+public interface QuotaGate {
+
+    /** Réserve {@code count} appels de l'endpoint ; lève une exception si le budget est épuisé. */
+    void acquire(String platform, String endpoint, int count);
+}
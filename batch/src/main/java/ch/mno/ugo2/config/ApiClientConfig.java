@@ -1,6 +1,9 @@
 package ch.mno.ugo2.config;
 
+import ch.mno.ugo2.api.BatchSizer;
 import ch.mno.ugo2.api.WebApiClient;
+import ch.mno.ugo2.common.HttpTransport;
+import ch.mno.ugo2.util.StateStore;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -14,6 +17,8 @@ import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
+
 @Configuration
 @EnableConfigurationProperties(ApiClientConfig.ApiProps.class)
 @Slf4j
@@ -21,8 +26,13 @@ public class ApiClientConfig {
 
     @Bean
     @Primary
-    public WebApiClient webApiClient(ApiProps p) {
-        return WebApiClient.create(p.getBaseUrl(), p.getKeyId(), p.getSecret(), p.getMaxBatch());
+    public WebApiClient webApiClient(ApiProps p, HttpTransport transport, StateStore store) {
+        String host = p.getBaseUrl() == null ? HttpTransportConfig.DEFAULT_POOL : URI.create(p.getBaseUrl()).getHost();
+        WebApiClient client = WebApiClient.create(transport.builder(host), p.getBaseUrl(), p.getKeyId(), p.getSecret(), p.getMaxBatch(), p.getInFlight());
+        if (p.isAdaptiveBatch()) {
+            client.enableAdaptiveBatching(new BatchSizer(store, p.getMinBatch(), p.getMaxBatch(), p.getMaxBatchBytes()));
+        }
+        return p.isCompressRequests() ? client.enableRequestCompression(p.getCompressMinBytes()) : client;
     }
 
     @Data
@@ -31,17 +41,41 @@ public class ApiClientConfig {
         private String baseUrl;
         private String keyId;
         private String secret;
+        /** Items par chunk (plafond si adaptiveBatch) */
         private int maxBatch = 1000;
+        /** Taille de chunk ajustée par endpoint selon la latence serveur, persistée dans le state store */
+        private boolean adaptiveBatch = true;
+        /** Plancher de la taille adaptative */
+        private int minBatch = 50;
+        /** Budget d'octets JSON (non compressés) par chunk */
+        private long maxBatchBytes = 8L * 1024 * 1024;
+        /** Chunks de maxBatch envoyés simultanément (1 = en série) */
+        private int inFlight = 3;
+        /** Corps gzip si /api/v1/health l'annonce (capabilities.request_encodings) */
+        private boolean compressRequests = true;
+        /** Taille minimale (octets) d'un corps à compresser */
+        private int compressMinBytes = 1024;
+        /** Pousse les items par fenêtres de maxBatch pendant la collecte (false = tout à la fin) */
+        private boolean streaming = true;
+        /** Snapshots d'un run envoyés en flux NDJSON (/metrics:stream) depuis l'outbox, en fin de collecte ; sources toujours par fenêtres */
+        private boolean metricsStream = false;
+        /** Outbox disque (ugo2.state.dir/outbox) : la collecte survit à une panne de l'API */
+        private boolean outbox = true;
+        /** Taille d'un segment d'outbox avant rotation */
+        private long outboxSegmentBytes = 64L * 1024 * 1024;
+        /** Chunks en vol pour batch:drain */
+        private int drainInFlight = 8;
     }
 
+    /** Graph API (Facebook et Instagram) : un seul pool graph.facebook.com. */
     @Bean
-    public WebClient facebookWebClient() {
-        return WebClient.builder().baseUrl("https://graph.facebook.com/").build();
+    public WebClient facebookWebClient(HttpTransport transport) {
+        return transport.builder("graph.facebook.com").build();
     }
 
     @Bean
-    public WebClient youtubeWebClient() {
-        return WebClient.builder().filter(maskedRequestLog()).filter(logResponse()).build();
+    public WebClient youtubeWebClient(HttpTransport transport) {
+        return transport.builder("www.googleapis.com").filter(maskedRequestLog()).filter(logResponse()).build();
     }
 
 
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Validated
 @ConfigurationProperties(prefix = "app")
 @Deprecated
@@ -26,7 +29,14 @@ public class AppProps {
   // ==== Budgets (soft caps) ====
   private Budgets budgets = new Budgets();
   public Budgets getBudgets() { return budgets; }
-  public static class Budgets { public int fbCalls = 5000; public int ytCalls = 5000; public int igCalls = 5000; public int wpCalls = 2000; }
+  @Data
+  public static class Budgets {
+    public int fbCalls = 5000; public int ytCalls = 5000; public int igCalls = 5000; public int wpCalls = 2000;
+    /** false = compter sans bloquer */
+    public boolean enforce = true;
+    /** Coût par endpoint "PLATFORM.endpoint" (unités de quota) ; défaut 1 (channels, playlistItems, videos, Graph) */
+    public Map<String, Integer> weights = new HashMap<>();
+  }
 
   // ==== Réconciliation (fuzzy + heuristiques) ====
   private Reconcile reconcile = new Reconcile();
@@ -39,5 +49,15 @@ public class AppProps {
     public double threshold   = 0.78;
     public String[] teaserKeywords = new String[]{"teaser","extrait","bande-annonce","short","reel","b-a","trailer"};
     public int teaserMaxSeconds = 60;
+    /** Bloc de candidats au-delà duquel seules les paires publiées à moins de timeBonusHours sont scorées */
+    public int maxBlock = 500;
+    /** Threads de scoring du Clusterer (1 = séquentiel, 0 = un par cœur) */
+    public int parallelism = 0;
+    /** api = regroupement par /reconcile:run côté web ; local = Clusterer dans le batch, liens via /overrides:apply */
+    public String mode = "api";
+    /** Mode local : ne scorer que les sources nouvelles/modifiées contre l'index persistant (sinon toute la fenêtre) */
+    public boolean incremental = true;
+    /** Mode incrémental : balayage complet (retrait des sources supprimées de l'index) toutes les N heures */
+    public double sweepHours = 168;
   }
 }
@@ -0,0 +1,27 @@
+package ch.mno.ugo2.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "ugo2.discovery")
+@Data
+public class DiscoveryProps {
+  /** Run YouTube / Facebook / Instagram in parallel (false = one after another) */
+  private boolean concurrent = true;
+  /** Max platforms collected at the same time */
+  private int platformConcurrency = 3;
+  /** Max channels / pages / accounts of one platform scanned at the same time */
+  private int accountConcurrency = 4;
+  /** Optional per-platform override of accountConcurrency, e.g. FACEBOOK=2 */
+  private Map<String, Integer> accountConcurrencyByPlatform = new HashMap<>();
+
+  public int accountConcurrency(String platform) {
+    if (!concurrent) return 1;
+    return Math.max(1, accountConcurrencyByPlatform.getOrDefault(platform, accountConcurrency));
+  }
+}
@@ -31,6 +31,27 @@ public class FacebookProps {
   private int maxPostsPerPage = 100;
   private int maxVideosPerRun = 500;
 
+  /** Fetch video + insights through Graph batch POSTs (25 videos per call) instead of 2 GETs per video */
+  private boolean batchRequests = true;
+  /** Batch POSTs in flight at the same time (fixed level when adaptiveConcurrency=false) */
+  private int batchConcurrency = 2;
+
+  /** Adjust in-flight Graph requests (AIMD) from the X-App-Usage / X-Business-Use-Case-Usage / X-Ad-Account-Usage headers */
+  private boolean adaptiveConcurrency = true;
+  private int minConcurrency = 1;
+  private int initialConcurrency = 2;
+  private int maxConcurrency = 8;
+  /** Usage (%) below which concurrency grows by one per window */
+  private double usageLowWatermark = 50;
+  /** Usage (%) from which concurrency is halved, before Graph starts throttling */
+  private double usageHighWatermark = 75;
+
   /** Local dir pour checkpoints/ETags si on ajoute du cache */
   private String stateDir = ".ugo2";
+
+  /** Thresholds to reduce chatter */
+  private double minDeltaRel = 0.01; // 1%
+  private int minDeltaAbs = 10;      // 10 views
+  /** Ensure at least one snapshot/day even if below delta */
+  private boolean dailyFloor = true;
 }
@@ -0,0 +1,20 @@
+package ch.mno.ugo2.config;
+
+import ch.mno.ugo2.common.HttpResponseCaches;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class HttpCacheConfig {
+
+    /** Caches ETag des clients plateformes (YouTube, Facebook, Instagram). */
+    @Bean
+    public HttpResponseCaches httpResponseCaches(HttpCacheProps p, StateProps state) {
+        Path dir = p.isPersistent() ? Path.of(state.getDir()).resolve("http-cache") : null;
+        return new HttpResponseCaches(p.isEnabled(), dir, p.getMaxEntries(), p.getMaxBytes(),
+                p.getMaxDiskBytes(), Duration.ofDays(Math.max(1, p.getMaxAgeDays())));
+    }
+}
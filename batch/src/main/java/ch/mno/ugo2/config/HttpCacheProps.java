@@ -0,0 +1,22 @@
+package ch.mno.ugo2.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ugo2.http-cache")
+@Data
+public class HttpCacheProps {
+  /** Serve 304 Not Modified from a local ETag cache (false = plain GETs) */
+  private boolean enabled = true;
+  /** Keep entries on disk (under ugo2.state.dir/http-cache) across runs */
+  private boolean persistent = true;
+  /** Memory tier bounds per client (LRU) */
+  private int maxEntries = 1000;
+  private long maxBytes = 32L * 1024 * 1024;
+  /** Disk tier bound per client: least recently used files removed beyond this size */
+  private long maxDiskBytes = 256L * 1024 * 1024;
+  /** Disk entries older than this are removed when the cache is opened */
+  private int maxAgeDays = 30;
+}
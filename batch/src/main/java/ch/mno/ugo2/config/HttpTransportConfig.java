@@ -0,0 +1,35 @@
+package ch.mno.ugo2.config;
+
+import ch.mno.ugo2.common.HttpTransport;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+
+import java.time.Duration;
+
+@Configuration
+public class HttpTransportConfig {
+
+    /** Pool par défaut des clients sans hôte dédié (ex. WordPress via WebClient.Builder). */
+    static final String DEFAULT_POOL = "default";
+
+    /** Transport partagé : un pool de connexions par hôte pour toute la durée du run. */
+    @Bean(destroyMethod = "close")
+    public HttpTransport httpTransport(HttpTransportProps p) {
+        return new HttpTransport(new HttpTransport.Settings(
+                p.getMaxConnections(), p.getMaxConnectionsByPool(),
+                p.getPendingAcquireMaxCount(), Duration.ofSeconds(p.getPendingAcquireTimeoutSeconds()),
+                Duration.ofSeconds(p.getMaxIdleTimeSeconds()), Duration.ofSeconds(p.getMaxLifeTimeSeconds()),
+                Duration.ofSeconds(p.getEvictInBackgroundSeconds()),
+                p.getConnectTimeoutMillis(), Duration.ofSeconds(p.getResponseTimeoutSeconds()),
+                p.isCompression(), p.isHttp2(), p.getMaxInMemorySize(), p.isMetrics()));
+    }
+
+    /** Le WebClient.Builder de Spring Boot passe lui aussi par le transport partagé. */
+    @Bean
+    public WebClientCustomizer sharedTransportCustomizer(HttpTransport transport, HttpTransportProps p) {
+        return b -> b.clientConnector(new ReactorClientHttpConnector(transport.httpClient(DEFAULT_POOL)))
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(p.getMaxInMemorySize()));
+    }
+}
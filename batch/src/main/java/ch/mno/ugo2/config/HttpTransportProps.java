@@ -0,0 +1,36 @@
+package ch.mno.ugo2.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "ugo2.http")
+@Data
+public class HttpTransportProps {
+  /** Max connections per host pool (graph.facebook.com, www.googleapis.com, API, default) */
+  private int maxConnections = 32;
+  /** Per-pool override, keyed by pool name (e.g. graph.facebook.com=16) */
+  private Map<String, Integer> maxConnectionsByPool = new HashMap<>();
+  /** Requests allowed to wait for a connection, and how long */
+  private int pendingAcquireMaxCount = 1000;
+  private int pendingAcquireTimeoutSeconds = 45;
+  /** Keep-alive: idle connections are closed after this delay, every connection after maxLifeTime */
+  private int maxIdleTimeSeconds = 30;
+  private int maxLifeTimeSeconds = 300;
+  /** Background eviction of idle/expired connections (0 = on acquire only) */
+  private int evictInBackgroundSeconds = 30;
+  private int connectTimeoutMillis = 10_000;
+  private int responseTimeoutSeconds = 60;
+  /** Accept-Encoding: gzip, deflate (br too when brotli4j is on the classpath) */
+  private boolean compression = true;
+  /** Offer HTTP/2 via ALPN on TLS hosts, HTTP/1.1 otherwise */
+  private boolean http2 = true;
+  /** Max buffered response body for decoding */
+  private int maxInMemorySize = 16 * 1024 * 1024;
+  /** Pool + connection counters (logged at the end of discovery) */
+  private boolean metrics = true;
+}
@@ -30,6 +30,18 @@ public class InstagramProps {
   /** Hard limits to avoid surcharges */
   private int maxMediaPerRun = 500;
 
+  /** Insights calls in flight per account */
+  private int insightsConcurrency = 4;
+  /** Retries on Graph rate limiting (429, codes of GraphRateLimits: 4/17/32/613/800xx), exponential backoff from rateLimitBackoffSeconds */
+  private int rateLimitRetries = 4;
+  private int rateLimitBackoffSeconds = 5;
+
   /** Optional local state dir for future cache/checkpoints */
   private String stateDir = ".ugo2";
+
+  /** Thresholds to reduce chatter */
+  private double minDeltaRel = 0.01; // 1%
+  private int minDeltaAbs = 10;      // 10 views
+  /** Ensure at least one snapshot/day even if below delta */
+  private boolean dailyFloor = true;
 }
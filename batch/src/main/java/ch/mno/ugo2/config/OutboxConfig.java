@@ -0,0 +1,22 @@
+package ch.mno.ugo2.config;
+
+import ch.mno.ugo2.service.IngestOutbox;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class OutboxConfig {
+
+    /**
+     * Outbox des envois à l'API web, à côté du state store (ugo2.api.outbox=false pour pousser en direct).
+     * Toujours présente avec ugo2.api.metricsStream : elle sert de spool disque au flux NDJSON.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("${ugo2.api.outbox:true} or ${ugo2.api.metricsStream:false}")
+    public IngestOutbox ingestOutbox(StateProps state, ApiClientConfig.ApiProps api) {
+        return new IngestOutbox(Path.of(state.getDir()).resolve("outbox"), api.getOutboxSegmentBytes());
+    }
+}
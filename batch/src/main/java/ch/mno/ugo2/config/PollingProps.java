@@ -0,0 +1,15 @@
+package ch.mno.ugo2.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ugo2.polling")
+@Data
+public class PollingProps {
+  /** Only re-read videos that are due according to PollingPolicy (false = every video, every run) */
+  private boolean enabled = true;
+  /** Drop snapshots without significant change (per-platform minDeltaRel/minDeltaAbs/dailyFloor) */
+  private boolean parsimony = true;
+}
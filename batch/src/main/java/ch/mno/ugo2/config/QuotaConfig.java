@@ -0,0 +1,18 @@
+package ch.mno.ugo2.config;
+
+import ch.mno.ugo2.service.QuotaManager;
+import ch.mno.ugo2.util.StateStore;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+public class QuotaConfig {
+
+    /** Budgets d'appels par plateforme (app.budgets.*), consommation persistée dans le state store. */
+    @Bean
+    public QuotaManager quotaManager(AppProps app, StateStore store) {
+        return new QuotaManager(app.getBudgets(), store, Clock.systemUTC());
+    }
+}
@@ -0,0 +1,15 @@
+package ch.mno.ugo2.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ugo2.state")
+@Data
+public class StateProps {
+  /** Local dir for the batch state (polling, checkpoints, ETags) */
+  private String dir = ".ugo2";
+  /** Compact the state journal when it holds more than N records per live key */
+  private int compactFactor = 4;
+}
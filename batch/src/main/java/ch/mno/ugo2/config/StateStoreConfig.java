@@ -0,0 +1,19 @@
+package ch.mno.ugo2.config;
+
+import ch.mno.ugo2.util.JournalStateStore;
+import ch.mno.ugo2.util.StateStore;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class StateStoreConfig {
+
+    /** Journal append-only ; l'ancien state.json est importé au premier démarrage. */
+    @Bean
+    public StateStore stateStore(StateProps p) {
+        Path dir = Path.of(p.getDir());
+        return new JournalStateStore(dir.resolve("state.journal"), dir.resolve("state.json"), p.getCompactFactor());
+    }
+}
@@ -23,6 +23,12 @@ public class YouTubeProps {
     private int pageSize = 50;
     /** Max videos per execution (safety) */
     private int maxVideosPerRun = 500;
+    /** Incremental discovery: stop paging uploads at the first known video, skip when page 1 is unchanged */
+    private boolean incrementalDiscovery = true;
+    /** Full uploads re-scan every N days, even in incremental mode */
+    private int fullScanIntervalDays = 7;
+    /** Force a full uploads re-scan on this run */
+    private boolean forceFullScan = false;
     /** Local state dir for checkpoints/caches */
     private String stateDir = ".ugo2";
     /** Thresholds to reduce chatter */
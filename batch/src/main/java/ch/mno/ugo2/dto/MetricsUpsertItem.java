@@ -3,11 +3,13 @@ package ch.mno.ugo2.dto;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
 import java.time.Instant;
 
 @Value
 @Builder
+@Jacksonized
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class MetricsUpsertItem {
     String platform;           // "YOUTUBE" | "FACEBOOK" | "INSTAGRAM" | "TIKTOK"
@@ -3,6 +3,8 @@ package ch.mno.ugo2.dto;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 @Builder
 public class OverrideItem {
@@ -11,4 +13,8 @@ public class OverrideItem {
     private String action;           // LINK | UNLINK | TEASER | MAIN
     private Long target_video_id;    // optional
     private Integer lock;            // optional 0/1
+    private Integer immediate;       // 1 = appliqué tout de suite (réconciliation locale), sinon mis en file
+    private String target_source_platform;  // ancre du cluster : LINK vers sa vidéo (créée au besoin)
+    private String target_source_id;
+    private Map<String, Object> video;      // title / description / published_at si la vidéo est à créer
 }
@@ -0,0 +1,20 @@
+package ch.mno.ugo2.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+/** Source existante renvoyée par /api/v1/sources:window (réconciliation locale). */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SourceWindowItem {
+    private Long id;
+    private String platform;
+    private String platform_video_id;
+    private Long video_id;            // nullable
+    private String title;
+    private String description;
+    private String published_at;      // "yyyy-MM-dd HH:mm:ss" UTC
+    private String updated_at;        // horloge du serveur web (réconciliation incrémentale)
+    private Integer is_locked;        // 0/1 (vidéo verrouillée)
+    private Integer is_active;        // 0 = source désactivée (renvoyée seulement avec updatedSince)
+}
@@ -0,0 +1,7 @@
+package ch.mno.ugo2.dto;
+
+/**
+ * Couple source + snapshot produit par un collecteur pour une même vidéo.
+ */
+public record SourceWithMetrics(SourceUpsertItem source, MetricsUpsertItem metrics) {
+}
@@ -1,19 +1,32 @@
 package ch.mno.ugo2.facebook;
 
 import ch.mno.ugo2.common.AbstractClient;
+import ch.mno.ugo2.common.AdaptiveLimiter;
+import ch.mno.ugo2.common.GraphRateLimits;
+import ch.mno.ugo2.config.FacebookProps;
 import ch.mno.ugo2.facebook.dto.FbError;
+import ch.mno.ugo2.service.QuotaExceededException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import ch.mno.ugo2.facebook.responses.FacebookPostsResponse;
 import ch.mno.ugo2.facebook.responses.InsightsResponse;
+import ch.mno.ugo2.facebook.responses.VideoIdsResponse;
 import ch.mno.ugo2.facebook.responses.VideoResponse;
+import org.apache.commons.lang3.StringUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
@@ -24,6 +37,7 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.Map;
@@ -39,15 +53,101 @@ import java.util.Map;
 public class FacebookClient extends AbstractClient {
 
     private static final String BASE = "https://graph.facebook.com";
+    /** Limite Graph API du nombre de sous-requêtes par POST batch. */
+    static final int MAX_BATCH = 50;
+
+    /** Attente maximale avant une nouvelle tentative quand Graph annonce un délai de reprise. */
+    private static final Duration MAX_REGAIN_WAIT = Duration.ofSeconds(60);
+
+    private final String base;
+    /** Concurrence adaptative (null = appels non limités). */
+    private volatile AdaptiveLimiter limiter;
+    private volatile FacebookUsage lastUsage;
 
     public FacebookClient() {
-        super(WebClient.builder().build());
+        this(WebClient.builder().build(), BASE);
+    }
+
+    /** Client Graph partagé (pool de connexions graph.facebook.com, voir HttpTransport). */
+    @Autowired
+    public FacebookClient(WebClient facebookWebClient) {
+        this(facebookWebClient, BASE);
+    }
+
+    /** Base URL injectable (tests contre un stub local). */
+    FacebookClient(WebClient http, String base) {
+        super(http);
+        this.base = base;
+    }
+
+    /** Résultat démultiplexé d'un batch pour une vidéo : vidéo + insights, ou erreur propre à cet ID. */
+    public record VideoWithInsights(String id, VideoResponse video, InsightsResponse insights, Exception error) {
+        public boolean ok() { return error == null; }
+    }
+
+    /**
+     * Active la concurrence adaptative pilotée par les en-têtes d'usage Graph (voir {@link FacebookProps}).
+     */
+    @Autowired(required = false)
+    public void setProps(FacebookProps props) {
+        this.limiter = props == null || !props.isAdaptiveConcurrency() ? null
+                : new AdaptiveLimiter("FB", props.getMinConcurrency(), props.getInitialConcurrency(),
+                props.getMaxConcurrency(), props.getUsageLowWatermark(), props.getUsageHighWatermark());
+    }
+
+    /** Niveau de concurrence courant et usage observé (null si la concurrence adaptative est désactivée). */
+    public AdaptiveLimiter.Stats concurrencyStats() {
+        AdaptiveLimiter l = limiter;
+        return l == null ? null : l.stats();
+    }
+
+    /** Derniers pourcentages d'usage reçus (null avant la première réponse). */
+    public FacebookUsage lastUsage() {
+        return lastUsage;
+    }
+
+    @Override
+    protected <T> Mono<T> throttle(Supplier<Mono<T>> call) {
+        AdaptiveLimiter l = limiter;
+        return l == null ? super.throttle(call) : l.run(call);
+    }
+
+    @Override
+    protected void onResponse(HttpStatusCode status, HttpHeaders headers) {
+        FacebookUsage usage = FacebookUsage.parse(headers, objectMapper);
+        if (usage.present()) lastUsage = usage;
+        AdaptiveLimiter l = limiter;
+        if (l == null) return;
+        // un refus est compté une seule fois, par retrySpec() (codes du corps inclus) ; ici : délai annoncé et usage des succès
+        if (usage.regainAccess().compareTo(Duration.ZERO) > 0) l.onRegainAccess(usage.regainAccess());
+        if (status.is2xxSuccessful() && usage.present()) l.onUsage(usage.max());
+    }
+
+    /** Erreur de limitation de débit Graph (HTTP 429 ou code de {@link GraphRateLimits}). */
+    static boolean isThrottling(Throwable e) {
+        if (e instanceof FacebookApiException fe) return GraphRateLimits.isRateLimitCode(fe.getCode()) || Integer.valueOf(429).equals(fe.getCode());
+        return GraphRateLimits.isRateLimited(e);
     }
 
     private Retry retrySpec() {
         return Retry.backoff(3, Duration.ofSeconds(2))
                 .maxBackoff(Duration.ofSeconds(15))
-                .jitter(0.2);
+                .jitter(0.2)
+                .filter(e -> !(e instanceof QuotaExceededException))
+                .doBeforeRetryAsync(signal -> {
+                    AdaptiveLimiter l = limiter;
+                    if (l == null || !isThrottling(signal.failure())) return Mono.empty();
+                    l.onThrottled(null);                              // une baisse par tentative refusée
+                    Duration wait = l.regainDelay();
+                    return wait.isZero() ? Mono.empty()
+                            : Mono.delay(wait.compareTo(MAX_REGAIN_WAIT) > 0 ? MAX_REGAIN_WAIT : wait).then();
+                })
+                .onRetryExhaustedThrow((spec, signal) -> {
+                    AdaptiveLimiter l = limiter;
+                    if (l != null && isThrottling(signal.failure())) l.onThrottled(null);   // dernière tentative
+                    return Exceptions.retryExhausted("Retries exhausted: " + signal.totalRetries() + "/" + spec.maxAttempts,
+                            signal.failure());
+                });
     }
 
     public Mono<FacebookPostsResponse> publishedPosts(
@@ -60,7 +160,7 @@ public class FacebookClient extends AbstractClient {
         String fields = "id,created_time,permalink_url,attachments%7Bmedia_type,target,subattachments,media%7D";
 
         URI uri = UriComponentsBuilder
-                .fromHttpUrl(BASE + "/" + version + "/" + pageId + "/published_posts")
+                .fromHttpUrl(base + "/" + version + "/" + pageId + "/published_posts")
                 .queryParam("fields", fields)
                 .queryParam("limit", Optional.ofNullable(limit).orElse(100))
                 .queryParam("access_token", accessToken)
@@ -73,7 +173,7 @@ public class FacebookClient extends AbstractClient {
     }
 
     public Mono<VideoResponse> video(String version, String videoId, String accessToken) {
-        URI uri = UriComponentsBuilder.fromHttpUrl(BASE + "/" + version + "/" + videoId)
+        URI uri = UriComponentsBuilder.fromHttpUrl(base + "/" + version + "/" + videoId)
                 .queryParam("fields", "id,title,description,permalink_url,created_time,length")
                 .queryParam("access_token", accessToken)
                 .build(true).toUri();
@@ -102,7 +202,7 @@ public class FacebookClient extends AbstractClient {
                         (after, sink) -> {
 
                             URI uri = UriComponentsBuilder
-                                    .fromHttpUrl(BASE + "/" + version + "/" + pageId + "/videos")
+                                    .fromHttpUrl(base + "/" + version + "/" + pageId + "/videos")
                                     .queryParam("type", type)
                                     .queryParam("fields", "id")
                                     .queryParam("limit", 100)
@@ -114,27 +214,13 @@ public class FacebookClient extends AbstractClient {
                             log.debug("Calling {}", uri);
 
                             try {
-                                Map json = get(uri, null, Map.class).block();
-
-                                // --- DATA
-                                List<Map<String, Object>> data = (List<Map<String, Object>>) json.get("data");
-                                if (data != null) {
-                                    for (var item : data) {
-                                        Object id = item.get("id");
-                                        if (id != null) out.add(id.toString());
-                                    }
-                                }
-
-                                // --- PAGING
-                                String nextAfter = null;
-                                Map<String, Object> paging = (Map<String, Object>) json.get("paging");
-                                if (paging != null) {
-                                    Map<String, Object> cursors =
-                                            (Map<String, Object>) paging.get("cursors");
-                                    if (cursors != null && cursors.get("after") != null) {
-                                        nextAfter = cursors.get("after").toString();
+                                VideoIdsResponse page = get(uri, null, VideoIdsResponse.class).block();
+                                if (page != null && page.getData() != null) {
+                                    for (var item : page.getData()) {
+                                        if (item.getId() != null) out.add(item.getId());
                                     }
                                 }
+                                String nextAfter = page == null || StringUtils.isBlank(page.after()) ? null : page.after();
 
                                 if (nextAfter == null) {
                                     sink.complete();
@@ -155,13 +241,116 @@ public class FacebookClient extends AbstractClient {
 
 
 
+    /**
+     * Vidéo + insights de plusieurs IDs via la Graph API batch : jusqu'à {@link #MAX_BATCH} sous-requêtes
+     * (donc 25 vidéos) par POST, au lieu de deux GET par vidéo.
+     * Chaque réponse est démultiplexée par ID ; une sous-requête en erreur n'affecte que sa vidéo,
+     * un POST en échec que les vidéos de son chunk (le flux ne se termine jamais en erreur).
+     */
+    public Flux<VideoWithInsights> videosWithInsights(String version, List<String> videoIds, String accessToken, int concurrency) {
+        if (videoIds == null || videoIds.isEmpty()) return Flux.empty();
+        int perPost = MAX_BATCH / 2;
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < videoIds.size(); i += perPost) {
+            chunks.add(videoIds.subList(i, Math.min(i + perPost, videoIds.size())));
+        }
+        return Flux.fromIterable(chunks)
+                .flatMapSequential(chunk -> batchChunk(version, chunk, accessToken), Math.max(1, concurrency));
+    }
+
+    private Flux<VideoWithInsights> batchChunk(String version, List<String> ids, String accessToken) {
+        List<Map<String, String>> requests = new ArrayList<>(ids.size() * 2);
+        for (String id : ids) {
+            requests.add(Map.of("method", "GET",
+                    "relative_url", version + "/" + id + "?fields=id,title,description,permalink_url,created_time,length"));
+            requests.add(Map.of("method", "GET", "relative_url", version + "/" + id + "/video_insights"));
+        }
+        String batch;
+        try {
+            batch = objectMapper.writeValueAsString(requests);
+        } catch (IOException e) {
+            return failed(ids, e);
+        }
+        log.debug("Calling batch ({} sub-requests)", requests.size());
+
+        return throttle(() -> {
+                    // Graph API : chaque sous-requête compte comme un appel
+                    acquireQuota(base + "/batch", requests.size());
+                    return http.post()
+                            .uri(URI.create(base + "/"))
+                            .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                            .body(BodyInserters.fromFormData("access_token", accessToken)
+                                    .with("include_headers", "false")
+                                    .with("batch", batch))
+                            .exchangeToMono(resp -> {
+                                onResponse(resp.statusCode(), resp.headers().asHttpHeaders());
+                                return resp.bodyToMono(String.class).defaultIfEmpty("")
+                                        .flatMap(body -> resp.statusCode().is2xxSuccessful()
+                                                ? Mono.just(body)
+                                                : Mono.error(toException(resp.statusCode(), body)));
+                            })
+                            .timeout(Duration.ofSeconds(60));
+                })
+                .retryWhen(retrySpec())
+                .flatMapMany(body -> Flux.fromIterable(demux(ids, body)))
+                // POST en échec après retries (ou quota épuisé) : erreur par ID, les autres chunks continuent
+                .onErrorResume(e -> {
+                    log.warn("Batch of {} videos failed: {}", ids.size(), e.toString());
+                    return failed(ids, e);
+                });
+    }
+
+    private static Flux<VideoWithInsights> failed(List<String> ids, Throwable e) {
+        Exception cause = e instanceof Exception ex ? ex : new RuntimeException(e);
+        return Flux.fromIterable(ids).map(id -> new VideoWithInsights(id, null, null, cause));
+    }
+
+    /** Associe les réponses (dans l'ordre des sous-requêtes) à chaque ID. */
+    List<VideoWithInsights> demux(List<String> ids, String body) {
+        List<VideoWithInsights> out = new ArrayList<>(ids.size());
+        JsonNode arr = toJsonNode(body);
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            try {
+                VideoResponse video = subResponse(arr.get(2 * i), VideoResponse.class);
+                InsightsResponse insights = subResponse(arr.get(2 * i + 1), InsightsResponse.class);
+                out.add(new VideoWithInsights(id, video, insights, null));
+            } catch (Exception e) {
+                out.add(new VideoWithInsights(id, null, null, e));
+            }
+        }
+        return out;
+    }
+
+    private <T> T subResponse(JsonNode sub, Class<T> type) throws IOException {
+        if (sub == null || sub.isNull()) {
+            throw new FacebookApiException("batch sub-request not processed (timeout)", null, null, null, null);
+        }
+        int code = sub.path("code").asInt();
+        String body = sub.path("body").asText("");
+        if (code / 100 != 2) throw toException(HttpStatusCode.valueOf(code), body);
+        return objectMapper.readerFor(type)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readValue(body);
+    }
+
+    private FacebookApiException toException(HttpStatusCode status, String body) {
+        FbError err = safeParse(body, FbError.class);
+        String msg = err != null && err.message() != null ? err.message() : "HTTP " + status.value();
+        return new FacebookApiException(msg, err != null && err.code() != null ? err.code() : status.value(),
+                err != null ? err.type() : null, err != null ? err.fbtrace_id() : null, body);
+    }
+
     public Mono<InsightsResponse> insights(String version, String videoId, String accessToken) {
-        URI uri = UriComponentsBuilder.fromHttpUrl(BASE + "/" + version + "/" + videoId + "/video_insights")
+        URI uri = UriComponentsBuilder.fromHttpUrl(base + "/" + version + "/" + videoId + "/video_insights")
                 .queryParam("access_token", accessToken)
                 .build(true).toUri();
         log.debug("Calling {}", uri);
         return get(uri, null, InsightsResponse.class).retryWhen(retrySpec());
     }
 
-
+    @Override
+    protected String quotaPlatform() {
+        return "FACEBOOK";
+    }
 }
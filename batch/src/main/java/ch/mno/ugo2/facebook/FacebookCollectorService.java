@@ -1,13 +1,18 @@
 // batch/src/main/java/ch/mno/ugo2/facebook/FacebookCollectorService.java
 package ch.mno.ugo2.facebook;
 
+import ch.mno.ugo2.config.DiscoveryProps;
 import ch.mno.ugo2.config.FacebookProps;
 import ch.mno.ugo2.dto.MetricsUpsertItem;
 import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.dto.SourceWithMetrics;
 import ch.mno.ugo2.facebook.responses.FacebookPostsResponse;
 import ch.mno.ugo2.facebook.responses.InsightMetric;
 import ch.mno.ugo2.facebook.responses.InsightsResponse;
 import ch.mno.ugo2.facebook.responses.VideoResponse;
+import ch.mno.ugo2.service.AccountFanOut;
+import ch.mno.ugo2.service.PollingScheduler;
+import ch.mno.ugo2.service.QuotaManager;
 import ch.mno.ugo2.service.WebApiSinkService;
 import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
@@ -16,9 +21,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
@@ -29,6 +35,9 @@ public class FacebookCollectorService {
     private final FacebookClient fb;
     private final FacebookProps cfg;
     private final WebApiSinkService sink;
+    private final PollingScheduler scheduler;
+    private final DiscoveryProps discoveryProps;
+    private final QuotaManager quota;
 
     /**
      * Collecte multi-pages + upsert sources + upsert metrics.
@@ -37,13 +46,15 @@ public class FacebookCollectorService {
         Set<String> allVideoIds = new LinkedHashSet<>();
         int successfulPages = 0;
         Exception lastPageError = null;
-        for (String pageId : cfg.getPageIds()) {
-            try {
-                allVideoIds.addAll(discoverVideoIdsForPage(pageId));
+        var outcomes = AccountFanOut.run(cfg.getPageIds(), discoveryProps.accountConcurrency("FACEBOOK"),
+                this::discoverVideoIdsForPage);
+        for (var o : outcomes) {
+            if (o.ok()) {
+                allVideoIds.addAll(o.value());
                 successfulPages++;
-            } catch (Exception e) {
-                lastPageError = e;
-                log.warn("[FB] page {}: {}", pageId, e.toString());
+            } else {
+                lastPageError = o.error();
+                log.warn("[FB] page {}: {}", o.account(), o.error().toString());
             }
         }
         if (successfulPages == 0 && lastPageError != null) {
@@ -51,8 +62,11 @@ public class FacebookCollectorService {
         }
         if (allVideoIds.isEmpty()) return 0;
 
+        var selection = scheduler.selectDue("FACEBOOK", allVideoIds, Instant.now());
+        // vidéo + insights = 2 appels (ou 2 sous-requêtes batch) par vidéo
+        List<String> dueIds = quota.affordable("FACEBOOK", selection, 2, 0);
         int cap = Math.max(1, cfg.getMaxVideosPerRun());
-        List<String> selectedIds = allVideoIds.stream().limit(cap).toList();
+        List<String> selectedIds = dueIds.stream().limit(cap).toList();
         return collectAndPushByIds(selectedIds).blockOptional().orElse(0);
     }
 
@@ -65,48 +79,67 @@ public class FacebookCollectorService {
         final String v = cfg.getApiVersion();
         final String token = cfg.getAccessToken();
         AtomicReference<Throwable> lastError = new AtomicReference<>();
+        AtomicInteger mapped = new AtomicInteger();
+
+        // Avec la concurrence adaptative, le client limite lui-même les requêtes en vol : le flux peut en proposer jusqu'au plafond
+        boolean adaptive = cfg.isAdaptiveConcurrency();
+        Flux<SourceWithMetrics> items;
+        if (cfg.isBatchRequests()) {
+            // un chunk en échec remonte une erreur par vidéo (voir FacebookClient.videosWithInsights) : les autres chunks continuent
+            items = fb.videosWithInsights(v, ids, token, adaptive ? cfg.getMaxConcurrency() : cfg.getBatchConcurrency())
+                    .flatMap(r -> {
+                        if (!r.ok()) {
+                            lastError.set(r.error());
+                            log.warn("[FB] skip id={} cause={}", r.id(), r.error().toString());
+                            return Mono.empty();
+                        }
+                        mapped.incrementAndGet();
+                        return Mono.just(toItem(r.video(), r.insights()));
+                    });
+        } else {
+            items = Flux.fromIterable(ids)
+                    .flatMap(id ->
+                                    Mono.zip(
+                                                    fb.video(v, id, token),
+                                                    fb.insights(v, id, token)
+                                            )
+                                            .map(tuple -> {
+                                                mapped.incrementAndGet();
+                                                return toItem(tuple.getT1(), tuple.getT2());
+                                            })
+                                            .onErrorResume(ex -> {
+                                                lastError.set(ex);
+                                                log.warn("[FB] skip id={} cause={}", id, ex.toString());
+                                                return Mono.empty();
+                                            })
+                            , adaptive ? cfg.getMaxConcurrency() : 6);
+        }
 
-        return Flux.fromIterable(ids)
-                .flatMap(id ->
-                                Mono.zip(
-                                                fb.video(v, id, token),
-                                                fb.insights(v, id, token)
-                                        )
-                                        .map(tuple -> {
-                                            VideoResponse video = tuple.getT1();
-                                            InsightsResponse insResp = tuple.getT2();
-
-                                            SourceUpsertItem src = FacebookMetricsMapper.toSource(video);
-                                            Map<String, Long> metricsMap = toFlatMap(insResp);
-                                            MetricsUpsertItem met = FacebookMetricsMapper.fromVideoAndInsights(video, metricsMap);
-                                            return new SrcAndMet(src, met);
-                                        })
-                                        .onErrorResume(ex -> {
-                                            lastError.set(ex);
-                                            log.warn("[FB] skip id={} cause={}", id, ex.toString());
-                                            return Mono.empty();
-                                        })
-                        , /*concurrency*/ 6)
-                .collectList()
-                .flatMap(list -> {
-                    if (list.isEmpty()) {
-                        return Mono.error(new IllegalStateException(
-                                "Facebook returned no usable metrics for " + ids.size() + " video(s)",
-                                lastError.get()
-                        ));
-                    }
-                    return Mono.fromRunnable(() -> {
-                                var sources = list.stream().map(SrcAndMet::src).toList();
-                                var snapshots = list.stream().map(SrcAndMet::met).toList();
-                                log.info("[FB] upsert {} sources, {} metrics", sources.size(), snapshots.size());
-
-                                // ⚠ appels bloquants → boundedElastic
-                                sink.batchUpsertSources(sources);
-                                sink.batchUpsertMetrics(snapshots);
-                            })
-                            .subscribeOn(Schedulers.boundedElastic())
-                            .thenReturn(list.size());
-                });
+        // Poussée par fenêtres pendant la collecte ; l'état de planification suit chaque fenêtre acceptée
+        return sink.pushStream("FB", items, sources -> scheduler.recordSnapshots(sources, Instant.now()))
+                .doFinally(s -> logConcurrency())
+                .flatMap(pushed -> mapped.get() > 0 ? Mono.just(pushed) : Mono.error(new IllegalStateException(
+                        "Facebook returned no usable metrics for " + ids.size() + " video(s)",
+                        lastError.get()
+                )));
+    }
+
+    private void logConcurrency() {
+        var stats = fb.concurrencyStats();
+        var usage = fb.lastUsage();
+        if (stats == null && usage == null) return;
+        log.info("[FB] concurrency={} peakInFlight={} up={} down={} usage app={}% buc={}% adAccount={}% peakUsage={}%",
+                stats == null ? "-" : stats.limit(), stats == null ? "-" : stats.peakInFlight(),
+                stats == null ? 0 : stats.increases(), stats == null ? 0 : stats.decreases(),
+                usage == null ? "-" : usage.app(), usage == null ? "-" : usage.businessUseCase(),
+                usage == null ? "-" : usage.adAccount(), stats == null ? "-" : stats.peakUsage());
+    }
+
+    private static SourceWithMetrics toItem(VideoResponse video, InsightsResponse insResp) {
+        SourceUpsertItem src = FacebookMetricsMapper.toSource(video);
+        Map<String, Long> metricsMap = toFlatMap(insResp);
+        MetricsUpsertItem met = FacebookMetricsMapper.fromVideoAndInsights(video, metricsMap);
+        return new SourceWithMetrics(src, met);
     }
 
     /**
@@ -325,7 +358,4 @@ public class FacebookCollectorService {
         if (k == null) return "";
         return k.replaceAll("[^A-Za-z0-9_]", "_");
     }
-
-    private record SrcAndMet(SourceUpsertItem src, MetricsUpsertItem met) {
-    }
 }
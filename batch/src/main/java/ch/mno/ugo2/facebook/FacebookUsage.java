@@ -0,0 +1,67 @@
+package ch.mno.ugo2.facebook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+
+/**
+ * Usage des limites de débit Graph lu dans les en-têtes de réponse (pourcentages 0–100, -1 = en-tête absent) :
+ * - X-App-Usage : {"call_count":28,"total_time":25,"total_cputime":25} ;
+ * - X-Business-Use-Case-Usage : {"&lt;id&gt;":[{"type":"pages","call_count":..,"estimated_time_to_regain_access":0}]} ;
+ * - X-Ad-Account-Usage : {"acc_id_util_pct":9.67}.
+ */
+public record FacebookUsage(double app, double businessUseCase, double adAccount, Duration regainAccess) {
+
+    static final String APP = "X-App-Usage";
+    static final String BUSINESS_USE_CASE = "X-Business-Use-Case-Usage";
+    static final String AD_ACCOUNT = "X-Ad-Account-Usage";
+
+    private static final String[] COUNTERS = {"call_count", "total_time", "total_cputime", "acc_id_util_pct"};
+
+    /** Usage le plus élevé des trois en-têtes (-1 si aucun). */
+    public double max() {
+        return Math.max(app, Math.max(businessUseCase, adAccount));
+    }
+
+    public boolean present() {
+        return max() >= 0;
+    }
+
+    public static FacebookUsage parse(HttpHeaders headers, ObjectMapper mapper) {
+        double app = pct(read(headers.getFirst(APP), mapper));
+        double ad = pct(read(headers.getFirst(AD_ACCOUNT), mapper));
+        double buc = -1;
+        long regainMinutes = 0;
+        JsonNode root = read(headers.getFirst(BUSINESS_USE_CASE), mapper);
+        if (root != null) {
+            for (JsonNode perBusiness : root) {
+                for (JsonNode useCase : perBusiness) {
+                    buc = Math.max(buc, pct(useCase));
+                    regainMinutes = Math.max(regainMinutes, useCase.path("estimated_time_to_regain_access").asLong(0));
+                }
+            }
+        }
+        return new FacebookUsage(app, buc, ad, Duration.ofMinutes(regainMinutes));
+    }
+
+    private static JsonNode read(String header, ObjectMapper mapper) {
+        if (header == null || header.isBlank()) return null;
+        try {
+            return mapper.readTree(header);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static double pct(JsonNode node) {
+        if (node == null || !node.isObject()) return -1;
+        double max = -1;
+        for (String c : COUNTERS) {
+            JsonNode v = node.get(c);
+            if (v != null && v.isNumber()) max = Math.max(max, v.asDouble());
+        }
+        return max;
+    }
+}
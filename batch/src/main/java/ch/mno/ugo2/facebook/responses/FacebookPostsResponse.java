@@ -1,34 +1,36 @@
 package ch.mno.ugo2.facebook.responses;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import java.util.List;
 
+/**
+ * published_posts projeté sur ce que lit la découverte : IDs vidéo des attachments et curseur "after".
+ * Les autres champs (textes, URLs, images…) sont sautés par le parseur sans être matérialisés.
+ */
 @Data
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class FacebookPostsResponse {
     private List<Post> data;
     private Paging paging;
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Post {
         private String id;
-
-        @JsonProperty("created_time")
-        private String createdTime;
-
-        @JsonProperty("permalink_url")
-        private String permalinkUrl;
-
         private Attachments attachments;
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Attachments {
         private List<Attachment> data;
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Attachment {
         @JsonProperty("media_type")
         private String mediaType;
@@ -36,40 +38,43 @@ public class FacebookPostsResponse {
         private SubAttachments subattachments;
 
         @JsonProperty("media")
-        private Media media;     // <<==== AJOUT
+        private Media media;
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Media {
         private String id;       // parfois présent
-        private String source;   // pour les vidéos inline
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class SubAttachments {
         private List<SubAttachmentsData> data;
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class SubAttachmentsData {
         private Target target;
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Target {
         private String id;
         private String type;
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Paging {
         private Cursors cursors;
-        private String next;
     }
 
     @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Cursors {
-        private String before;
         private String after;
     }
 }
@@ -0,0 +1,26 @@
+package ch.mno.ugo2.facebook.responses;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Page de /{page-id}/videos?fields=id : IDs et curseur "after" uniquement.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class VideoIdsResponse {
+    private List<Item> data;
+    private FacebookPostsResponse.Paging paging;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Item {
+        private String id;
+    }
+
+    public String after() {
+        return paging == null || paging.getCursors() == null ? null : paging.getCursors().getAfter();
+    }
+}
@@ -1,24 +1,37 @@
 package ch.mno.ugo2.instagram;
 
 import ch.mno.ugo2.api.InstagramClient;
+import ch.mno.ugo2.config.DiscoveryProps;
 import ch.mno.ugo2.config.InstagramProps;
 import ch.mno.ugo2.dto.MetricsUpsertItem;
 import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.dto.SourceWithMetrics;
+import ch.mno.ugo2.instagram.dto.IgMedia;
+import ch.mno.ugo2.service.PollingScheduler;
+import ch.mno.ugo2.service.QuotaManager;
 import ch.mno.ugo2.service.WebApiSinkService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.net.URI;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
@@ -28,6 +41,9 @@ public class InstagramCollectorService {
   private final InstagramProps cfg;
   private final InstagramClient ig;
   private final WebApiSinkService sink;
+  private final PollingScheduler scheduler;
+  private final DiscoveryProps discoveryProps;
+  private final QuotaManager quota;
 
   /**
    * Collecte les médias IG (VIDEO/REEL) et pousse sources + métriques.
@@ -63,108 +79,137 @@ public class InstagramCollectorService {
     int limit = Math.max(1, Math.min(cfg.getPageSize(), 100));
     int cap = Math.max(1, cfg.getMaxMediaPerRun());
 
-    List<SourceUpsertItem> sources = new ArrayList<>();
-    List<MetricsUpsertItem> snapshots = new ArrayList<>();
-
-    int successfulUsers = 0;
-    Exception lastUserError = null;
-
-    for (String uid : users) {
-      int pushedForUser = 0;
-      try {
-        // Champs: suffisent pour construire Source & premiers compteurs
-        String fields = "id,caption,media_type,media_product_type,permalink,thumbnail_url,media_url,timestamp,like_count,comments_count,video_view_count";
-        URI first = UriComponentsBuilder.fromHttpUrl("https://graph.facebook.com/" + v + "/" + uid + "/media")
-                .queryParam("fields", fields)
-                .queryParam("limit", limit)
-                .queryParam("access_token", token)
-                .build(true).toUri();
-
-        List<Map<String, Object>> items = ig.listMedia(first.toString(), /*maxPages*/ 50);
-        for (Map<String, Object> m : items) {
-          String mediaType = str(m.get("media_type"));
-          String product = str(m.get("media_product_type"));
-          String id = str(m.get("id"));
-          String permalink = str(m.get("permalink"));
-          String caption = str(m.get("caption"));
-          Instant ts = parseTs(str(m.get("timestamp")));
-          if (id == null || ts == null) continue;
-          if (ts.isBefore(since)) continue;
-
-          String type = mapType(mediaType, product);
-          if (!"VIDEO".equals(type) && !"REEL".equals(type)) continue;
-
-          // Likes & comments & views (si dispo)
-          Long likes = toLong(m.get("like_count"));
-          Long comments = toLong(m.get("comments_count"));
-          Long views = toLong(m.get("video_view_count"));
-          Long shares = null;
-          Long reach = null;
-
-          // Insights par média pour compléter/fiabiliser les compteurs (le /media seul est insuffisant)
-          try {
-            URI insightsUrl = UriComponentsBuilder.fromHttpUrl("https://graph.facebook.com/" + v + "/" + id + "/insights")
-                    .queryParam("metric", "views,reach,saved,likes,comments,shares,total_interactions")
-                    .queryParam("access_token", token)
-                    .build(true).toUri();
-            Map<String, Long> ins = ig.readInsights(insightsUrl.toString());
-            if (ins != null && !ins.isEmpty()) {
-              views = ins.get("views");
-              likes = ins.get("likes");
-              comments = ins.get("comments");
-              shares = ins.get("shares");
-              reach = ins.get("reach");
-            }
-          } catch (Exception e) {
-            if (isAuthenticationFailure(e)) {
-              throw e;
-            }
-            log.warn("[IG] insights unavailable for media {}: {}", id, e.toString());
-            // Donnée inconnue : conserver null ou le compteur présent dans /media, jamais forcer 0.
-          }
-
-          sources.add(SourceUpsertItem.builder()
-                  .platform("INSTAGRAM")
-                  .platform_source_id(id)
-                  .title(truncate(caption, 140))
-                  .description(caption)
-                  .permalink_url(permalink)
-                  .media_type(type)
-                  .published_at(ts.toString())
-                  .locked(null)
-                  .build());
-
-          snapshots.add(MetricsUpsertItem.builder()
-                  .platform("INSTAGRAM")
-                  .platform_format(type)
-                  .platform_video_id(id)
-                  .snapshot_at(Instant.now())
-                  .views_native(views)
-                  .likes(likes)
-                  .comments(comments)
-                  .shares(shares)
-                  .reach(reach)
-                  .build());
-
-          pushedForUser++;
-          if (pushedForUser >= cap) break;
-        }
-        successfulUsers++;
-      } catch (Exception e) {
-        lastUserError = e;
-        log.warn("[IG] user={} error: {}", uid, e.toString());
-      }
+    AtomicInteger successfulUsers = new AtomicInteger();
+    AtomicReference<Exception> lastUserError = new AtomicReference<>();
+
+    // Comptes en parallèle borné, éléments émis au fil des pages (ordre des comptes conservé) ;
+    // l'échec d'un compte reste isolé
+    Flux<SourceWithMetrics> items = Flux.fromIterable(users)
+            .flatMapSequential(uid -> collectUser(uid, v, token, limit, cap, since)
+                            .doOnComplete(successfulUsers::incrementAndGet)
+                            .onErrorResume(Exception.class, e -> {
+                              lastUserError.set(e);
+                              log.warn("[IG] user={} error: {}", uid, e.toString());
+                              return Flux.empty();
+                            }),
+                    Math.max(1, discoveryProps.accountConcurrency("INSTAGRAM")));
+
+    // Push par fenêtres au fil des pages (bloquant)
+    int pushed = sink.pushStream("IG", items, sources -> scheduler.recordSnapshots(sources, Instant.now()))
+            .blockOptional().orElse(0);
+
+    if (successfulUsers.get() == 0 && lastUserError.get() != null) {
+      throw new IllegalStateException("Instagram collection failed for every configured account", lastUserError.get());
+    }
+    return pushed;
+  }
+
+  /**
+   * Médias VIDEO/REEL d'un compte (fenêtre + planification) avec leurs insights, page par page : la sélection
+   * (médias dus, finançables, au plus {@code cap} par compte) se fait sur chaque page, du plus récent au plus ancien,
+   * et les éléments partent vers le push sans que la liste du compte soit matérialisée.
+   */
+  Flux<SourceWithMetrics> collectUser(String uid, String v, String token, int limit, int cap, Instant since) {
+    // Champs: suffisent pour construire Source & premiers compteurs
+    String fields = "id,caption,media_type,media_product_type,permalink,thumbnail_url,media_url,timestamp,like_count,comments_count,video_view_count";
+    URI first = UriComponentsBuilder.fromHttpUrl("https://graph.facebook.com/" + v + "/" + uid + "/media")
+            .queryParam("fields", fields)
+            .queryParam("limit", limit)
+            .queryParam("access_token", token)
+            .build(true).toUri();
+
+    // Pagination arrêtée dès qu'une page atteint des médias antérieurs à la fenêtre
+    AtomicInteger room = new AtomicInteger(cap);
+    Flux<IgMedia> selected = ig.streamMedia(first.toString(), /*maxPages*/ 50,
+                    m -> m.publishedAt() != null && m.publishedAt().isBefore(since))
+            .filter(m -> m.id() != null && m.publishedAt() != null && !m.publishedAt().isBefore(since))
+            .buffer(limit)
+            // planification (state store) hors des threads réseau ; une page à la fois
+            .publishOn(Schedulers.boundedElastic(), 1)
+            .concatMapIterable(page -> selectDue(page, room));
+
+    // Insights par média pour compléter/fiabiliser les compteurs (le /media seul est insuffisant),
+    // en parallèle borné ; une erreur d'authentification annule le compte entier
+    Duration backoff = Duration.ofSeconds(Math.max(1, cfg.getRateLimitBackoffSeconds()));
+    return selected.flatMapSequential(m -> {
+      String id = m.id();
+      URI insightsUrl = UriComponentsBuilder.fromHttpUrl("https://graph.facebook.com/" + v + "/" + id + "/insights")
+              .queryParam("metric", "views,reach,saved,likes,comments,shares,total_interactions")
+              .queryParam("access_token", token)
+              .build(true).toUri();
+      return ig.insights(insightsUrl.toString(), cfg.getRateLimitRetries(), backoff)
+              .onErrorResume(e -> !isAuthenticationFailure(e), e -> {
+                log.warn("[IG] insights unavailable for media {}: {}", id, e.toString());
+                // Donnée inconnue : conserver null ou le compteur présent dans /media, jamais forcer 0.
+                return Mono.just(Map.of());
+              })
+              .map(ins -> toItem(m, ins));
+    }, Math.max(1, cfg.getInsightsConcurrency()));
+  }
+
+  /** Planification d'une page : toutes ses vidéos sont enregistrées, seules les dues et finançables sont gardées. */
+  private List<IgMedia> selectDue(List<IgMedia> page, AtomicInteger room) {
+    List<String> candidates = new ArrayList<>();
+    for (IgMedia m : page) {
+      if (!m.isVideo()) continue;
+      scheduler.register("INSTAGRAM", m.id(), m.publishedAt());
+      candidates.add(m.id());
     }
+    if (room.get() <= 0 || candidates.isEmpty()) return List.of();
+    var selection = scheduler.selectDue("INSTAGRAM", candidates, Instant.now());
+    // 1 appel insights par média dû
+    Set<String> due = new HashSet<>(quota.affordable("INSTAGRAM", selection, 1, 0));
+
+    List<IgMedia> selected = new ArrayList<>();
+    for (IgMedia m : page) {
+      if (!m.isVideo() || !due.contains(m.id())) continue;
+      if (room.getAndDecrement() <= 0) break;
+      selected.add(m);
+    }
+    return selected;
+  }
 
-    if (successfulUsers == 0 && lastUserError != null) {
-      throw new IllegalStateException("Instagram collection failed for every configured account", lastUserError);
+  private static SourceWithMetrics toItem(IgMedia m, Map<String, Long> ins) {
+    String type = m.type();
+
+    // Likes & comments & views (si dispo)
+    Long likes = m.likeCount();
+    Long comments = m.commentsCount();
+    Long views = m.videoViewCount();
+    Long shares = null;
+    Long reach = null;
+    if (ins != null && !ins.isEmpty()) {
+      views = ins.get("views");
+      likes = ins.get("likes");
+      comments = ins.get("comments");
+      shares = ins.get("shares");
+      reach = ins.get("reach");
     }
 
-    // Push (bloquant)
-    log.info("[IG] upsert {} sources, {} metrics", sources.size(), snapshots.size());
-    if (!sources.isEmpty()) sink.batchUpsertSources(sources);
-    if (!snapshots.isEmpty()) sink.batchUpsertMetrics(snapshots);
-    return snapshots.size();
+    SourceUpsertItem source = SourceUpsertItem.builder()
+            .platform("INSTAGRAM")
+            .platform_source_id(m.id())
+            .title(truncate(m.caption(), 140))
+            .description(m.caption())
+            .permalink_url(m.permalink())
+            .media_type(type)
+            .published_at(m.publishedAt().toString())
+            .locked(null)
+            .build();
+
+    MetricsUpsertItem snapshot = MetricsUpsertItem.builder()
+            .platform("INSTAGRAM")
+            .platform_format(type)
+            .platform_video_id(m.id())
+            .snapshot_at(Instant.now())
+            .views_native(views)
+            .likes(likes)
+            .comments(comments)
+            .shares(shares)
+            .reach(reach)
+            .build();
+
+    return new SourceWithMetrics(source, snapshot);
   }
 
   private static boolean isAuthenticationFailure(Throwable error) {
@@ -181,38 +226,9 @@ public class InstagramCollectorService {
     return false;
   }
 
-  private static String mapType(String mediaType, String product) {
-    // media_type: IMAGE|VIDEO|CAROUSEL_ALBUM; media_product_type: FEED|STORY|REELS|AD|...
-    if ("REELS".equalsIgnoreCase(product) || "REEL".equalsIgnoreCase(product)) return "REEL";
-    if ("VIDEO".equalsIgnoreCase(mediaType)) return "VIDEO";
-    return "POST";
-  }
-
   private static String truncate(String s, int n) {
     if (s == null) return null;
     if (s.length() <= n) return s;
     return s.substring(0, Math.max(0, n));
   }
-
-  private static String str(Object o) { return o == null ? null : String.valueOf(o); }
-
-  private static Long toLong(Object o) {
-    if (o == null) return null;
-    try { return Long.valueOf(String.valueOf(o)); } catch (Exception e) { return null; }
-  }
-
-  private static Instant parseTs(String iso) {
-    if (StringUtils.isBlank(iso)) return null;
-    try {
-      return Instant.parse(iso);
-    } catch (Exception e) {
-      // Fallback pour format Instagram: "yyyy-MM-dd'T'HH:mm:ssZ" (ex: 2025-10-01T11:46:23+0000)
-      try {
-        java.time.format.DateTimeFormatter f = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
-        return java.time.OffsetDateTime.parse(iso, f).toInstant();
-      } catch (Exception ignored) {
-        return null;
-      }
-    }
-  }
 }
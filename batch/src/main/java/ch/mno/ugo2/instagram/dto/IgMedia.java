@@ -0,0 +1,53 @@
+package ch.mno.ugo2.instagram.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Média Instagram tel que renvoyé par /{ig-user-id}/media (champs demandés par le collecteur).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record IgMedia(
+        String id,
+        String caption,
+        @JsonProperty("media_type") String mediaType,
+        @JsonProperty("media_product_type") String mediaProductType,
+        String permalink,
+        String timestamp,
+        @JsonProperty("like_count") Long likeCount,
+        @JsonProperty("comments_count") Long commentsCount,
+        @JsonProperty("video_view_count") Long videoViewCount
+) {
+    // Format Instagram: "yyyy-MM-dd'T'HH:mm:ssZ" (ex: 2025-10-01T11:46:23+0000)
+    private static final DateTimeFormatter IG_TS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+    /** Date de publication, null si absente ou illisible. */
+    public Instant publishedAt() {
+        if (timestamp == null || timestamp.isBlank()) return null;
+        try {
+            return Instant.parse(timestamp);
+        } catch (Exception e) {
+            try {
+                return OffsetDateTime.parse(timestamp, IG_TS).toInstant();
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+
+    /** REEL | VIDEO | POST (media_type: IMAGE|VIDEO|CAROUSEL_ALBUM ; media_product_type: FEED|STORY|REELS|AD|...). */
+    public String type() {
+        if ("REELS".equalsIgnoreCase(mediaProductType) || "REEL".equalsIgnoreCase(mediaProductType)) return "REEL";
+        if ("VIDEO".equalsIgnoreCase(mediaType)) return "VIDEO";
+        return "POST";
+    }
+
+    public boolean isVideo() {
+        String t = type();
+        return "VIDEO".equals(t) || "REEL".equals(t);
+    }
+}
@@ -0,0 +1,19 @@
+package ch.mno.ugo2.instagram.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * Page de /media : données + lien paging.next.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record IgMediaPage(List<IgMedia> data, Paging paging) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Paging(String next) {}
+
+    public String next() {
+        return paging == null ? null : paging.next();
+    }
+}
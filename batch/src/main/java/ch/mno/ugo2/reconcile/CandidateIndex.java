@@ -0,0 +1,190 @@
+package ch.mno.ugo2.reconcile;
+
+import ch.mno.ugo2.model.SourceVideo;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Index de blocage pour le Clusterer : ne propose que les paires plausibles au lieu des n² paires.
+ * Clés d'un élément : mots du titre normalisé (≥ 3 lettres), bandes MinHash-LSH des 3-grammes du titre
+ * et de la description (rattrape les variantes d'espacement/orthographe), titre vide.
+ * Un bloc plus grand que maxBlock (mot très courant, titre répété) n'apparie que les éléments publiés
+ * à moins de timeBonusHours l'un de l'autre : c'est ce qui garde le coût quasi linéaire.
+ * Index immuable une fois construit ; la déduplication passe par un Cursor, un par thread.
+ */
+public class CandidateIndex {
+  static final int HASHES = 16;
+  static final int ROWS = 2;
+  private static final long[] SEEDS = new long[HASHES];
+  static {
+    SplittableRandom r = new SplittableRandom(0x5eed_ca11_d1d5L);
+    for (int k = 0; k < HASHES; k++) SEEDS[k] = r.nextLong();
+  }
+  private static final long TOKEN = 1L << 60, TITLE_LSH = 2L << 60, DESC_LSH = 3L << 60, EMPTY_TITLE = 4L << 60;
+  private static final long NO_TIME = MatchFeatures.NO_TIME;
+
+  private final long windowSeconds;
+  private final int maxBlock;
+  /** Heure de publication (epoch s, UTC) ou NO_TIME. */
+  private final long[] time;
+  /** Blocs de chaque élément (indices dans blocks). */
+  private final int[][] keysOf;
+  /** Membres de chaque bloc ; triés par date quand le bloc dépasse maxBlock. */
+  private final int[][] blocks;
+  private final Cursor shared;
+
+  public CandidateIndex(List<SourceVideo> items, double timeBonusHours, int maxBlock) {
+    this(items.stream().map(MatchFeatures::of).toArray(MatchFeatures[]::new), timeBonusHours, maxBlock);
+  }
+
+  public CandidateIndex(MatchFeatures[] items, double timeBonusHours, int maxBlock) {
+    int n = items.length;
+    this.windowSeconds = (long) (timeBonusHours * 3600);
+    this.maxBlock = maxBlock;
+    this.time = new long[n];
+    this.keysOf = new int[n][];
+
+    Map<Long, Integer> ids = new HashMap<>();
+    List<int[]> members = new ArrayList<>();
+    int[] sizes = new int[16];
+    long[] keys = new long[64];
+    for (int i = 0; i < n; i++) {
+      time[i] = items[i].publishedEpoch();
+      int nk = keys(items[i], keys);
+      int[] mine = new int[nk];
+      int m = 0;
+      for (int k = 0; k < nk; k++) {
+        int b = ids.computeIfAbsent(keys[k], x -> ids.size());
+        if (b == members.size()) members.add(new int[4]);
+        if (b >= sizes.length) sizes = Arrays.copyOf(sizes, sizes.length * 2);
+        int[] mb = members.get(b);
+        if (sizes[b] > 0 && mb[sizes[b] - 1] == i) continue;     // même clé deux fois (mot répété)
+        if (sizes[b] == mb.length) members.set(b, mb = Arrays.copyOf(mb, mb.length * 2));
+        mb[sizes[b]++] = i;
+        mine[m++] = b;
+      }
+      keysOf[i] = Arrays.copyOf(mine, m);
+    }
+    this.blocks = new int[members.size()][];
+    for (int b = 0; b < blocks.length; b++) {
+      int[] mb = Arrays.copyOf(members.get(b), sizes[b]);
+      if (mb.length > maxBlock) mb = sortByTime(mb);
+      blocks[b] = mb;
+    }
+    this.shared = cursor();
+  }
+
+  /** Curseur de parcours (tampon de déduplication propre) ; non thread-safe, un par thread. */
+  public Cursor cursor() {
+    return new Cursor(new int[time.length]);
+  }
+
+  /** Candidats j > i de l'élément i, chacun une seule fois (curseur partagé : appelant unique). */
+  public void candidates(int i, IntConsumer out) {
+    shared.candidates(i, out);
+  }
+
+  /** Nombre de paires proposées (diagnostic). */
+  public long pairCount() {
+    long[] c = {0};
+    for (int i = 0; i < time.length; i++) candidates(i, j -> c[0]++);
+    return c[0];
+  }
+
+  public final class Cursor {
+    private final int[] stamp;
+    private int generation;
+
+    private Cursor(int[] stamp) {
+      this.stamp = stamp;
+    }
+
+    /** Candidats j > i de l'élément i, chacun une seule fois. */
+    public void candidates(int i, IntConsumer out) {
+      int g = ++generation;
+      for (int b : keysOf[i]) {
+        int[] mb = blocks[b];
+        if (mb.length <= maxBlock) {
+          for (int j : mb) emit(i, j, g, out);
+        } else if (time[i] != NO_TIME) {
+          int from = lowerBound(mb, time[i] - windowSeconds);
+          for (int p = from; p < mb.length && time[mb[p]] <= time[i] + windowSeconds; p++) emit(i, mb[p], g, out);
+        }
+      }
+    }
+
+    private void emit(int i, int j, int g, IntConsumer out) {
+      if (j <= i || stamp[j] == g) return;
+      stamp[j] = g;
+      out.accept(j);
+    }
+  }
+
+  private int[] sortByTime(int[] mb) {
+    return Arrays.stream(mb).boxed()
+        .filter(j -> time[j] != NO_TIME)
+        .sorted(Comparator.<Integer>comparingLong(j -> time[j]).thenComparingInt(j -> j))
+        .mapToInt(Integer::intValue).toArray();
+  }
+
+  private int lowerBound(int[] mb, long t) {
+    int lo = 0, hi = mb.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (time[mb[mid]] < t) lo = mid + 1; else hi = mid;
+    }
+    return lo;
+  }
+
+  /** Clés de blocage de f dans out ; renvoie leur nombre. */
+  static int keys(MatchFeatures f, long[] out) {
+    char[] title = f.title();
+    int n = 0;
+    if (title.length == 0) {
+      out[n++] = EMPTY_TITLE;
+    } else {
+      int h = 0, len = 0;
+      for (int p = 0; p <= title.length; p++) {
+        if (p == title.length || title[p] == ' ') {
+          if (len >= 3 && n < out.length - 2 * HASHES / ROWS) out[n++] = TOKEN | (h & 0xffff_ffffL);
+          h = 0;
+          len = 0;
+        } else {
+          h = 31 * h + title[p];
+          len++;
+        }
+      }
+      n = bands(title, TITLE_LSH, out, n);
+    }
+    if (f.description().length > 0) n = bands(f.description(), DESC_LSH, out, n);
+    return n;
+  }
+
+  /** MinHash des 3-grammes de s, HASHES/ROWS bandes de ROWS valeurs. */
+  private static int bands(char[] s, long tag, long[] out, int n) {
+    long[] min = new long[HASHES];
+    Arrays.fill(min, Long.MAX_VALUE);
+    int last = Math.max(0, s.length - 3);
+    for (int p = 0; p <= last; p++) {
+      long g = 0;
+      for (int q = p; q < Math.min(s.length, p + 3); q++) g = g * 131 + s[q];
+      for (int k = 0; k < HASHES; k++) {
+        long h = mix(g ^ SEEDS[k]);
+        if (h < min[k]) min[k] = h;
+      }
+    }
+    for (int b = 0; b < HASHES / ROWS; b++) {
+      long h = b;
+      for (int r = 0; r < ROWS; r++) h = mix(h * 31 + min[b * ROWS + r]);
+      out[n++] = tag | ((long) b << 52) | (h & 0x000f_ffff_ffff_ffffL);
+    }
+    return n;
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
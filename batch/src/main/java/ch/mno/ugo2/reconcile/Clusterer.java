@@ -1,40 +1,94 @@
 package ch.mno.ugo2.reconcile;
 
+import ch.mno.ugo2.config.AppProps;
 import ch.mno.ugo2.model.SourceVideo;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Clusterer {
+  private static final AppProps.Reconcile DEFAULTS = new AppProps.Reconcile();
+  /** Éléments scorés par tâche feuille (le vol de tâches équilibre les blocs inégaux). */
+  static final int LEAF = 256;
+
   private final double threshold;
-  public Clusterer(double threshold) { this.threshold = threshold; }
+  private final double timeBonusHours;
+  private final int maxBlock;
+  private final int parallelism;
+
+  public Clusterer(double threshold) { this(threshold, DEFAULTS.timeBonusHours, DEFAULTS.maxBlock, 1); }
+
+  public Clusterer(AppProps.Reconcile cfg) { this(cfg.threshold, cfg.timeBonusHours, cfg.maxBlock, cfg.parallelism); }
+
+  /** @param parallelism threads de scoring ; 1 = séquentiel, 0 = un par cœur */
+  public Clusterer(double threshold, double timeBonusHours, int maxBlock, int parallelism) {
+    this.threshold = threshold;
+    this.timeBonusHours = timeBonusHours;
+    this.maxBlock = maxBlock;
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
 
+  /**
+   * Composantes connexes du graphe "score >= threshold", en ne scorant que les paires proposées par
+   * le CandidateIndex (et pas celles déjà réunies), sur des MatchFeatures calculées une fois par élément.
+   * En parallèle, le scoring est réparti sur un ForkJoinPool et les arêtes fusionnées dans un union-find
+   * sans verrou ; les composantes ne dépendent pas de l'ordre des unions, le résultat est identique
+   * au mode séquentiel. Clusters dans l'ordre de leur premier élément, éléments dans l'ordre d'entrée.
+   */
   public List<List<SourceVideo>> cluster(List<SourceVideo> items, MatchingScorer scorer) {
     int n = items.size();
-    boolean[] visited = new boolean[n];
-    List<List<SourceVideo>> clusters = new ArrayList<>();
+    MatchFeatures[] features = items.stream().map(MatchFeatures::of).toArray(MatchFeatures[]::new);
+    CandidateIndex index = new CandidateIndex(features, timeBonusHours, maxBlock);
+    ConcurrentUnionFind uf = new ConcurrentUnionFind(n);
 
+    if (parallelism == 1 || n <= LEAF) {
+      score(index.cursor(), features, scorer, uf, 0, n);
+    } else {
+      ThreadLocal<CandidateIndex.Cursor> cursors = ThreadLocal.withInitial(index::cursor);
+      try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+        pool.invoke(new ScoreRange(0, n, (lo, hi) -> score(cursors.get(), features, scorer, uf, lo, hi)));
+      }
+    }
+
+    Map<Integer, List<SourceVideo>> byRoot = new LinkedHashMap<>();
     for (int i = 0; i < n; i++) {
-      if (visited[i]) continue;
-      List<Integer> compIdx = new ArrayList<>();
-      Deque<Integer> dq = new ArrayDeque<>();
-      dq.add(i);
-      visited[i] = true;
-      while (!dq.isEmpty()) {
-        int u = dq.poll();
-        compIdx.add(u);
-        for (int v = 0; v < n; v++) {
-          if (!visited[v] && u != v) {
-            double s = scorer.score(items.get(u), items.get(v));
-            if (s >= threshold) {
-              visited[v] = true;
-              dq.add(v);
-            }
-          }
-        }
+      byRoot.computeIfAbsent(uf.find(i), r -> new ArrayList<>()).add(items.get(i));
+    }
+    return new ArrayList<>(byRoot.values());
+  }
+
+  private void score(CandidateIndex.Cursor cursor, MatchFeatures[] f, MatchingScorer scorer, ConcurrentUnionFind uf, int lo, int hi) {
+    for (int i = lo; i < hi; i++) {
+      int u = i;
+      cursor.candidates(u, v -> {
+        if (!uf.sameSet(u, v) && scorer.score(f[u], f[v], threshold) >= threshold) uf.union(u, v);
+      });
+    }
+  }
+
+  /** Découpe [lo, hi) en moitiés jusqu'à LEAF éléments. */
+  private static final class ScoreRange extends RecursiveAction {
+    private final int lo, hi;
+    private final Leaf leaf;
+
+    interface Leaf {
+      void run(int lo, int hi);
+    }
+
+    ScoreRange(int lo, int hi, Leaf leaf) {
+      this.lo = lo;
+      this.hi = hi;
+      this.leaf = leaf;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= LEAF) {
+        leaf.run(lo, hi);
+        return;
       }
-      List<SourceVideo> cluster = new ArrayList<>(compIdx.size());
-      for (int idx : compIdx) cluster.add(items.get(idx));
-      clusters.add(cluster);
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new ScoreRange(lo, mid, leaf), new ScoreRange(mid, hi, leaf));
     }
-    return clusters;
   }
 }
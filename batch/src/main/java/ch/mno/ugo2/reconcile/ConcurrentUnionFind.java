@@ -0,0 +1,40 @@
+package ch.mno.ugo2.reconcile;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Union-find sans verrou (CAS sur le tableau des parents, compression par demi-chemin).
+ * Une racine n'est jamais rattachée qu'à une racine d'indice plus petit : la racine d'une composante
+ * est toujours son plus petit indice, quel que soit l'ordre (ou l'entrelacement) des unions.
+ */
+final class ConcurrentUnionFind {
+  private final AtomicIntegerArray parent;
+
+  ConcurrentUnionFind(int n) {
+    parent = new AtomicIntegerArray(n);
+    for (int i = 0; i < n; i++) parent.set(i, i);
+  }
+
+  int find(int x) {
+    while (true) {
+      int p = parent.get(x);
+      if (p == x) return x;
+      int gp = parent.get(p);
+      if (gp != p) parent.compareAndSet(x, p, gp);   // demi-chemin ; un échec ne fait que retarder la compression
+      x = gp;
+    }
+  }
+
+  boolean sameSet(int a, int b) {
+    return find(a) == find(b);
+  }
+
+  void union(int a, int b) {
+    while (true) {
+      int ra = find(a), rb = find(b);
+      if (ra == rb) return;
+      int lo = Math.min(ra, rb), hi = Math.max(ra, rb);
+      if (parent.compareAndSet(hi, hi, lo)) return;   // hi n'était plus racine : on recommence
+    }
+  }
+}
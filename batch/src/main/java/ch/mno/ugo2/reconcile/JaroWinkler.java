@@ -0,0 +1,71 @@
+package ch.mno.ugo2.reconcile;
+
+import java.util.Arrays;
+
+/**
+ * Jaro-Winkler sur char[] sans allocation par appel (tampons réutilisés, un par thread via MatchingScorer),
+ * même résultat que commons-text JaroWinklerSimilarity. Abandon anticipé dès que le score ne peut plus
+ * atteindre {@code need} : la valeur renvoyée est alors un majorant strictement inférieur à need.
+ */
+final class JaroWinkler {
+  private int[] matchIdx = new int[64];
+  private boolean[] flags = new boolean[64];
+
+  double apply(char[] left, char[] right) {
+    return apply(left, right, Double.NEGATIVE_INFINITY);
+  }
+
+  double apply(char[] left, char[] right, double need) {
+    if (Arrays.equals(left, right)) return 1.0;
+    char[] max = left.length > right.length ? left : right;
+    char[] min = max == left ? right : left;
+    if (min.length == 0) return 0.0;
+
+    // majorant indépendant du contenu : toutes les lettres du plus court appariées, préfixe maximal
+    double ub = bound(min.length, left.length, right.length);
+    if (ub < need) return ub;
+
+    if (matchIdx.length < min.length) matchIdx = new int[Math.max(min.length, matchIdx.length * 2)];
+    if (flags.length < max.length) flags = new boolean[Math.max(max.length, flags.length * 2)];
+    Arrays.fill(flags, 0, max.length, false);
+
+    int range = Math.max(max.length / 2 - 1, 0);
+    int matches = 0;
+    for (int mi = 0; mi < min.length; mi++) {
+      matchIdx[mi] = -1;
+      char c = min[mi];
+      for (int xi = Math.max(mi - range, 0), end = Math.min(mi + range + 1, max.length); xi < end; xi++) {
+        if (!flags[xi] && c == max[xi]) {
+          matchIdx[mi] = xi;
+          flags[xi] = true;
+          matches++;
+          break;
+        }
+      }
+      ub = bound(matches + min.length - mi - 1, left.length, right.length);
+      if (ub < need) return ub;
+    }
+    if (matches == 0) return 0.0;
+
+    int transpositions = 0;
+    for (int mi = 0, xi = 0; mi < min.length; mi++) {
+      if (matchIdx[mi] == -1) continue;
+      while (!flags[xi]) xi++;
+      if (min[mi] != max[xi]) transpositions++;
+      xi++;
+    }
+    int prefix = 0;
+    for (int i = 0, n = Math.min(4, min.length); i < n && left[i] == right[i]; i++) prefix++;
+
+    double m = matches;
+    double j = (m / left.length + m / right.length + (m - transpositions / 2.0) / m) / 3;
+    return j < 0.7 ? j : j + 0.1 * prefix * (1.0 - j);
+  }
+
+  /** Score maximal avec au plus m correspondances, sans transposition et préfixe de 4. */
+  private static double bound(int m, int la, int lb) {
+    if (m <= 0) return 0.0;
+    double j = ((double) m / la + (double) m / lb + 1.0) / 3;
+    return j < 0.7 ? j : j + 0.4 * (1.0 - j);
+  }
+}
@@ -0,0 +1,24 @@
+package ch.mno.ugo2.reconcile;
+
+import ch.mno.ugo2.model.SourceVideo;
+
+import java.time.ZoneOffset;
+
+/**
+ * Caractéristiques d'une source précalculées une fois pour toutes les paires où elle apparaît :
+ * titre et description normalisés (TextUtil.norm) et date de publication (epoch s, UTC).
+ */
+public record MatchFeatures(char[] title, char[] description, long publishedEpoch) {
+  public static final long NO_TIME = Long.MIN_VALUE;
+
+  public static MatchFeatures of(SourceVideo v) {
+    return new MatchFeatures(
+        TextUtil.norm(v.getTitle()).toCharArray(),
+        TextUtil.norm(v.getDescription()).toCharArray(),
+        v.getPublishedAt() == null ? NO_TIME : v.getPublishedAt().toEpochSecond(ZoneOffset.UTC));
+  }
+
+  public boolean hasTime() {
+    return publishedEpoch != NO_TIME;
+  }
+}
@@ -2,37 +2,48 @@ package ch.mno.ugo2.reconcile;
 
 import ch.mno.ugo2.config.AppProps;
 import ch.mno.ugo2.model.SourceVideo;
-import org.apache.commons.text.similarity.JaroWinklerSimilarity;
-
-import java.time.Duration;
 
 public class MatchingScorer {
   private final AppProps.Reconcile cfg;
-  private final JaroWinklerSimilarity jw = new JaroWinklerSimilarity();
+  private final ThreadLocal<JaroWinkler> jw = ThreadLocal.withInitial(JaroWinkler::new);
 
   public MatchingScorer(AppProps.Reconcile cfg) {
     this.cfg = cfg;
   }
 
   public double score(SourceVideo a, SourceVideo b) {
-    String at = TextUtil.norm(a.getTitle());
-    String bt = TextUtil.norm(b.getTitle());
-    double titleSim = jw.apply(at, bt);
-
-    String ad = TextUtil.norm(a.getDescription());
-    String bd = TextUtil.norm(b.getDescription());
-    double descSim = ad.isEmpty() || bd.isEmpty() ? 0.0 : jw.apply(ad, bd);
-
-    double base = cfg.titleWeight * titleSim + cfg.descWeight * descSim;
-
-    if (a.getPublishedAt() != null && b.getPublishedAt() != null) {
-      long hours = Math.abs(Duration.between(a.getPublishedAt(), b.getPublishedAt()).toHours());
-      if (hours <= cfg.timeBonusHours) {
-        double bonus = cfg.timeWeight * (1.0 - ((double)hours / cfg.timeBonusHours));
-        if (bonus > 0) base += bonus;
-      }
-    }
+    return score(MatchFeatures.of(a), MatchFeatures.of(b), Double.NEGATIVE_INFINITY);
+  }
 
+  /**
+   * Score de la paire ; si le score ne peut plus atteindre {@code threshold}, renvoie au plus tôt
+   * un majorant (< threshold) au lieu du score exact. Sans allocation.
+   */
+  public double score(MatchFeatures a, MatchFeatures b, double threshold) {
+    double bonus = timeBonus(a, b);
+    boolean withDesc = a.description().length > 0 && b.description().length > 0;
+    double descMax = withDesc ? cfg.descWeight : 0.0;
+    JaroWinkler j = jw.get();
+
+    double titleSim = j.apply(a.title(), b.title(), need(threshold - bonus - descMax, cfg.titleWeight));
+    double base = cfg.titleWeight * titleSim + bonus;
+    if (withDesc) {
+      double descSim = j.apply(a.description(), b.description(), need(threshold - base, cfg.descWeight));
+      base += cfg.descWeight * descSim;
+    }
     return Math.max(0.0, Math.min(1.0, base));
   }
+
+  private double timeBonus(MatchFeatures a, MatchFeatures b) {
+    if (!a.hasTime() || !b.hasTime()) return 0.0;
+    long hours = Math.abs(a.publishedEpoch() - b.publishedEpoch()) / 3600;
+    if (hours > cfg.timeBonusHours) return 0.0;
+    double bonus = cfg.timeWeight * (1.0 - ((double) hours / cfg.timeBonusHours));
+    return bonus > 0 ? bonus : 0.0;
+  }
+
+  /** Similarité minimale utile pour une composante de poids w ; -inf si le poids est nul ou négatif. */
+  private static double need(double remaining, double w) {
+    return w > 0 ? remaining / w : Double.NEGATIVE_INFINITY;
+  }
 }
@@ -0,0 +1,214 @@
+package ch.mno.ugo2.reconcile;
+
+import ch.mno.ugo2.util.StateStore;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Index persistant des sources déjà réconciliées (section "reconcile" du StateStore, clé "PLATFORM:id") :
+ * caractéristiques normalisées (MatchFeatures) et vidéo de rattachement, plus les blocs de candidats
+ * (mêmes clés que CandidateIndex) tenus en mémoire et mis à jour en place.
+ * Une source nouvelle n'est scorée que contre les entrées qui partagent un bloc avec elle ; chaque bloc est trié
+ * par date, un bloc plus grand que maxBlock n'est lu que sur ±timeBonusHours (recherche dichotomique), et ajout
+ * comme retrait y sont logarithmiques : le coût d'un run dépend du nombre de sources nouvelles ou modifiées,
+ * pas de la taille de l'index.
+ * Seuls les {@value #DESC_CHARS} premiers caractères de la description normalisée sont gardés (état compact) ;
+ * les deux côtés d'une comparaison sont tronqués de la même façon.
+ * Non thread-safe.
+ */
+public class ReconcileIndex {
+  static final String SECTION = "reconcile";
+  static final String META = "reconcile.meta";
+  /** Caractères de description normalisée conservés par entrée. */
+  public static final int DESC_CHARS = 256;
+
+  /** Entrée indexée ; videoId null tant que la vidéo créée côté web n'est pas connue (rempli au run suivant). */
+  public static final class Entry {
+    final String key;
+    final String platform;
+    final String platformId;
+    Long sourceId;
+    Long videoId;
+    MatchFeatures features;
+    long[] blockKeys;
+
+    private Entry(String key, String platform, String platformId) {
+      this.key = key;
+      this.platform = platform;
+      this.platformId = platformId;
+    }
+
+    public String platform() { return platform; }
+    public String platformId() { return platformId; }
+    public Long sourceId() { return sourceId; }
+    public Long videoId() { return videoId; }
+    public MatchFeatures features() { return features; }
+  }
+
+  /** Ordre des blocs : date de publication (sans date en tête, jamais dans une fenêtre), puis clé. */
+  private static final Comparator<Entry> BY_TIME = Comparator
+      .comparingLong((Entry e) -> e.features.publishedEpoch())
+      .thenComparing(e -> e.key);
+
+  private final StateStore store;
+  private final long windowSeconds;
+  private final int maxBlock;
+  private final Map<String, Entry> byKey = new HashMap<>();
+  private final Map<Long, NavigableSet<Entry>> blocks = new HashMap<>();
+
+  public ReconcileIndex(StateStore store, double timeBonusHours, int maxBlock) {
+    this.store = store;
+    this.windowSeconds = (long) (timeBonusHours * 3600);
+    this.maxBlock = maxBlock;
+    for (Map.Entry<String, Object> e : store.entries(SECTION).entrySet()) {
+      if (!(e.getValue() instanceof Map<?, ?> m)) continue;
+      Entry entry = entry(e.getKey());
+      entry.sourceId = asLong(m.get("id"));
+      entry.videoId = asLong(m.get("v"));
+      Long p = asLong(m.get("p"));
+      entry.features = compact(new MatchFeatures(str(m.get("t")).toCharArray(), str(m.get("d")).toCharArray(),
+          p == null ? MatchFeatures.NO_TIME : p));
+      link(entry);
+    }
+  }
+
+  public static String key(String platform, String platformId) {
+    return platform + ":" + platformId;
+  }
+
+  /** Caractéristiques telles que l'index les garde (description tronquée à {@value #DESC_CHARS} caractères). */
+  public static MatchFeatures compact(MatchFeatures f) {
+    if (f.description().length <= DESC_CHARS) return f;
+    return new MatchFeatures(f.title(), Arrays.copyOf(f.description(), DESC_CHARS), f.publishedEpoch());
+  }
+
+  public int size() {
+    return byKey.size();
+  }
+
+  public Entry get(String key) {
+    return byKey.get(key);
+  }
+
+  /** Clés de toutes les entrées (copie). */
+  public Set<String> keys() {
+    return new HashSet<>(byKey.keySet());
+  }
+
+  /** Horodatage (updated_at côté web) de la dernière source vue ; null avant le premier run. */
+  public String watermark() {
+    Object w = store.get(META, "watermark");
+    return w == null ? null : String.valueOf(w);
+  }
+
+  public void watermark(String updatedAt) {
+    store.put(META, "watermark", updatedAt);
+  }
+
+  /** Instant (epoch ms) du dernier balayage complet ; 0 s'il n'y en a jamais eu. */
+  public long sweptAt() {
+    Long t = asLong(store.get(META, "sweptAt"));
+    return t == null ? 0L : t;
+  }
+
+  public void sweptAt(long epochMillis) {
+    store.put(META, "sweptAt", epochMillis);
+  }
+
+  /** Ajoute ou remplace une entrée (caractéristiques modifiées : blocs recalculés). */
+  public Entry upsert(String platform, String platformId, Long sourceId, Long videoId, MatchFeatures f) {
+    String key = key(platform, platformId);
+    Entry e = byKey.get(key);
+    if (e == null) {
+      e = entry(key);
+    } else {
+      unlink(e);
+    }
+    e.sourceId = sourceId;
+    e.videoId = videoId;
+    e.features = compact(f);
+    link(e);
+    persist(e);
+    return e;
+  }
+
+  /** Retire une entrée (source inactive ou supprimée, ou envoi des liens échoué : reprise comme nouvelle au run suivant). */
+  public void remove(Entry e) {
+    if (byKey.remove(e.key) != e) return;
+    unlink(e);
+    store.remove(SECTION, e.key);
+  }
+
+  /** Rattachement mis à jour en place (caractéristiques inchangées). */
+  public void setVideo(Entry e, Long videoId) {
+    if (Objects.equals(e.videoId, videoId)) return;
+    e.videoId = videoId;
+    persist(e);
+  }
+
+  /** Entrées partageant un bloc avec self, chacune une fois ; blocs trop grands limités à ±timeBonusHours. */
+  public void candidates(Entry self, Consumer<Entry> out) {
+    Set<Entry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    long t = self.features.publishedEpoch();
+    for (long k : self.blockKeys) {
+      NavigableSet<Entry> members = blocks.get(k);
+      if (members == null) continue;
+      Collection<Entry> scan = members;
+      if (members.size() > maxBlock) {
+        if (!self.features.hasTime()) continue;
+        scan = members.subSet(probe(t - windowSeconds, ""), true, probe(t + windowSeconds, "\uffff"), true);
+      }
+      for (Entry e : scan) {
+        if (e != self && seen.add(e)) out.accept(e);
+      }
+    }
+  }
+
+  private static Entry probe(long epoch, String key) {
+    Entry p = new Entry(key, "", "");
+    p.features = new MatchFeatures(new char[0], new char[0], epoch);
+    return p;
+  }
+
+  private Entry entry(String key) {
+    int sep = key.indexOf(':');
+    Entry e = new Entry(key, key.substring(0, Math.max(0, sep)), key.substring(sep + 1));
+    byKey.put(key, e);
+    return e;
+  }
+
+  private void link(Entry e) {
+    long[] keys = new long[64];
+    int n = CandidateIndex.keys(e.features, keys);
+    e.blockKeys = Arrays.stream(keys, 0, n).distinct().toArray();
+    for (long k : e.blockKeys) blocks.computeIfAbsent(k, x -> new TreeSet<>(BY_TIME)).add(e);
+  }
+
+  private void unlink(Entry e) {
+    for (long k : e.blockKeys) {
+      NavigableSet<Entry> members = blocks.get(k);
+      if (members == null) continue;
+      members.remove(e);
+      if (members.isEmpty()) blocks.remove(k);
+    }
+  }
+
+  private void persist(Entry e) {
+    Map<String, Object> m = new LinkedHashMap<>();
+    m.put("id", e.sourceId);
+    m.put("v", e.videoId);
+    m.put("t", new String(e.features.title()));
+    m.put("d", new String(e.features.description()));
+    m.put("p", e.features.hasTime() ? e.features.publishedEpoch() : null);
+    store.put(SECTION, e.key, m);
+  }
+
+  private static Long asLong(Object o) {
+    return o instanceof Number n ? n.longValue() : null;
+  }
+
+  private static String str(Object o) {
+    return o == null ? "" : String.valueOf(o);
+  }
+}
@@ -2,11 +2,27 @@ package ch.mno.ugo2.reconcile;
 
 public final class TextUtil {
   private TextUtil() {}
+
+  /**
+   * Minuscules, diacritiques combinants retirés, tout ce qui n'est pas [a-z0-9] réduit à un espace simple, bornes ôtées.
+   * Une seule passe (équivalent des trois replaceAll d'origine, sans regex).
+   */
   public static String norm(String s) {
     if (s == null) return "";
     String t = s.toLowerCase();
-    t = t.replaceAll("[\u0300-\u036f]", "");
-    t = t.replaceAll("[^a-z0-9]+", " ").trim().replaceAll("\s+", " ");
-    return t;
+    StringBuilder out = new StringBuilder(t.length());
+    boolean gap = false;
+    for (int i = 0; i < t.length(); i++) {
+      char c = t.charAt(i);
+      if (c >= '\u0300' && c <= '\u036f') continue;
+      if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+        if (gap && out.length() > 0) out.append(' ');
+        out.append(c);
+        gap = false;
+      } else {
+        gap = true;
+      }
+    }
+    return out.toString();
   }
 }
@@ -0,0 +1,35 @@
+package ch.mno.ugo2.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Exécute une tâche bloquante par compte (chaîne, page, utilisateur) avec une concurrence bornée.
+ * Chaque échec reste isolé dans son {@link Outcome} ; l'ordre des résultats suit l'ordre des comptes.
+ */
+public final class AccountFanOut {
+    private AccountFanOut() {}
+
+    public record Outcome<T>(String account, T value, Exception error) {
+        public boolean ok() { return error == null; }
+    }
+
+    public static <T> List<Outcome<T>> run(List<String> accounts, int concurrency, Function<String, T> task) {
+        if (accounts == null || accounts.isEmpty()) return List.of();
+        return stream(accounts, concurrency, task).collectList().block();
+    }
+
+    /** Variante non bloquante : chaque résultat est émis dès que lui et ses prédécesseurs sont terminés. */
+    public static <T> Flux<Outcome<T>> stream(List<String> accounts, int concurrency, Function<String, T> task) {
+        if (accounts == null || accounts.isEmpty()) return Flux.empty();
+        return Flux.fromIterable(accounts)
+                .flatMapSequential(account -> Mono.fromCallable(() -> new Outcome<>(account, task.apply(account), null))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .onErrorResume(Exception.class, e -> Mono.just(new Outcome<>(account, null, e))),
+                        Math.max(1, concurrency));
+    }
+}
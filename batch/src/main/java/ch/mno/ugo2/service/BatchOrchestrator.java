@@ -6,6 +6,8 @@ import lombok.extern.java.Log;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.UUID;
 
 @Log
@@ -16,6 +18,7 @@ public class BatchOrchestrator {
     private final AppProps cfg;
     private final DiscoveryService discoveryService;
     private final WebApiSinkService webApiSinkService;
+    private final ReconciliationService reconciliationService;
 
     /**
      * Une exécution collecte les plateformes, réconcilie, puis rafraîchit les vues
@@ -27,17 +30,17 @@ public class BatchOrchestrator {
         long startedNanos = System.nanoTime();
         reportBatch(runId, "RUNNING", startedAt, null, null, null, null);
 
+        drainBacklog();
         int pushedSnapshots = 0;
         try {
             pushedSnapshots = discoveryService.discover();
             int finalPushedSnapshots = pushedSnapshots;
             log.info(() -> String.format(
-                    "[batch] discovery done, pushedSnapshots=%d — launching API reconciliation…",
-                    finalPushedSnapshots
+                    "[batch] discovery done, pushedSnapshots=%d — launching %s reconciliation…",
+                    finalPushedSnapshots, reconciliationService.isLocal() ? "local" : "API"
             ));
 
-            int hoursWindow = cfg.getBatch().hoursWindow;
-            webApiSinkService.runReconcileAll(hoursWindow, false);
+            reconcile();
             webApiSinkService.refreshMaterializedViews();
 
             int durationMs = elapsedMs(startedNanos);
@@ -54,6 +57,30 @@ public class BatchOrchestrator {
         }
     }
 
+    /** Mode local : fenêtre glissante (batch.rollingDays) réconciliée dans le JVM ; sinon /reconcile:run sur tout. */
+    private void reconcile() {
+        if (!reconciliationService.isLocal()) {
+            webApiSinkService.runReconcileAll(cfg.getBatch().hoursWindow, false);
+            return;
+        }
+        LocalDateTime to = LocalDateTime.now(ZoneOffset.UTC);
+        var r = reconciliationService.reconcile(to.minusDays(cfg.getBatch().rollingDays), to, false);
+        log.info(() -> String.format("[batch] reconcile: clusters=%d created=%d linkedSources=%d skippedLocked=%d",
+                r.clusters(), r.created(), r.linkedSources(), r.skippedLocked()));
+    }
+
+    /** Reliquat d'un run précédent (API indisponible) expédié avant de collecter à nouveau. */
+    private void drainBacklog() {
+        try {
+            var d = webApiSinkService.drainBacklog(0);
+            if (d != null && d.shipped() + d.dead() > 0) {
+                log.info(() -> String.format("[batch] outbox backlog: shipped=%d dead=%d pending=%d", d.shipped(), d.dead(), d.pending()));
+            }
+        } catch (Exception e) {
+            log.warning("[batch] outbox backlog not drained: " + e);
+        }
+    }
+
     private void reportBatch(String runId, String status, Instant startedAt, Instant finishedAt,
                              Integer durationMs, Integer items, String message) {
         try {
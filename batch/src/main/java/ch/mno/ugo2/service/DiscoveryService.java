@@ -1,5 +1,8 @@
 package ch.mno.ugo2.service;
 
+import ch.mno.ugo2.common.HttpResponseCaches;
+import ch.mno.ugo2.common.HttpTransport;
+import ch.mno.ugo2.config.DiscoveryProps;
 import ch.mno.ugo2.config.FacebookProps;
 import ch.mno.ugo2.config.InstagramProps;
 import ch.mno.ugo2.config.YouTubeProps;
@@ -9,7 +12,11 @@ import ch.mno.ugo2.youtube.YouTubeCollectorService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.function.IntSupplier;
 
@@ -25,12 +32,45 @@ public class DiscoveryService {
     private final FacebookProps fbProps;
     private final InstagramProps igProps;
     private final WebApiSinkService sink;
+    private final DiscoveryProps cfg;
+    private final HttpResponseCaches httpCaches;
+    private final HttpTransport httpTransport;
+    private final QuotaManager quota;
+
+    private record PlatformTask(String platform, String tokenExpiresAt, IntSupplier collector) {}
 
     public int discover() {
-        int pushed = 0;
-        pushed += discoverPlatform("YOUTUBE", ytProps.getTokenExpiresAt(), yt::collect);
-        pushed += discoverPlatform("FACEBOOK", fbProps.getTokenExpiresAt(), fb::collect);
-        pushed += discoverPlatform("INSTAGRAM", igProps.getTokenExpiresAt(), ig::collect);
+        try {
+            return discoverAll();
+        } finally {
+            httpCaches.logStats();
+            httpTransport.logStats();
+            quota.flush();
+        }
+    }
+
+    private int discoverAll() {
+        List<PlatformTask> tasks = List.of(
+                new PlatformTask("YOUTUBE", ytProps.getTokenExpiresAt(), yt::collect),
+                new PlatformTask("FACEBOOK", fbProps.getTokenExpiresAt(), fb::collect),
+                new PlatformTask("INSTAGRAM", igProps.getTokenExpiresAt(), ig::collect)
+        );
+        if (!cfg.isConcurrent()) {
+            int pushed = 0;
+            for (PlatformTask t : tasks) pushed += discoverPlatform(t.platform(), t.tokenExpiresAt(), t.collector());
+            return pushed;
+        }
+
+        // Plateformes en parallèle : chaque discoverPlatform isole ses erreurs et rapporte sa propre santé
+        long started = System.nanoTime();
+        int pushed = Flux.fromIterable(tasks)
+                .flatMap(t -> Mono.fromCallable(() -> discoverPlatform(t.platform(), t.tokenExpiresAt(), t.collector()))
+                                .subscribeOn(Schedulers.boundedElastic()),
+                        Math.max(1, cfg.getPlatformConcurrency()))
+                .reduce(0, Integer::sum)
+                .blockOptional()
+                .orElse(0);
+        log.info("[discovery] concurrent run pushed snapshots={} wallMs={}", pushed, elapsedMs(started));
         return pushed;
     }
 
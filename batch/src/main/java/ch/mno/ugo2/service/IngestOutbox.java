@@ -0,0 +1,443 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.api.Jsons;
+import ch.mno.ugo2.api.WebApiClient;
+import ch.mno.ugo2.api.WebApiException;
+import ch.mno.ugo2.dto.MetricsUpsertItem;
+import ch.mno.ugo2.util.AppendLog;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Outbox disque des envois vers l'API web : les collecteurs y déposent leurs chunks, un drain les expédie.
+ * - segments {@link AppendLog} {@code outbox-NNNNNN.log} : enregistrements "enq" (chunk JSON + clé d'idempotence)
+ *   et "ack" (chunk accepté en 2xx) ; rotation au-delà de {@code segmentBytes} ;
+ * - au démarrage, les segments sont rejoués : tout "enq" sans "ack" est en attente ;
+ * - les segments de tête entièrement acquittés sont supprimés ;
+ * - drain FIFO groupé par endpoint dans l'ordre d'apparition (sources avant métriques) ;
+ *   un 413 redécoupe le chunk en deux, un autre refus définitif (4xx) le met de côté en {@code dead-<id>.json} ;
+ * - les chunks de {@link WebApiClient#METRICS_STREAM_PATH} (spool du flux NDJSON) partent ensemble, relus du disque,
+ *   en une requête par lot d'au plus {@link WebApiClient#STREAM_MAX_LINES} lignes.
+ * Une panne de l'API ne perd donc plus la collecte : la clé d'origine est rejouée au run suivant ou via batch:drain.
+ * Seules les métadonnées des chunks en attente restent en mémoire ; les corps sont relus du segment à l'envoi.
+ * Un {@link AckListener} est prévenu de chaque chunk acquitté (pas des chunks mis de côté).
+ */
+@Slf4j
+public class IngestOutbox implements AutoCloseable {
+
+    private static final ObjectMapper M = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final String ENQ = "enq";
+    private static final String ACK = "ack";
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+    /** Segment portant l'enregistrement "enq" de chaque entrée en attente. */
+    private final Map<Long, Segment> owners = new HashMap<>();
+    /** Entrées en cours d'envoi (drains concurrents entre collecteurs). */
+    private final Set<Long> claimed = new HashSet<>();
+    private long nextId = 1;
+
+    /** Chunk en attente ; le corps (JSON exact envoyé, enveloppe comprise) est à {@code offset} dans son segment. */
+    public record Entry(long id, String path, String key, int items, Instant at, long offset, int length) {}
+
+    private record Header(String op, long id, String path, String key, Integer items, String at) {}
+
+    private static final class Segment {
+        final int index;
+        final AppendLog log;
+        int live;
+
+        Segment(int index, AppendLog log) {
+            this.index = index;
+            this.log = log;
+        }
+    }
+
+    /** Bilan d'un drain. */
+    public record Drained(int shipped, int dead, int pending) {}
+
+    /** Chunk acquitté par l'API (jamais appelé pour un chunk mis de côté) : corps envoyé et éléments retenus par position. */
+    public interface AckListener {
+        void acked(Entry e, byte[] body, IntPredicate accepted);
+    }
+
+    private volatile AckListener ackListener;
+
+    public IngestOutbox(Path dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = Math.max(1024, segmentBytes);
+        try {
+            Files.createDirectories(dir);
+            List<Path> files;
+            try (Stream<Path> s = Files.list(dir)) {
+                files = s.filter(p -> p.getFileName().toString().matches("outbox-\\d+\\.log")).sorted().toList();
+            }
+            for (Path f : files) {
+                Segment seg = new Segment(index(f), new AppendLog(f));
+                seg.log.openWithOffsets((buf, offset) -> replay(seg, buf, offset));
+                segments.addLast(seg);
+            }
+            if (segments.isEmpty()) roll();
+            gc();
+            if (!pending.isEmpty()) log.info("[outbox] {} pending chunks ({} items) in {}", pending.size(), pendingItems(), dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Dépose les éléments en chunks de {@code chunkSize}, chacun avec sa clé d'idempotence, puis fsync.
+     *
+     * @param wrapperKey enveloppe {"wrapperKey":[slice]} (null = tableau nu)
+     */
+    public synchronized List<Entry> enqueue(String path, String wrapperKey, List<?> items, int chunkSize) {
+        List<Entry> out = new ArrayList<>();
+        if (items == null || items.isEmpty()) return out;
+        int size = Math.max(1, chunkSize);
+        for (int from = 0; from < items.size(); from += size) {
+            List<?> slice = items.subList(from, Math.min(items.size(), from + size));
+            Object payload = wrapperKey == null ? slice : Map.of(wrapperKey, slice);
+            out.add(append(path, Jsons.toBytes(payload), slice.size()));
+        }
+        force();
+        return out;
+    }
+
+    public void setAckListener(AckListener listener) {
+        this.ackListener = listener;
+    }
+
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    public synchronized long pendingItems() {
+        return pending.values().stream().mapToLong(Entry::items).sum();
+    }
+
+    /**
+     * Expédie les chunks en attente : endpoint par endpoint (ordre d'apparition), au plus {@code window} en vol.
+     * Le premier échec transitoire arrête le drain ; les chunks déjà acquittés le restent.
+     */
+    public Mono<Drained> drain(WebApiClient client, int window) {
+        return drain(client, window, path -> true);
+    }
+
+    /** Comme {@link #drain(WebApiClient, int)}, limité aux endpoints acceptés par {@code paths}. */
+    public Mono<Drained> drain(WebApiClient client, int window, Predicate<String> paths) {
+        return Mono.defer(() -> {
+            Map<String, List<Entry>> byPath = claimAll(paths);
+            if (byPath.isEmpty()) return Mono.just(new Drained(0, 0, pending()));
+            AtomicInteger shipped = new AtomicInteger();
+            AtomicInteger dead = new AtomicInteger();
+            long started = System.nanoTime();
+            return Flux.fromIterable(byPath.values())
+                    .concatMap(group -> WebApiClient.METRICS_STREAM_PATH.equals(group.getFirst().path())
+                            ? shipStream(client, group, shipped, dead)
+                            : Flux.fromIterable(group)
+                            .flatMap(e -> ship(client, e, shipped, dead), Math.max(1, window))
+                            .then())
+                    .then(Mono.fromSupplier(() -> new Drained(shipped.get(), dead.get(), pending())))
+                    .doOnSuccess(d -> log.info("[outbox] drained shipped={} dead={} pending={} in {}ms",
+                            d.shipped(), d.dead(), d.pending(), (System.nanoTime() - started) / 1_000_000L))
+                    .doFinally(s -> {
+                        unclaim(byPath);
+                        force();
+                        client.flushBatching();
+                    });
+        });
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment s : segments) s.log.close();
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private Mono<Void> ship(WebApiClient client, Entry e, AtomicInteger shipped, AtomicInteger dead) {
+        return Mono.fromCallable(() -> body(e))
+                .flatMap(body -> client.sendPrepared(e.path(), body, e.items(), e.key())
+                        .defaultIfEmpty("")
+                        .doOnNext(resp -> {
+                            ack(e);
+                            shipped.incrementAndGet();
+                            notifyAcked(e, body, accepted(e.path(), resp));
+                        }))
+                .onErrorResume(err -> err instanceof WebApiException w && w.isPermanent(), err -> {
+                    WebApiException w = (WebApiException) err;
+                    if (w.getStatus() == 413 && e.items() > 1 && split(e)) {
+                        log.info("[outbox] chunk {} ({} items) too large, split in two for the next drain", e.id(), e.items());
+                    } else {
+                        bury(e, w);
+                        dead.incrementAndGet();
+                    }
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Spool du flux NDJSON : lots d'au plus {@link WebApiClient#STREAM_MAX_LINES} lignes, une requête par lot, ouverte
+     * seulement maintenant et relisant les chunks du disque (rejouable). Le serveur valide un lot entier ou rien :
+     * ses chunks sont acquittés ensemble ; les lignes en erreur ne sont pas retenues, aucune si la liste des erreurs
+     * est tronquée. Un refus définitif met tout le lot de côté.
+     */
+    private Mono<Void> shipStream(WebApiClient client, List<Entry> group, AtomicInteger shipped, AtomicInteger dead) {
+        List<List<Entry>> batches = new ArrayList<>();
+        List<Entry> batch = new ArrayList<>();
+        long lines = 0;
+        for (Entry e : group) {
+            if (!batch.isEmpty() && lines + e.items() > WebApiClient.STREAM_MAX_LINES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                lines = 0;
+            }
+            batch.add(e);
+            lines += e.items();
+        }
+        batches.add(batch);
+        return Flux.fromIterable(batches)
+                .concatMap(b -> {
+                    Flux<MetricsUpsertItem> spooled = Flux.fromIterable(b)
+                            .concatMap(e -> Mono.fromCallable(() -> body(e)))
+                            .concatMapIterable(IngestOutbox::snapshots);
+                    return client.streamMetrics(spooled)
+                            .doOnNext(r -> ackStream(b, r, shipped))
+                            .onErrorResume(err -> err instanceof WebApiException w && w.isPermanent(), err -> {
+                                b.forEach(e -> bury(e, (WebApiException) err));
+                                dead.addAndGet(b.size());
+                                return Mono.empty();
+                            });
+                })
+                .then();
+    }
+
+    private void ackStream(List<Entry> batch, WebApiClient.StreamResp r, AtomicInteger shipped) {
+        BitSet errors = new BitSet();
+        r.errors.forEach(err -> errors.set((int) err.line));
+        int first = 1;                                    // lignes numérotées à partir de 1 dans la requête
+        for (Entry e : batch) {
+            int base = first;
+            first += e.items();
+            byte[] body;
+            try {
+                body = body(e);
+            } catch (IOException ex) {
+                continue;
+            }
+            ack(e);
+            shipped.incrementAndGet();
+            notifyAcked(e, body, r.errors_truncated ? i -> false : i -> !errors.get(base + i));
+        }
+    }
+
+    /** Snapshots d'un chunk de métriques ({"snapshots":[...]}, batchUpsert ou flux). */
+    public static List<MetricsUpsertItem> snapshots(byte[] body) {
+        List<MetricsUpsertItem> l = Jsons.read(body, SnapshotsChunk.class).snapshots();
+        return l == null ? List.of() : l;
+    }
+
+    private record SnapshotsChunk(List<MetricsUpsertItem> snapshots) {}
+
+    /** Éléments retenus : statut par élément pour les métriques ("stored"/"skipped"), tout le chunk sinon. */
+    private static IntPredicate accepted(String path, String response) {
+        if (!WebApiClient.METRICS_PATH.equals(path)) return i -> true;
+        BitSet ok = new BitSet();
+        for (WebApiClient.ItemResult r : WebApiClient.itemResults(response, 0)) {
+            if (r.accepted() && r.i >= 0) ok.set(r.i);
+        }
+        return ok::get;
+    }
+
+    private void notifyAcked(Entry e, byte[] body, IntPredicate accepted) {
+        AckListener l = ackListener;
+        if (l == null) return;
+        try {
+            l.acked(e, body, accepted);
+        } catch (RuntimeException ex) {
+            log.warn("[outbox] ack listener failed for chunk {}: {}", e.id(), ex.toString());
+        }
+    }
+
+    private synchronized Map<String, List<Entry>> claimAll(Predicate<String> paths) {
+        Map<String, List<Entry>> byPath = new LinkedHashMap<>();
+        for (Entry e : pending.values()) {
+            if (paths.test(e.path()) && claimed.add(e.id())) byPath.computeIfAbsent(e.path(), p -> new ArrayList<>()).add(e);
+        }
+        return byPath;
+    }
+
+    private synchronized void unclaim(Map<String, List<Entry>> byPath) {
+        byPath.values().forEach(l -> l.forEach(e -> claimed.remove(e.id())));
+    }
+
+    private synchronized Entry append(String path, byte[] body, int items) {
+        long id = nextId++;
+        String key = UUID.randomUUID().toString();
+        Instant at = Instant.now();
+        long offset = write(new Header(ENQ, id, path, key, items, at.toString()), body);
+        Entry e = new Entry(id, path, key, items, at, offset, body.length);
+        pending.put(e.id(), e);
+        Segment cur = segments.getLast();
+        cur.live++;
+        owners.put(e.id(), cur);
+        return e;
+    }
+
+    private synchronized void ack(Entry e) {
+        if (pending.remove(e.id()) == null) return;
+        write(new Header(ACK, e.id(), null, null, null, null), new byte[0]);
+        Segment seg = owners.remove(e.id());
+        if (seg != null) seg.live--;
+        gc();
+    }
+
+    /** Remplace le chunk par ses deux moitiés (nouvelles clés), en fin de file. */
+    private synchronized boolean split(Entry e) {
+        try {
+            JsonNode root = M.readTree(body(e));
+            String wrapper = null;
+            ArrayNode arr;
+            if (root.isArray()) {
+                arr = (ArrayNode) root;
+            } else if (root.size() == 1 && root.elements().next().isArray()) {
+                wrapper = root.fieldNames().next();
+                arr = (ArrayNode) root.get(wrapper);
+            } else {
+                return false;
+            }
+            int half = arr.size() / 2;
+            List<JsonNode> all = new ArrayList<>();
+            arr.forEach(all::add);
+            for (List<JsonNode> part : List.of(all.subList(0, half), all.subList(half, all.size()))) {
+                ArrayNode a = M.createArrayNode().addAll(part);
+                JsonNode payload = wrapper == null ? a : M.createObjectNode().set(wrapper, a);
+                append(e.path(), M.writeValueAsBytes(payload), part.size());
+            }
+            ack(e);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /** Refus définitif : le chunk est conservé à part pour analyse et retiré de la file. */
+    private void bury(Entry e, WebApiException w) {
+        Path deadFile = dir.resolve("dead-" + e.id() + ".json");
+        try {
+            ObjectNode meta = M.createObjectNode()
+                    .put("path", e.path()).put("idempotencyKey", e.key()).put("status", w.getStatus()).put("response", w.getBody());
+            meta.set("payload", M.readTree(body(e)));
+            Files.write(deadFile, M.writerWithDefaultPrettyPrinter().writeValueAsBytes(meta));
+        } catch (IOException ex) {
+            log.warn("[outbox] cannot write {}: {}", deadFile, ex.toString());
+        }
+        log.error("[outbox] chunk {} ({} items) rejected by {} with {}, set aside in {}", e.id(), e.items(), e.path(), w.getStatus(), deadFile);
+        ack(e);
+    }
+
+    /** Corps d'un chunk en attente, relu de son segment. */
+    private synchronized byte[] body(Entry e) throws IOException {
+        Segment seg = owners.get(e.id());
+        if (seg == null) throw new IOException("chunk " + e.id() + " no longer pending");
+        return seg.log.read(e.offset(), e.length());
+    }
+
+    private void replay(Segment seg, ByteBuffer buf, long offset) {
+        int nl = -1;
+        for (int i = buf.position(); i < buf.limit(); i++) {
+            if (buf.get(i) == '\n') { nl = i - buf.position(); break; }
+        }
+        byte[] head = new byte[nl < 0 ? buf.remaining() : nl];
+        buf.get(buf.position(), head);
+        try {
+            Header h = M.readValue(head, Header.class);
+            nextId = Math.max(nextId, h.id() + 1);
+            if (ENQ.equals(h.op())) {
+                int bodyLength = nl < 0 ? 0 : buf.remaining() - nl - 1;
+                pending.put(h.id(), new Entry(h.id(), h.path(), h.key(), h.items() == null ? 0 : h.items(), Instant.parse(h.at()),
+                        offset + nl + 1, bodyLength));
+                owners.put(h.id(), seg);
+                seg.live++;
+            } else if (ACK.equals(h.op()) && pending.remove(h.id()) != null) {
+                Segment s = owners.remove(h.id());
+                if (s != null) s.live--;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("[outbox] unreadable record in {}: {}", seg.log.file(), e.toString());
+        }
+    }
+
+    /** Écrit l'enregistrement ; retourne la position du corps dans le segment courant (après rotation éventuelle). */
+    private long write(Header h, byte[] body) {
+        try {
+            byte[] head = M.writeValueAsBytes(h);
+            byte[] rec = new byte[head.length + 1 + body.length];
+            System.arraycopy(head, 0, rec, 0, head.length);
+            rec[head.length] = '\n';
+            System.arraycopy(body, 0, rec, head.length + 1, body.length);
+            Segment cur = segments.getLast();
+            if (cur.log.size() >= segmentBytes && ENQ.equals(h.op())) cur = roll();
+            return cur.log.append(rec) + head.length + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Supprime les segments de tête sans entrée en attente ; vide le dernier quand plus rien n'attend. */
+    private void gc() {
+        try {
+            while (segments.size() > 1 && segments.getFirst().live <= 0) {
+                Segment s = segments.removeFirst();
+                s.log.close();
+                Files.deleteIfExists(s.log.file());
+            }
+            Segment last = segments.getLast();
+            if (pending.isEmpty() && last.log.size() > 0) last.log.rewrite(List.of());
+        } catch (IOException e) {
+            log.warn("[outbox] segment cleanup failed: {}", e.toString());
+        }
+    }
+
+    private Segment roll() throws IOException {
+        int index = segments.isEmpty() ? 1 : segments.getLast().index + 1;
+        Segment s = new Segment(index, new AppendLog(dir.resolve(String.format("outbox-%06d.log", index))));
+        s.log.open(b -> {});
+        segments.addLast(s);
+        return s;
+    }
+
+    private synchronized void force() {
+        try {
+            for (Segment s : segments) s.log.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int index(Path f) {
+        String n = f.getFileName().toString();
+        return Integer.parseInt(n.substring("outbox-".length(), n.length() - ".log".length()));
+    }
+}
@@ -12,13 +12,24 @@ public final class PollingPolicy {
     private static final Duration OFTEN     = Duration.ofHours(6);
     private static final Duration DAILY     = Duration.ofDays(1);
 
-    public static boolean shouldPoll(Instant publishedAt, Instant lastSnapshotAt, Instant nowUtc) {
-        if (publishedAt == null) return lastOlderThan(lastSnapshotAt, DAILY, nowUtc);
+    /** Palier de cadence selon l'âge de la vidéo (ordre = priorité décroissante). */
+    public enum Tier {
+        INTENSIVE(PollingPolicy.INTENSIVE), OFTEN(PollingPolicy.OFTEN), DAILY(PollingPolicy.DAILY);
+
+        private final Duration interval;
+        Tier(Duration interval) { this.interval = interval; }
+        public Duration interval() { return interval; }
+    }
 
+    /** Date de publication inconnue → palier quotidien. */
+    public static Tier tierOf(Instant publishedAt, Instant nowUtc) {
+        if (publishedAt == null) return Tier.DAILY;
         long ageDays = Duration.between(publishedAt, nowUtc).toDays();
+        return ageDays <= 3 ? Tier.INTENSIVE : (ageDays <= 7 ? Tier.OFTEN : Tier.DAILY);
+    }
 
-        Duration minInterval = ageDays <= 3 ? INTENSIVE : (ageDays <= 7 ? OFTEN : DAILY);
-        return lastOlderThan(lastSnapshotAt, minInterval, nowUtc);
+    public static boolean shouldPoll(Instant publishedAt, Instant lastSnapshotAt, Instant nowUtc) {
+        return lastOlderThan(lastSnapshotAt, tierOf(publishedAt, nowUtc).interval(), nowUtc);
     }
 
     private static boolean lastOlderThan(Instant last, Duration minInterval, Instant now) {
@@ -27,8 +38,7 @@ public final class PollingPolicy {
     }
 
     public static Duration nextDelay(Instant publishedAt, Instant lastSnapshotAt, Instant nowUtc) {
-        long ageDays = (publishedAt == null) ? 8 : Duration.between(publishedAt, nowUtc).toDays();
-        Duration minInterval = ageDays <= 3 ? INTENSIVE : (ageDays <= 7 ? OFTEN : DAILY);
+        Duration minInterval = tierOf(publishedAt, nowUtc).interval();
         if (lastSnapshotAt == null) return Duration.ZERO;
         var next = lastSnapshotAt.plus(minInterval);
         return next.isAfter(nowUtc) ? Duration.between(nowUtc, next) : Duration.ZERO;
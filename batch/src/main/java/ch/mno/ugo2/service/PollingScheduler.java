@@ -0,0 +1,130 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.config.PollingProps;
+import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.service.PollingPolicy.Tier;
+import ch.mno.ugo2.util.StateStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Étage de planification devant les collecteurs : ne laisse passer que les vidéos "dues"
+ * selon {@link PollingPolicy} (âge de la vidéo + date du dernier snapshot).
+ * L'état (published_at, dernier snapshot) est conservé par source dans le state store local.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PollingScheduler {
+
+    static final String SECTION = "polling";
+    private static final String PUBLISHED_AT = "publishedAt";
+    private static final String LAST_SNAPSHOT_AT = "lastSnapshotAt";
+
+    private final StateStore store;
+    private final PollingProps cfg;
+
+    /**
+     * Résultat de sélection : IDs dus (les plus prioritaires en tête), leur nombre par palier
+     * et compteurs d'IDs sautés par palier.
+     */
+    public record Selection(List<String> due, Map<Tier, Integer> dueByTier, Map<Tier, Integer> skippedByTier, Duration nextDue) {
+        public int skipped() {
+            return skippedByTier.values().stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+
+    /**
+     * Mémorise la date de publication d'une source (connue dès la découverte sur certaines plateformes).
+     */
+    public void register(String platform, String id, Instant publishedAt) {
+        if (id == null || publishedAt == null) return;
+        Map<String, Object> state = read(platform, id);
+        if (publishedAt.toString().equals(state.get(PUBLISHED_AT))) return;
+        state.put(PUBLISHED_AT, publishedAt.toString());
+        store.put(SECTION, key(platform, id), state);
+    }
+
+    /**
+     * Filtre les IDs candidats et ne garde que ceux à relire maintenant.
+     * Ordre de sortie : palier le plus intensif d'abord, puis le plus ancien snapshot.
+     */
+    public Selection selectDue(String platform, Collection<String> ids, Instant now) {
+        Map<Tier, Integer> skipped = new EnumMap<>(Tier.class);
+        if (ids == null || ids.isEmpty()) return new Selection(List.of(), new EnumMap<>(Tier.class), skipped, null);
+        if (!cfg.isEnabled()) {
+            Map<Tier, Integer> all = new EnumMap<>(Tier.class);
+            all.put(Tier.DAILY, ids.size());
+            return new Selection(List.copyOf(ids), all, skipped, null);
+        }
+
+        record Candidate(String id, Tier tier, Instant lastSnapshotAt) {}
+        List<Candidate> due = new ArrayList<>();
+        Duration nextDue = null;
+        for (String id : ids) {
+            Map<String, Object> state = read(platform, id);
+            Instant publishedAt = parse(state.get(PUBLISHED_AT));
+            Instant last = parse(state.get(LAST_SNAPSHOT_AT));
+            Tier tier = PollingPolicy.tierOf(publishedAt, now);
+            if (PollingPolicy.shouldPoll(publishedAt, last, now)) {
+                due.add(new Candidate(id, tier, last));
+            } else {
+                skipped.merge(tier, 1, Integer::sum);
+                Duration d = PollingPolicy.nextDelay(publishedAt, last, now);
+                if (nextDue == null || d.compareTo(nextDue) < 0) nextDue = d;
+            }
+        }
+        due.sort(Comparator.comparing(Candidate::tier)
+                .thenComparing(Candidate::lastSnapshotAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        Map<Tier, Integer> dueByTier = new EnumMap<>(Tier.class);
+        due.forEach(c -> dueByTier.merge(c.tier(), 1, Integer::sum));
+        Selection sel = new Selection(due.stream().map(Candidate::id).toList(), dueByTier, skipped, nextDue);
+        log.info("[polling] {} candidates={} due={} skipped={} skippedByTier={} nextDueIn={}",
+                platform, ids.size(), sel.due().size(), sel.skipped(), skipped, nextDue);
+        return sel;
+    }
+
+    /**
+     * Enregistre le snapshot poussé pour chaque source (et sa date de publication), puis persiste l'état.
+     */
+    public void recordSnapshots(Collection<SourceUpsertItem> sources, Instant snapshotAt) {
+        if (sources == null || sources.isEmpty()) return;
+        for (SourceUpsertItem s : sources) {
+            if (s == null || s.getPlatform_source_id() == null) continue;
+            Map<String, Object> state = read(s.getPlatform(), s.getPlatform_source_id());
+            Instant publishedAt = parse(s.getPublished_at());
+            if (publishedAt != null) state.put(PUBLISHED_AT, publishedAt.toString());
+            state.put(LAST_SNAPSHOT_AT, snapshotAt.toString());
+            store.put(SECTION, key(s.getPlatform(), s.getPlatform_source_id()), state);
+        }
+        store.save();
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private Map<String, Object> read(String platform, String id) {
+        Object v = store.get(SECTION, key(platform, id));
+        Map<String, Object> out = new HashMap<>();
+        if (v instanceof Map<?, ?> m) m.forEach((k, val) -> out.put(String.valueOf(k), val));
+        return out;
+    }
+
+    static String key(String platform, String id) {
+        return platform + ":" + id;
+    }
+
+    private static Instant parse(Object iso) {
+        if (iso == null) return null;
+        try {
+            return Instant.parse(String.valueOf(iso));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
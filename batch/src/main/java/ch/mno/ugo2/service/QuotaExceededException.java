@@ -0,0 +1,11 @@
+package ch.mno.ugo2.service;
+
+/**
+ * Budget quotidien d'une plateforme épuisé : l'appel n'a pas été émis.
+ */
+public class QuotaExceededException extends RuntimeException {
+
+    public QuotaExceededException(String platform, String endpoint, int cost) {
+        super("quota exhausted for " + platform + " (" + endpoint + ", cost=" + cost + ")");
+    }
+}
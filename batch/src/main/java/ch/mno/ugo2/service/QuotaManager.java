@@ -0,0 +1,193 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.common.QuotaGate;
+import ch.mno.ugo2.config.AppProps;
+import ch.mno.ugo2.service.PollingPolicy.Tier;
+import ch.mno.ugo2.util.StateStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Budgets d'appels par plateforme ({@link AppProps.Budgets}) :
+ * - un seau à jetons par plateforme, capacité = budget quotidien, rechargé linéairement sur 24h ;
+ * - chaque appel consomme le poids de son endpoint (ex. YOUTUBE.search = 100 unités) ;
+ * - seau et consommation du jour sont conservés dans le state store par {@link #flush} (fin de découverte) ;
+ * - {@link #plan} décide avant la collecte combien de vidéos dues chaque palier peut s'offrir.
+ */
+@Slf4j
+public class QuotaManager implements QuotaGate {
+
+    static final String SECTION = "quota";
+    private static final Duration REFILL_PERIOD = Duration.ofDays(1);
+
+    private final AppProps.Budgets cfg;
+    private final StateStore store;
+    private final Clock clock;
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    private static final class Bucket {
+        double tokens;
+        Instant at;
+        LocalDate day;
+        long usedToday;
+    }
+
+    public QuotaManager(AppProps.Budgets cfg, StateStore store, Clock clock) {
+        this.cfg = cfg;
+        this.store = store;
+        this.clock = clock;
+    }
+
+    public int budget(String platform) {
+        return switch (platform) {
+            case "YOUTUBE" -> cfg.ytCalls;
+            case "FACEBOOK" -> cfg.fbCalls;
+            case "INSTAGRAM" -> cfg.igCalls;
+            case "WORDPRESS" -> cfg.wpCalls;
+            default -> Integer.MAX_VALUE;
+        };
+    }
+
+    public int weight(String platform, String endpoint) {
+        return Math.max(0, cfg.weights.getOrDefault(platform + "." + endpoint, 1));
+    }
+
+    /**
+     * Réserve {@code count} appels de l'endpoint. Faux si le budget ne le permet pas (rien n'est consommé),
+     * toujours vrai si enforce=false (la consommation est tout de même comptée).
+     */
+    public synchronized boolean tryAcquire(String platform, String endpoint, int count) {
+        int cost = weight(platform, endpoint) * Math.max(1, count);
+        Bucket b = refill(platform);
+        if (cfg.enforce && b.tokens < cost) {
+            log.warn("[quota] {} exhausted: {} needs {} units, {} left (usedToday={})",
+                    platform, endpoint, cost, (long) b.tokens, b.usedToday);
+            return false;
+        }
+        b.tokens = Math.max(0, b.tokens - cost);
+        b.usedToday += cost;
+        return true;
+    }
+
+    /** Variante levant {@link QuotaExceededException}. */
+    @Override
+    public void acquire(String platform, String endpoint, int count) {
+        if (!tryAcquire(platform, endpoint, count)) {
+            throw new QuotaExceededException(platform, endpoint, weight(platform, endpoint) * Math.max(1, count));
+        }
+    }
+
+    /** Unités disponibles maintenant. */
+    public synchronized double available(String platform) {
+        return cfg.enforce ? refill(platform).tokens : Double.MAX_VALUE;
+    }
+
+    public synchronized long usedToday(String platform) {
+        return refill(platform).usedToday;
+    }
+
+    /**
+     * Répartit le budget disponible entre paliers, du plus prioritaire au moins prioritaire.
+     *
+     * @param dueByTier      vidéos dues par palier
+     * @param unitsPerVideo  coût estimé d'une vidéo (ex. 1/50 pour videos.list par lots de 50)
+     * @param reserveUnits   unités gardées pour la découverte du run suivant
+     * @return nombre de vidéos finançables par palier (les paliers non finançables sont à 0)
+     */
+    public Map<Tier, Integer> plan(String platform, Map<Tier, Integer> dueByTier, double unitsPerVideo, double reserveUnits) {
+        Map<Tier, Integer> out = new EnumMap<>(Tier.class);
+        double left = Math.max(0, available(platform) - reserveUnits);
+        for (Tier t : Tier.values()) {
+            int due = dueByTier.getOrDefault(t, 0);
+            int affordable = unitsPerVideo <= 0 ? due : (int) Math.min(due, Math.floor(left / unitsPerVideo));
+            out.put(t, affordable);
+            left -= affordable * unitsPerVideo;
+        }
+        if (!out.equals(fill(dueByTier))) {
+            log.warn("[quota] {} plan: due={} affordable={} ({} units left)", platform, dueByTier, out, (long) available(platform));
+        }
+        return out;
+    }
+
+    /**
+     * Applique {@link #plan} à une sélection triée par priorité : renvoie le préfixe finançable des IDs dus.
+     */
+    public List<String> affordable(String platform, PollingScheduler.Selection sel, double unitsPerVideo, double reserveUnits) {
+        Map<Tier, Integer> plan = plan(platform, sel.dueByTier(), unitsPerVideo, reserveUnits);
+        List<String> out = new ArrayList<>();
+        int pos = 0;
+        for (Tier t : Tier.values()) {
+            int due = sel.dueByTier().getOrDefault(t, 0);
+            int keep = plan.getOrDefault(t, 0);
+            out.addAll(sel.due().subList(pos, pos + keep));
+            pos += due;
+        }
+        return out;
+    }
+
+    /** Journalise la consommation du run et persiste les seaux (fin de découverte) : un enregistrement par plateforme. */
+    public synchronized void flush() {
+        buckets.forEach((p, b) -> {
+            log.info("[quota] {} usedToday={} left={} budget={}", p, b.usedToday, (long) b.tokens, budget(p));
+            persist(p, b);
+        });
+        store.save();
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private static Map<Tier, Integer> fill(Map<Tier, Integer> m) {
+        Map<Tier, Integer> out = new EnumMap<>(Tier.class);
+        for (Tier t : Tier.values()) out.put(t, m.getOrDefault(t, 0));
+        return out;
+    }
+
+    private Bucket refill(String platform) {
+        Instant now = clock.instant();
+        LocalDate today = now.atZone(ZoneOffset.UTC).toLocalDate();
+        int capacity = budget(platform);
+        Bucket b = buckets.computeIfAbsent(platform, p -> load(p, capacity, now, today));
+        double rate = capacity / (double) REFILL_PERIOD.toMillis();
+        long elapsed = Math.max(0, Duration.between(b.at, now).toMillis());
+        b.tokens = Math.min(capacity, b.tokens + elapsed * rate);
+        b.at = now;
+        if (!today.equals(b.day)) {
+            b.day = today;
+            b.usedToday = 0;
+        }
+        return b;
+    }
+
+    private Bucket load(String platform, int capacity, Instant now, LocalDate today) {
+        Bucket b = new Bucket();
+        b.tokens = capacity;
+        b.at = now;
+        b.day = today;
+        if (store.get(SECTION, platform) instanceof Map<?, ?> m) {
+            try {
+                b.tokens = Math.min(capacity, ((Number) m.get("tokens")).doubleValue());
+                b.at = Instant.parse(String.valueOf(m.get("at")));
+                b.day = LocalDate.parse(String.valueOf(m.get("day")));
+                b.usedToday = ((Number) m.get("usedToday")).longValue();
+            } catch (Exception e) {
+                log.debug("[quota] {} unreadable state, starting full: {}", platform, e.toString());
+            }
+        }
+        return b;
+    }
+
+    private void persist(String platform, Bucket b) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("tokens", b.tokens);
+        m.put("at", b.at.toString());
+        m.put("day", b.day.toString());
+        m.put("usedToday", b.usedToday);
+        store.put(SECTION, platform, m);
+    }
+}
@@ -1,24 +1,51 @@
 package ch.mno.ugo2.service;
 
+import ch.mno.ugo2.api.WebApiClient;
 import ch.mno.ugo2.config.AppProps;
+import ch.mno.ugo2.dto.OverrideItem;
+import ch.mno.ugo2.dto.SourceWindowItem;
+import ch.mno.ugo2.model.SourceVideo;
+import ch.mno.ugo2.reconcile.Clusterer;
+import ch.mno.ugo2.reconcile.MatchFeatures;
+import ch.mno.ugo2.reconcile.MatchingScorer;
+import ch.mno.ugo2.reconcile.ReconcileIndex;
+import ch.mno.ugo2.util.StateStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
 
 /**
- * Réconciliation “API sink”: le regroupement se fait côté API/DB web.
- * Ici on garde la signature pour l’orchestrateur, mais on ne touche plus la DB locale.
+ * Réconciliation locale (app.reconcile.mode=local) : le regroupement tourne dans le batch (Clusterer / MatchingScorer)
+ * sur la fenêtre de sources lue via /sources:window, et seuls les liens qui changent repartent vers
+ * /overrides:apply (items "immediate"). Le mode "api" (défaut) délègue tout à /reconcile:run côté web.
+ * Mêmes règles que le reconcile PHP : sources des vidéos verrouillées ignorées, vidéo existante du cluster
+ * = la première rencontrée par date de publication, sinon nouvelle vidéo (titre/description YouTube en priorité,
+ * date la plus ancienne).
+ * Avec app.reconcile.incremental, seules les sources nouvelles ou modifiées depuis le run précédent (updated_at)
+ * sont lues et scorées, contre un {@link ReconcileIndex} persistant mis à jour en place.
  */
 @Service
 public class ReconciliationService {
 
   private static final Logger log = LoggerFactory.getLogger(ReconciliationService.class);
+  static final DateTimeFormatter SQL_TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  static final int PAGE_SIZE = 5000;
+
   private final AppProps cfg;
+  private final WebApiClient client;
+  private final StateStore store;
+  private ReconcileIndex index;
 
-  public ReconciliationService(AppProps cfg) {
+  public ReconciliationService(AppProps cfg, WebApiClient client, StateStore store) {
     this.cfg = cfg;
+    this.client = client;
+    this.store = store;
   }
 
   /**
@@ -28,15 +55,245 @@ public class ReconciliationService {
    */
   public record ResultSummary(int clusters, int created, int linkedSources, int skippedLocked) {}
 
+  public boolean isLocal() {
+    return "local".equalsIgnoreCase(cfg.getReconcile().mode);
+  }
+
   /**
-   * @param from fenêtre de temps (début)
-   * @param to   fenêtre de temps (fin)
-   * @param dryRun si true, ne ferait rien (ici no-op de toute façon)
-   * @return un résumé “vide” (0) tant que tout se passe côté API web.
+   * @param from fenêtre de temps (début, UTC) ; les sources publiées jusqu'à timeBonusHours avant sont aussi lues
+   * @param to   fenêtre de temps (fin, UTC)
+   * @param dryRun si true, calcule le résumé sans rien envoyer (toujours sur la fenêtre, l'index n'est pas touché)
    */
   public ResultSummary reconcile(LocalDateTime from, LocalDateTime to, boolean dryRun) {
-    log.info("[reconcile] window={}..{}, dryRun={}, mode=API-sink (no-op ici)", from, to, dryRun);
-    // Si tu veux déclencher un recalcul côté API web, c’est ici que tu appellerais un endpoint dédié.
-    return new ResultSummary(0, 0, 0, 0);
+    AppProps.Reconcile rc = cfg.getReconcile();
+    if (rc.incremental && !dryRun) return reconcileIncremental(rc);
+    long t0 = System.nanoTime();
+    String fromTs = from == null ? null : from.minusHours((long) Math.ceil(rc.timeBonusHours)).format(SQL_TS);
+    String toTs = to == null ? null : to.format(SQL_TS);
+    List<SourceWindowItem> rows = client.fetchSourcesWindow(fromTs, toTs, PAGE_SIZE).collectList().block();
+
+    int skippedLocked = 0;
+    List<SourceVideo> sources = new ArrayList<>();
+    for (SourceWindowItem r : rows == null ? List.<SourceWindowItem>of() : rows) {
+      if (r.getIs_locked() != null && r.getIs_locked() == 1) { skippedLocked++; continue; }
+      sources.add(toSourceVideo(r));
+    }
+    sources.sort(Comparator.comparing(SourceVideo::getPublishedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+        .thenComparing(SourceVideo::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+    List<List<SourceVideo>> clusters = new Clusterer(rc).cluster(sources, new MatchingScorer(rc));
+
+    int created = 0;
+    List<OverrideItem> links = new ArrayList<>();
+    for (List<SourceVideo> cluster : clusters) {
+      Long target = cluster.stream().map(SourceVideo::getVideoId).filter(Objects::nonNull).findFirst().orElse(null);
+      SourceVideo anchor = cluster.get(0);
+      Map<String, Object> video = null;
+      if (target == null) {
+        created++;
+        video = canonical(cluster);
+      }
+      for (SourceVideo s : cluster) {
+        if (target != null && target.equals(s.getVideoId())) continue;
+        OverrideItem.OverrideItemBuilder link = OverrideItem.builder()
+            .source_platform(s.getPlatform())
+            .source_platform_id(s.getPlatformSourceId())
+            .action("LINK")
+            .immediate(1);
+        if (target != null) {
+          link.target_video_id(target);
+        } else {
+          link.target_source_platform(anchor.getPlatform()).target_source_id(anchor.getPlatformSourceId()).video(video);
+        }
+        links.add(link.build());
+      }
+    }
+
+    if (!dryRun && !links.isEmpty()) client.applyOverrides(links).block();
+    log.info("[reconcile] mode=local window={}..{} sources={} clusters={} newVideos={} links={} skippedLocked={} dryRun={} in {} ms",
+        fromTs, toTs, sources.size(), clusters.size(), created, links.size(), skippedLocked, dryRun,
+        (System.nanoTime() - t0) / 1_000_000);
+    return new ResultSummary(clusters.size(), created, links.size(), skippedLocked);
+  }
+
+  /**
+   * Sources modifiées depuis le dernier run (bootstrap : toutes), comparées à l'index : caractéristiques inchangées →
+   * rattachement mis à jour en place ; nouvelles ou modifiées → indexées puis scorées contre leurs seuls candidats.
+   * Sources inactives ou verrouillées : retirées de l'index. Toutes les sweepHours, un balayage complet relit toutes
+   * les sources actives et retire de l'index celles qui n'existent plus.
+   * Chaque composante touchée garde la vidéo du premier membre (par date) qui en a une, sinon une vidéo est créée
+   * sur le premier membre ; seules les sources nouvelles/modifiées sont (re)liées, les vidéos existantes ne sont
+   * pas fusionnées entre elles. Si l'envoi échoue, l'index est remis en état et le run suivant reprend les mêmes sources.
+   */
+  ResultSummary reconcileIncremental(AppProps.Reconcile rc) {
+    long t0 = System.nanoTime();
+    ReconcileIndex idx = index(rc);
+    long now = System.currentTimeMillis();
+    String since = idx.watermark();
+    boolean sweep = since == null || now - idx.sweptAt() >= (long) (rc.sweepHours * 3_600_000L);
+    List<SourceWindowItem> rows = client.fetchSourcesUpdatedSince(sweep ? null : since, PAGE_SIZE).collectList().block();
+
+    String watermark = since;
+    int skippedLocked = 0;
+    int evicted = 0;
+    Set<String> unseen = sweep ? idx.keys() : Set.of();
+    List<SourceWindowItem> fresh = new ArrayList<>();
+    for (SourceWindowItem r : rows == null ? List.<SourceWindowItem>of() : rows) {
+      if (r.getUpdated_at() != null && (watermark == null || r.getUpdated_at().compareTo(watermark) > 0)) watermark = r.getUpdated_at();
+      String key = ReconcileIndex.key(r.getPlatform(), r.getPlatform_video_id());
+      ReconcileIndex.Entry e = idx.get(key);
+      boolean inactive = r.getIs_active() != null && r.getIs_active() == 0;
+      boolean locked = r.getIs_locked() != null && r.getIs_locked() == 1;
+      if (inactive || locked) {
+        if (locked) skippedLocked++;
+        if (e != null) { idx.remove(e); evicted++; }
+        continue;
+      }
+      if (sweep) unseen.remove(key);
+      if (e != null && sameFeatures(e.features(), ReconcileIndex.compact(MatchFeatures.of(toSourceVideo(r))))) {
+        idx.setVideo(e, r.getVideo_id());
+      } else {
+        fresh.add(r);
+      }
+    }
+    for (String key : unseen) {
+      ReconcileIndex.Entry e = idx.get(key);
+      if (e != null) { idx.remove(e); evicted++; }
+    }
+    fresh.sort(Comparator.comparing((SourceWindowItem r) -> parseTs(r.getPublished_at()), Comparator.nullsLast(Comparator.naturalOrder()))
+        .thenComparing(SourceWindowItem::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+    // indexées avant le scoring : les nouvelles sources se trouvent aussi entre elles
+    Map<ReconcileIndex.Entry, SourceVideo> added = new LinkedHashMap<>();
+    for (SourceWindowItem r : fresh) {
+      SourceVideo v = toSourceVideo(r);
+      added.put(idx.upsert(r.getPlatform(), r.getPlatform_video_id(), r.getId(), r.getVideo_id(), MatchFeatures.of(v)), v);
+    }
+
+    MatchingScorer scorer = new MatchingScorer(rc);
+    Map<ReconcileIndex.Entry, ReconcileIndex.Entry> parent = new LinkedHashMap<>();   // Entry : égalité d'identité, ordre stable
+    for (ReconcileIndex.Entry e : added.keySet()) {
+      find(parent, e);
+      idx.candidates(e, c -> {
+        if (find(parent, e) != find(parent, c) && scorer.score(e.features(), c.features(), rc.threshold) >= rc.threshold) {
+          parent.put(find(parent, c), find(parent, e));
+        }
+      });
+    }
+    Map<ReconcileIndex.Entry, List<ReconcileIndex.Entry>> components = new LinkedHashMap<>();
+    for (ReconcileIndex.Entry e : parent.keySet()) components.computeIfAbsent(find(parent, e), k -> new ArrayList<>()).add(e);
+    components.values().removeIf(members -> members.stream().noneMatch(added::containsKey));   // candidates non retenus
+
+    int created = 0;
+    List<OverrideItem> links = new ArrayList<>();
+    List<Runnable> onSent = new ArrayList<>();
+    Comparator<ReconcileIndex.Entry> byDate = Comparator
+        .comparing((ReconcileIndex.Entry e) -> e.features().hasTime() ? e.features().publishedEpoch() : Long.MAX_VALUE)
+        .thenComparing(ReconcileIndex.Entry::sourceId, Comparator.nullsLast(Comparator.naturalOrder()));
+    for (List<ReconcileIndex.Entry> members : components.values()) {
+      members.sort(byDate);
+      ReconcileIndex.Entry withVideo = members.stream().filter(m -> m.videoId() != null).findFirst().orElse(null);
+      ReconcileIndex.Entry anchor = members.get(0);
+      Map<String, Object> video = null;
+      if (withVideo == null) {
+        created++;
+        video = canonical(members.stream().map(added::get).filter(Objects::nonNull).toList());
+      }
+      for (ReconcileIndex.Entry m : members) {
+        if (!added.containsKey(m) || (withVideo != null && withVideo.videoId().equals(m.videoId()))) continue;
+        OverrideItem.OverrideItemBuilder link = OverrideItem.builder()
+            .source_platform(m.platform())
+            .source_platform_id(m.platformId())
+            .action("LINK")
+            .immediate(1);
+        if (withVideo != null) {
+          Long target = withVideo.videoId();
+          link.target_video_id(target);
+          onSent.add(() -> idx.setVideo(m, target));
+        } else {
+          link.target_source_platform(anchor.platform()).target_source_id(anchor.platformId()).video(video);
+        }
+        links.add(link.build());
+      }
+    }
+
+    if (!links.isEmpty()) {
+      try {
+        client.applyOverrides(links).block();
+      } catch (RuntimeException e) {
+        added.keySet().forEach(idx::remove);
+        store.save();
+        throw e;
+      }
+    }
+    onSent.forEach(Runnable::run);
+    if (watermark != null) idx.watermark(watermark);
+    if (sweep) idx.sweptAt(now);
+    store.save();
+
+    log.info("[reconcile] mode=incremental since={} sweep={} rows={} fresh={} evicted={} indexed={} clusters={} newVideos={} links={} skippedLocked={} in {} ms",
+        since, sweep, rows == null ? 0 : rows.size(), fresh.size(), evicted, idx.size(), components.size(), created, links.size(),
+        skippedLocked, (System.nanoTime() - t0) / 1_000_000);
+    return new ResultSummary(components.size(), created, links.size(), skippedLocked);
+  }
+
+  private synchronized ReconcileIndex index(AppProps.Reconcile rc) {
+    if (index == null) index = new ReconcileIndex(store, rc.timeBonusHours, rc.maxBlock);
+    return index;
+  }
+
+  private static ReconcileIndex.Entry find(Map<ReconcileIndex.Entry, ReconcileIndex.Entry> parent, ReconcileIndex.Entry x) {
+    ReconcileIndex.Entry p = parent.putIfAbsent(x, x);
+    while (p != null && p != x) {
+      ReconcileIndex.Entry gp = parent.get(p);
+      parent.put(x, gp);
+      x = p;
+      p = gp;
+    }
+    return x;
+  }
+
+  private static boolean sameFeatures(MatchFeatures a, MatchFeatures b) {
+    return a.publishedEpoch() == b.publishedEpoch() && Arrays.equals(a.title(), b.title())
+        && Arrays.equals(a.description(), b.description());
+  }
+
+  private static SourceVideo toSourceVideo(SourceWindowItem r) {
+    SourceVideo v = new SourceVideo();
+    v.setId(r.getId());
+    v.setVideoId(r.getVideo_id());
+    v.setPlatform(r.getPlatform());
+    v.setPlatformSourceId(r.getPlatform_video_id());
+    v.setTitle(r.getTitle());
+    v.setDescription(r.getDescription());
+    v.setPublishedAt(parseTs(r.getPublished_at()));
+    return v;
+  }
+
+  static LocalDateTime parseTs(String s) {
+    if (s == null || s.isBlank()) return null;
+    try {
+      return LocalDateTime.parse(s.trim().replace(' ', 'T'));
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  /** Titre / description : YouTube non vide d'abord, sinon le plus long ; date : la plus ancienne du cluster. */
+  private static Map<String, Object> canonical(List<SourceVideo> cluster) {
+    Map<String, Object> video = new LinkedHashMap<>();
+    video.put("title", pick(cluster, SourceVideo::getTitle, "(sans titre)"));
+    video.put("description", pick(cluster, SourceVideo::getDescription, ""));
+    video.put("published_at", cluster.stream().map(SourceVideo::getPublishedAt).filter(Objects::nonNull)
+        .min(Comparator.naturalOrder()).map(d -> d.format(SQL_TS)).orElse(null));
+    return video;
+  }
+
+  private static String pick(List<SourceVideo> cluster, Function<SourceVideo, String> field, String fallback) {
+    return cluster.stream()
+        .filter(s -> "YOUTUBE".equalsIgnoreCase(s.getPlatform()) && field.apply(s) != null && !field.apply(s).isBlank())
+        .map(field).findFirst()
+        .orElseGet(() -> cluster.stream().map(field).filter(t -> t != null && !t.isBlank())
+            .reduce((a, b) -> b.length() > a.length() ? b : a).orElse(fallback));
   }
 }
@@ -0,0 +1,159 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.config.FacebookProps;
+import ch.mno.ugo2.config.InstagramProps;
+import ch.mno.ugo2.config.PollingProps;
+import ch.mno.ugo2.config.YouTubeProps;
+import ch.mno.ugo2.dto.MetricsUpsertItem;
+import ch.mno.ugo2.util.StateStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Parcimonie des snapshots (voir SCHEDULING.md) : un snapshot n'est envoyé que s'il apporte quelque chose
+ * par rapport au dernier vecteur envoyé pour la même source :
+ * - première mesure ;
+ * - variation de vues ≥ minDeltaAbs ou ≥ minDeltaRel ;
+ * - autre métrique modifiée ;
+ * - aucun point envoyé ce jour (UTC) si dailyFloor.
+ * Le dernier vecteur envoyé est conservé dans le state store et n'est mis à jour qu'après un envoi accepté ({@link #commit}).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SnapshotFilter {
+
+    static final String SECTION = "lastSent";
+    private static final String AT = "at";
+    private static final String VIEWS = "views";
+
+    private final StateStore store;
+    private final PollingProps cfg;
+    private final YouTubeProps ytProps;
+    private final FacebookProps fbProps;
+    private final InstagramProps igProps;
+
+    private record Thresholds(double minDeltaRel, int minDeltaAbs, boolean dailyFloor) {}
+
+    /**
+     * Garde les snapshots significatifs (ordre conservé).
+     */
+    public List<MetricsUpsertItem> select(List<MetricsUpsertItem> snapshots, Instant now) {
+        if (snapshots == null || snapshots.isEmpty() || !cfg.isParsimony()) return snapshots;
+        List<MetricsUpsertItem> out = new ArrayList<>(snapshots.size());
+        for (MetricsUpsertItem m : snapshots) {
+            if (m == null) continue;
+            if (isSignificant(m, now)) out.add(m);
+        }
+        if (out.size() < snapshots.size()) {
+            log.info("[parsimony] kept {} of {} snapshots", out.size(), snapshots.size());
+        }
+        return out;
+    }
+
+    /**
+     * Mémorise les snapshots effectivement acceptés par l'API.
+     */
+    public void commit(Collection<MetricsUpsertItem> sent, Instant now) {
+        if (sent == null || sent.isEmpty() || !cfg.isParsimony()) return;
+        for (MetricsUpsertItem m : sent) {
+            String key = key(m);
+            if (key == null) continue;
+            Map<String, Object> state = vector(m);
+            state.put(AT, (m.getSnapshot_at() != null ? m.getSnapshot_at() : now).toString());
+            store.put(SECTION, key, state);
+        }
+        store.save();
+    }
+
+    boolean isSignificant(MetricsUpsertItem m, Instant now) {
+        String key = key(m);
+        if (key == null) return true;
+        if (!(store.get(SECTION, key) instanceof Map<?, ?> last)) return true;
+
+        Thresholds t = thresholds(m.getPlatform());
+        Map<String, Object> current = vector(m);
+
+        Long before = toLong(last.get(VIEWS));
+        Long after = toLong(current.get(VIEWS));
+        if (!Objects.equals(before, after)) {
+            if (before == null || after == null) return true;
+            long delta = Math.abs(after - before);
+            if (delta >= t.minDeltaAbs()) return true;
+            if (before > 0 && (double) delta / before >= t.minDeltaRel()) return true;
+        }
+        for (var e : current.entrySet()) {
+            if (VIEWS.equals(e.getKey())) continue;
+            if (!Objects.equals(e.getValue(), toLong(last.get(e.getKey())))) return true;
+        }
+        for (var k : last.keySet()) {
+            if (!AT.equals(k) && !current.containsKey(String.valueOf(k))) return true;
+        }
+
+        if (t.dailyFloor()) {
+            Instant lastAt = parse(last.get(AT));
+            Instant at = m.getSnapshot_at() != null ? m.getSnapshot_at() : now;
+            return lastAt == null || !day(lastAt).equals(day(at));
+        }
+        return false;
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private Thresholds thresholds(String platform) {
+        return switch (String.valueOf(platform)) {
+            case "FACEBOOK" -> new Thresholds(fbProps.getMinDeltaRel(), fbProps.getMinDeltaAbs(), fbProps.isDailyFloor());
+            case "INSTAGRAM" -> new Thresholds(igProps.getMinDeltaRel(), igProps.getMinDeltaAbs(), igProps.isDailyFloor());
+            default -> new Thresholds(ytProps.getMinDeltaRel(), ytProps.getMinDeltaAbs(), ytProps.isDailyFloor());
+        };
+    }
+
+    /** Métriques utiles non nulles (les vues sont comparées avec seuils, le reste à l'identique). */
+    private static Map<String, Object> vector(MetricsUpsertItem m) {
+        Map<String, Object> v = new LinkedHashMap<>();
+        putIfNotNull(v, VIEWS, m.getViews_native());
+        putIfNotNull(v, "likes", m.getLikes());
+        putIfNotNull(v, "comments", m.getComments());
+        putIfNotNull(v, "shares", m.getShares());
+        putIfNotNull(v, "reach", m.getReach());
+        putIfNotNull(v, "uniqueViewers", m.getUnique_viewers());
+        putIfNotNull(v, "totalWatchSeconds", m.getTotal_watch_seconds());
+        putIfNotNull(v, "reactionsTotal", m.getReactions_total());
+        putIfNotNull(v, "legacyViews3s", m.getLegacy_views_3s());
+        return v;
+    }
+
+    private static void putIfNotNull(Map<String, Object> v, String k, Long value) {
+        if (value != null) v.put(k, value);
+    }
+
+    private static String key(MetricsUpsertItem m) {
+        if (m.getPlatform_video_id() != null) return PollingScheduler.key(m.getPlatform(), m.getPlatform_video_id());
+        if (m.getSource_video_id() != null) return "#" + m.getSource_video_id();
+        return null;
+    }
+
+    private static Long toLong(Object o) {
+        if (o instanceof Number n) return n.longValue();
+        return null;
+    }
+
+    private static Instant parse(Object iso) {
+        if (iso == null) return null;
+        try {
+            return Instant.parse(String.valueOf(iso));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static LocalDate day(Instant i) {
+        return i.atZone(ZoneOffset.UTC).toLocalDate();
+    }
+}
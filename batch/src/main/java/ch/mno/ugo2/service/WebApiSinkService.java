@@ -1,17 +1,28 @@
 package ch.mno.ugo2.service;
 
 import ch.mno.ugo2.api.WebApiClient;
+import ch.mno.ugo2.config.ApiClientConfig;
 import ch.mno.ugo2.dto.MetricsUpsertItem;
 import ch.mno.ugo2.dto.OverrideItem;
 import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.dto.SourceWithMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Service
@@ -19,6 +30,28 @@ import java.util.Map;
 public class WebApiSinkService {
 
     private final WebApiClient client;
+    private final ApiClientConfig.ApiProps apiProps;
+    private final SnapshotFilter snapshotFilter;
+    private IngestOutbox outbox;
+
+    /**
+     * Outbox disque (ugo2.api.outbox) ; absente, les fenêtres sont poussées en direct comme avant.
+     * Les snapshots ne sont mémorisés dans {@link SnapshotFilter} qu'à l'acquittement de leur chunk (pas au dépôt) :
+     * un chunk mis de côté sur refus définitif n'est donc jamais compté comme envoyé.
+     */
+    @Autowired(required = false)
+    public void setOutbox(IngestOutbox outbox) {
+        this.outbox = outbox;
+        if (outbox != null) outbox.setAckListener(this::onAcked);
+    }
+
+    private void onAcked(IngestOutbox.Entry e, byte[] body, IntPredicate accepted) {
+        if (!WebApiClient.METRICS_PATH.equals(e.path()) && !WebApiClient.METRICS_STREAM_PATH.equals(e.path())) return;
+        List<MetricsUpsertItem> sent = IngestOutbox.snapshots(body);
+        List<MetricsUpsertItem> kept = IntStream.range(0, sent.size()).filter(accepted).mapToObj(sent::get).toList();
+        if (kept.size() < sent.size()) log.warn("[outbox] {} of {} snapshots rejected in chunk {}", sent.size() - kept.size(), sent.size(), e.id());
+        snapshotFilter.commit(kept, e.at());
+    }
 
     public void batchUpsertSources(List<SourceUpsertItem> sources) {
         if (sources == null || sources.isEmpty()) return;
@@ -30,16 +63,137 @@ public class WebApiSinkService {
         batchUpsertSources(items);
     }
 
-    public void batchUpsertMetrics(List<MetricsUpsertItem> snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) return;
-        client.batchUpsertMetrics(snapshots).block();
-        log.info("Ingested {} metric snapshots", snapshots.size());
+    /**
+     * @return snapshots stockés ou écartés par le serveur ; ceux qu'il a refusés ("error") n'y sont pas et seront renvoyés
+     */
+    public List<MetricsUpsertItem> batchUpsertMetrics(List<MetricsUpsertItem> snapshots) {
+        if (snapshots == null || snapshots.isEmpty()) return List.of();
+        List<WebApiClient.ItemResult> results = client.batchUpsertMetrics(snapshots).block();
+        List<MetricsUpsertItem> accepted = new ArrayList<>(snapshots.size());
+        if (results != null) {
+            for (WebApiClient.ItemResult r : results) {
+                if (r.accepted() && r.i >= 0 && r.i < snapshots.size()) {
+                    accepted.add(snapshots.get(r.i));
+                } else if (!r.accepted()) {
+                    log.warn("Metric snapshot {} rejected: {}", r.i, r.message);
+                }
+            }
+        }
+        log.info("Ingested {} metric snapshots ({} accepted)", snapshots.size(), accepted.size());
+        return accepted;
     }
 
     public void pushMetrics(List<MetricsUpsertItem> items) {
         batchUpsertMetrics(items);
     }
 
+    /**
+     * Pousse un flux de couples source + snapshot par fenêtres de {@code maxBatch} pendant que la collecte continue.
+     * Une seule fenêtre est en attente pendant l'envoi de la précédente (mémoire bornée) ; {@code onPushed}
+     * est appelé après chaque fenêtre acceptée, de sorte qu'un échec tardif ne fait perdre que la fenêtre en cours.
+     * Avec {@code ugo2.api.streaming=false}, tout est collecté puis poussé en une fois (ancien comportement).
+     * Les snapshots sans variation significative sont écartés par {@link SnapshotFilter} ; les sources sont toujours poussées.
+     * Avec l'outbox, une fenêtre est "acceptée" dès qu'elle est sur disque : une panne de l'API ne fait plus échouer
+     * la collecte, les chunks restants partiront au prochain drain (run suivant ou batch:drain) ; le filtre n'est alors
+     * mis à jour qu'à l'acquittement de chaque chunk.
+     *
+     * Avec {@code ugo2.api.metricsStream} (et l'outbox), voir {@link #pushMetricsStream}.
+     *
+     * @return nombre de snapshots poussés (après filtre)
+     */
+    public Mono<Integer> pushStream(String platform, Flux<SourceWithMetrics> items, Consumer<List<SourceUpsertItem>> onPushed) {
+        if (apiProps.isMetricsStream() && outbox != null) return pushMetricsStream(platform, items, onPushed);
+        if (!apiProps.isStreaming()) {
+            return items.collectList().flatMap(all -> pushWindow(platform, all, onPushed));
+        }
+        int window = apiProps.getMaxBatch() > 0 ? apiProps.getMaxBatch() : 1000;
+        return items.buffer(window)
+                .concatMap(w -> pushWindow(platform, w, onPushed), 1)
+                .reduce(0, Integer::sum);
+    }
+
+    private Mono<Integer> pushWindow(String platform, List<SourceWithMetrics> window, Consumer<List<SourceUpsertItem>> onPushed) {
+        if (window.isEmpty()) return Mono.just(0);
+        // Appels bloquants (block() internes) → boundedElastic
+        return Mono.fromCallable(() -> {
+                    List<SourceUpsertItem> sources = window.stream().map(SourceWithMetrics::source).toList();
+                    Instant now = Instant.now();
+                    List<MetricsUpsertItem> snapshots = snapshotFilter.select(
+                            window.stream().map(SourceWithMetrics::metrics).toList(), now);
+                    log.info("[{}] upsert window {} sources, {} metrics", platform, sources.size(), snapshots.size());
+                    if (outbox != null) {
+                        outbox.enqueue(WebApiClient.SOURCES_PATH, "sources", sources, client.chunkSize(WebApiClient.SOURCES_PATH));
+                        outbox.enqueue(WebApiClient.METRICS_PATH, "snapshots", snapshots, client.chunkSize(WebApiClient.METRICS_PATH));
+                        shipOutbox(platform);
+                    } else {
+                        batchUpsertSources(sources);
+                        snapshotFilter.commit(batchUpsertMetrics(snapshots), now);
+                    }
+                    if (onPushed != null) onPushed.accept(sources);
+                    return snapshots.size();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Variante NDJSON de {@link #pushStream} (gros volumes, rattrapages) : les sources partent par fenêtres comme d'habitude
+     * (outbox), et les snapshots de chaque fenêtre sont déposés dans l'outbox pour /metrics:stream. Aucune requête n'est
+     * tenue ouverte pendant la collecte (attentes de quota, de rate limit) : le flux n'est envoyé qu'une fois la collecte
+     * terminée, relu du disque, et rejoué au prochain drain s'il échoue. Comme pour les chunks, une fenêtre est acceptée
+     * dès qu'elle est sur disque et le filtre de snapshots n'est mis à jour qu'à l'acquittement (hors lignes en erreur).
+     */
+    Mono<Integer> pushMetricsStream(String platform, Flux<SourceWithMetrics> items, Consumer<List<SourceUpsertItem>> onPushed) {
+        int window = apiProps.getMaxBatch() > 0 ? apiProps.getMaxBatch() : 1000;
+        Instant now = Instant.now();
+        return items.buffer(window)
+                .concatMap(w -> Mono.fromCallable(() -> {
+                            List<SourceUpsertItem> sources = w.stream().map(SourceWithMetrics::source).toList();
+                            List<MetricsUpsertItem> selected = snapshotFilter.select(
+                                    w.stream().map(SourceWithMetrics::metrics).toList(), now);
+                            log.info("[{}] upsert window {} sources, {} metrics (stream)", platform, sources.size(), selected.size());
+                            outbox.enqueue(WebApiClient.SOURCES_PATH, "sources", sources, client.chunkSize(WebApiClient.SOURCES_PATH));
+                            outbox.enqueue(WebApiClient.METRICS_STREAM_PATH, "snapshots", selected, window);
+                            shipOutbox(platform, WebApiClient.SOURCES_PATH::equals);
+                            if (onPushed != null) onPushed.accept(sources);
+                            return selected.size();
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()), 1)
+                .reduce(0, Integer::sum)
+                .flatMap(count -> Mono.fromCallable(() -> {
+                            shipOutbox(platform, path -> true);
+                            return count;
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Expédie les chunks en attente dans l'outbox.
+     *
+     * @param window chunks en vol (≤ 0 = ugo2.api.inFlight)
+     * @return bilan, ou null sans outbox
+     */
+    public IngestOutbox.Drained drainOutbox(int window) {
+        if (outbox == null) return null;
+        return outbox.drain(client, window > 0 ? window : apiProps.getInFlight()).block();
+    }
+
+    /** Rattrapage après une panne (batch:drain, début de run) : fenêtre ugo2.api.drainInFlight par défaut. */
+    public IngestOutbox.Drained drainBacklog(int window) {
+        return drainOutbox(window > 0 ? window : apiProps.getDrainInFlight());
+    }
+
+    private void shipOutbox(String platform) {
+        shipOutbox(platform, path -> true);
+    }
+
+    private void shipOutbox(String platform, Predicate<String> paths) {
+        try {
+            outbox.drain(client, apiProps.getInFlight(), paths).block();
+        } catch (RuntimeException e) {
+            log.warn("[{}] API push failed, {} chunks kept in the outbox: {}", platform, outbox.pending(), e.toString());
+        }
+    }
+
     public void applyOverrides(List<OverrideItem> items) {
         if (items == null || items.isEmpty()) return;
         client.applyOverrides(items).block();
@@ -0,0 +1,167 @@
+package ch.mno.ugo2.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Fichier append-only d'enregistrements encadrés : [int longueur][int crc32c][octets].
+ * - relecture via mapping mémoire par fenêtres (lecture séquentielle sans copie du fichier, positions en long :
+ *   pas de limite à 2 Gio) ;
+ * - lecture ponctuelle d'un enregistrement par sa position (les appelants ne gardent que l'offset en mémoire) ;
+ * - un enregistrement tronqué ou corrompu (crash pendant l'écriture) termine la relecture
+ *   et la queue du fichier est coupée à la dernière frontière valide.
+ */
+public final class AppendLog implements AutoCloseable {
+
+    private static final int HEADER = 8;
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+    /** Taille d'une fenêtre de relecture (agrandie au besoin pour contenir un enregistrement entier). */
+    private static final int MAP_WINDOW = 256 * 1024 * 1024;
+
+    private final Path file;
+    private final int mapWindow;
+    private FileChannel ch;
+    private long size;
+    private long records;
+
+    public AppendLog(Path file) {
+        this(file, MAP_WINDOW);
+    }
+
+    AppendLog(Path file, int mapWindow) {
+        this.file = file;
+        this.mapWindow = Math.max(HEADER, mapWindow);
+    }
+
+    public Path file() { return file; }
+
+    /** Taille du fichier en octets. */
+    public synchronized long size() { return size; }
+
+    /** Nombre d'enregistrements valides (relus + ajoutés). */
+    public synchronized long records() { return records; }
+
+    /**
+     * Ouvre (ou crée) le fichier, relit chaque enregistrement valide puis se positionne en fin.
+     */
+    public synchronized void open(Consumer<ByteBuffer> onRecord) throws IOException {
+        openWithOffsets((payload, offset) -> onRecord.accept(payload));
+    }
+
+    /** Comme {@link #open(Consumer)}, avec la position de chaque enregistrement (à passer à {@link #read}). */
+    public synchronized void openWithOffsets(ObjLongConsumer<ByteBuffer> onRecord) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long valid = replay(ch, onRecord);
+        if (valid < ch.size()) ch.truncate(valid);
+        size = valid;
+        ch.position(size);
+    }
+
+    private long replay(FileChannel in, ObjLongConsumer<ByteBuffer> onRecord) throws IOException {
+        long total = in.size();
+        if (total == 0) return 0;
+        CRC32C crc = new CRC32C();
+        MappedByteBuffer map = null;
+        long base = 0;                                     // position du début de la fenêtre courante
+        long pos = 0;
+        while (total - pos >= HEADER) {
+            if (map == null || pos + HEADER > base + map.capacity()) {
+                base = pos;
+                map = map(in, base, total, HEADER);
+            }
+            int len = map.getInt((int) (pos - base));
+            if (len < 0 || len > MAX_RECORD || pos + HEADER + len > total) break;
+            if (pos + HEADER + len > base + map.capacity()) {
+                base = pos;
+                map = map(in, base, total, HEADER + len);
+            }
+            int at = (int) (pos - base);
+            int sum = map.getInt(at + 4);
+            ByteBuffer payload = map.slice(at + HEADER, len);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != sum) break;
+            onRecord.accept(payload.asReadOnlyBuffer(), pos + HEADER);
+            records++;
+            pos += HEADER + len;
+        }
+        return pos;
+    }
+
+    /** Fenêtre à partir de {@code from} : {@code mapWindow} octets, au moins {@code atLeast}, bornée par la fin du fichier. */
+    private MappedByteBuffer map(FileChannel in, long from, long total, int atLeast) throws IOException {
+        return in.map(FileChannel.MapMode.READ_ONLY, from, Math.min(total - from, Math.max(mapWindow, atLeast)));
+    }
+
+    /** Ajoute un enregistrement (écriture unique header + payload) ; retourne la position de ses octets. */
+    public synchronized long append(byte[] payload) throws IOException {
+        ensureOpen();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + payload.length);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        long offset = size + HEADER;
+        size += HEADER + payload.length;
+        records++;
+        return offset;
+    }
+
+    /** Relit {@code length} octets à partir de {@code offset} (position retournée par append/openWithOffsets, éventuellement décalée). */
+    public synchronized byte[] read(long offset, int length) throws IOException {
+        ensureOpen();
+        if (offset < 0 || length < 0 || offset + length > size) throw new IOException("out of bounds: " + offset + "+" + length + " in " + file);
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, offset + buf.position()) < 0) throw new IOException("unexpected end of " + file);
+        }
+        return buf.array();
+    }
+
+    /** Force l'écriture sur disque (checkpoint). */
+    public synchronized void force() throws IOException {
+        ensureOpen();
+        ch.force(false);
+    }
+
+    /**
+     * Réécrit le journal avec les seuls enregistrements fournis (compaction) :
+     * fichier temporaire synchronisé puis remplacement atomique.
+     */
+    public synchronized void rewrite(Iterable<byte[]> live) throws IOException {
+        ensureOpen();
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        long n = 0;
+        try (AppendLog out = new AppendLog(tmp)) {
+            Files.deleteIfExists(tmp);
+            out.open(b -> {});
+            for (byte[] rec : live) { out.append(rec); n++; }
+            out.force();
+        }
+        ch.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = ch.size();
+        records = n;
+        ch.position(size);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (ch == null || !ch.isOpen()) throw new IOException("log not open: " + file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (ch != null && ch.isOpen()) ch.close();
+    }
+}
@@ -0,0 +1,150 @@
+package ch.mno.ugo2.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * State store adossé à un journal append-only ({@link AppendLog}).
+ * - chaque {@link #put} ajoute un seul enregistrement {s,k,v} : coût O(taille de l'entrée) ;
+ * - {@link #save()} = fsync du journal, sans réécriture ;
+ * - au démarrage, le journal est rejoué (le dernier enregistrement d'une clé gagne, v=null = suppression) ;
+ * - compaction quand le journal dépasse {@code compactFactor} × le nombre de clés vivantes.
+ * Un ancien {@code state.json} ({@link JsonStateStore}) est importé au premier démarrage.
+ */
+@Slf4j
+public class JournalStateStore implements StateStore, AutoCloseable {
+
+    private static final ObjectMapper M = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final long MIN_COMPACT_RECORDS = 10_000;
+
+    private final AppendLog journal;
+    private final int compactFactor;
+    private final Map<String, Map<String, Object>> sections = new ConcurrentHashMap<>();
+
+    private record Entry(String s, String k, Object v) {}
+
+    public JournalStateStore(Path journal, Path legacyJson, int compactFactor) {
+        this.journal = new AppendLog(journal);
+        this.compactFactor = Math.max(2, compactFactor);
+        try {
+            boolean fresh = !Files.exists(journal);
+            long started = System.nanoTime();
+            this.journal.open(this::apply);
+            if (fresh && legacyJson != null && Files.exists(legacyJson)) importLegacy(legacyJson);
+            log.info("[state] {} replayed records={} keys={} in {}ms",
+                    journal, this.journal.records(), liveKeys(), (System.nanoTime() - started) / 1_000_000L);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public JournalStateStore(Path journal) {
+        this(journal, null, 4);
+    }
+
+    @Override
+    public Object get(String section, String key) {
+        Map<String, Object> m = sections.get(section);
+        return m == null ? null : m.get(key);
+    }
+
+    @Override
+    public synchronized void put(String section, String key, Object value) {
+        Map<String, Object> m = sections.computeIfAbsent(section, s -> new ConcurrentHashMap<>());
+        if (value == null) {
+            if (m.remove(key) == null) return;
+        } else {
+            m.put(key, value);
+        }
+        try {
+            journal.append(M.writeValueAsBytes(new Entry(section, key, value)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> entries(String section) {
+        Map<String, Object> m = sections.get(section);
+        return m == null ? Map.of() : Map.copyOf(m);
+    }
+
+    /** Nombre de clés d'une section. */
+    public int size(String section) {
+        Map<String, Object> m = sections.get(section);
+        return m == null ? 0 : m.size();
+    }
+
+    @Override
+    public void save() {
+        try {
+            journal.force();
+            long live = liveKeys();
+            if (journal.records() > MIN_COMPACT_RECORDS && journal.records() > live * compactFactor) compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Réécrit le journal avec le seul dernier état de chaque clé. */
+    public synchronized void compact() throws IOException {
+        long before = journal.size();
+        List<byte[]> live = new ArrayList<>();
+        for (var s : sections.entrySet()) {
+            for (var e : s.getValue().entrySet()) {
+                live.add(M.writeValueAsBytes(new Entry(s.getKey(), e.getKey(), e.getValue())));
+            }
+        }
+        journal.rewrite(live);
+        log.info("[state] compacted {} -> {} bytes ({} keys)", before, journal.size(), live.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /* ------------------- internals ------------------- */
+
+    private long liveKeys() {
+        return sections.values().stream().mapToLong(Map::size).sum();
+    }
+
+    private void apply(ByteBuffer rec) {
+        try {
+            byte[] bytes = new byte[rec.remaining()];
+            rec.get(bytes);
+            Entry e = M.readValue(bytes, Entry.class);
+            Map<String, Object> m = sections.computeIfAbsent(e.s(), s -> new ConcurrentHashMap<>());
+            if (e.v() == null) m.remove(e.k()); else m.put(e.k(), e.v());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void importLegacy(Path legacyJson) {
+        JsonStateStore legacy = new JsonStateStore(legacyJson);
+        int n = 0;
+        for (var s : legacy.sections().entrySet()) {
+            if (!(s.getValue() instanceof Map<?, ?> m)) continue;
+            for (var e : m.entrySet()) {
+                if (e.getValue() == null) continue;
+                put(s.getKey(), String.valueOf(e.getKey()), e.getValue());
+                n++;
+            }
+        }
+        save();
+        log.info("[state] imported {} keys from {}", n, legacyJson);
+    }
+}
@@ -13,7 +13,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 /** Minimal JSON state store for last-sent metrics and ETags. */
-public class JsonStateStore {
+public class JsonStateStore implements StateStore {
     private static final ObjectMapper M = new ObjectMapper().registerModule(new JavaTimeModule());
     private final Path file;
     private Map<String,Object> root = new HashMap<>();
@@ -32,8 +32,8 @@ public class JsonStateStore {
     private Map<String,Object> section(String name) {
         return (Map<String,Object>) root.computeIfAbsent(name, k -> new HashMap<>());
     }
-    public String getEtag(String key){ Object v = section("etag").get(key); return v==null?null:String.valueOf(v); }
-    public void setEtag(String key, String etag){ section("etag").put(key, etag); }
+    @Override public String getEtag(String key){ Object v = section("etag").get(key); return v==null?null:String.valueOf(v); }
+    @Override public void setEtag(String key, String etag){ section("etag").put(key, etag); }
 
     @SuppressWarnings("unchecked")
     public Map<String,Object> getVideoState(String videoId){
@@ -42,9 +42,16 @@ public class JsonStateStore {
         return map;
     }
 
-    public void put(String section, String key, Object value){ section(section).put(key, value); }
-    public Object get(String section, String key){ return section(section).get(key); }
+    @Override public void put(String section, String key, Object value){
+        if (value == null) section(section).remove(key); else section(section).put(key, value);
+    }
+    @Override public Object get(String section, String key){ return section(section).get(key); }
+    @Override public Map<String,Object> entries(String section){ return Map.copyOf(section(section)); }
+
+    /** Sections brutes (migration vers un autre store). */
+    public Map<String,Object> sections() { return root; }
 
+    @Override
     public void save() {
         try {
             Files.createDirectories(file.getParent());
@@ -0,0 +1,27 @@
+package ch.mno.ugo2.util;
+
+import java.util.Map;
+
+/**
+ * Etat local du batch (ETags, derniers envois, checkpoints), organisé en sections clé/valeur.
+ * Les clés sont typiquement "PLATFORM:videoId".
+ */
+public interface StateStore {
+
+    Object get(String section, String key);
+
+    /** Mise à jour ponctuelle ; {@code value == null} supprime la clé. */
+    void put(String section, String key, Object value);
+
+    default void remove(String section, String key) { put(section, key, null); }
+
+    /** Contenu d'une section (copie en lecture, pour recharger un index au démarrage). */
+    Map<String, Object> entries(String section);
+
+    default String getEtag(String key) { Object v = get("etag", key); return v == null ? null : String.valueOf(v); }
+
+    default void setEtag(String key, String etag) { put("etag", key, etag); }
+
+    /** Checkpoint : rend durables les mises à jour précédentes. */
+    void save();
+}
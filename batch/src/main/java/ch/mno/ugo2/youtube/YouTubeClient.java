@@ -41,14 +41,14 @@ public class YouTubeClient extends AbstractClient {
     }
 
     /**
-     * playlistItems.list — part=contentDetails,snippet ; gère ETag via getJson()
+     * playlistItems.list — part=contentDetails (ID + date de publication suffisent à la découverte) ; gère l'ETag
      */
     public Mono<PlaylistItemsResponse> playlistItems(String apiKey, String playlistId, Integer maxResults, String pageToken, String etag) {
         int page = (maxResults == null ? 50 : maxResults);
         page = Math.clamp(page, 1, 50);
 
         UriComponentsBuilder b = UriComponentsBuilder.fromHttpUrl(BASE + "/playlistItems")
-                .queryParam("part", "contentDetails,snippet")
+                .queryParam("part", "contentDetails")
                 .queryParam("playlistId", playlistId)
                 .queryParam("maxResults", page)
                 .queryParam("key", apiKey);
@@ -58,6 +58,21 @@ public class YouTubeClient extends AbstractClient {
         return get(uri, etag, PlaylistItemsResponse.class);
     }
 
+    /**
+     * Première page de playlistItems.list, conditionnelle : Mono vide si l'ETag est toujours valable (304).
+     */
+    public Mono<PlaylistItemsResponse> playlistItemsIfChanged(String apiKey, String playlistId, Integer maxResults, String etag) {
+        int page = Math.clamp(maxResults == null ? 50 : maxResults, 1, 50);
+        URI uri = UriComponentsBuilder.fromHttpUrl(BASE + "/playlistItems")
+                .queryParam("part", "contentDetails")
+                .queryParam("playlistId", playlistId)
+                .queryParam("maxResults", page)
+                .queryParam("key", apiKey)
+                .build(true)
+                .toUri();
+        return getIfModified(uri, etag, PlaylistItemsResponse.class);
+    }
+
     /**
      * videos.list — part=snippet,statistics,contentDetails (IDs en CSV)
      */
@@ -74,8 +89,12 @@ public class YouTubeClient extends AbstractClient {
                 .queryParam("key", apiKey)
                 .build(true)
                 .toUri();
-        // pas d’ETag ici pour fiabiliser la collecte des stats
-        return get(uri, null, VideoListResponse.class);
+        // ni ETag ni cache ici pour fiabiliser la collecte des stats
+        return getUncached(uri, VideoListResponse.class);
     }
 
+    @Override
+    protected String quotaPlatform() {
+        return "YOUTUBE";
+    }
 }
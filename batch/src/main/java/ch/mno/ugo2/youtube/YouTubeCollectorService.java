@@ -1,9 +1,15 @@
 package ch.mno.ugo2.youtube;
 
+import ch.mno.ugo2.config.DiscoveryProps;
 import ch.mno.ugo2.config.YouTubeProps;
-import ch.mno.ugo2.dto.MetricsUpsertItem;
 import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.dto.SourceWithMetrics;
+import ch.mno.ugo2.service.AccountFanOut;
+import ch.mno.ugo2.service.PollingScheduler;
+import ch.mno.ugo2.service.QuotaExceededException;
+import ch.mno.ugo2.service.QuotaManager;
 import ch.mno.ugo2.service.WebApiSinkService;
+import ch.mno.ugo2.util.StateStore;
 import ch.mno.ugo2.youtube.responses.PlaylistItemsResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,8 +17,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 /**
@@ -28,6 +35,12 @@ public class YouTubeCollectorService {
     private final YouTubeClient yt;
     private final YouTubeProps cfg;
     private final WebApiSinkService sink;
+    private final PollingScheduler scheduler;
+    private final DiscoveryProps discoveryProps;
+    private final StateStore store;
+    private final QuotaManager quota;
+
+    static final String PLAYLIST_SECTION = "ytPlaylist";
 
     /**
      * Collecte complète (toutes les chaînes en config) et retourne le nombre de snapshots poussés.
@@ -44,26 +57,32 @@ public class YouTubeCollectorService {
         Set<String> allVideoIds = new LinkedHashSet<>();
         int successfulChannels = 0;
         Exception lastChannelError = null;
-        for (String channelId : channelIds) {
-            try {
-                String uploadsPlaylist = findUploadsPlaylist(apiKey, channelId);
-                if (uploadsPlaylist != null) {
-                    allVideoIds.addAll(listPlaylistVideoIds(apiKey, uploadsPlaylist));
-                }
+        var outcomes = AccountFanOut.run(channelIds, discoveryProps.accountConcurrency("YOUTUBE"), channelId -> {
+            String uploadsPlaylist = findUploadsPlaylist(apiKey, channelId);
+            return uploadsPlaylist == null ? List.<String>of() : listPlaylistVideoIds(apiKey, uploadsPlaylist);
+        });
+        for (var o : outcomes) {
+            if (o.ok()) {
+                allVideoIds.addAll(o.value());
                 successfulChannels++;
-            } catch (Exception e) {
-                lastChannelError = e;
-                log.warn("[YT] channel {}: {}", channelId, e.toString());
+            } else {
+                lastChannelError = o.error();
+                log.warn("[YT] channel {}: {}", o.account(), o.error().toString());
             }
         }
 
+        store.save();
+
         if (successfulChannels == 0 && lastChannelError != null) {
             throw new IllegalStateException("YouTube collection failed for every configured channel", lastChannelError);
         }
         if (allVideoIds.isEmpty()) return 0;
 
+        var selection = scheduler.selectDue("YOUTUBE", allVideoIds, Instant.now());
+        // videos.list : 1 unité par lot de 50 ; les paliers les moins prioritaires sautent si le budget manque
+        List<String> dueIds = quota.affordable("YOUTUBE", selection, 1.0 / 50, 0);
         int cap = Math.max(1, cfg.getMaxVideosPerRun());
-        List<String> selectedIds = allVideoIds.stream().limit(cap).toList();
+        List<String> selectedIds = dueIds.stream().limit(cap).toList();
         return collectAndPushByIds(selectedIds).blockOptional().orElse(0);
     }
 
@@ -77,26 +96,19 @@ public class YouTubeCollectorService {
         String apiKey = cfg.getApiKey();
         List<List<String>> chunks = chunk(videoIds, 50);
 
-        return Flux.fromIterable(chunks)
-                .flatMap(chunk -> yt.videosList(apiKey, chunk))
+        Flux<SourceWithMetrics> items = Flux.fromIterable(chunks)
+                .flatMap(chunk -> yt.videosList(apiKey, chunk)
+                        .onErrorResume(QuotaExceededException.class, e -> {
+                            log.warn("[YT] skip {} videos: {}", chunk.size(), e.getMessage());
+                            return Mono.empty();
+                        }))
                 .flatMap(resp -> Flux.fromIterable(Optional.ofNullable(resp.getItems()).orElseGet(List::of)))
-                .collectList()
-                .flatMap(items -> {
-                    if (items.isEmpty()) return Mono.just(0);
-
-                    // build SOURCES, METRICS
-                    List<SourceUpsertItem> sources = items.stream().map(YouTubeMetricsMapper::mapSourceUpsertItem).toList();
-                    List<MetricsUpsertItem> snapshots = items.stream().map(YouTubeMetricsMapper::mapMetricsUpsertItem).toList();
-                    log.info("[YT] mapped {} sources & {} snapshots", sources.size(), snapshots.size());
-
-                    // ⚠️ Appels BLOQUANTS déplacés sur boundedElastic
-                    return Mono.fromRunnable(() -> {
-                                sink.batchUpsertSources(sources);   // appelle bloquant interne (block())
-                                sink.batchUpsertMetrics(snapshots); // idem
-                            })
-                            .subscribeOn(Schedulers.boundedElastic())
-                            .thenReturn(items.size());
-                });
+                .map(it -> new SourceWithMetrics(
+                        YouTubeMetricsMapper.mapSourceUpsertItem(it),
+                        YouTubeMetricsMapper.mapMetricsUpsertItem(it)));
+
+        // Poussée par fenêtres pendant la collecte ; l'état de planification suit chaque fenêtre acceptée
+        return sink.pushStream("YT", items, sources -> scheduler.recordSnapshots(sources, Instant.now()));
     }
 
 
@@ -114,27 +126,110 @@ public class YouTubeCollectorService {
                 .getUploads();
     }
 
-    private List<String> listPlaylistVideoIds(String apiKey, String playlistId) {
-        log.info("listPlaylistVideoIds, playlistId={}", playlistId);
+    /**
+     * IDs de la playlist d'uploads. En mode incrémental, l'état par playlist (ETag de la page 1, IDs déjà vus)
+     * permet d'éviter le parcours complet : page 1 inchangée → aucun autre appel, sinon on pagine jusqu'à la
+     * première page contenant une vidéo déjà connue. Un parcours complet est refait tous les
+     * fullScanIntervalDays jours, ou sur demande (forceFullScan).
+     */
+    List<String> listPlaylistVideoIds(String apiKey, String playlistId) {
+        PlaylistState known = PlaylistState.from(store.get(PLAYLIST_SECTION, playlistId));
+        Instant now = Instant.now();
+        if (!cfg.isIncrementalDiscovery() || cfg.isForceFullScan() || known == null
+                || known.lastFullScanAt() == null
+                || known.lastFullScanAt().plus(Duration.ofDays(Math.max(1, cfg.getFullScanIntervalDays()))).isBefore(now)) {
+            return fullScan(apiKey, playlistId, now);
+        }
+
+        var first = yt.playlistItemsIfChanged(apiKey, playlistId, 50, known.etag()).block();
+        if (first == null || (first.getEtag() != null && first.getEtag().equals(known.etag()))) {
+            log.info("[YT] playlist {} unchanged (etag) -> {} known videoIds, 0 extra call", playlistId, known.videoIds().size());
+            return known.videoIds();
+        }
+
+        Set<String> knownIds = new HashSet<>(known.videoIds());
+        List<String> fresh = new ArrayList<>();
+        int pages = 0;
+        var page = first;
+        while (page != null) {
+            pages++;
+            boolean reachedKnown = false;
+            for (PlaylistItemsResponse.Item it : Optional.ofNullable(page.getItems()).orElseGet(List::of)) {
+                String vid = it.getContentDetails().getVideoId();
+                if (StringUtils.isBlank(vid)) continue;
+                if (knownIds.contains(vid)) {
+                    reachedKnown = true;
+                    continue;
+                }
+                fresh.add(vid);
+                scheduler.register("YOUTUBE", vid, it.getContentDetails().getVideoPublishedAt());
+            }
+            String next = page.getNextPageToken();
+            if (reachedKnown || StringUtils.isBlank(next)) break;
+            page = yt.playlistItems(apiKey, playlistId, 50, next, null).block();
+        }
+
+        List<String> out = new ArrayList<>(fresh);
+        out.addAll(known.videoIds());
+        PlaylistState updated = new PlaylistState(first.getEtag(), out, known.lastFullScanAt());
+        store.put(PLAYLIST_SECTION, playlistId, updated.toMap());
+        log.info("[YT] playlist {} incremental -> {} new, {} total videoIds (pages={})", playlistId, fresh.size(), out.size(), pages);
+        return out;
+    }
+
+    private List<String> fullScan(String apiKey, String playlistId, Instant now) {
+        log.info("listPlaylistVideoIds, playlistId={} (full scan)", playlistId);
         List<String> out = new ArrayList<>();
+        String firstEtag = null;
         String pageToken = null;
+        int pages = 0;
         do {
             var page = yt.playlistItems(apiKey, playlistId, 50, pageToken, null).block();
             if (page == null) break;
+            if (pages++ == 0) firstEtag = page.getEtag();
             var items = page.getItems();
             if (items != null) {
                 for (PlaylistItemsResponse.Item it : items) {
                     String vid = it.getContentDetails().getVideoId();
-                    if (StringUtils.isNotBlank(vid)) out.add(vid);
+                    if (StringUtils.isNotBlank(vid)) {
+                        out.add(vid);
+                        scheduler.register("YOUTUBE", vid, it.getContentDetails().getVideoPublishedAt());
+                    }
                 }
             }
             String next = page.getNextPageToken();
             pageToken = StringUtils.isNotBlank(next) ? next : null;
         } while (pageToken != null);
-        log.info("[YT] playlist {} -> {} videoIds", playlistId, out.size());
+        store.put(PLAYLIST_SECTION, playlistId, new PlaylistState(firstEtag, out, now).toMap());
+        log.info("[YT] playlist {} -> {} videoIds (pages={})", playlistId, out.size(), pages);
         return out;
     }
 
+    /** Etat de découverte d'une playlist (les IDs sont dans l'ordre de la playlist, plus récent en tête). */
+    record PlaylistState(String etag, List<String> videoIds, Instant lastFullScanAt) {
+
+        static PlaylistState from(Object raw) {
+            if (!(raw instanceof Map<?, ?> m)) return null;
+            List<String> ids = new ArrayList<>();
+            if (m.get("videoIds") instanceof List<?> l) l.forEach(o -> ids.add(String.valueOf(o)));
+            Instant last = null;
+            try {
+                if (m.get("lastFullScanAt") != null) last = Instant.parse(String.valueOf(m.get("lastFullScanAt")));
+            } catch (Exception ignore) {
+                // état illisible -> parcours complet
+            }
+            return new PlaylistState(m.get("etag") == null ? null : String.valueOf(m.get("etag")), ids, last);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("etag", etag);
+            m.put("lastFullScanAt", lastFullScanAt == null ? null : lastFullScanAt.toString());
+            m.put("videoIds", videoIds);
+            return m;
+        }
+    }
+
     private static <T> List<List<T>> chunk(List<T> in, int size) {
         List<List<T>> out = new ArrayList<>();
         for (int i = 0; i < in.size(); i += size) out.add(in.subList(i, Math.min(i + size, in.size())));
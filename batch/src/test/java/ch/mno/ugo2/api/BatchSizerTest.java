@@ -0,0 +1,67 @@
+package ch.mno.ugo2.api;
+
+import ch.mno.ugo2.util.JsonStateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchSizerTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String SOURCES = "/api/v1/sources:batchUpsert";
+    private static final String METRICS = "/api/v1/metrics:batchUpsert";
+
+    private BatchSizer sizer(long maxBytes) {
+        return new BatchSizer(new JsonStateStore(dir.resolve("state.json")), 10, 1000, maxBytes);
+    }
+
+    /** Latence = 5 ms fixes + coût par item (ms). */
+    private static void chunk(BatchSizer.Endpoint ep, double msPerItem) {
+        int n = ep.next();
+        ep.onSuccess(n, n * 200L, (long) ((5 + n * msPerItem) * 1_000_000));
+    }
+
+    @Test
+    void growsWhileLatencyPerItemIsFlat_shrinksOnOverload_perEndpoint() {
+        BatchSizer s = sizer(0);
+        BatchSizer.Endpoint metrics = s.endpoint(METRICS);
+        BatchSizer.Endpoint sources = s.endpoint(SOURCES);
+        assertEquals(250, metrics.next());
+
+        for (int i = 0; i < 10; i++) chunk(metrics, 0.1);
+        assertEquals(1000, metrics.next());                         // plafond maxItems
+        assertEquals(250, sources.next());                          // endpoints indépendants
+
+        chunk(sources, 0.1);
+        chunk(sources, 1.0);                                        // latence/item ×10 : le serveur sature
+        assertEquals(187, sources.next());
+
+        metrics.onFailure(new WebApiException(METRICS, 503, ""));
+        assertEquals(500, metrics.next());
+        metrics.onFailure(new WebApiException(METRICS, 422, ""));  // refus métier : sans rapport avec la taille
+        assertEquals(500, metrics.next());
+        metrics.onTooLarge(600);                                    // 413 redécoupé : au plus la moitié du chunk refusé
+        assertEquals(300, metrics.next());
+        metrics.onTooLarge(800);                                    // chunk parti avant la réduction : pas de nouvelle baisse
+        assertEquals(300, metrics.next());
+    }
+
+    @Test
+    void boundedByByteBudget_andResumedFromTheStateStore() {
+        BatchSizer s = sizer(50_000);
+        BatchSizer.Endpoint ep = s.endpoint(METRICS);
+        ep.onSuccess(100, 100 * 1000, 10_000_000);                 // 1000 octets/item
+        assertEquals(50, ep.next());
+        s.flush();
+
+        BatchSizer.Endpoint resumed = sizer(0).endpoint(METRICS);
+        assertEquals(250, resumed.size());
+        resumed.onSuccess(250, 250 * 1000, 25_000_000);             // même latence/item qu'avant : on grandit
+        assertEquals(312, resumed.next());
+    }
+}
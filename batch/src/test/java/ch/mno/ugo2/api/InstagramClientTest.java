@@ -1,13 +1,22 @@
 package ch.mno.ugo2.api;
 
+import ch.mno.ugo2.instagram.dto.IgMedia;
+import ch.mno.ugo2.instagram.dto.IgMediaPage;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
 
 import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,95 +25,46 @@ class InstagramClientTest {
     private final ObjectMapper om = new ObjectMapper();
 
 
-    static class FakeIgClient extends InstagramClient {
-        private final Map<String, Map<String, Object>> pages = new HashMap<>();
-
-        FakeIgClient() {
-            super();
-        }
-
-        void addPage(String url, List<Map<String, Object>> data, String nextUrl) {
-            Map<String, Object> resp = new HashMap<>();
-            resp.put("data", data);
-            if (nextUrl != null) {
-                Map<String, Object> paging = new HashMap<>();
-                paging.put("next", nextUrl);
-                resp.put("paging", paging);
-            }
-            pages.put(url, resp);
-        }
-
-        @Override
-        protected Map<String, Object> fetchPage(String url) {
-            return pages.get(url);
-        }
-    }
-
     @Test
-    void listMedia_multiPages_collectsAll_whenNoMaxPages() {
-        FakeIgClient client = new FakeIgClient();
+    void streamMedia_multiPages_collectsAll_whenNoMaxPages() {
+        PagedIgClient client = new PagedIgClient();
+        client.addPage("u1", "u2", "2025-10-09T10:00:00+0000", "2025-10-08T10:00:00+0000");
+        client.addPage("u2", null, "2025-10-07T10:00:00+0000");
 
-        Map<String, Object> m1 = new HashMap<>();
-        m1.put("id", "A1");
-        Map<String, Object> m2 = new HashMap<>();
-        m2.put("id", "A2");
-        client.addPage("u1", List.of(m1, m2), "u2");
-
-        Map<String, Object> m3 = new HashMap<>();
-        m3.put("id", "B1");
-        client.addPage("u2", List.of(m3), null);
-
-        List<Map<String, Object>> out = client.listMedia("u1", null);
+        List<IgMedia> out = client.streamMedia("u1", null, null).collectList().block();
         assertNotNull(out);
-        assertEquals(3, out.size());
-        assertEquals("A1", out.get(0).get("id"));
-        assertEquals("A2", out.get(1).get("id"));
-        assertEquals("B1", out.get(2).get("id"));
+        assertEquals(List.of("u1-0", "u1-1", "u2-0"), out.stream().map(IgMedia::id).toList());
     }
 
     @Test
-    void listMedia_respectsMaxPages() {
-        FakeIgClient client = new FakeIgClient();
-
-        Map<String, Object> m1 = new HashMap<>();
-        m1.put("id", "A1");
-        client.addPage("u1", List.of(m1), "u2");
-
-        Map<String, Object> m2 = new HashMap<>();
-        m2.put("id", "B1");
-        client.addPage("u2", List.of(m2), "u3");
-
-        Map<String, Object> m3 = new HashMap<>();
-        m3.put("id", "C1");
-        client.addPage("u3", List.of(m3), null);
+    void streamMedia_respectsMaxPages() {
+        PagedIgClient client = new PagedIgClient();
+        client.addPage("u1", "u2", "2025-10-09T10:00:00+0000");
+        client.addPage("u2", "u3", "2025-10-08T10:00:00+0000");
+        client.addPage("u3", null, "2025-10-07T10:00:00+0000");
 
         // maxPages = 2 -> ne lit que u1 et u2
-        List<Map<String, Object>> out = client.listMedia("u1", 2);
-        assertNotNull(out);
-        assertEquals(2, out.size());
-        assertEquals("A1", out.get(0).get("id"));
-        assertEquals("B1", out.get(1).get("id"));
+        List<IgMedia> out = client.streamMedia("u1", 2, null).collectList().block();
+        assertEquals(List.of("u1-0", "u2-0"), out.stream().map(IgMedia::id).toList());
+        assertEquals(List.of("u1", "u2"), client.fetched);
     }
 
     @Test
-    void listMedia_handlesNullResponse() {
-        FakeIgClient client = new FakeIgClient();
+    void streamMedia_handlesNullResponse() {
+        PagedIgClient client = new PagedIgClient();
 
-        // aucune page enregistrée -> fetchPage("u1") == null
-        List<Map<String, Object>> out = client.listMedia("u1", 10);
+        // aucune page enregistrée -> fetchMediaPage("u1") vide
+        List<IgMedia> out = client.streamMedia("u1", 10, null).collectList().block();
         assertNotNull(out);
         assertTrue(out.isEmpty());
     }
 
     @Test
-    void listMedia_ignoresNonListData() {
-        FakeIgClient client = new FakeIgClient();
-
-        Map<String, Object> resp = new HashMap<>();
-        resp.put("data", "not-a-list");
-        client.pages.put("u1", resp);
+    void streamMedia_ignoresPageWithoutData() {
+        PagedIgClient client = new PagedIgClient();
+        client.pages.put("u1", new IgMediaPage(null, null));
 
-        List<Map<String, Object>> out = client.listMedia("u1", 1);
+        List<IgMedia> out = client.streamMedia("u1", 1, null).collectList().block();
         assertNotNull(out);
         assertTrue(out.isEmpty());
     }
@@ -128,4 +88,107 @@ class InstagramClientTest {
             assertEquals(12L, ret.get("total_interactions"));
         }
     }
+
+    /** Réponses scriptées pour insights(): erreurs puis succès. */
+    static class ScriptedIgClient extends InstagramClient {
+        final Deque<RuntimeException> errors = new ArrayDeque<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <T> Mono<T> get(String url, Class<T> clazz) {
+            return Mono.defer(() -> {
+                calls.incrementAndGet();
+                if (!errors.isEmpty()) return Mono.error(errors.poll());
+                Map<String, Object> resp = Map.of("data", List.of(
+                        Map.of("name", "views", "values", List.of(Map.of("value", 12)))));
+                return Mono.just((T) resp);
+            });
+        }
+    }
+
+    @Test
+    void insights_retriesOnRateLimit() {
+        ScriptedIgClient client = new ScriptedIgClient();
+        client.errors.add(new RuntimeException("API error 429 body="));
+        client.errors.add(new RuntimeException("API error 400 body={\"error\":{\"message\":\"(#4) Application request limit reached\",\"code\":4}}"));
+
+        Map<String, Long> out = client.insights("u", 3, Duration.ofMillis(1)).block();
+
+        assertEquals(12L, out.get("views"));
+        assertEquals(3, client.calls.get());
+    }
+
+    @Test
+    void insights_doesNotRetryOtherErrors() {
+        ScriptedIgClient client = new ScriptedIgClient();
+        client.errors.add(new RuntimeException("API error 401 body={\"error\":{\"type\":\"OAuthException\",\"code\":190}}"));
+
+        assertThrows(RuntimeException.class, () -> client.insights("u", 3, Duration.ofMillis(1)).block());
+        assertEquals(1, client.calls.get());
+        assertFalse(InstagramClient.isRateLimited(new RuntimeException("\"code\":190")));
+    }
+
+    @Test
+    void rateLimitCodes_areTheSharedGraphSet() {
+        for (int code : List.of(4, 17, 32, 613, 80001, 80002, 80004)) {
+            assertTrue(InstagramClient.isRateLimited(new RuntimeException("API error 400 body={\"error\":{\"code\":" + code + "}}")), "code " + code);
+        }
+        assertTrue(InstagramClient.isRateLimited(new RuntimeException("API error 429 body=")));
+        assertFalse(InstagramClient.isRateLimited(new RuntimeException("{\"error\":{\"code\":100,\"error_subcode\":4}}")));
+    }
+
+    /** Pages typées en mémoire, avec comptage des pages lues. */
+    static class PagedIgClient extends InstagramClient {
+        final Map<String, IgMediaPage> pages = new HashMap<>();
+        final List<String> fetched = new ArrayList<>();
+
+        void addPage(String url, String next, String... timestamps) {
+            List<IgMedia> data = new ArrayList<>();
+            for (String ts : timestamps) {
+                data.add(new IgMedia(url + "-" + data.size(), null, "VIDEO", "REELS", null, ts, null, null, null));
+            }
+            pages.put(url, new IgMediaPage(data, next == null ? null : new IgMediaPage.Paging(next)));
+        }
+
+        @Override
+        protected Mono<IgMediaPage> fetchMediaPage(String url) {
+            return Mono.fromCallable(() -> {
+                fetched.add(url);
+                return pages.get(url);
+            });
+        }
+    }
+
+    @Test
+    void streamMedia_stopsAtFirstPageOlderThanWindow() {
+        PagedIgClient client = new PagedIgClient();
+        client.addPage("p1", "p2", "2025-10-09T10:00:00+0000", "2025-10-08T10:00:00+0000");
+        client.addPage("p2", "p3", "2025-10-06T10:00:00+0000", "2025-09-20T10:00:00+0000");
+        client.addPage("p3", "p4", "2025-09-10T10:00:00+0000");
+        client.addPage("p4", null, "2025-08-10T10:00:00+0000");
+        Instant since = Instant.parse("2025-10-03T00:00:00Z");
+
+        List<IgMedia> out = client.streamMedia("p1", 50, m -> m.publishedAt().isBefore(since)).collectList().block();
+
+        assertEquals(List.of("p1", "p2"), client.fetched);
+        assertEquals(4, out.size());
+        assertEquals("REEL", out.getFirst().type());
+        assertEquals(Instant.parse("2025-10-09T10:00:00Z"), out.getFirst().publishedAt());
+    }
+
+    @Test
+    void streamMedia_isLazy_andHonoursMaxPages() {
+        PagedIgClient client = new PagedIgClient();
+        client.addPage("p1", "p2", "2025-10-09T10:00:00+0000");
+        client.addPage("p2", "p3", "2025-10-08T10:00:00+0000");
+        client.addPage("p3", null, "2025-10-07T10:00:00+0000");
+
+        assertEquals(1, client.streamMedia("p1", null, null).take(1).collectList().block().size());
+        assertEquals(List.of("p1"), client.fetched);
+
+        client.fetched.clear();
+        assertEquals(2, client.streamMedia("p1", 2, null).collectList().block().size());
+        assertEquals(List.of("p1", "p2"), client.fetched);
+    }
 }
@@ -0,0 +1,68 @@
+package ch.mno.ugo2.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sérialisation + hash en une passe : le digest correspond aux octets du fil, sur plusieurs morceaux poolés,
+ * avec ou sans gzip, et les buffers sont rendus au pool.
+ */
+class SignedBodyTest {
+
+    private static final Map<String, Object> BIG = Map.of("snapshots",
+            IntStream.range(0, 5000).mapToObj(i -> Map.of("platform", "YOUTUBE", "platform_video_id", "video-" + i, "views_native", i)).toList());
+
+    private static byte[] drain(DataBuffer b) {
+        byte[] out = new byte[b.readableByteCount()];
+        b.read(out);
+        DataBufferUtils.release(b);
+        return out;
+    }
+
+    @Test
+    void rawBody_spansSeveralPooledChunks_andHashesTheWireBytes() {
+        byte[] expected = Jsons.toBytes(BIG);
+        assertTrue(expected.length > 2 * SignedBody.CHUNK);
+
+        try (SignedBody body = SignedBody.write(BIG, -1, PooledByteBufAllocator.DEFAULT)) {
+            assertNull(body.encoding());
+            assertEquals(expected.length, body.jsonBytes());
+            assertArrayEquals(expected, drain(body.attempt()));
+            assertArrayEquals(expected, drain(body.attempt()));          // relisible pour un retry
+            assertEquals(ApiAuthSigner.sha256Hex(expected), body.sha256Hex());
+        }
+    }
+
+    @Test
+    void gzipOnlyAboveThreshold_digestOverCompressedBytes_buffersReleased() throws Exception {
+        byte[] json = Jsons.toBytes(BIG);
+        ByteBuf wire;
+        try (SignedBody body = SignedBody.write(BIG, 1024)) {
+            assertEquals("gzip", body.encoding());
+            assertTrue(body.wireBytes() < json.length / 4);
+            DataBuffer view = body.attempt();
+            wire = ((NettyDataBuffer) view).getNativeBuffer().unwrap();
+            byte[] bytes = drain(view);
+            assertEquals(ApiAuthSigner.sha256Hex(bytes), body.sha256Hex());
+            assertArrayEquals(json, new GZIPInputStream(new ByteArrayInputStream(bytes)).readAllBytes());
+        }
+        assertEquals(0, wire.refCnt());
+
+        try (SignedBody small = SignedBody.write(Map.of("snapshots", List.of()), 1024)) {
+            assertNull(small.encoding());
+            assertEquals("{\"snapshots\":[]}", new String(drain(small.attempt())));
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package ch.mno.ugo2.api;
+
+import ch.mno.ugo2.dto.MetricsUpsertItem;
+import ch.mno.ugo2.dto.OverrideItem;
+import ch.mno.ugo2.util.JsonStateStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Envoi chunké contre un stub local : fenêtre de chunks en vol, idempotence, arrêt sur refus définitif.
+ */
+class WebApiClientTest {
+
+    private HttpServer server;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<String> keys = new CopyOnWriteArrayList<>();
+    private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+    private final List<Headers> headers = new CopyOnWriteArrayList<>();
+
+    /** @param statusOfCall statut HTTP selon le numéro d'appel (0, 1, …) */
+    private WebApiClient start(int inFlightWindow, IntUnaryOperator statusOfCall) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/api/v1/health", ex -> {
+            byte[] body = "{\"ok\":true,\"capabilities\":{\"request_encodings\":[\"gzip\"]}}".getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (var os = ex.getResponseBody()) { os.write(body); }
+        });
+        server.createContext(WebApiClient.METRICS_STREAM_PATH, ex -> {
+            bodies.add(ex.getRequestBody().readAllBytes());
+            headers.add(ex.getRequestHeaders());
+            byte[] body = "{\"status\":\"ok\",\"lines\":1200,\"ok\":1199,\"ko\":1,\"errors\":[{\"line\":7,\"message\":\"platform is required\"}]}"
+                    .getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (var os = ex.getResponseBody()) { os.write(body); }
+        });
+        server.createContext("/", ex -> {
+            bodies.add(ex.getRequestBody().readAllBytes());
+            headers.add(ex.getRequestHeaders());
+            int n = calls.getAndIncrement();
+            keys.add(ex.getRequestHeaders().getFirst("Idempotency-Key"));
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(40);
+            } catch (InterruptedException ignored) {
+            }
+            inFlight.decrementAndGet();
+            ex.sendResponseHeaders(statusOfCall.applyAsInt(n), -1);
+            ex.close();
+        });
+        server.start();
+        return WebApiClient.create(WebClient.builder(), "http://127.0.0.1:" + server.getAddress().getPort(),
+                "k", "s", 10, inFlightWindow);
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) server.stop(0);
+    }
+
+    private static List<MetricsUpsertItem> items(int n) {
+        return IntStream.range(0, n).mapToObj(i -> MetricsUpsertItem.builder().platform("YOUTUBE").platform_video_id("v" + i).build()).toList();
+    }
+
+    @Test
+    void uploadsChunksWithinTheWindow_eachWithItsOwnIdempotencyKey() throws Exception {
+        WebApiClient client = start(3, n -> 200);
+
+        client.batchUpsertMetrics(items(95)).block();
+
+        assertEquals(10, calls.get());
+        assertEquals(3, peak.get());
+        assertEquals(10, keys.stream().distinct().count());
+    }
+
+    @Test
+    void transientErrorsAreRetriedWithTheSameKey_permanentOnesStopTheUpload() throws Exception {
+        WebApiClient client = start(1, n -> n == 0 ? 503 : (n == 2 ? 422 : 200));
+
+        var error = assertThrows(WebApiException.class, () -> client.batchUpsertMetrics(items(50)).block());
+
+        assertEquals(422, error.getStatus());
+        assertTrue(error.isPermanent());
+        assertEquals(3, calls.get());                      // 503 rejoué une fois, 422 non rejoué, chunks suivants annulés
+        assertEquals(keys.get(0), keys.get(1));
+        assertNotEquals(keys.get(1), keys.get(2));
+    }
+
+    @Test
+    void batchUpsertMetrics_returnsTheServerStatusOfEachSnapshot_atItsPositionInTheWholeList() throws Exception {
+        WebApiClient client = start(2, n -> 200);
+        server.createContext(WebApiClient.METRICS_PATH, ex -> {
+            int n = new ObjectMapper().readTree(ex.getRequestBody()).get("snapshots").size();
+            StringBuilder items = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                if (i > 0) items.append(',');
+                items.append("{\"i\":").append(i).append(",\"status\":\"").append(i == 1 ? "error" : "stored").append("\"}");
+            }
+            byte[] body = ("{\"status\":\"ok\",\"items\":[" + items + "]}").getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (var os = ex.getResponseBody()) { os.write(body); }
+        });
+
+        List<WebApiClient.ItemResult> results = client.batchUpsertMetrics(items(25)).block();
+
+        assertEquals(25, results.size());
+        assertEquals(IntStream.range(0, 25).boxed().toList(), results.stream().map(r -> r.i).toList());
+        assertEquals(List.of(1, 11, 21), results.stream().filter(r -> !r.accepted()).map(r -> r.i).toList());
+    }
+
+    @Test
+    void gzipBodies_whenTheApiAdvertisesIt_signedOverTheWireBytes() throws Exception {
+        WebApiClient client = start(1, n -> 200).enableRequestCompression(100);
+
+        client.batchUpsertMetrics(items(8)).block();
+
+        var h = headers.getFirst();
+        byte[] wire = bodies.getFirst();
+        assertEquals("gzip", h.getFirst("Content-Encoding"));
+        String json = new String(new GZIPInputStream(new ByteArrayInputStream(wire)).readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"snapshots\":["), json);
+
+        String s2s = "k\n" + h.getFirst("X-API-TS") + "\n" + h.getFirst("X-API-NONCE") + "\nPOST\n/api/v1/metrics:batchUpsert\n"
+                + ApiAuthSigner.sha256Hex(wire);
+        assertEquals(ApiAuthSigner.hmacBase64("s", s2s), h.getFirst("X-API-SIG"));
+    }
+
+    @Test
+    void overrides_largerThanTheThreshold_areSentGzipped() throws Exception {
+        WebApiClient client = start(1, n -> 200).enableRequestCompression(1024);
+        List<OverrideItem> links = IntStream.range(0, 10).mapToObj(i -> OverrideItem.builder()
+                .source_platform("FACEBOOK").source_platform_id("fb" + i).action("LINK").immediate(1)
+                .target_source_platform("YOUTUBE").target_source_id("yt1")
+                .video(Map.of("title", "Concert de l'harmonie", "description", "Reportage complet " + i))
+                .build()).toList();
+
+        client.applyOverrides(links).block();
+
+        assertEquals("gzip", headers.getFirst().getFirst("Content-Encoding"));
+        String json = new String(new GZIPInputStream(new ByteArrayInputStream(bodies.getFirst())).readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(json.length() > 1024, json);
+        var sent = new ObjectMapper().readTree(json);
+        assertEquals(10, sent.size());
+        assertEquals("fb0", sent.get(0).get("source_platform_id").asText());
+    }
+
+    @Test
+    void adaptiveBatching_splitsAChunkRejectedAsTooLarge_andShrinks(@TempDir Path dir) throws Exception {
+        BatchSizer sizer = new BatchSizer(new JsonStateStore(dir.resolve("state.json")), 1, 40, 0);
+        WebApiClient client = start(1, n -> n == 0 ? 413 : 200).enableAdaptiveBatching(sizer);
+
+        client.batchUpsertMetrics(items(8)).block();
+
+        assertEquals(3, calls.get());                                // 8 refusés (413), puis 4 + 4
+        assertEquals(5, sizer.endpoint("/api/v1/metrics:batchUpsert").size());   // 10 -> 4 (moitié redécoupée), puis +1 à latence stable
+    }
+
+    @Test
+    void adaptiveBatching_shrinksOncePerFailedChunk_notPerAttempt(@TempDir Path dir) throws Exception {
+        BatchSizer sizer = new BatchSizer(new JsonStateStore(dir.resolve("state.json")), 1, 40, 0);
+        WebApiClient client = start(1, n -> 503).enableAdaptiveBatching(sizer);
+
+        assertThrows(WebApiException.class, () -> client.batchUpsertMetrics(items(8)).block());
+
+        assertEquals(3, calls.get());                                // 1 tentative + 2 retries
+        assertEquals(5, sizer.endpoint("/api/v1/metrics:batchUpsert").size());
+    }
+
+    @Test
+    void streamMetrics_sendsChunkedGzipNdjson_closedByASignedTrailer() throws Exception {
+        WebApiClient client = start(1, n -> 200).enableRequestCompression(0);
+
+        WebApiClient.StreamResp resp = client.streamMetrics(Flux.fromIterable(items(1200))).block();
+
+        assertEquals(1, resp.ko);
+        assertEquals(7, resp.errors.getFirst().line);
+        var h = headers.getFirst();
+        assertEquals("chunked", h.getFirst("Transfer-Encoding"));
+        assertNull(h.getFirst("Content-Length"));
+        assertEquals("gzip", h.getFirst("Content-Encoding"));
+        assertEquals("application/x-ndjson", h.getFirst("Content-Type"));
+        String s2s = "k\n" + h.getFirst("X-API-TS") + "\n" + h.getFirst("X-API-NONCE") + "\nPOST\n" + WebApiClient.METRICS_STREAM_PATH
+                + "\n" + ApiAuthSigner.STREAM_BODY;
+        assertEquals(ApiAuthSigner.hmacBase64("s", s2s), h.getFirst("X-API-SIG"));
+
+        String ndjson = new String(new GZIPInputStream(new ByteArrayInputStream(bodies.getFirst())).readAllBytes(), StandardCharsets.UTF_8);
+        int cut = ndjson.lastIndexOf('\n', ndjson.length() - 2) + 1;
+        String lines = ndjson.substring(0, cut);
+        assertEquals(1200, lines.lines().count());
+        assertTrue(lines.startsWith("{\"platform\":\"YOUTUBE\",\"platform_video_id\":\"v0\"}\n"), lines.substring(0, 80));
+
+        var trailer = new ObjectMapper().readTree(ndjson.substring(cut)).get("_trailer");
+        String sha = ApiAuthSigner.sha256Hex(lines.getBytes(StandardCharsets.UTF_8));
+        assertEquals(1200, trailer.get("lines").asLong());
+        assertEquals(sha, trailer.get("sha256").asText());
+        assertEquals(ApiAuthSigner.hmacBase64("s", "k\n" + h.getFirst("X-API-NONCE") + "\n1200\n" + sha), trailer.get("sig").asText());
+    }
+}
@@ -0,0 +1,68 @@
+package ch.mno.ugo2.common;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+    @Test
+    void neverExceedsTheLimit_andReleasesEveryPermit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("t", 1, 3, 8, 50, 75);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        Flux.range(0, 40)
+                .flatMap(i -> limiter.run(() -> Mono.fromCallable(() -> peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                        .delayElement(Duration.ofMillis(5))
+                        .doOnTerminate(inFlight::decrementAndGet)), 32)
+                .blockLast();
+
+        assertEquals(3, peak.get());
+        assertEquals(0, limiter.stats().inFlight());
+        assertEquals(0, limiter.stats().waiting());
+    }
+
+    @Test
+    void additiveIncrease_multiplicativeDecrease() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("t", 1, 2, 4, 50, 75);
+
+        for (int i = 0; i < 2; i++) limiter.onUsage(10);   // une fenêtre de 2 réponses → +1
+        assertEquals(3, limiter.stats().limit());
+        for (int i = 0; i < 20; i++) limiter.onUsage(10);
+        assertEquals(4, limiter.stats().limit());          // plafond
+
+        limiter.onUsage(60);                               // zone neutre
+        assertEquals(4, limiter.stats().limit());
+        limiter.onUsage(80);
+        assertEquals(2, limiter.stats().limit());
+        limiter.onThrottled(Duration.ofMinutes(1));
+        assertEquals(1, limiter.stats().limit());
+        assertTrue(limiter.regainDelay().toSeconds() > 50);
+        assertEquals(2, limiter.stats().decreases());
+        assertEquals(80.0, limiter.stats().peakUsage());
+    }
+
+    @Test
+    void requestsAlreadyInFlight_decreaseOnlyOnce() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("t", 1, 8, 8, 50, 75);
+        Sinks.Empty<Void> done = Sinks.empty();
+        for (int i = 0; i < 8; i++) limiter.run(done::asMono).subscribe();
+        assertEquals(8, limiter.stats().inFlight());
+
+        for (int i = 0; i < 8; i++) limiter.onUsage(90);   // réponses parties au même rythme : une seule baisse
+        assertEquals(4, limiter.stats().limit());
+        limiter.onThrottled(null);                         // fenêtre suivante
+        assertEquals(2, limiter.stats().limit());
+        assertEquals(2, limiter.stats().decreases());
+
+        done.tryEmitEmpty();
+        assertEquals(0, limiter.stats().inFlight());
+    }
+}
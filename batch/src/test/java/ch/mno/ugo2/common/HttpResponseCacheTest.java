@@ -0,0 +1,194 @@
+package ch.mno.ugo2.common;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpResponseCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    static class TestClient extends AbstractClient {
+        final AtomicInteger calls = new AtomicInteger();
+        TestClient() { super(WebClient.builder().build()); }
+        Map<?, ?> fetch(URI uri) { return get(uri, null, Map.class).block(); }
+        Map<?, ?> fetch(URI uri, String etag) { return get(uri, etag, Map.class).block(); }
+
+        @Override
+        protected <T> Mono<T> throttle(Supplier<Mono<T>> call) {
+            calls.incrementAndGet();
+            return super.throttle(call);
+        }
+    }
+
+    private URI start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/items", ex -> {
+            requests.incrementAndGet();
+            if ("\"v1\"".equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+                return;
+            }
+            byte[] body = "{\"data\":[1,2,3]}".getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("ETag", "\"v1\"");
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+        });
+        server.createContext("/plain", ex -> {
+            requests.incrementAndGet();
+            byte[] body = "{\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+        });
+        server.start();
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/items?access_token=secret1");
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) server.stop(0);
+    }
+
+    @Test
+    void notModifiedIsServedFromCache_withSingleRoundTrip() throws Exception {
+        URI uri = start();
+        TestClient client = new TestClient();
+        client.setResponseCaches(new HttpResponseCaches(true, dir, 10, 1024 * 1024));
+
+        assertEquals(Map.of("data", java.util.List.of(1, 2, 3)), client.fetch(uri));
+        assertEquals(Map.of("data", java.util.List.of(1, 2, 3)), client.fetch(uri));
+
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+        var stats = client.cacheStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(16, stats.bytesSaved());
+    }
+
+    @Test
+    void notModifiedWithoutCachedEntry_isRefetchedThroughTheClientPath_andCached() throws Exception {
+        URI uri = start();
+        TestClient client = new TestClient();
+        client.setResponseCaches(new HttpResponseCaches(true, dir, 10, 1024 * 1024));
+
+        assertEquals(Map.of("data", List.of(1, 2, 3)), client.fetch(uri, "\"v1\""));   // ETag de l'appelant, cache vide
+
+        assertEquals(2, requests.get());
+        assertEquals(2, client.calls.get());                   // la seconde requête repasse par throttle (et le quota)
+        assertEquals(1, client.cacheStats().misses());
+        client.fetch(uri);
+        assertEquals(1, client.cacheStats().hits());           // réponse mémorisée au passage
+    }
+
+    @Test
+    void responsesWithoutETag_areNotCountedAsMisses() throws Exception {
+        URI uri = start();
+        TestClient client = new TestClient();
+        client.setResponseCaches(new HttpResponseCaches(true, dir, 10, 1024 * 1024));
+
+        client.fetch(uri.resolve("/plain"));
+        client.fetch(uri.resolve("/plain"));
+
+        assertEquals(0, client.cacheStats().misses());
+        assertEquals(0, client.cacheStats().hits());
+    }
+
+    @Test
+    void cachePersistsAcrossRuns_andIgnoresSecrets() throws Exception {
+        URI uri = start();
+        TestClient first = new TestClient();
+        first.setResponseCaches(new HttpResponseCaches(true, dir, 10, 1024 * 1024));
+        first.fetch(uri);
+
+        TestClient second = new TestClient();
+        second.setResponseCaches(new HttpResponseCaches(true, dir, 10, 1024 * 1024));
+        second.fetch(URI.create(uri.toString().replace("secret1", "secret2")));
+
+        assertEquals(1, notModified.get());
+        assertEquals(1, second.cacheStats().hits());
+    }
+
+    @Test
+    void keyOf_removesSecrets() {
+        assertEquals("https://x/v?part=a&id=b", HttpResponseCache.keyOf("https://x/v?part=a&key=K&id=b"));
+        assertEquals("https://x/v?part=a", HttpResponseCache.keyOf("https://x/v?part=a&access_token=T"));
+        assertEquals("https://x/v", HttpResponseCache.keyOf("https://x/v?access_token=T"));
+    }
+
+    @Test
+    void memoryTierEvictsLeastRecentlyUsed() {
+        HttpResponseCache cache = new HttpResponseCache("t", null, 2, 1024);
+        cache.store("a", "e", new byte[1]);
+        cache.store("b", "e", new byte[1]);
+        cache.lookup("a");
+        cache.store("c", "e", new byte[1]);
+
+        assertNotNull(cache.lookup("a"));
+        assertNull(cache.lookup("b"));
+        assertNotNull(cache.lookup("c"));
+    }
+
+    @Test
+    void diskTierIsBounded_bySize_thenByAge() throws Exception {
+        HttpResponseCache cache = new HttpResponseCache("t", dir, 1, 1024, 1100, Duration.ofDays(30));
+        for (String k : List.of("a", "b", "c")) cache.store(k, "e", new byte[300]);   // ~310 octets par fichier
+        Files.setLastModifiedTime(dir.resolve(fileOf(dir, "a")), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        cache.store("d", "e", new byte[300]);                                              // > 1100 : le moins récent part
+
+        HttpResponseCache reopened = new HttpResponseCache("t", dir, 1, 1024, 1100, Duration.ofDays(30));
+        assertNull(reopened.lookup("a"));
+        assertNotNull(reopened.lookup("d"));
+        try (var files = Files.list(dir)) {
+            assertEquals(3, files.count());
+        }
+
+        try (var files = Files.list(dir)) {
+            for (Path f : files.toList()) Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofDays(31).toMillis()));
+        }
+        assertNull(new HttpResponseCache("t", dir, 1, 1024, 1100, Duration.ofDays(30)).lookup("d"));   // expirés à l'ouverture
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /** Fichier disque d'une clé (seul fichier dont l'en-tête porte cette clé). */
+    private static String fileOf(Path dir, String key) throws Exception {
+        try (var files = Files.list(dir)) {
+            for (Path f : files.toList()) {
+                try (var in = new DataInputStream(Files.newInputStream(f))) {
+                    if (key.equals(in.readUTF())) return f.getFileName().toString();
+                }
+            }
+        }
+        throw new AssertionError(key);
+    }
+}
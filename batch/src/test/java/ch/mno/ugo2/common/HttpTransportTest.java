@@ -0,0 +1,81 @@
+package ch.mno.ugo2.common;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Transport partagé contre un stub local (HTTP/1.1 en clair : HTTP/2 n'est négocié que sur TLS).
+ */
+class HttpTransportTest {
+
+    private HttpServer server;
+    private final List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+    private HttpTransport transport;
+
+    private String start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", ex -> {
+            String ae = ex.getRequestHeaders().getFirst("Accept-Encoding");
+            acceptEncodings.add(String.valueOf(ae));
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            if (ae != null && ae.contains("gzip")) {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                try (GZIPOutputStream gz = new GZIPOutputStream(buf)) { gz.write(body); }
+                body = buf.toByteArray();
+                ex.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) server.stop(0);
+        if (transport != null) transport.close();
+    }
+
+    private static HttpTransport.Settings settings() {
+        return new HttpTransport.Settings(4, Map.of(), 100, Duration.ofSeconds(5),
+                Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ZERO,
+                2000, Duration.ofSeconds(5), true, true, 1024 * 1024, true);
+    }
+
+    @Test
+    void clientsOfTheSamePoolReuseConnections_andDecodeGzip() throws Exception {
+        String base = start();
+        transport = new HttpTransport(settings());
+        WebClient a = transport.builder("local").baseUrl(base).build();
+        WebClient b = transport.builder("local").baseUrl(base).build();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("{\"ok\":true}", a.get().uri("/x").retrieve().bodyToMono(String.class).block());
+            assertEquals("{\"ok\":true}", b.get().uri("/y").retrieve().bodyToMono(String.class).block());
+        }
+
+        assertTrue(acceptEncodings.stream().allMatch(e -> e.contains("gzip")), acceptEncodings.toString());
+        HttpTransport.Stats stats = transport.stats().get("local");
+        // 10 requêtes séquentielles : la connexion est rendue au pool de façon asynchrone, d'où au plus 2 sockets
+        assertTrue(stats.connectionsOpened() <= 2, "connections=" + stats.connectionsOpened());
+        assertEquals(0, stats.tlsHandshakes());
+        assertTrue(stats.bytesReceived() > 0);
+        assertEquals(4, stats.maxConnections());
+    }
+}
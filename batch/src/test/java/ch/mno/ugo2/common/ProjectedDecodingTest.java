@@ -0,0 +1,118 @@
+package ch.mno.ugo2.common;
+
+import ch.mno.ugo2.facebook.responses.FacebookPostsResponse;
+import ch.mno.ugo2.youtube.responses.PlaylistItemsResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Décodage en flux des réponses enregistrées (src/test/resources/payloads) vers les DTO projetés.
+ */
+class ProjectedDecodingTest {
+
+    private static final ObjectMapper M = new ObjectMapper().findAndRegisterModules();
+    private final AbstractClient client = new AbstractClient(WebClient.create()) {};
+
+    private static byte[] payload(String name) throws Exception {
+        try (var in = ProjectedDecodingTest.class.getResourceAsStream("/payloads/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Réponse découpée en petits buffers, comme reçue du réseau. */
+    private static ClientResponse response(byte[] body, int chunk) {
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < body.length; i += chunk) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(
+                    Arrays.copyOfRange(body, i, Math.min(body.length, i + chunk))));
+        }
+        return ClientResponse.create(HttpStatus.OK)
+                .header("Content-Type", "application/json")
+                .body(Flux.fromIterable(buffers))
+                .build();
+    }
+
+    @Test
+    void decodesRecordedPagesIntoProjectedDtos() throws Exception {
+        FacebookPostsResponse fb = client.readBody(response(payload("fb-published-posts.json"), 256), FacebookPostsResponse.class).block();
+        assertEquals(3, fb.getData().size());
+        var album = fb.getData().get(1).getAttachments().getData().getFirst();
+        assertEquals("2222222222222222", album.getSubattachments().getData().get(1).getTarget().getId());
+        assertEquals("video", fb.getData().getFirst().getAttachments().getData().getFirst().getMediaType());
+        assertEquals("QVFIUjFhUmZA2OWxB", fb.getPaging().getCursors().getAfter());
+
+        PlaylistItemsResponse yt = client.readBody(response(payload("yt-playlist-items.json"), 100), PlaylistItemsResponse.class).block();
+        assertEquals("OVb9Qx6rA8n3b0hZ2kq5oH7Yl0U", yt.getEtag());
+        assertEquals("EAAaBlBUOkNESQ", yt.getNextPageToken());
+        assertEquals(List.of("ABCDEF12345", "GHIJKL67890"), yt.getItems().stream().map(i -> i.getContentDetails().getVideoId()).toList());
+        assertEquals(Instant.parse("2025-10-05T08:12:44Z"), yt.getItems().get(1).getContentDetails().getVideoPublishedAt());
+
+        JsonNode tree = client.readBody(response(payload("yt-playlist-items.json"), 64), JsonNode.class).block();
+        assertEquals(812, tree.path("pageInfo").path("totalResults").asInt());
+    }
+
+    /**
+     * Octets alloués par page décodée : String + arbre + DTO (ancien chemin) contre flux → DTO projeté.
+     * Manuel : retirer @Disabled et lire la sortie standard.
+     */
+    @Test
+    @Disabled("manual benchmark")
+    void allocationBenchmark() throws Exception {
+        bench("published_posts x100", amplify(payload("fb-published-posts.json"), 34), FacebookPostsResponse.class);
+        bench("playlistItems x50", amplify(payload("yt-playlist-items.json"), 25), PlaylistItemsResponse.class);
+    }
+
+    private <T> void bench(String label, byte[] page, Class<T> type) throws Exception {
+        var mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int warmup = 2_000, runs = 5_000;
+        for (int i = 0; i < warmup; i++) { legacy(page, type); streamed(page, type); }
+
+        long a0 = mx.getCurrentThreadAllocatedBytes(), t0 = System.nanoTime();
+        for (int i = 0; i < runs; i++) legacy(page, type);
+        long a1 = mx.getCurrentThreadAllocatedBytes(), t1 = System.nanoTime();
+        for (int i = 0; i < runs; i++) streamed(page, type);
+        long a2 = mx.getCurrentThreadAllocatedBytes(), t2 = System.nanoTime();
+
+        System.out.printf("%s (%d bytes): legacy %d B/op %d us/op | streamed %d B/op %d us/op%n", label, page.length,
+                (a1 - a0) / runs, (t1 - t0) / runs / 1000, (a2 - a1) / runs, (t2 - t1) / runs / 1000);
+    }
+
+    private static <T> T legacy(byte[] page, Class<T> type) throws Exception {
+        String body = new String(page, StandardCharsets.UTF_8);
+        return M.treeToValue(M.readTree(body), type);
+    }
+
+    private <T> T streamed(byte[] page, Class<T> type) {
+        return client.readBody(response(page, 8192), type).block();
+    }
+
+    /** Page plus grande en répétant les éléments de "data"/"items". */
+    private static byte[] amplify(byte[] page, int times) throws Exception {
+        ObjectNode root = (ObjectNode) M.readTree(page);
+        String field = root.has("data") ? "data" : "items";
+        ArrayNode src = (ArrayNode) root.get(field);
+        ArrayNode out = M.createArrayNode();
+        for (int i = 0; i < times; i++) out.addAll(src.deepCopy());
+        root.set(field, out);
+        return M.writeValueAsBytes(root);
+    }
+}
@@ -0,0 +1,161 @@
+package ch.mno.ugo2.facebook;
+
+import ch.mno.ugo2.config.FacebookProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Graph API batch contre un stub local : une sous-réponse par sous-requête, dans l'ordre.
+ */
+class FacebookClientBatchTest {
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final List<Integer> subRequestsPerPost = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private volatile String appUsage;
+    private final AtomicInteger throttled = new AtomicInteger();
+
+    private FacebookClient start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", ex -> {
+            String form = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Map<String, String> params = new HashMap<>();
+            for (String kv : form.split("&")) {
+                String[] p = kv.split("=", 2);
+                params.put(p[0], URLDecoder.decode(p[1], StandardCharsets.UTF_8));
+            }
+            List<Map<String, String>> batch = om.readValue(params.get("batch"), List.class);
+            subRequestsPerPost.add(batch.size());
+
+            List<Object> out = new ArrayList<>();
+            for (Map<String, String> req : batch) {
+                String url = req.get("relative_url");
+                String id = url.split("/")[1].split("\\?")[0];
+                if (id.equals("bad")) {
+                    out.add(Map.of("code", 400, "body",
+                            "{\"error\":{\"message\":\"Unsupported get request\",\"type\":\"GraphMethodException\",\"code\":100}}"));
+                } else if (id.equals("slow") && url.endsWith("video_insights")) {
+                    out.add(null);
+                } else if (url.endsWith("video_insights")) {
+                    out.add(Map.of("code", 200, "body",
+                            "{\"data\":[{\"name\":\"total_video_views\",\"period\":\"lifetime\",\"values\":[{\"value\":42}]}]}"));
+                } else {
+                    out.add(Map.of("code", 200, "body",
+                            "{\"id\":\"" + id + "\",\"title\":\"T" + id + "\",\"created_time\":\"2025-10-01T10:00:00+0000\",\"length\":61.5}"));
+                }
+            }
+            if (throttled.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                byte[] body = "{\"error\":{\"message\":\"Application request limit reached\",\"code\":4}}".getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("X-App-Usage", "{\"call_count\":100,\"total_time\":20,\"total_cputime\":10}");
+                ex.sendResponseHeaders(429, body.length);
+                try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+                return;
+            }
+            byte[] body = params.get("batch").contains("/broken?") ? "<html>Bad gateway</html>".getBytes(StandardCharsets.UTF_8)
+                    : om.writeValueAsBytes(out);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            if (appUsage != null) ex.getResponseHeaders().set("X-App-Usage", appUsage);
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+        });
+        server.start();
+        return new FacebookClient(WebClient.builder().build(), "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stop() {
+        if (server != null) server.stop(0);
+    }
+
+    @Test
+    void packsTwentyFiveVideosPerPost_andDemuxesPerId() throws Exception {
+        FacebookClient client = start();
+        List<String> ids = IntStream.range(0, 60).mapToObj(i -> "v" + i).toList();
+
+        var out = client.videosWithInsights("v23.0", ids, "T", 2).collectList().block();
+
+        assertEquals(List.of(50, 50, 20), subRequestsPerPost);
+        assertEquals(ids, out.stream().map(FacebookClient.VideoWithInsights::id).toList());
+        var first = out.getFirst();
+        assertTrue(first.ok());
+        assertEquals("Tv0", first.video().title());
+        assertEquals(62, first.video().durationSecondsOrNull());
+        assertEquals(42L, FacebookCollectorService.toFlatMap(first.insights()).get("total_video_views"));
+    }
+
+    @Test
+    void subRequestErrorsOnlyAffectTheirVideo() throws Exception {
+        FacebookClient client = start();
+
+        var out = client.videosWithInsights("v23.0", List.of("a", "bad", "slow", "b"), "T", 1).collectList().block();
+
+        assertEquals(List.of(8), subRequestsPerPost);
+        assertTrue(out.get(0).ok());
+        assertInstanceOf(FacebookApiException.class, out.get(1).error());
+        assertEquals(100, ((FacebookApiException) out.get(1).error()).getCode());
+        assertFalse(out.get(2).ok());
+        assertTrue(out.get(3).ok());
+    }
+
+    @Test
+    void aFailedPost_onlyFailsTheVideosOfItsChunk() throws Exception {
+        FacebookClient client = start();
+        List<String> ids = new ArrayList<>(IntStream.range(0, 75).mapToObj(i -> "v" + i).toList());
+        ids.set(30, "broken");                                    // deuxième chunk sur trois
+
+        var out = client.videosWithInsights("v23.0", ids, "T", 1).collectList().block();
+
+        assertEquals(List.of(50, 50, 50), subRequestsPerPost);
+        assertEquals(ids, out.stream().map(FacebookClient.VideoWithInsights::id).toList());
+        assertTrue(out.subList(0, 25).stream().allMatch(FacebookClient.VideoWithInsights::ok));
+        assertTrue(out.subList(25, 50).stream().noneMatch(FacebookClient.VideoWithInsights::ok));
+        assertTrue(out.subList(50, 75).stream().allMatch(FacebookClient.VideoWithInsights::ok));
+    }
+
+    @Test
+    void highAppUsage_halvesConcurrency() throws Exception {
+        FacebookClient client = start();
+        FacebookProps props = new FacebookProps();
+        props.setInitialConcurrency(4);
+        client.setProps(props);
+        appUsage = "{\"call_count\":88,\"total_time\":12,\"total_cputime\":9}";
+
+        client.videosWithInsights("v23.0", List.of("a", "b"), "T", 8).collectList().block();
+
+        assertEquals(88.0, client.lastUsage().app());
+        assertEquals(-1.0, client.lastUsage().businessUseCase());
+        var stats = client.concurrencyStats();
+        assertEquals(2, stats.limit());
+        assertEquals(1, stats.decreases());
+        assertEquals(0, stats.inFlight());
+    }
+
+    @Test
+    void a429_decreasesConcurrencyOnce_thenIsRetried() throws Exception {
+        FacebookClient client = start();
+        FacebookProps props = new FacebookProps();
+        props.setInitialConcurrency(4);
+        client.setProps(props);
+        throttled.set(1);
+
+        var out = client.videosWithInsights("v23.0", List.of("a", "b"), "T", 8).collectList().block();
+
+        assertTrue(out.stream().allMatch(FacebookClient.VideoWithInsights::ok));
+        assertEquals(2, client.concurrencyStats().limit());
+        assertEquals(1, client.concurrencyStats().decreases());
+    }
+}
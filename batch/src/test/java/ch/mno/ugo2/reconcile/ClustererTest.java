@@ -0,0 +1,163 @@
+package ch.mno.ugo2.reconcile;
+
+import ch.mno.ugo2.config.AppProps;
+import ch.mno.ugo2.model.SourceVideo;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClustererTest {
+
+  private static final String[] SUBJECTS = {
+      "Conseil communal de Lausanne", "Fête de la musique à Vevey", "Interview du syndic", "Match du HC Lausanne",
+      "Marché de Noël de Montreux", "Portrait d'un vigneron de Lavaux", "Débat sur la mobilité douce",
+      "Inauguration de la nouvelle piscine", "Concert de l'harmonie municipale", "Course de l'Escalade",
+      "Visite du chantier du M3", "Les coulisses du Paléo", "Rencontre avec les pompiers volontaires",
+      "Budget 2024 présenté au législatif", "Festival des lumières", "Les jeunes et le climat",
+  };
+
+  /** Variantes d'un même contenu, telles que publiées par plateforme (casse, espaces, accents, suffixes). */
+  private static final String[] VARIANTS = {"%s", "%s | Épisode complet", "%S", "%s #shorts", "%s (teaser)"};
+
+  /** Jeu étiqueté : sujet × épisode, une variante par plateforme, dates proches ; label = sujet/épisode. */
+  private static List<SourceVideo> fixture(Map<SourceVideo, String> labels) {
+    Random r = new Random(42);
+    LocalDateTime t0 = LocalDateTime.of(2020, 1, 1, 18, 0);
+    List<SourceVideo> items = new ArrayList<>();
+    for (int s = 0; s < SUBJECTS.length; s++) {
+      for (int ep = 1; ep <= 6; ep++) {
+        String title = SUBJECTS[s] + " - épisode " + ep;
+        LocalDateTime at = t0.plusDays(s * 40L + ep * 7L);
+        int copies = 2 + r.nextInt(3);
+        for (int c = 0; c < copies; c++) {
+          String t = String.format(VARIANTS[r.nextInt(VARIANTS.length)], title);
+          if (c == 1) t = t.replace(" ", "  ").replace("é", "e");
+          SourceVideo v = video(t, "Reportage " + SUBJECTS[s] + ", épisode " + ep, at.plusHours(r.nextInt(30)));
+          items.add(v);
+          labels.put(v, s + "/" + ep);
+        }
+      }
+    }
+    Collections.shuffle(items, r);
+    return items;
+  }
+
+  private static SourceVideo video(String title, String desc, LocalDateTime at) {
+    SourceVideo v = new SourceVideo();
+    v.setTitle(title);
+    v.setDescription(desc);
+    v.setPublishedAt(at);
+    return v;
+  }
+
+  /** Chemin de référence : toutes les paires ; composantes en indices. */
+  private static Set<Set<Integer>> bruteForce(List<SourceVideo> items, MatchingScorer scorer, double threshold) {
+    int n = items.size();
+    int[] comp = new int[n];
+    Arrays.fill(comp, -1);
+    for (int i = 0; i < n; i++) {
+      if (comp[i] >= 0) continue;
+      Deque<Integer> dq = new ArrayDeque<>(List.of(i));
+      comp[i] = i;
+      while (!dq.isEmpty()) {
+        int u = dq.poll();
+        for (int v = 0; v < n; v++) {
+          if (comp[v] < 0 && scorer.score(items.get(u), items.get(v)) >= threshold) {
+            comp[v] = i;
+            dq.add(v);
+          }
+        }
+      }
+    }
+    Map<Integer, Set<Integer>> byComp = new HashMap<>();
+    for (int i = 0; i < n; i++) byComp.computeIfAbsent(comp[i], k -> new HashSet<>()).add(i);
+    return new HashSet<>(byComp.values());
+  }
+
+  private static Set<Set<Integer>> partition(List<SourceVideo> items, List<List<SourceVideo>> clusters) {
+    Map<SourceVideo, Integer> index = new IdentityHashMap<>();
+    for (int i = 0; i < items.size(); i++) index.put(items.get(i), i);
+    Set<Set<Integer>> out = new HashSet<>();
+    for (List<SourceVideo> c : clusters) {
+      Set<Integer> ids = new HashSet<>();
+      for (SourceVideo v : c) ids.add(index.get(v));
+      out.add(ids);
+    }
+    return out;
+  }
+
+  @Test
+  void blockedClusteringMatchesTheAllPairsReference() {
+    Map<SourceVideo, String> labels = new IdentityHashMap<>();
+    List<SourceVideo> items = fixture(labels);
+    AppProps.Reconcile cfg = new AppProps.Reconcile();
+    MatchingScorer scorer = new MatchingScorer(cfg);
+
+    List<List<SourceVideo>> clusters = new Clusterer(cfg).cluster(items, scorer);
+
+    assertEquals(items.size(), clusters.stream().mapToInt(List::size).sum());
+    assertEquals(bruteForce(items, scorer, cfg.threshold), partition(items, clusters));
+    for (String label : new HashSet<>(labels.values())) {                 // rappel : chaque contenu dans un seul cluster
+      assertEquals(1, clusters.stream().filter(c -> c.stream().anyMatch(v -> label.equals(labels.get(v)))).count(), label);
+    }
+  }
+
+  @Test
+  void parallelClusteringIsDeterministic_andEqualsTheSequentialResult() {
+    Random r = new Random(3);
+    List<SourceVideo> items = new ArrayList<>();
+    LocalDateTime t0 = LocalDateTime.of(2021, 6, 1, 0, 0);
+    for (int g = 0; g < 800; g++) {
+      String base = Integer.toString(g * 104729 + 7, 36) + " émission " + SUBJECTS[g % SUBJECTS.length];
+      for (int c = 0, copies = 1 + r.nextInt(6); c < copies; c++) {
+        String t = c % 2 == 0 ? base : base.toUpperCase() + " " + c;          // chaînes de variantes proches
+        items.add(video(t, r.nextBoolean() ? "" : "Description " + base, t0.plusHours(g * 5L + r.nextInt(48))));
+      }
+    }
+    Collections.shuffle(items, r);
+    AppProps.Reconcile cfg = new AppProps.Reconcile();
+    MatchingScorer scorer = new MatchingScorer(cfg);
+
+    List<List<Integer>> sequential = indices(items, new Clusterer(cfg.threshold, cfg.timeBonusHours, cfg.maxBlock, 1).cluster(items, scorer));
+    assertTrue(sequential.size() < items.size() && sequential.size() > 100, "clusters=" + sequential.size());
+    for (int run = 0; run < 5; run++) {
+      assertEquals(sequential, indices(items, new Clusterer(cfg.threshold, cfg.timeBonusHours, cfg.maxBlock, 4).cluster(items, scorer)));
+    }
+  }
+
+  private static List<List<Integer>> indices(List<SourceVideo> items, List<List<SourceVideo>> clusters) {
+    Map<SourceVideo, Integer> index = new IdentityHashMap<>();
+    for (int i = 0; i < items.size(); i++) index.put(items.get(i), i);
+    return clusters.stream().map(c -> c.stream().map(index::get).toList()).toList();
+  }
+
+  @Test
+  void bigBlocksOnlyPairItemsWithinTheTimeWindow() {
+    List<SourceVideo> items = new ArrayList<>();
+    LocalDateTime t0 = LocalDateTime.of(2019, 1, 1, 0, 0);
+    for (int i = 0; i < 5000; i++) {
+      items.add(video("Journal du jour", "", t0.plusHours(i * 12L)));      // titre répété : tous les blocs débordent
+    }
+    CandidateIndex index = new CandidateIndex(items, 72, 500);
+    assertEquals(5000L * 6 - 21, index.pairCount());                     // ±72h = 6 suivants, au lieu de 12.5M paires
+
+    List<Integer> seen = new ArrayList<>();
+    index.candidates(100, seen::add);
+    assertEquals(List.of(101, 102, 103, 104, 105, 106), seen);
+  }
+
+  @Test
+  void smallBlocksPairAllTheirMembers_whateverTheDates() {
+    List<SourceVideo> items = List.of(
+        video("Interview du syndic", "", LocalDateTime.of(2018, 1, 1, 0, 0)),
+        video("Interview  du syndic", "", LocalDateTime.of(2024, 1, 1, 0, 0)),
+        video("Match du HC", "", null));
+    CandidateIndex index = new CandidateIndex(items, 72, 500);
+    List<Integer> seen = new ArrayList<>();
+    index.candidates(0, seen::add);
+    assertEquals(List.of(1), seen);
+  }
+}
@@ -0,0 +1,68 @@
+package ch.mno.ugo2.reconcile;
+
+import ch.mno.ugo2.config.AppProps;
+import ch.mno.ugo2.model.SourceVideo;
+import org.apache.commons.text.similarity.JaroWinklerSimilarity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchingScorerTest {
+
+  private static String random(Random r, String alphabet, int maxLen) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = r.nextInt(maxLen + 1); i > 0; i--) sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+    return sb.toString();
+  }
+
+  /** Normalisation d'origine (trois regex). */
+  private static String regexNorm(String s) {
+    if (s == null) return "";
+    String t = s.toLowerCase();
+    t = t.replaceAll("[\u0300-\u036f]", "");
+    return t.replaceAll("[^a-z0-9]+", " ").trim().replaceAll("\s+", " ");
+  }
+
+  @Test
+  void normAndJaroWinklerMatchTheLibraryResults() {
+    Random r = new Random(7);
+    JaroWinklerSimilarity ref = new JaroWinklerSimilarity();
+    JaroWinkler jw = new JaroWinkler();
+    for (int i = 0; i < 20_000; i++) {
+      String raw = random(r, "abcAB \u00e9-\u0301  9_", 24);
+      assertEquals(regexNorm(raw), TextUtil.norm(raw), raw);
+
+      String a = random(r, "abcde ", 1 + r.nextInt(40)), b = random(r, "abcde ", 1 + r.nextInt(40));
+      if (r.nextBoolean()) b = a.substring(0, a.length() / 2) + b;
+      assertEquals(ref.apply(a, b), jw.apply(a.toCharArray(), b.toCharArray()), 1e-12, a + " / " + b);
+    }
+  }
+
+  @Test
+  void thresholdedScoreIsExactAboveTheThreshold_andNeverCrossesIt() {
+    AppProps.Reconcile cfg = new AppProps.Reconcile();
+    MatchingScorer scorer = new MatchingScorer(cfg);
+    Random r = new Random(11);
+    LocalDateTime t0 = LocalDateTime.of(2024, 3, 1, 12, 0);
+    for (int i = 0; i < 5_000; i++) {
+      SourceVideo a = video(random(r, "abcd ", 30), random(r, "abcd ", 60), t0);
+      SourceVideo b = video(r.nextBoolean() ? a.getTitle() + random(r, "ab", 3) : random(r, "abcd ", 30),
+          r.nextBoolean() ? a.getDescription() : random(r, "abcd ", 60), t0.plusHours(r.nextInt(100)));
+      double exact = scorer.score(a, b);
+      double fast = scorer.score(MatchFeatures.of(a), MatchFeatures.of(b), cfg.threshold);
+      if (exact >= cfg.threshold) assertEquals(exact, fast, 1e-12);
+      else assertTrue(fast < cfg.threshold, exact + " vs " + fast);
+    }
+  }
+
+  private static SourceVideo video(String title, String desc, LocalDateTime at) {
+    SourceVideo v = new SourceVideo();
+    v.setTitle(title);
+    v.setDescription(desc);
+    v.setPublishedAt(at);
+    return v;
+  }
+}
@@ -0,0 +1,36 @@
+package ch.mno.ugo2.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountFanOutTest {
+
+    @Test
+    void keepsOrderAndIsolatesFailures() {
+        var out = AccountFanOut.run(List.of("a", "boom", "c"), 3, acc -> {
+            if (acc.equals("boom")) throw new IllegalStateException("down");
+            return acc.toUpperCase();
+        });
+        assertEquals(List.of("a", "boom", "c"), out.stream().map(AccountFanOut.Outcome::account).toList());
+        assertEquals("A", out.get(0).value());
+        assertFalse(out.get(1).ok());
+        assertEquals("C", out.get(2).value());
+    }
+
+    @Test
+    void respectsConcurrencyBound() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AccountFanOut.run(List.of("1", "2", "3", "4", "5", "6"), 2, acc -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try { Thread.sleep(30); } catch (InterruptedException ignored) {}
+            inFlight.decrementAndGet();
+            return acc;
+        });
+        assertTrue(peak.get() <= 2, "peak=" + peak.get());
+    }
+}
@@ -0,0 +1,137 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.api.WebApiClient;
+import ch.mno.ugo2.api.WebApiException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IngestOutboxTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String SOURCES = WebApiClient.SOURCES_PATH;
+    private static final String METRICS = WebApiClient.METRICS_PATH;
+
+    private static List<Map<String, Object>> items(int n) {
+        return IntStream.range(0, n).mapToObj(i -> Map.<String, Object>of("platform_video_id", "v" + i)).toList();
+    }
+
+    @Test
+    void pendingChunksSurviveARestart_andAreReplayedWithTheirKeys_sourcesFirst() throws Exception {
+        List<IngestOutbox.Entry> enqueued = new ArrayList<>();
+        try (IngestOutbox outbox = new IngestOutbox(dir, 1 << 20)) {
+            enqueued.addAll(outbox.enqueue(SOURCES, "sources", items(5), 2));
+            enqueued.addAll(outbox.enqueue(METRICS, "snapshots", items(5), 5));
+            enqueued.addAll(outbox.enqueue(SOURCES, "sources", items(1), 2));
+        }
+
+        WebApiClient client = mock(WebApiClient.class);
+        List<String> sent = new ArrayList<>();
+        List<String> bodies = new ArrayList<>();
+        when(client.sendPrepared(anyString(), any(), anyInt(), anyString())).thenAnswer(inv -> {
+            sent.add(inv.getArgument(0) + " " + inv.getArgument(3));
+            bodies.add(new String((byte[]) inv.getArgument(1), StandardCharsets.UTF_8));
+            return Mono.empty();
+        });
+
+        try (IngestOutbox reopened = new IngestOutbox(dir, 1 << 20)) {
+            assertEquals(5, reopened.pending());
+            assertEquals(11, reopened.pendingItems());
+            IngestOutbox.Drained d = reopened.drain(client, 1).block();
+            assertEquals(new IngestOutbox.Drained(5, 0, 0), d);
+        }
+        List<String> expected = List.of(0, 1, 2, 4).stream().map(i -> SOURCES + " " + enqueued.get(i).key()).toList();
+        assertEquals(expected, sent.subList(0, 4));
+        assertEquals(METRICS + " " + enqueued.get(3).key(), sent.get(4));
+        assertEquals("{\"sources\":[{\"platform_video_id\":\"v0\"}]}", bodies.get(3));   // corps relu du segment
+
+        try (IngestOutbox empty = new IngestOutbox(dir, 1 << 20)) {
+            assertEquals(0, empty.pending());
+        }
+    }
+
+    @Test
+    void transientFailureStopsTheDrain_permanentRejectionIsSetAside_413IsSplit() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        try (IngestOutbox outbox = new IngestOutbox(dir, 1024)) {
+            outbox.enqueue(METRICS, "snapshots", items(30), 10);
+            when(client.sendPrepared(anyString(), any(), anyInt(), anyString()))
+                    .thenReturn(Mono.empty())
+                    .thenReturn(Mono.error(new WebApiException(METRICS, 503, "down")));
+            assertThrows(WebApiException.class, () -> outbox.drain(client, 1).block());
+            assertEquals(2, outbox.pending());
+        }
+
+        try (IngestOutbox outbox = new IngestOutbox(dir, 1024)) {
+            assertEquals(2, outbox.pending());
+            when(client.sendPrepared(anyString(), any(), anyInt(), anyString()))
+                    .thenReturn(Mono.error(new WebApiException(METRICS, 413, "")))
+                    .thenReturn(Mono.error(new WebApiException(METRICS, 422, "bad")));
+            assertEquals(new IngestOutbox.Drained(0, 1, 2), outbox.drain(client, 1).block());
+            assertTrue(Files.list(dir).anyMatch(p -> p.getFileName().toString().startsWith("dead-")));
+            assertEquals(10, outbox.pendingItems());                      // 10 items redécoupés en 5 + 5
+
+            when(client.sendPrepared(anyString(), any(), anyInt(), anyString())).thenReturn(Mono.empty());
+            assertEquals(new IngestOutbox.Drained(2, 0, 0), outbox.drain(client, 4).block());
+        }
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.filter(p -> p.getFileName().toString().startsWith("outbox-")).count());  // segments acquittés supprimés
+        }
+    }
+
+    @Test
+    void theAckListenerSeesTheItemsTheApiKept_andNeverASetAsideChunk() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        List<List<Integer>> acked = new ArrayList<>();
+        try (IngestOutbox outbox = new IngestOutbox(dir, 1 << 20)) {
+            outbox.setAckListener((e, body, accepted) -> acked.add(IntStream.range(0, e.items()).filter(accepted).boxed().toList()));
+            outbox.enqueue(METRICS, "snapshots", items(6), 3);
+            when(client.sendPrepared(anyString(), any(), anyInt(), anyString()))
+                    .thenReturn(Mono.just("{\"items\":[{\"i\":0,\"status\":\"stored\"},{\"i\":1,\"status\":\"error\"},"
+                            + "{\"i\":2,\"status\":\"skipped\"}]}"))
+                    .thenReturn(Mono.error(new WebApiException(METRICS, 422, "bad")));
+
+            assertEquals(new IngestOutbox.Drained(1, 1, 0), outbox.drain(client, 1).block());
+        }
+        assertEquals(List.of(List.of(0, 2)), acked);
+    }
+
+    @Test
+    void theStreamSpoolIsReplayedAfterAFailure_andATruncatedErrorListKeepsNothing() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        List<List<Integer>> acked = new ArrayList<>();
+        List<Long> streamed = new ArrayList<>();
+        try (IngestOutbox outbox = new IngestOutbox(dir, 1 << 20)) {
+            outbox.setAckListener((e, body, accepted) -> acked.add(IntStream.range(0, e.items()).filter(accepted).boxed().toList()));
+            outbox.enqueue(WebApiClient.METRICS_STREAM_PATH, "snapshots", items(5), 3);
+            WebApiClient.StreamResp truncated = new WebApiClient.StreamResp();
+            truncated.ko = 2000;
+            truncated.errors_truncated = true;
+            when(client.streamMetrics(any()))
+                    .thenReturn(Mono.error(new WebApiException(WebApiClient.METRICS_STREAM_PATH, 503, "down")))
+                    .thenAnswer(inv -> ((Flux<?>) inv.getArgument(0)).count()
+                            .doOnNext(streamed::add).thenReturn(truncated));
+
+            assertThrows(WebApiException.class, () -> outbox.drain(client, 1).block());
+            assertEquals(2, outbox.pending());
+            assertEquals(new IngestOutbox.Drained(2, 0, 0), outbox.drain(client, 1).block());
+        }
+        assertEquals(List.of(5L), streamed);                          // les deux chunks en une seule requête
+        assertEquals(List.of(List.of(), List.of()), acked);
+    }
+}
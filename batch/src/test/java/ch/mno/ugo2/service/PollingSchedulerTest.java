@@ -0,0 +1,67 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.config.PollingProps;
+import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.service.PollingPolicy.Tier;
+import ch.mno.ugo2.util.JsonStateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollingSchedulerTest {
+
+    @TempDir
+    Path dir;
+
+    private static SourceUpsertItem src(String id, Instant publishedAt) {
+        return SourceUpsertItem.builder().platform("YOUTUBE").platform_source_id(id)
+                .published_at(publishedAt.toString()).build();
+    }
+
+    @Test
+    void selectDue_skipsRecentlyPolled_perTier() {
+        PollingScheduler scheduler = new PollingScheduler(new JsonStateStore(dir.resolve("state.json")), new PollingProps());
+        Instant now = Instant.parse("2025-10-10T12:00:00Z");
+
+        // fresh (J1) polled 1h ago -> skip ; old (J30) polled 3h ago -> skip ; old2 polled 2 days ago -> due
+        scheduler.recordSnapshots(List.of(src("fresh", now.minus(Duration.ofDays(1)))), now.minus(Duration.ofHours(1)));
+        scheduler.recordSnapshots(List.of(src("old", now.minus(Duration.ofDays(30)))), now.minus(Duration.ofHours(3)));
+        scheduler.recordSnapshots(List.of(src("old2", now.minus(Duration.ofDays(30)))), now.minus(Duration.ofDays(2)));
+
+        var sel = scheduler.selectDue("YOUTUBE", List.of("fresh", "old", "old2", "unknown"), now);
+
+        assertEquals(List.of("unknown", "old2"), sel.due());
+        assertEquals(1, sel.skippedByTier().get(Tier.INTENSIVE));
+        assertEquals(1, sel.skippedByTier().get(Tier.DAILY));
+        assertEquals(2, sel.skipped());
+        assertEquals(Duration.ofHours(1), sel.nextDue());
+    }
+
+    @Test
+    void selectDue_intensiveFirst_andStatePersisted() {
+        Path file = dir.resolve("state.json");
+        PollingScheduler scheduler = new PollingScheduler(new JsonStateStore(file), new PollingProps());
+        Instant now = Instant.parse("2025-10-10T12:00:00Z");
+        scheduler.recordSnapshots(List.of(src("old", now.minus(Duration.ofDays(30)))), now.minus(Duration.ofDays(3)));
+        scheduler.recordSnapshots(List.of(src("new", now.minus(Duration.ofDays(1)))), now.minus(Duration.ofHours(5)));
+
+        PollingScheduler reloaded = new PollingScheduler(new JsonStateStore(file), new PollingProps());
+        assertEquals(List.of("new", "old"), reloaded.selectDue("YOUTUBE", List.of("old", "new"), now).due());
+    }
+
+    @Test
+    void selectDue_disabled_keepsEverything() {
+        PollingProps props = new PollingProps();
+        props.setEnabled(false);
+        PollingScheduler scheduler = new PollingScheduler(new JsonStateStore(dir.resolve("state.json")), props);
+        Instant now = Instant.now();
+        scheduler.recordSnapshots(List.of(src("a", now)), now);
+        assertEquals(List.of("a"), scheduler.selectDue("YOUTUBE", List.of("a"), now).due());
+    }
+}
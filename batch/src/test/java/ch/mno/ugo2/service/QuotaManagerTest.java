@@ -0,0 +1,98 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.config.AppProps;
+import ch.mno.ugo2.service.PollingPolicy.Tier;
+import ch.mno.ugo2.util.JsonStateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuotaManagerTest {
+
+    @TempDir
+    Path dir;
+
+    private static final Instant T0 = Instant.parse("2025-10-10T06:00:00Z");
+
+    private static AppProps.Budgets budgets(int yt) {
+        AppProps.Budgets b = new AppProps.Budgets();
+        b.ytCalls = yt;
+        b.weights.put("YOUTUBE.search", 100);
+        return b;
+    }
+
+    private QuotaManager manager(AppProps.Budgets b, Instant now) {
+        return new QuotaManager(b, new JsonStateStore(dir.resolve("state.json")), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void weightedCallsDrainTheBucket_andRefillOverTheDay() {
+        QuotaManager q = manager(budgets(240), T0);
+
+        assertTrue(q.tryAcquire("YOUTUBE", "search", 2));        // 200 unités
+        assertTrue(q.tryAcquire("YOUTUBE", "videos", 40));       // 40 unités
+        assertFalse(q.tryAcquire("YOUTUBE", "videos", 1));
+        assertThrows(QuotaExceededException.class, () -> q.acquire("YOUTUBE", "videos", 1));
+        assertEquals(240, q.usedToday("YOUTUBE"));
+        q.flush();
+
+        // 6h plus tard : un quart du budget est revenu, l'état a été relu depuis le store
+        QuotaManager later = manager(budgets(240), T0.plus(Duration.ofHours(6)));
+        assertEquals(60, later.available("YOUTUBE"), 0.01);
+        assertEquals(240, later.usedToday("YOUTUBE"));
+    }
+
+    @Test
+    void usageResetsOnANewDay() {
+        QuotaManager q = manager(budgets(100), T0);
+        q.tryAcquire("YOUTUBE", "videos", 10);
+        q.flush();
+        assertEquals(0, manager(budgets(100), T0.plus(Duration.ofDays(1))).usedToday("YOUTUBE"));
+    }
+
+    @Test
+    void bucketsArePersistedOnlyOnFlush() {
+        JsonStateStore store = new JsonStateStore(dir.resolve("state.json"));
+        QuotaManager q = new QuotaManager(budgets(100), store, Clock.fixed(T0, ZoneOffset.UTC));
+        for (int i = 0; i < 10; i++) q.acquire("YOUTUBE", "videos", 1);
+        assertNull(store.get(QuotaManager.SECTION, "YOUTUBE"));     // aucun enregistrement par appel
+
+        q.flush();
+        assertEquals(10L, ((Number) ((Map<?, ?>) store.get(QuotaManager.SECTION, "YOUTUBE")).get("usedToday")).longValue());
+    }
+
+    @Test
+    void notEnforced_countsButNeverBlocks() {
+        AppProps.Budgets b = budgets(1);
+        b.enforce = false;
+        QuotaManager q = manager(b, T0);
+        assertTrue(q.tryAcquire("YOUTUBE", "videos", 5));
+        assertEquals(5, q.usedToday("YOUTUBE"));
+    }
+
+    @Test
+    void plan_fundsHighPriorityTiersFirst() {
+        AppProps.Budgets b = new AppProps.Budgets();
+        b.fbCalls = 20;
+        QuotaManager q = manager(b, T0);
+        Map<Tier, Integer> due = new EnumMap<>(Map.of(Tier.INTENSIVE, 3, Tier.OFTEN, 4, Tier.DAILY, 10));
+
+        Map<Tier, Integer> plan = q.plan("FACEBOOK", due, 2, 2);   // 18 unités utiles → 9 vidéos
+
+        assertEquals(Map.of(Tier.INTENSIVE, 3, Tier.OFTEN, 4, Tier.DAILY, 2), plan);
+
+        var sel = new PollingScheduler.Selection(List.of("i1", "i2", "i3", "o1", "o2", "o3", "o4", "d1", "d2", "d3"),
+                new EnumMap<>(Map.of(Tier.INTENSIVE, 3, Tier.OFTEN, 4, Tier.DAILY, 3)), Map.of(), null);
+        assertEquals(List.of("i1", "i2", "i3", "o1", "o2", "o3", "o4", "d1", "d2"), q.affordable("FACEBOOK", sel, 2, 2));
+    }
+}
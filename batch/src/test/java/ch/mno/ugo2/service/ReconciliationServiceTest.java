@@ -0,0 +1,177 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.api.WebApiClient;
+import ch.mno.ugo2.config.AppProps;
+import ch.mno.ugo2.dto.OverrideItem;
+import ch.mno.ugo2.dto.SourceWindowItem;
+import ch.mno.ugo2.util.JournalStateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReconciliationServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private static SourceWindowItem row(long id, String platform, String pvid, Long videoId, String title, String at, int locked) {
+        SourceWindowItem r = new SourceWindowItem();
+        r.setId(id);
+        r.setPlatform(platform);
+        r.setPlatform_video_id(pvid);
+        r.setVideo_id(videoId);
+        r.setTitle(title);
+        r.setDescription("Reportage : " + title.replaceAll("[^A-Za-z ]", ""));
+        r.setPublished_at(at);
+        r.setIs_locked(locked);
+        r.setUpdated_at(at);
+        return r;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void clustersLocally_andSendsOnlyTheLinksThatChange() {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.fetchSourcesWindow(any(), any(), anyInt())).thenReturn(Flux.just(
+                row(1, "YOUTUBE", "yt1", 7L, "Concert de l'harmonie à Vevey", "2024-05-01 20:00:00", 0),
+                row(2, "FACEBOOK", "fb1", null, "Concert de l'harmonie a Vevey !", "2024-05-01 21:00:00", 0),
+                row(3, "INSTAGRAM", "ig1", null, "Match du HC Lausanne : les buts", "2024-05-03 10:00:00", 0),
+                row(4, "YOUTUBE", "yt2", null, "Match du HC Lausanne: les buts", "2024-05-03 12:00:00", 0),
+                row(5, "YOUTUBE", "yt3", 9L, "Budget communal présenté", "2024-05-04 09:00:00", 0),
+                row(6, "FACEBOOK", "fb2", 3L, "Match du HC Lausanne - les buts", "2024-05-03 11:00:00", 1)));
+        when(client.applyOverrides(anyList())).thenReturn(Mono.empty());
+
+        AppProps cfg = new AppProps();
+        cfg.getReconcile().mode = "local";
+        cfg.getReconcile().incremental = false;
+        ReconciliationService service = new ReconciliationService(cfg, client, null);
+        LocalDateTime to = LocalDateTime.of(2024, 5, 5, 0, 0);
+        ReconciliationService.ResultSummary r = service.reconcile(to.minusDays(7), to, false);
+
+        assertEquals(new ReconciliationService.ResultSummary(3, 1, 3, 1), r);
+        verify(client).fetchSourcesWindow("2024-04-25 00:00:00", "2024-05-05 00:00:00", ReconciliationService.PAGE_SIZE);
+        ArgumentCaptor<List<OverrideItem>> sent = ArgumentCaptor.forClass(List.class);
+        verify(client).applyOverrides(sent.capture());
+        List<OverrideItem> links = sent.getValue();
+
+        assertEquals(List.of("fb1", "ig1", "yt2"), links.stream().map(OverrideItem::getSource_platform_id).toList());
+        assertEquals(7L, links.get(0).getTarget_video_id());
+        for (OverrideItem l : links.subList(1, 3)) {                  // nouvelle vidéo : ancrée sur la plus ancienne source
+            assertNull(l.getTarget_video_id());
+            assertEquals("ig1", l.getTarget_source_id());
+            assertEquals("Match du HC Lausanne: les buts", l.getVideo().get("title"));   // titre YouTube prioritaire
+            assertEquals("2024-05-03 10:00:00", l.getVideo().get("published_at"));
+        }
+        assertTrue(links.stream().allMatch(l -> "LINK".equals(l.getAction()) && l.getImmediate() == 1));
+    }
+
+    @Test
+    void dryRunSendsNothing() {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.fetchSourcesWindow(any(), any(), anyInt())).thenReturn(Flux.just(
+                row(1, "YOUTUBE", "yt1", null, "Festival des lumières", "2024-05-01 20:00:00", 0)));
+        ReconciliationService service = new ReconciliationService(new AppProps(), client, null);
+
+        assertEquals(new ReconciliationService.ResultSummary(1, 1, 1, 0), service.reconcile(null, null, true));
+        verify(client, never()).applyOverrides(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void incremental_scoresOnlyNewSources_againstThePersistedIndex() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.applyOverrides(anyList())).thenReturn(Mono.empty());
+        AppProps cfg = new AppProps();
+        cfg.getReconcile().mode = "local";
+        Path file = dir.resolve("state.journal");
+
+        // bootstrap : tout est lu, rien ne change (sources déjà rattachées)
+        when(client.fetchSourcesUpdatedSince(isNull(), anyInt())).thenReturn(Flux.just(
+                row(1, "YOUTUBE", "yt1", 7L, "Concert de l'harmonie à Vevey", "2024-05-01 20:00:00", 0),
+                row(5, "YOUTUBE", "yt3", 9L, "Budget communal présenté", "2024-05-04 09:00:00", 0)));
+        try (JournalStateStore store = new JournalStateStore(file)) {
+            assertEquals(new ReconciliationService.ResultSummary(2, 0, 0, 0),
+                    new ReconciliationService(cfg, client, store).reconcile(null, null, false));
+        }
+        verify(client, never()).applyOverrides(anyList());
+
+        // run suivant (index relu du journal) : seules les sources modifiées depuis le watermark arrivent
+        when(client.fetchSourcesUpdatedSince(eq("2024-05-04 09:00:00"), anyInt())).thenReturn(Flux.just(
+                row(5, "YOUTUBE", "yt3", 9L, "Budget communal présenté", "2024-05-04 09:00:00", 0),
+                row(2, "FACEBOOK", "fb1", null, "Concert de l'harmonie a Vevey !", "2024-05-05 08:00:00", 0),
+                row(3, "INSTAGRAM", "ig1", null, "Match du HC Lausanne : les buts", "2024-05-05 10:00:00", 0)));
+        try (JournalStateStore store = new JournalStateStore(file)) {
+            ReconciliationService service = new ReconciliationService(cfg, client, store);
+            assertEquals(new ReconciliationService.ResultSummary(2, 1, 2, 0), service.reconcile(null, null, false));
+            assertEquals("2024-05-05 10:00:00", store.get("reconcile.meta", "watermark"));
+        }
+        ArgumentCaptor<List<OverrideItem>> sent = ArgumentCaptor.forClass(List.class);
+        verify(client).applyOverrides(sent.capture());
+        List<OverrideItem> links = sent.getValue();
+        assertEquals(List.of("fb1", "ig1"), links.stream().map(OverrideItem::getSource_platform_id).toList());
+        assertEquals(7L, links.get(0).getTarget_video_id());
+        assertNull(links.get(1).getTarget_video_id());
+        assertEquals("ig1", links.get(1).getTarget_source_id());
+    }
+
+    @Test
+    void incremental_failedSend_isRetriedOnTheNextRun() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.fetchSourcesUpdatedSince(any(), anyInt())).thenReturn(Flux.just(
+                row(2, "FACEBOOK", "fb1", null, "Festival des lumières", "2024-05-05 08:00:00", 0)));
+        when(client.applyOverrides(anyList()))
+                .thenReturn(Mono.error(new IllegalStateException("HTTP 503")))
+                .thenReturn(Mono.empty());
+        AppProps cfg = new AppProps();
+        cfg.getReconcile().mode = "local";
+
+        try (JournalStateStore store = new JournalStateStore(dir.resolve("state.journal"))) {
+            ReconciliationService service = new ReconciliationService(cfg, client, store);
+            assertThrows(IllegalStateException.class, () -> service.reconcile(null, null, false));
+            assertNull(store.get("reconcile.meta", "watermark"));
+            assertEquals(new ReconciliationService.ResultSummary(1, 1, 1, 0), service.reconcile(null, null, false));
+        }
+        verify(client, times(2)).fetchSourcesUpdatedSince(isNull(), anyInt());
+    }
+
+    @Test
+    void incremental_evictsInactiveSources_andThoseMissingFromASweep() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        AppProps cfg = new AppProps();
+        cfg.getReconcile().mode = "local";
+        SourceWindowItem yt1 = row(1, "YOUTUBE", "yt1", 7L, "Concert de l'harmonie à Vevey", "2024-05-01 20:00:00", 0);
+        SourceWindowItem yt3 = row(5, "YOUTUBE", "yt3", 9L, "Budget communal présenté", "2024-05-02 09:00:00", 0);
+        SourceWindowItem fb2 = row(6, "FACEBOOK", "fb2", 4L, "Match du HC Lausanne", "2024-05-03 11:00:00", 0);
+        SourceWindowItem yt3Off = row(5, "YOUTUBE", "yt3", 9L, "Budget communal présenté", "2024-05-04 09:00:00", 0);
+        yt3Off.setIs_active(0);
+        when(client.fetchSourcesUpdatedSince(eq("2024-05-03 11:00:00"), anyInt())).thenReturn(Flux.just(yt3Off));
+        when(client.fetchSourcesUpdatedSince(isNull(), anyInt()))
+                .thenReturn(Flux.just(yt1, yt3, fb2))
+                .thenReturn(Flux.just(yt1));                                     // balayage : fb2 supprimée côté web
+
+        try (JournalStateStore store = new JournalStateStore(dir.resolve("state.journal"))) {
+            ReconciliationService service = new ReconciliationService(cfg, client, store);
+            service.reconcile(null, null, false);
+            assertEquals(3, store.entries("reconcile").size());
+
+            service.reconcile(null, null, false);                                // yt3 désactivée
+            assertEquals(Set.of("YOUTUBE:yt1", "FACEBOOK:fb2"), store.entries("reconcile").keySet());
+
+            cfg.getReconcile().sweepHours = 0;
+            service.reconcile(null, null, false);
+            assertEquals(Set.of("YOUTUBE:yt1"), store.entries("reconcile").keySet());
+        }
+        verify(client, never()).applyOverrides(anyList());
+    }
+}
@@ -0,0 +1,74 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.config.FacebookProps;
+import ch.mno.ugo2.config.InstagramProps;
+import ch.mno.ugo2.config.PollingProps;
+import ch.mno.ugo2.config.YouTubeProps;
+import ch.mno.ugo2.dto.MetricsUpsertItem;
+import ch.mno.ugo2.util.JsonStateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFilterTest {
+
+    @TempDir
+    Path dir;
+
+    private SnapshotFilter filter() {
+        return new SnapshotFilter(new JsonStateStore(dir.resolve("state.json")), new PollingProps(),
+                new YouTubeProps(), new FacebookProps(), new InstagramProps());
+    }
+
+    private static MetricsUpsertItem m(String id, long views, long likes, Instant at) {
+        return MetricsUpsertItem.builder().platform("YOUTUBE").platform_video_id(id)
+                .views_native(views).likes(likes).snapshot_at(at).build();
+    }
+
+    @Test
+    void dropsUnchangedAndSmallDeltas_keepsSignificantOnes() {
+        SnapshotFilter f = filter();
+        Instant t0 = Instant.parse("2025-10-10T08:00:00Z");
+        f.commit(List.of(m("a", 100_000, 50, t0), m("b", 100_000, 50, t0), m("c", 100_000, 50, t0), m("d", 100, 1, t0)), t0);
+
+        Instant t1 = t0.plus(Duration.ofHours(2));
+        var kept = f.select(List.of(
+                m("a", 100_000, 50, t1),   // identique -> drop
+                m("b", 100_005, 50, t1),   // +5 (< 10 abs, < 1%) -> drop
+                m("c", 100_000, 51, t1),   // like en plus -> keep
+                m("d", 101, 1, t1),        // +1% -> keep
+                m("new", 1, 0, t1)         // première mesure -> keep
+        ), t1);
+
+        assertEquals(List.of("c", "d", "new"), kept.stream().map(MetricsUpsertItem::getPlatform_video_id).toList());
+    }
+
+    @Test
+    void dailyFloorSendsOneKeepAlivePerDay() {
+        SnapshotFilter f = filter();
+        Instant day1 = Instant.parse("2025-10-10T22:00:00Z");
+        f.commit(List.of(m("a", 1000, 5, day1)), day1);
+
+        Instant sameDay = day1.plus(Duration.ofMinutes(90));
+        Instant nextDay = day1.plus(Duration.ofHours(3));
+        assertFalse(f.isSignificant(m("a", 1000, 5, sameDay.minus(Duration.ofHours(1))), sameDay));
+        assertTrue(f.isSignificant(m("a", 1000, 5, nextDay), nextDay));
+    }
+
+    @Test
+    void disabled_keepsEverything() {
+        PollingProps p = new PollingProps();
+        p.setParsimony(false);
+        SnapshotFilter f = new SnapshotFilter(new JsonStateStore(dir.resolve("state.json")), p,
+                new YouTubeProps(), new FacebookProps(), new InstagramProps());
+        Instant t = Instant.parse("2025-10-10T08:00:00Z");
+        f.commit(List.of(m("a", 1, 1, t)), t);
+        assertEquals(1, f.select(List.of(m("a", 1, 1, t)), t).size());
+    }
+}
@@ -0,0 +1,211 @@
+package ch.mno.ugo2.service;
+
+import ch.mno.ugo2.api.WebApiClient;
+import ch.mno.ugo2.api.WebApiException;
+import ch.mno.ugo2.config.ApiClientConfig;
+import ch.mno.ugo2.config.FacebookProps;
+import ch.mno.ugo2.config.InstagramProps;
+import ch.mno.ugo2.config.PollingProps;
+import ch.mno.ugo2.config.YouTubeProps;
+import ch.mno.ugo2.dto.MetricsUpsertItem;
+import ch.mno.ugo2.dto.SourceUpsertItem;
+import ch.mno.ugo2.dto.SourceWithMetrics;
+import ch.mno.ugo2.util.JsonStateStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WebApiSinkServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private static Flux<SourceWithMetrics> items(int n) {
+        return Flux.fromStream(IntStream.range(0, n).mapToObj(i -> new SourceWithMetrics(
+                SourceUpsertItem.builder().platform("YOUTUBE").platform_source_id("v" + i).build(),
+                MetricsUpsertItem.builder().platform("YOUTUBE").platform_video_id("v" + i).build())));
+    }
+
+    private WebApiSinkService sink(WebApiClient client, int maxBatch, boolean streaming) {
+        return sink(client, maxBatch, streaming, false);
+    }
+
+    private WebApiSinkService sink(WebApiClient client, int maxBatch, boolean streaming, boolean metricsStream) {
+        ApiClientConfig.ApiProps p = new ApiClientConfig.ApiProps();
+        p.setMaxBatch(maxBatch);
+        p.setStreaming(streaming);
+        p.setMetricsStream(metricsStream);
+        PollingProps polling = new PollingProps();
+        polling.setParsimony(false);
+        SnapshotFilter filter = new SnapshotFilter(new JsonStateStore(dir.resolve("state.json")), polling,
+                new YouTubeProps(), new FacebookProps(), new InstagramProps());
+        return new WebApiSinkService(client, p, filter);
+    }
+
+    @Test
+    void pushesInMaxBatchWindows() {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.batchUpsertSources(anyList())).thenReturn(Mono.empty());
+        when(client.batchUpsertMetrics(anyList())).thenReturn(Mono.empty());
+        List<Integer> windows = new ArrayList<>();
+
+        int pushed = sink(client, 2, true).pushStream("YT", items(5), s -> windows.add(s.size())).block();
+
+        assertEquals(5, pushed);
+        assertEquals(List.of(2, 2, 1), windows);
+        verify(client, times(3)).batchUpsertMetrics(anyList());
+    }
+
+    @Test
+    void keepsWindowsAlreadyAcceptedWhenALaterPushFails() {
+        WebApiClient client = mock(WebApiClient.class);
+        AtomicInteger calls = new AtomicInteger();
+        when(client.batchUpsertSources(anyList())).thenReturn(Mono.empty());
+        when(client.batchUpsertMetrics(anyList())).thenAnswer(inv ->
+                calls.incrementAndGet() == 3 ? Mono.error(new RuntimeException("API down")) : Mono.empty());
+        List<Integer> windows = new ArrayList<>();
+
+        assertThrows(RuntimeException.class,
+                () -> sink(client, 2, true).pushStream("YT", items(6), s -> windows.add(s.size())).block());
+        assertEquals(List.of(2, 2), windows);
+    }
+
+    @Test
+    void onlySnapshotsStoredOrSkippedByTheServer_areRememberedAsSent() {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.batchUpsertSources(anyList())).thenReturn(Mono.empty());
+        when(client.batchUpsertMetrics(anyList())).thenAnswer(inv -> {
+            List<WebApiClient.ItemResult> results = new ArrayList<>();
+            for (int i = 0; i < ((List<?>) inv.getArgument(0)).size(); i++) {
+                WebApiClient.ItemResult r = new WebApiClient.ItemResult();
+                r.i = i;
+                r.status = i == 1 ? "error" : (i == 2 ? "skipped" : "stored");
+                results.add(r);
+            }
+            return Mono.just(results);
+        });
+        PollingProps polling = new PollingProps();
+        JsonStateStore store = new JsonStateStore(dir.resolve("state.json"));
+        SnapshotFilter filter = new SnapshotFilter(store, polling, new YouTubeProps(), new FacebookProps(), new InstagramProps());
+        ApiClientConfig.ApiProps p = new ApiClientConfig.ApiProps();
+        p.setMaxBatch(10);
+
+        new WebApiSinkService(client, p, filter).pushStream("YT", items(3), null).block();
+
+        assertEquals(List.of("YOUTUBE:v0", "YOUTUBE:v2"), store.entries(SnapshotFilter.SECTION).keySet().stream().sorted().toList());
+    }
+
+    @Test
+    void nonStreamingPushesOnceAtTheEnd() {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.batchUpsertSources(anyList())).thenReturn(Mono.empty());
+        when(client.batchUpsertMetrics(anyList())).thenReturn(Mono.empty());
+        List<Integer> windows = new ArrayList<>();
+
+        int pushed = sink(client, 2, false).pushStream("YT", items(5), s -> windows.add(s.size())).block();
+
+        assertEquals(5, pushed);
+        assertEquals(List.of(5), windows);
+    }
+
+    @Test
+    void withTheOutbox_anApiOutageKeepsTheCollection_forTheNextDrain() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.chunkSize(anyString())).thenReturn(10);
+        when(client.sendPrepared(anyString(), any(), anyInt(), anyString()))
+                .thenReturn(Mono.error(new RuntimeException("API down")));
+        List<Integer> windows = new ArrayList<>();
+        try (IngestOutbox outbox = new IngestOutbox(dir.resolve("outbox"), 1 << 20)) {
+            WebApiSinkService sink = sink(client, 2, true);
+            sink.setOutbox(outbox);
+
+            assertEquals(5, sink.pushStream("YT", items(5), s -> windows.add(s.size())).block());
+            assertEquals(List.of(2, 2, 1), windows);
+            assertEquals(6, outbox.pending());                      // sources + métriques de 3 fenêtres
+
+            when(client.sendPrepared(anyString(), any(), anyInt(), anyString())).thenReturn(Mono.empty());
+            assertEquals(0, sink.drainBacklog(0).pending());
+        }
+    }
+
+    @Test
+    void withTheOutbox_snapshotsAreRememberedOnAck_notWhenTheirChunkIsSetAside() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.chunkSize(anyString())).thenReturn(10);
+        when(client.sendPrepared(eq(WebApiClient.SOURCES_PATH), any(), anyInt(), anyString())).thenReturn(Mono.empty());
+        when(client.sendPrepared(eq(WebApiClient.METRICS_PATH), any(), anyInt(), anyString()))
+                .thenReturn(Mono.error(new WebApiException(WebApiClient.METRICS_PATH, 422, "bad")))
+                .thenReturn(Mono.just("{\"items\":[{\"i\":0,\"status\":\"stored\"},{\"i\":1,\"status\":\"error\"}]}"));
+        JsonStateStore store = new JsonStateStore(dir.resolve("state.json"));
+        SnapshotFilter filter = new SnapshotFilter(store, new PollingProps(), new YouTubeProps(), new FacebookProps(), new InstagramProps());
+        ApiClientConfig.ApiProps p = new ApiClientConfig.ApiProps();
+        p.setMaxBatch(2);
+        try (IngestOutbox outbox = new IngestOutbox(dir.resolve("outbox"), 1 << 20)) {
+            WebApiSinkService sink = new WebApiSinkService(client, p, filter);
+            sink.setOutbox(outbox);
+
+            sink.pushStream("YT", items(4), null).block();
+
+            assertEquals(0, outbox.pending());
+            assertEquals(List.of("YOUTUBE:v2"), List.copyOf(store.entries(SnapshotFilter.SECTION).keySet()));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void metricsStream_spoolsSnapshotsDuringCollection_andStreamsThemFromDiskOnceItEnds() throws Exception {
+        WebApiClient client = mock(WebApiClient.class);
+        when(client.chunkSize(anyString())).thenReturn(10);
+        List<String> calls = new CopyOnWriteArrayList<>();
+        when(client.sendPrepared(anyString(), any(), anyInt(), anyString())).thenAnswer(inv -> {
+            calls.add("sources:" + inv.getArgument(2));
+            return Mono.empty();
+        });
+        List<Integer> windows = new ArrayList<>();
+        when(client.streamMetrics(any())).thenAnswer(inv -> ((Flux<MetricsUpsertItem>) inv.getArgument(0))
+                .doOnNext(m -> calls.add("line:" + m.getPlatform_video_id()))
+                .count()
+                .map(n -> {
+                    assertEquals(List.of(2, 2, 1), windows);       // flux ouvert après la collecte
+                    WebApiClient.StreamResp r = new WebApiClient.StreamResp();
+                    r.lines = n;
+                    r.ok = n - 1;
+                    r.ko = 1;
+                    WebApiClient.LineError err = new WebApiClient.LineError();
+                    err.line = 2;
+                    r.errors = List.of(err);
+                    return r;
+                }));
+        JsonStateStore store = new JsonStateStore(dir.resolve("state.json"));
+        SnapshotFilter filter = new SnapshotFilter(store, new PollingProps(), new YouTubeProps(), new FacebookProps(), new InstagramProps());
+        ApiClientConfig.ApiProps p = new ApiClientConfig.ApiProps();
+        p.setMaxBatch(2);
+        p.setMetricsStream(true);
+        try (IngestOutbox outbox = new IngestOutbox(dir.resolve("outbox"), 1 << 20)) {
+            WebApiSinkService sink = new WebApiSinkService(client, p, filter);
+            sink.setOutbox(outbox);
+
+            int pushed = sink.pushStream("YT", items(5), s -> windows.add(s.size())).block();
+
+            assertEquals(5, pushed);
+            assertEquals(0, outbox.pending());
+        }
+        assertEquals(List.of("sources:2", "sources:2", "sources:1", "line:v0", "line:v1", "line:v2", "line:v3", "line:v4"), calls);
+        verify(client, times(1)).streamMetrics(any());
+        verify(client, never()).batchUpsertMetrics(anyList());
+        assertEquals(List.of("YOUTUBE:v0", "YOUTUBE:v2", "YOUTUBE:v3", "YOUTUBE:v4"),
+                store.entries(SnapshotFilter.SECTION).keySet().stream().sorted().toList());   // ligne 2 (v1) refusée
+    }
+}
@@ -0,0 +1,47 @@
+package ch.mno.ugo2.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppendLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replay_crossesMappingWindows_withRecordsLargerThanAWindow() throws IOException {
+        Path file = dir.resolve("log");
+        List<String> written = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        try (AppendLog log = new AppendLog(file)) {
+            log.open(b -> {});
+            for (int i = 0; i < 50; i++) {
+                String s = ("r" + i + "-").repeat(1 + i % 7 * 5);
+                written.add(s);
+                offsets.add(log.append(s.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        List<String> read = new ArrayList<>();
+        List<Long> readOffsets = new ArrayList<>();
+        try (AppendLog log = new AppendLog(file, 32)) {
+            log.openWithOffsets((payload, offset) -> {
+                byte[] b = new byte[payload.remaining()];
+                payload.get(b);
+                read.add(new String(b, StandardCharsets.UTF_8));
+                readOffsets.add(offset);
+            });
+            assertEquals(50, log.records());
+        }
+        assertEquals(written, read);
+        assertEquals(offsets, readOffsets);
+    }
+}
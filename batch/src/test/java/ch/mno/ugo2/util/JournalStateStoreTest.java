@@ -0,0 +1,87 @@
+package ch.mno.ugo2.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalStateStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replay_lastWriteWins_andDeletes() throws IOException {
+        Path file = dir.resolve("state.journal");
+        try (JournalStateStore s = new JournalStateStore(file)) {
+            s.setEtag("YOUTUBE:pl1", "e1");
+            s.setEtag("YOUTUBE:pl1", "e2");
+            s.put("polling", "YOUTUBE:a", Map.of("lastSnapshotAt", "2025-10-10T10:00:00Z"));
+            s.put("polling", "YOUTUBE:b", "x");
+            s.remove("polling", "YOUTUBE:b");
+            s.save();
+        }
+        try (JournalStateStore s = new JournalStateStore(file)) {
+            assertEquals("e2", s.getEtag("YOUTUBE:pl1"));
+            assertEquals(Map.of("lastSnapshotAt", "2025-10-10T10:00:00Z"), s.get("polling", "YOUTUBE:a"));
+            assertNull(s.get("polling", "YOUTUBE:b"));
+        }
+    }
+
+    @Test
+    void tornTail_isDropped_andLogStaysAppendable() throws IOException {
+        Path file = dir.resolve("state.journal");
+        try (JournalStateStore s = new JournalStateStore(file)) {
+            s.put("etag", "k1", "v1");
+            s.save();
+        }
+        // crash au milieu d'un enregistrement : header complet, payload partiel
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, '{', '"'}, StandardOpenOption.APPEND);
+
+        try (JournalStateStore s = new JournalStateStore(file)) {
+            assertEquals("v1", s.get("etag", "k1"));
+            s.put("etag", "k2", "v2");
+            s.save();
+        }
+        try (JournalStateStore s = new JournalStateStore(file)) {
+            assertEquals("v1", s.get("etag", "k1"));
+            assertEquals("v2", s.get("etag", "k2"));
+        }
+    }
+
+    @Test
+    void compact_keepsOnlyLiveState() throws IOException {
+        Path file = dir.resolve("state.journal");
+        try (JournalStateStore s = new JournalStateStore(file)) {
+            for (int i = 0; i < 1000; i++) s.put("checkpoint", "FACEBOOK:page", "cursor-" + i);
+            long before = Files.size(file);
+            s.compact();
+            assertTrue(Files.size(file) < before / 100);
+            s.put("checkpoint", "FACEBOOK:page2", "c");
+        }
+        try (JournalStateStore s = new JournalStateStore(file)) {
+            assertEquals("cursor-999", s.get("checkpoint", "FACEBOOK:page"));
+            assertEquals("c", s.get("checkpoint", "FACEBOOK:page2"));
+        }
+    }
+
+    @Test
+    void legacyJson_isImportedOnce() throws IOException {
+        Path legacy = dir.resolve("state.json");
+        Files.writeString(legacy, "{\"etag\":{\"YOUTUBE:pl1\":\"old\"}}");
+        Path file = dir.resolve("state.journal");
+        try (JournalStateStore s = new JournalStateStore(file, legacy, 4)) {
+            assertEquals("old", s.getEtag("YOUTUBE:pl1"));
+            s.setEtag("YOUTUBE:pl1", "new");
+        }
+        try (JournalStateStore s = new JournalStateStore(file, legacy, 4)) {
+            assertEquals("new", s.getEtag("YOUTUBE:pl1"));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ch.mno.ugo2.youtube;
+
+import ch.mno.ugo2.config.DiscoveryProps;
+import ch.mno.ugo2.config.PollingProps;
+import ch.mno.ugo2.config.YouTubeProps;
+import ch.mno.ugo2.service.PollingScheduler;
+import ch.mno.ugo2.util.JsonStateStore;
+import ch.mno.ugo2.youtube.responses.PlaylistItemsResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class YouTubeIncrementalDiscoveryTest {
+
+    @TempDir
+    Path dir;
+
+    private YouTubeClient yt;
+    private YouTubeProps cfg;
+    private YouTubeCollectorService service;
+
+    private static PlaylistItemsResponse page(String etag, String next, String... ids) {
+        PlaylistItemsResponse r = new PlaylistItemsResponse();
+        r.setEtag(etag);
+        r.setNextPageToken(next);
+        r.setItems(java.util.Arrays.stream(ids).map(id -> {
+            var cd = new PlaylistItemsResponse.ContentDetails();
+            cd.setVideoId(id);
+            cd.setVideoPublishedAt(Instant.parse("2025-10-01T00:00:00Z"));
+            var it = new PlaylistItemsResponse.Item();
+            it.setContentDetails(cd);
+            return it;
+        }).toList());
+        return r;
+    }
+
+    @BeforeEach
+    void setUp() {
+        yt = mock(YouTubeClient.class);
+        cfg = new YouTubeProps();
+        JsonStateStore store = new JsonStateStore(dir.resolve("state.json"));
+        service = new YouTubeCollectorService(yt, cfg, null,
+                new PollingScheduler(store, new PollingProps()), new DiscoveryProps(), store, null);
+
+        // premier run : parcours complet sur deux pages
+        when(yt.playlistItems(anyString(), eq("UU1"), anyInt(), isNull(), isNull()))
+                .thenReturn(Mono.just(page("e1", "p2", "v3", "v2")));
+        when(yt.playlistItems(anyString(), eq("UU1"), anyInt(), eq("p2"), isNull()))
+                .thenReturn(Mono.just(page("e1b", null, "v1")));
+        assertEquals(List.of("v3", "v2", "v1"), service.listPlaylistVideoIds("k", "UU1"));
+        clearInvocations(yt);
+    }
+
+    @Test
+    void unchangedFirstPage_noFurtherCalls() {
+        when(yt.playlistItemsIfChanged(anyString(), eq("UU1"), anyInt(), eq("e1"))).thenReturn(Mono.empty());
+
+        assertEquals(List.of("v3", "v2", "v1"), service.listPlaylistVideoIds("k", "UU1"));
+        verify(yt, never()).playlistItems(anyString(), anyString(), anyInt(), any(), any());
+    }
+
+    @Test
+    void stopsPagingAtFirstKnownVideo() {
+        when(yt.playlistItemsIfChanged(anyString(), eq("UU1"), anyInt(), eq("e1")))
+                .thenReturn(Mono.just(page("e2", "p2", "v5", "v4", "v3")));
+
+        assertEquals(List.of("v5", "v4", "v3", "v2", "v1"), service.listPlaylistVideoIds("k", "UU1"));
+        verify(yt, never()).playlistItems(anyString(), anyString(), anyInt(), any(), any());
+
+        // l'ETag mémorisé est celui de la nouvelle page 1
+        when(yt.playlistItemsIfChanged(anyString(), eq("UU1"), anyInt(), eq("e2"))).thenReturn(Mono.empty());
+        assertEquals(5, service.listPlaylistVideoIds("k", "UU1").size());
+    }
+
+    @Test
+    void forceFullScan_rescansEverything() {
+        cfg.setForceFullScan(true);
+
+        service.listPlaylistVideoIds("k", "UU1");
+
+        verify(yt, never()).playlistItemsIfChanged(anyString(), anyString(), anyInt(), any());
+        verify(yt, times(2)).playlistItems(anyString(), eq("UU1"), anyInt(), any(), isNull());
+    }
+}
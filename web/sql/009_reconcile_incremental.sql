@@ -0,0 +1,7 @@
+/* =======================================================================
+   009_reconcile_incremental.sql
+   Réconciliation incrémentale du batch : /sources:window?updatedSince
+   ======================================================================= */
+
+-- sources modifiées depuis le dernier run (filtre updated_at >= ?, pagination par id)
+CREATE INDEX `idx_sv_updated_at` ON `source_video` (`updated_at`, `id`);
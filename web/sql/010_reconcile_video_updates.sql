@@ -0,0 +1,7 @@
+/* =======================================================================
+   010_reconcile_video_updates.sql
+   /sources:window?updatedSince renvoie aussi les sources dont la vidéo a changé (verrouillage)
+   ======================================================================= */
+
+-- filtre video.updated_at >= ?
+CREATE INDEX `idx_video_updated_at` ON `video` (`updated_at`);
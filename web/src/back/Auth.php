@@ -24,38 +24,14 @@ public function guardIngest(callable $handler) {
     header('Content-Type: application/json; charset=utf-8');
   };
 
-  if (!$keyId || !$ts || !$nonce || !$sig) {
-    $this->safeJson(401, ['error'=>'auth_missing_headers']); return;
-  }
-  $secret = $this->keys[$keyId] ?? null;
-  if (!$secret) { $this->safeJson(401, ['error'=>'unknown_key']); return; }
-
-  $now = time();
-  if (abs($now - (int)$ts) > 300) { $this->safeJson(401, ['error'=>'ts_out_of_range']); return; }
-
-  $method = $_SERVER['REQUEST_METHOD'] ?? 'POST';
   $path   = parse_url($_SERVER['REQUEST_URI'] ?? '/', PHP_URL_PATH) ?: '/';
 
   // 🔧 LIRE via Http::rawBody() (buffer commun)
   $body   = Http::rawBody();
   $bodyHash = hash('sha256', $body);
+  if ($this->verifySignature($bodyHash) === null) return;
 
-  $toSign = $keyId . "\n" . $ts . "\n" . $nonce . "\n" . $method . "\n" . $path . "\n" . $bodyHash;
-  $calc   = base64_encode(hash_hmac('sha256', $toSign, $secret, true));
-  if (!hash_equals($calc, $sig)) {
-    $this->safeJson(401, ['error'=>'bad_signature']); return;
-  }
-
-  if ($idem) {
-    $stmt = $this->db->pdo()->prepare("SELECT response_code, response_body FROM api_idempotency WHERE idem_key=?");
-    $stmt->execute([$idem]);
-    if ($row = $stmt->fetch()) {
-      header('X-Idempotent-Replay: 1');
-      $jsonHeader();
-      http_response_code((int)$row['response_code']);
-      echo $row['response_body']; return;
-    }
-  }
+  if ($idem && $this->replayIdempotent($idem)) return;
 
   $code = 200; $payload = null;
   try {
@@ -70,16 +46,104 @@ public function guardIngest(callable $handler) {
   $bodyOut = is_string($payload) ? $payload : json_encode($payload ?? []);
   http_response_code($code);
 
-  if (!empty($idem)) {
-    try {
-      $ins = $this->db->pdo()->prepare("INSERT INTO api_idempotency(idem_key,route,request_hash,response_code,response_body) VALUES(?,?,?,?,?)");
-      $ins->execute([$idem, $path, $bodyHash, $code, $bodyOut]);
-    } catch (\Throwable $e) { /* ignore */ }
+  if (!empty($idem)) $this->rememberIdempotent($idem, $path, $bodyHash, $code, $bodyOut);
+
+  echo $bodyOut;
+}
+
+/**
+ * Variante pour les corps NDJSON en flux (POST /api/v1/metrics:stream) : le corps n'est pas lu d'avance.
+ * Les en-têtes sont signés avec sha256(body) = "NDJSON-STREAM" ; l'intégrité du corps est portée par la ligne
+ * trailer {"_trailer":{"lines":N,"sha256":"…","sig":"…"}}, sig = HMAC(keyId \n nonce \n N \n sha256).
+ * Le handler reçoit $verifyTrailer(?array $trailer, string $sha256, int $lines): ?string (code d'erreur ou null)
+ * et renvoie [code HTTP, payload].
+ */
+public function guardIngestStream(callable $handler) {
+  $keyId = $_SERVER['HTTP_X_API_KEY'] ?? '';
+  $nonce = $_SERVER['HTTP_X_API_NONCE'] ?? '';
+  $idem  = $_SERVER['HTTP_IDEMPOTENCY_KEY'] ?? '';
+  $path  = parse_url($_SERVER['REQUEST_URI'] ?? '/', PHP_URL_PATH) ?: '/';
+
+  $secret = $this->verifySignature(self::STREAM_BODY);
+  if ($secret === null) return;
+  if ($idem && $this->replayIdempotent($idem)) return;
+
+  $verifyTrailer = function (?array $trailer, string $sha256, int $lines) use ($keyId, $nonce, $secret): ?string {
+    if ($trailer === null) return 'truncated_stream';
+    if ((int)($trailer['lines'] ?? -1) !== $lines) return 'line_count_mismatch';
+    if (!hash_equals($sha256, (string)($trailer['sha256'] ?? ''))) return 'digest_mismatch';
+    $calc = base64_encode(hash_hmac('sha256', $keyId . "\n" . $nonce . "\n" . $lines . "\n" . $sha256, $secret, true));
+    return hash_equals($calc, (string)($trailer['sig'] ?? '')) ? null : 'bad_trailer_signature';
+  };
+
+  try {
+    [$code, $payload] = $handler($verifyTrailer);
+  } catch (\Throwable $e) {
+    $code = 500;
+    $payload = ['error'=>'server_error','message'=>$e->getMessage()];
   }
 
+  $bodyOut = json_encode($payload ?? [], JSON_UNESCAPED_UNICODE);
+  if (!empty($idem) && $code < 500) $this->rememberIdempotent($idem, $path, self::STREAM_BODY, $code, $bodyOut);
+  header('Content-Type: application/json; charset=utf-8');
+  http_response_code($code);
   echo $bodyOut;
 }
 
+/** Hash de corps convenu pour les flux NDJSON (voir ApiAuthSigner.STREAM_BODY côté batch). */
+public const STREAM_BODY = 'NDJSON-STREAM';
+
+/**
+ * Vérifie X-API-KEY / TS / NONCE / SIG pour le hash de corps donné.
+ * @return ?string secret de la clé, ou null (réponse 401 déjà émise)
+ */
+private function verifySignature(string $bodyHash): ?string {
+  $keyId = $_SERVER['HTTP_X_API_KEY'] ?? '';
+  $ts    = $_SERVER['HTTP_X_API_TS'] ?? '';
+  $nonce = $_SERVER['HTTP_X_API_NONCE'] ?? '';
+  $sig   = $_SERVER['HTTP_X_API_SIG'] ?? '';
+
+  if (!$keyId || !$ts || !$nonce || !$sig) {
+    $this->safeJson(401, ['error'=>'auth_missing_headers']); return null;
+  }
+  $secret = $this->keys[$keyId] ?? null;
+  if (!$secret) { $this->safeJson(401, ['error'=>'unknown_key']); return null; }
+
+  $now = time();
+  if (abs($now - (int)$ts) > 300) { $this->safeJson(401, ['error'=>'ts_out_of_range']); return null; }
+
+  $method = $_SERVER['REQUEST_METHOD'] ?? 'POST';
+  $path   = parse_url($_SERVER['REQUEST_URI'] ?? '/', PHP_URL_PATH) ?: '/';
+
+  $toSign = $keyId . "\n" . $ts . "\n" . $nonce . "\n" . $method . "\n" . $path . "\n" . $bodyHash;
+  $calc   = base64_encode(hash_hmac('sha256', $toSign, $secret, true));
+  if (!hash_equals($calc, $sig)) {
+    $this->safeJson(401, ['error'=>'bad_signature']); return null;
+  }
+  return $secret;
+}
+
+/** Rejoue la réponse mémorisée pour cette clé d'idempotence ; vrai si la réponse a été émise. */
+private function replayIdempotent(string $idem): bool {
+  $stmt = $this->db->pdo()->prepare("SELECT response_code, response_body FROM api_idempotency WHERE idem_key=?");
+  $stmt->execute([$idem]);
+  if ($row = $stmt->fetch()) {
+    header('X-Idempotent-Replay: 1');
+    header('Content-Type: application/json; charset=utf-8');
+    http_response_code((int)$row['response_code']);
+    echo $row['response_body'];
+    return true;
+  }
+  return false;
+}
+
+private function rememberIdempotent(string $idem, string $path, string $bodyHash, int $code, string $bodyOut): void {
+  try {
+    $ins = $this->db->pdo()->prepare("INSERT INTO api_idempotency(idem_key,route,request_hash,response_code,response_body) VALUES(?,?,?,?,?)");
+    $ins->execute([$idem, $path, $bodyHash, $code, $bodyOut]);
+  } catch (\Throwable $e) { /* ignore */ }
+}
+
 private function safeJson(int $code, array $payload): void {
   header('Content-Type: application/json; charset=utf-8');
   http_response_code($code);
@@ -30,6 +30,7 @@ final class Router
             // Ingestion SOURCES
             ['POST', '/api/v1/sources:filterMissing', ['Web\\Controllers\\SourcesIngestController', 'filterMissing']],
             ['POST', '/api/v1/sources:batchUpsert',   ['Web\\Controllers\\SourcesIngestController', 'batchUpsert']],
+            ['POST', '/api/v1/sources:window',        ['Web\\Controllers\\SourcesIngestController', 'window']],
 
             // Others
             ['POST', '/api/v1/reconcile:run',         ['Web\\Controllers\\ReconcileController', 'run']],
@@ -37,6 +38,7 @@ final class Router
 
             // Ingestion METRICS
             ['POST', '/api/v1/metrics:batchUpsert',   ['Web\\Controllers\\MetricsIngestController', 'batchUpsert']],
+            ['POST', '/api/v1/metrics:stream',        ['Web\\Controllers\\MetricsIngestController', 'stream']],
 
             // Lecture
             ['GET',  '/api/v1/videos',                ['Web\\Controllers\\VideosController', 'list']],
@@ -65,7 +67,7 @@ final class Router
         if ($method === 'OPTIONS') {
             header('Access-Control-Allow-Origin: *');
             header('Access-Control-Allow-Methods: GET,POST,OPTIONS');
-            header('Access-Control-Allow-Headers: Content-Type, X-API-KEY, X-API-TS, X-API-NONCE, X-API-SIG, Idempotency-Key');
+            header('Access-Control-Allow-Headers: Content-Type, Content-Encoding, X-API-KEY, X-API-TS, X-API-NONCE, X-API-SIG, Idempotency-Key');
             http_response_code(204);
             return;
         }
@@ -3,11 +3,9 @@ declare(strict_types=1);
 namespace Web;
 
 final class Util {
+  /** Corps JSON de la requête, décompressé selon Content-Encoding (voir Http::body()). */
   public static function jsonInput(): array {
-    $raw = file_get_contents('php://input') ?: '';
-    $data = json_decode($raw, true);
-    if (!is_array($data)) { http_response_code(400); echo json_encode(['error'=>'invalid_json']); exit; }
-    return $data;
+    return \Web\Lib\Http::readJson();
   }
   public static function qp(string $name, $default = null): ?string {
     return isset($_GET[$name]) ? trim((string)$_GET[$name]) : $default;
@@ -18,7 +18,9 @@ final class HealthController
         try {
             $cfg = Config::load();
             $state = new HealthStateService($this->db, $cfg['health'] ?? []);
-            Http::json($state->snapshot(), 200);
+            $snapshot = $state->snapshot();
+            $snapshot['capabilities'] = Http::capabilities();
+            Http::json($snapshot, 200);
         } catch (\Throwable $e) {
             error_log('[health] '.$e->getMessage());
             Http::json([
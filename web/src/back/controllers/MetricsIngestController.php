@@ -6,6 +6,7 @@ namespace Web\Controllers;
 use Web\Auth;
 use Web\Db;
 use Web\Lib\Http;
+use Web\Lib\NdjsonReader;
 use Web\Services\MetricsIngestService;
 use Web\Config;
 use Web\Services\MaterializedRefreshService;
@@ -30,7 +31,7 @@ final class MetricsIngestController
             $this->auth->requireValidRequest();
         }
 
-        $raw = file_get_contents('php://input') ?: '';
+        $raw = Http::body(); // décompressé si Content-Encoding: gzip
         $json = json_decode($raw, true, 512, JSON_BIGINT_AS_STRING);
 
         if (!is_array($json) || !isset($json['snapshots']) || !is_array($json['snapshots'])) {
@@ -47,49 +48,16 @@ final class MetricsIngestController
         foreach ($in as $i => $s) {
             if (!is_array($s)) { $skipped++; continue; }
 
-            // Plateforme
-            $platform = strtoupper((string)($s['platform'] ?? 'YOUTUBE'));
-
-            // ID vidéo
-            $pvid = $s['platform_video_id']?? null;
-
-            if ($pvid === null || $pvid === '') { $skipped++; continue; }
-            $pvid = (string)$pvid;
-
-            $norm[] = [
-                'platform'          => $platform,
-                'platform_format'   => $s['platform_format'] ?? null,
-                'platform_video_id' => $pvid,
-                'snapshot_at'       => $s['snapshot_at']  ?? null,
-                'views_native'      => self::toNullableInt($s['views_native'] ?? null),
-                'likes'             => self::toNullableInt($s['likes'] ?? null),
-                'comments'          => self::toNullableInt($s['comments'] ?? null),
-
-                'avg_watch_seconds'     => self::toNullableFloat($s['avg_watch_seconds'] ?? null),
-                'total_watch_seconds'   => self::toNullableFloat($s['total_watch_seconds'] ?? null),
-                'video_length_seconds'  => self::toNullableInt($s['video_length_seconds'] ?? null),
-
-                'reach'                 => self::toNullableInt($s['reach'] ?? null),
-                'unique_viewers'        => self::toNullableInt($s['unique_viewers'] ?? null),
-                'shares'                => self::toNullableInt($s['shares'] ?? null),
-
-                'reactions_total'       => self::toNullableInt($s['reactions_total'] ?? null),
-                'reactions_like'        => self::toNullableInt($s['reactions_like'] ?? null),
-                'reactions_love'        => self::toNullableInt($s['reactions_love'] ?? null),
-                'reactions_wow'         => self::toNullableInt($s['reactions_wow'] ?? null),
-                'reactions_haha'        => self::toNullableInt($s['reactions_haha'] ?? null),
-                'reactions_sad'         => self::toNullableInt($s['reactions_sad'] ?? null),
-                'reactions_angry'       => self::toNullableInt($s['reactions_angry'] ?? null),
-
-                'legacy_views_3s'       => self::toNullableInt($s['legacy_views_3s'] ?? $s['views_3s'] ?? null),
-            ];
+            $row = self::normalize($s);
+            if ($row === null) { $skipped++; continue; }
+            $norm[$i] = $row; // position d'origine : items[].i désigne le snapshot reçu
         }
 
         // Petit log utile (1ère fois uniquement)
         error_log(sprintf(
             '[metrics:batchUpsert] recv=%d norm=%d skipped=%d sample=%s',
             count($in), count($norm), $skipped,
-            json_encode($norm[0] ?? null, JSON_UNESCAPED_SLASHES|JSON_UNESCAPED_UNICODE)
+            json_encode($norm[array_key_first($norm) ?? 0] ?? null, JSON_UNESCAPED_SLASHES|JSON_UNESCAPED_UNICODE)
         ));
 
         // --- Appel service --------------------------------------------------------
@@ -119,8 +87,98 @@ final class MetricsIngestController
         }
     }
 
+    /**
+     * POST /api/v1/metrics:stream
+     * Body: NDJSON (un snapshot par ligne, gzip possible) terminé par {"_trailer":{"lines":N,"sha256":"…","sig":"…"}}.
+     * Lu et stocké au fil de l'eau par groupes multi-lignes dans une transaction, validée seulement si le trailer
+     * est correct ; au plus MetricsIngestService::MAX_STREAM_LINES lignes par requête (413 au-delà).
+     */
+    public function stream(): void
+    {
+        $this->auth->guardIngestStream(function (callable $verifyTrailer): array {
+            $reader = NdjsonReader::fromRequest();
+            $rows = (function () use ($reader) {
+                foreach ($reader->lines() as $lineNo => $s) {
+                    if (is_array($s)) $s = self::normalize($s) ?? 'missing platform_video_id';
+                    yield $lineNo => $s;
+                }
+            })();
+
+            $cfg = Config::load();
+            $service = new MetricsIngestService($this->db, $cfg['metrics'] ?? []);
+            $result = $service->ingestStream($rows, fn() => $verifyTrailer(
+                $reader->trailer(), $reader->sha256(), $reader->lineCount()
+            ));
+
+            error_log(sprintf('[metrics:stream] lines=%d ok=%d ko=%d stored=%d%s',
+                $reader->lineCount(), $result['ok'], $result['ko'], $result['stored'],
+                isset($result['error']) ? ' rejected=' . $result['error'] : ''));
+            if (isset($result['error'])) {
+                $code = $result['error'] === 'too_many_lines' ? 413 : 400;
+                return [$code, ['error' => $result['error'], 'lines' => $reader->lineCount(),
+                                'max_lines' => MetricsIngestService::MAX_STREAM_LINES]];
+            }
+            if ($result['stored'] > 0) {
+                (new MaterializedRefreshService($this->db))->markDirty();
+            }
+            return [200, [
+                'status' => 'ok',
+                'lines' => $reader->lineCount(),
+                'ok' => $result['ok'],
+                'ko' => $result['ko'],
+                'stored' => $result['stored'],
+                'skipped' => $result['skipped'],
+                'monotonic_corrections' => $result['monotonic_corrections'],
+                'errors' => $result['errors'],
+                'errors_truncated' => $result['errors_truncated'],
+                'refresh_requested' => $result['stored'] > 0,
+            ]];
+        });
+    }
+
     // --- Helpers --------------------------------------------------------------
 
+    /** Normalisation tolérante d'un snapshot ; null si l'ID vidéo manque. */
+    private static function normalize(array $s): ?array
+    {
+        // Plateforme
+        $platform = strtoupper((string)($s['platform'] ?? 'YOUTUBE'));
+
+        // ID vidéo
+        $pvid = $s['platform_video_id']?? null;
+
+        if ($pvid === null || $pvid === '') return null;
+        $pvid = (string)$pvid;
+
+        return [
+            'platform'          => $platform,
+            'platform_format'   => $s['platform_format'] ?? null,
+            'platform_video_id' => $pvid,
+            'snapshot_at'       => $s['snapshot_at']  ?? null,
+            'views_native'      => self::toNullableInt($s['views_native'] ?? null),
+            'likes'             => self::toNullableInt($s['likes'] ?? null),
+            'comments'          => self::toNullableInt($s['comments'] ?? null),
+
+            'avg_watch_seconds'     => self::toNullableFloat($s['avg_watch_seconds'] ?? null),
+            'total_watch_seconds'   => self::toNullableFloat($s['total_watch_seconds'] ?? null),
+            'video_length_seconds'  => self::toNullableInt($s['video_length_seconds'] ?? null),
+
+            'reach'                 => self::toNullableInt($s['reach'] ?? null),
+            'unique_viewers'        => self::toNullableInt($s['unique_viewers'] ?? null),
+            'shares'                => self::toNullableInt($s['shares'] ?? null),
+
+            'reactions_total'       => self::toNullableInt($s['reactions_total'] ?? null),
+            'reactions_like'        => self::toNullableInt($s['reactions_like'] ?? null),
+            'reactions_love'        => self::toNullableInt($s['reactions_love'] ?? null),
+            'reactions_wow'         => self::toNullableInt($s['reactions_wow'] ?? null),
+            'reactions_haha'        => self::toNullableInt($s['reactions_haha'] ?? null),
+            'reactions_sad'         => self::toNullableInt($s['reactions_sad'] ?? null),
+            'reactions_angry'       => self::toNullableInt($s['reactions_angry'] ?? null),
+
+            'legacy_views_3s'       => self::toNullableInt($s['legacy_views_3s'] ?? $s['views_3s'] ?? null),
+        ];
+    }
+
     /** Accepte ISO string, epoch secondes, epoch millisecondes; renvoie ISO UTC */
     // Dans MetricsIngestController
 
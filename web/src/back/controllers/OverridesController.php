@@ -16,8 +16,19 @@ use PDO;
  *   "source_platform": "YOUTUBE",
  *   "source_platform_id": "abcd1234",   // -> source_video.platform_video_id
  *   "action": "LINK" | "UNLINK",
- *   "target_video_id": 42                // requis pour LINK
+ *   "target_video_id": 42                // requis pour LINK (sauf target_source_*)
  * }
+ * Réconciliation locale du batch (items "immediate": 1), appliqués tout de suite sur source_video au lieu
+ * d'être mis en file pour le prochain reconcile:run :
+ * {
+ *   "source_platform": "FACEBOOK", "source_platform_id": "987", "action": "LINK", "immediate": 1,
+ *   "target_source_platform": "YOUTUBE", "target_source_id": "abcd1234",   // ancre du cluster
+ *   "video": {"title": "...", "description": "...", "published_at": "YYYY-MM-DD HH:MM:SS"}
+ * }
+ * La cible est la vidéo de l'ancre ; si l'ancre n'en a pas, elle est créée depuis "video" et attachée à l'ancre.
+ * Idempotent : un chunk rejoué ou un cluster réparti sur plusieurs chunks retrouve la même vidéo.
+ * Les sources dont la vidéo est verrouillée ne sont pas modifiées, et rien n'est lié à une vidéo verrouillée
+ * (target_video_id ou vidéo de l'ancre) : skippedLocked.
  */
 final class OverridesController
 {
@@ -27,31 +38,52 @@ final class OverridesController
     {
         $items = Util::jsonInput();
         $applied = 0; $unknown = 0; $invalid = 0;
+        $linked = 0; $linkedOrKept = 0; $createdVideos = 0; $skippedLocked = 0;
 
         $selSrc = $this->db->pdo()->prepare("
-          SELECT id
+          SELECT s.id, s.video_id, COALESCE(v.is_locked, 0) AS is_locked
+          FROM source_video s
+          LEFT JOIN video v ON v.id = s.video_id
+          WHERE s.platform = ?
+            AND s.platform_video_id = ?
+        ");
+        // ancre lue en lecture verrouillante : deux chunks concurrents d'un même cluster se sérialisent sur elle,
+        // le second voit la vidéo créée par le premier au lieu d'en créer une autre
+        $lockAnchor = $this->db->pdo()->prepare("
+          SELECT id, video_id
           FROM source_video
           WHERE platform = ?
             AND platform_video_id = ?
+          FOR UPDATE
+        ");
+        $selVideoLock = $this->db->pdo()->prepare("SELECT is_locked FROM video WHERE id = ?");
+        $insVideo = $this->db->pdo()->prepare("
+          INSERT INTO video (title, description, published_at, is_locked)
+          VALUES (?, ?, ?, 0)
         ");
+        $updSrc = $this->db->pdo()->prepare("UPDATE source_video SET video_id = ? WHERE id = ?");
 
         $insOv  = $this->db->pdo()->prepare("
           INSERT INTO reconcile_override (source_video_id, action, target_video_id, created_by)
           VALUES (?, ?, ?, 'api')
         ");
 
-        $this->db->tx(function(PDO $tx) use ($items, $selSrc, $insOv, &$applied, &$unknown, &$invalid) {
+        $this->db->tx(function(PDO $tx) use ($items, $selSrc, $lockAnchor, $selVideoLock, $insOv, $insVideo, $updSrc,
+                                             &$applied, &$unknown, &$invalid, &$linked, &$linkedOrKept, &$createdVideos, &$skippedLocked) {
             foreach ((array)$items as $it) {
                 $platform = (string)($it['source_platform'] ?? '');
                 $pvid     = (string)($it['source_platform_id'] ?? '');
                 $action   = strtoupper((string)($it['action'] ?? ''));
                 $targetId = isset($it['target_video_id']) ? (int)$it['target_video_id'] : null;
+                $anchor   = isset($it['target_source_platform'], $it['target_source_id'])
+                    ? [(string)$it['target_source_platform'], (string)$it['target_source_id']] : null;
+                $immediate = !empty($it['immediate']);
 
                 if ($platform === '' || $pvid === '' || !in_array($action, ['LINK','UNLINK'], true)) {
                     $invalid++;
                     continue;
                 }
-                if ($action === 'LINK' && $targetId === null) {
+                if ($action === 'LINK' && $targetId === null && !($immediate && $anchor !== null)) {
                     $invalid++;
                     continue;
                 }
@@ -61,16 +93,45 @@ final class OverridesController
                 if (!$row) { $unknown++; continue; }
 
                 $sid = (int)$row['id'];
-                $insOv->execute([$sid, $action, $targetId]);
+                if (!$immediate) {
+                    $insOv->execute([$sid, $action, $targetId]);
+                    $applied++;
+                    continue;
+                }
+
+                if ((int)$row['is_locked'] === 1) { $skippedLocked++; continue; }
+                if ($action === 'LINK' && $targetId === null) {
+                    $targetId = $this->anchorVideo($lockAnchor, $insVideo, $updSrc, $anchor, (array)($it['video'] ?? []), $createdVideos);
+                    if ($targetId === null) { $unknown++; continue; }
+                }
+                if ($action === 'LINK') {
+                    // cible verrouillée après la lecture de l'index local du batch : on n'y rattache rien
+                    $selVideoLock->execute([$targetId]);
+                    $targetLocked = $selVideoLock->fetchColumn();
+                    $selVideoLock->closeCursor();
+                    if ($targetLocked === false) { $unknown++; continue; }
+                    if ((int)$targetLocked === 1) { $skippedLocked++; continue; }
+                }
+                $newId = $action === 'LINK' ? $targetId : null;
+                if (($row['video_id'] !== null ? (int)$row['video_id'] : null) !== $newId) {
+                    $updSrc->execute([$newId, $sid]);
+                    $linked++;
+                }
+                $linkedOrKept++;
                 $applied++;
             }
         });
 
         $refresh = ['refreshed'=>false, 'status'=>'CLEAN'];
-        if ($applied > 0) {
+        $queued = $applied - $linkedOrKept;
+        if ($queued > 0) {
             $refreshService = new MaterializedRefreshService($this->db);
             $refreshService->markDirty();
             $refresh = $refreshService->refreshIfDirty(true);
+        } elseif ($linked > 0 || $createdVideos > 0) {
+            // liens immédiats : le batch rafraîchit les vues une fois en fin de run
+            (new MaterializedRefreshService($this->db))->markDirty();
+            $refresh = ['refreshed'=>false, 'status'=>'DIRTY'];
         }
 
         return [
@@ -78,7 +139,31 @@ final class OverridesController
             'createdOverrides' => $applied,
             'unknownSources' => $unknown,
             'invalid' => $invalid,
+            'linkedSources' => $linked,
+            'createdVideos' => $createdVideos,
+            'skippedLocked' => $skippedLocked,
             'refresh' => $refresh,
         ];
     }
+
+    /**
+     * Vidéo de la source ancre ; créée (et attachée à l'ancre) si l'ancre n'en a pas encore.
+     * La ligne de l'ancre reste verrouillée jusqu'au commit du chunk (SELECT … FOR UPDATE).
+     */
+    private function anchorVideo(\PDOStatement $lockAnchor, \PDOStatement $insVideo, \PDOStatement $updSrc,
+                                 array $anchor, array $video, int &$createdVideos): ?int
+    {
+        $lockAnchor->execute($anchor);
+        $a = $lockAnchor->fetch(PDO::FETCH_ASSOC);
+        $lockAnchor->closeCursor();
+        if (!$a) return null;
+        if ($a['video_id'] !== null) return (int)$a['video_id'];
+
+        $title = trim((string)($video['title'] ?? '')) !== '' ? (string)$video['title'] : '(sans titre)';
+        $insVideo->execute([$title, (string)($video['description'] ?? ''), $video['published_at'] ?? date('Y-m-d H:i:s')]);
+        $vid = (int)$this->db->pdo()->lastInsertId();
+        $updSrc->execute([$vid, (int)$a['id']]);
+        $createdVideos++;
+        return $vid;
+    }
 }
@@ -21,7 +21,7 @@ final class ReconcileController
     public function run(): void
     {
         $in = [];
-        $raw = file_get_contents('php://input') ?: '';
+        $raw = Http::body(); // décompressé si Content-Encoding: gzip
         if ($raw !== '') { $j = json_decode($raw, true); if (is_array($j)) $in = $j; }
 
         $from = isset($in['from']) ? (string)$in['from'] : null;
@@ -70,6 +70,63 @@ final class SourcesIngestController
         ], 200);
     }
 
+    /**
+     * POST /api/v1/sources:window
+     * Entrée: { "from":"YYYY-MM-DD HH:MM:SS"?, "to":"…"?, "updatedSince":"…"?, "afterId":0?, "limit":5000? }
+     * Sources actives publiées dans la fenêtre (et/ou modifiées depuis updatedSince, réconciliation incrémentale),
+     * paginées par id croissant (réconciliation locale côté batch). Avec updatedSince, les sources désactivées depuis
+     * sont aussi renvoyées (is_active=0) pour que le batch les retire de son index, ainsi que celles dont la vidéo a
+     * changé (verrouillage, …) ; updated_at est alors le plus récent des deux, pour que le watermark du batch avance.
+     * Retourne { items:[{id,platform,platform_video_id,video_id,title,description,published_at,updated_at,is_locked,is_active}], next_after_id }.
+     */
+    public function window(): void
+    {
+        $in = Http::readJson();
+        $afterId = max(0, (int)($in['afterId'] ?? 0));
+        $limit = min(20000, max(1, (int)($in['limit'] ?? 5000)));
+
+        $conds = ['s.id > ?'];
+        $params = [$afterId];
+        if (empty($in['updatedSince'])) { $conds[] = 's.is_active = 1'; }
+        if (!empty($in['from'])) { $conds[] = 's.published_at >= ?'; $params[] = (string)$in['from']; }
+        if (!empty($in['to']))   { $conds[] = 's.published_at <= ?'; $params[] = (string)$in['to']; }
+        if (!empty($in['updatedSince'])) {
+            $conds[] = '(s.updated_at >= ? OR v.updated_at >= ?)';
+            $params[] = (string)$in['updatedSince'];
+            $params[] = (string)$in['updatedSince'];
+        }
+
+        $st = $this->db->pdo()->prepare("
+          SELECT s.id, s.platform, s.platform_video_id, s.video_id, s.title, s.description, s.published_at,
+                 GREATEST(s.updated_at, COALESCE(v.updated_at, s.updated_at)) AS updated_at, s.is_active, COALESCE(v.is_locked, 0) AS is_locked
+          FROM source_video s
+          LEFT JOIN video v ON v.id = s.video_id
+          WHERE " . implode(' AND ', $conds) . "
+          ORDER BY s.id ASC
+          LIMIT $limit
+        ");
+        $st->execute($params);
+        $rows = $st->fetchAll(PDO::FETCH_ASSOC) ?: [];
+
+        $items = array_map(fn($r) => [
+            'id' => (int)$r['id'],
+            'platform' => $r['platform'],
+            'platform_video_id' => $r['platform_video_id'],
+            'video_id' => $r['video_id'] !== null ? (int)$r['video_id'] : null,
+            'title' => $r['title'],
+            'description' => $r['description'],
+            'published_at' => $r['published_at'],
+            'updated_at' => $r['updated_at'],
+            'is_locked' => (int)$r['is_locked'],
+            'is_active' => (int)$r['is_active'],
+        ], $rows);
+
+        Http::json([
+            'items' => $items,
+            'next_after_id' => count($rows) === $limit ? (int)$rows[count($rows) - 1]['id'] : null,
+        ], 200);
+    }
+
     /**
      * POST /api/v1/sources:batchUpsert
      * Entrée:
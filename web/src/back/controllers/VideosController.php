@@ -256,7 +256,7 @@ final class VideosController
     {
         $pdo = $this->pdo();
 
-        $input = json_decode(file_get_contents('php://input'), true);
+        $input = json_decode(Http::body(), true);
         $keep   = $input['videoIdToKeep']   ?? null;
         $delete = $input['videoIdToDelete'] ?? null;
         $update = $input['videoSourceIdToUpdate'] ?? null;
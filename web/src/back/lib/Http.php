@@ -15,9 +15,83 @@ final class Http
             return self::$RAW;
         }
 
-        public static function readJson(): array
+        /** Content-Encoding acceptés sur les corps de requête (annoncés par GET /api/v1/health). */
+        public const REQUEST_ENCODINGS = ['gzip'];
+        /** Taille maximale d'un corps décompressé (protection contre les bombes de décompression). */
+        public const MAX_DECODED_BYTES = 64 * 1024 * 1024;
+
+        /** Octets compressés passés à zlib par appel : borne la sortie d'un seul appel (ratio gzip ~1000:1). */
+        private const INFLATE_STEP = 8192;
+
+        private static ?string $DECODED = null;
+
+        /**
+         * Corps de la requête décodé selon Content-Encoding.
+         * rawBody() reste l'octet près reçu : la signature HMAC porte sur ces octets (compressés).
+         */
+        public static function body(): string
         {
+            if (self::$DECODED !== null) return self::$DECODED;
             $raw = self::rawBody();
+            $enc = strtolower(trim((string)($_SERVER['HTTP_CONTENT_ENCODING'] ?? '')));
+            if ($enc === '' || $enc === 'identity') {
+                return self::$DECODED = $raw;
+            }
+            if (!in_array($enc, self::REQUEST_ENCODINGS, true)) {
+                self::fail(415, ['error' => 'unsupported_content_encoding', 'encoding' => $enc]);
+            }
+            return self::$DECODED = self::gunzip($raw, $enc);
+        }
+
+        /**
+         * Décompression par morceaux : 400 si le flux gzip est invalide ou tronqué, 413 seulement si le corps
+         * décompressé dépasse MAX_DECODED_BYTES (le batch découpe alors le chunk, il ne doit pas le faire pour un corps corrompu).
+         */
+        private static function gunzip(string $raw, string $enc): string
+        {
+            $ctx = inflate_init(ZLIB_ENCODING_GZIP);
+            $out = '';
+            $len = strlen($raw);
+            $ok = $len > 0;
+            for ($off = 0; $ok && $off < $len; $off += self::INFLATE_STEP) {
+                $part = @inflate_add($ctx, substr($raw, $off, self::INFLATE_STEP), ZLIB_SYNC_FLUSH);
+                if ($part === false) { $ok = false; break; }
+                $out .= $part;
+                if (strlen($out) > self::MAX_DECODED_BYTES) {
+                    self::fail(413, ['error' => 'body_too_large', 'encoding' => $enc, 'max_bytes' => self::MAX_DECODED_BYTES]);
+                }
+            }
+            $tail = $ok ? @inflate_add($ctx, '', ZLIB_FINISH) : false;
+            if ($tail === false || inflate_get_status($ctx) !== ZLIB_STREAM_END) {
+                self::fail(400, ['error' => 'invalid_body_encoding', 'encoding' => $enc]);
+            }
+            if (strlen($out) + strlen($tail) > self::MAX_DECODED_BYTES) {
+                self::fail(413, ['error' => 'body_too_large', 'encoding' => $enc, 'max_bytes' => self::MAX_DECODED_BYTES]);
+            }
+            return $out . $tail;
+        }
+
+        /** Capacités d'ingestion exposées au batch. */
+        public static function capabilities(): array
+        {
+            return [
+                'request_encodings' => self::REQUEST_ENCODINGS,
+                'max_decoded_bytes' => self::MAX_DECODED_BYTES,
+                'streams' => ['metrics' => '/api/v1/metrics:stream'],
+            ];
+        }
+
+        private static function fail(int $code, array $payload): void
+        {
+            header('Content-Type: application/json; charset=utf-8');
+            http_response_code($code);
+            echo json_encode($payload, JSON_UNESCAPED_UNICODE);
+            exit;
+        }
+
+        public static function readJson(): array
+        {
+            $raw = self::body();
             $data = json_decode($raw, true);
             if (json_last_error() !== JSON_ERROR_NONE || !is_array($data)) {
                 header('Content-Type: application/json; charset=utf-8');
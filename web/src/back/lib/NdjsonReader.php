@@ -0,0 +1,127 @@
+<?php
+declare(strict_types=1);
+
+namespace Web\Lib;
+
+/**
+ * Lecture en flux d'un corps NDJSON (une valeur JSON par ligne), gzip éventuel décodé au fil de l'eau.
+ * Mémoire bornée par la ligne la plus longue : le corps n'est jamais chargé en entier.
+ * Le SHA-256 couvre les lignes décodées (avec leur "\n") jusqu'au trailer {"_trailer":{...}}, exclu.
+ */
+final class NdjsonReader
+{
+    public const TRAILER_KEY = '_trailer';
+    private const READ_BYTES = 65536;
+
+    /** @var resource */
+    private $in;
+    private $inflate = null;
+    private \HashContext $sha;
+    private string $buf = '';
+    private int $lines = 0;
+    private ?array $trailer = null;
+    private ?string $digest = null;
+
+    /**
+     * @param resource $in
+     */
+    public function __construct($in, ?string $encoding = null, private int $maxLineBytes = 1048576)
+    {
+        $this->in = $in;
+        $this->sha = hash_init('sha256');
+        if ($encoding === 'gzip') {
+            $this->inflate = inflate_init(ZLIB_ENCODING_GZIP);
+        }
+    }
+
+    /** Corps de la requête courante (php://input), selon Content-Encoding. */
+    public static function fromRequest(): self
+    {
+        $enc = strtolower(trim((string)($_SERVER['HTTP_CONTENT_ENCODING'] ?? '')));
+        if ($enc !== '' && $enc !== 'identity' && !in_array($enc, Http::REQUEST_ENCODINGS, true)) {
+            Http::json(['error' => 'unsupported_content_encoding', 'encoding' => $enc], 415);
+            exit;
+        }
+        $in = fopen('php://input', 'rb');
+        if ($in === false) throw new \RuntimeException('php://input unavailable');
+        return new self($in, $enc === 'gzip' ? 'gzip' : null);
+    }
+
+    /**
+     * Lignes de données, numérotées à partir de 1 : tableau décodé, ou message d'erreur (string) si la ligne est invalide.
+     *
+     * @return \Generator<int, array|string>
+     */
+    public function lines(): \Generator
+    {
+        while (($line = $this->nextLine()) !== null) {
+            if (trim($line) === '') continue;
+            if ($this->trailer !== null) {
+                yield $this->lines + 1 => 'data after trailer';
+                continue;
+            }
+            if (str_starts_with($line, '{"' . self::TRAILER_KEY . '"')) {
+                $t = json_decode($line, true);
+                $this->trailer = is_array($t[self::TRAILER_KEY] ?? null) ? $t[self::TRAILER_KEY] : [];
+                continue;
+            }
+            hash_update($this->sha, $line . "\n");
+            $this->lines++;
+            if (strlen($line) > $this->maxLineBytes) {
+                yield $this->lines => 'line too long';
+                continue;
+            }
+            $row = json_decode($line, true, 512, JSON_BIGINT_AS_STRING);
+            yield $this->lines => is_array($row) ? $row : ('invalid json: ' . json_last_error_msg());
+        }
+    }
+
+    /** Trailer lu (null si le flux s'est arrêté avant : envoi tronqué). */
+    public function trailer(): ?array
+    {
+        return $this->trailer;
+    }
+
+    public function lineCount(): int
+    {
+        return $this->lines;
+    }
+
+    /** SHA-256 hex des lignes lues (à appeler une fois la lecture terminée). */
+    public function sha256(): string
+    {
+        return $this->digest ??= hash_final($this->sha);
+    }
+
+    private function nextLine(): ?string
+    {
+        while (($pos = strpos($this->buf, "\n")) === false) {
+            if (strlen($this->buf) > $this->maxLineBytes + 65536) {
+                // ligne démesurée : on la tronque pour garder la mémoire bornée, elle sera rejetée
+                $this->buf = substr($this->buf, 0, $this->maxLineBytes + 1);
+            }
+            $chunk = $this->read();
+            if ($chunk === null) {
+                if ($this->buf === '') return null;
+                $line = $this->buf;
+                $this->buf = '';
+                return $line;
+            }
+            $this->buf .= $chunk;
+        }
+        $line = substr($this->buf, 0, $pos);
+        $this->buf = substr($this->buf, $pos + 1);
+        return $line;
+    }
+
+    private function read(): ?string
+    {
+        if (feof($this->in)) return null;
+        $raw = fread($this->in, self::READ_BYTES);
+        if ($raw === false) return null;
+        if ($this->inflate === null) return $raw;
+        $out = inflate_add($this->inflate, $raw, feof($this->in) ? ZLIB_FINISH : ZLIB_SYNC_FLUSH);
+        if ($out === false) throw new \RuntimeException('invalid gzip stream');
+        return $out;
+    }
+}
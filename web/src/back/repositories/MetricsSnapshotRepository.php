@@ -41,9 +41,26 @@ final class MetricsSnapshotRepository
         float $minDeltaRel,
         bool $dailyGuard
     ): array {
-        $previous = $this->latestForUpdate($sourceId);
+        $decision = $this->evaluate($sourceId, $m, $this->latestForUpdate($sourceId), $minDeltaAbs, $minDeltaRel, $dailyGuard);
+        if ($decision['stored']) $this->upsert($sourceId, $m);
+        return $decision;
+    }
+
+    /**
+     * Règles de storeIfUseful face à un dernier point connu ($previous, null = aucun), sans écrire :
+     * $m est complété et corrigé en place, 'stored' dit s'il doit être écrit.
+     *
+     * @return array{stored:bool,reason:string,monotonic_corrections:int,views_delta:?int}
+     */
+    public function evaluate(
+        int $sourceId,
+        MetricsSnapshot $m,
+        ?array $previous,
+        int $minDeltaAbs,
+        float $minDeltaRel,
+        bool $dailyGuard
+    ): array {
         if ($previous === null) {
-            $this->upsert($sourceId, $m);
             return ['stored'=>true, 'reason'=>'first_snapshot', 'monotonic_corrections'=>0, 'views_delta'=>null];
         }
 
@@ -59,7 +76,6 @@ final class MetricsSnapshotRepository
             : null;
 
         if ((string)$previous['snapshot_at'] === $m->snapshot_atIso) {
-            $this->upsert($sourceId, $m);
             return [
                 'stored'=>true,
                 'reason'=>'same_timestamp_update',
@@ -87,7 +103,6 @@ final class MetricsSnapshotRepository
             ];
         }
 
-        $this->upsert($sourceId, $m);
         $reason = $usefulChanged ? 'useful_metric_changed' : ($viewChangedEnough ? 'views_delta' : 'daily_guard');
         return [
             'stored'=>true,
@@ -97,6 +112,48 @@ final class MetricsSnapshotRepository
         ];
     }
 
+    /**
+     * Dernier point de chaque source, verrouillé (une requête pour tout un lot).
+     *
+     * @param int[] $sourceIds
+     * @return array<int,array<string,mixed>> source_video_id => ligne (mêmes colonnes que latestForUpdate)
+     */
+    public function latestForUpdateMany(array $sourceIds): array
+    {
+        $sourceIds = array_values(array_unique($sourceIds));
+        if (!$sourceIds) return [];
+        $in = implode(',', array_fill(0, count($sourceIds), '?'));
+        $st = $this->pdo()->prepare("
+            SELECT m.source_video_id, m.snapshot_at,
+                   m.views_native, m.avg_watch_seconds, m.total_watch_seconds, m.video_length_seconds,
+                   m.reach, m.unique_viewers, m.likes, m.comments, m.shares,
+                   m.reactions_total, m.reactions_like, m.reactions_love, m.reactions_wow,
+                   m.reactions_haha, m.reactions_sad, m.reactions_angry
+            FROM metric_snapshot m
+            JOIN (
+              SELECT source_video_id, MAX(snapshot_at) AS snapshot_at
+              FROM metric_snapshot
+              WHERE source_video_id IN ($in)
+              GROUP BY source_video_id
+            ) last ON last.source_video_id = m.source_video_id AND last.snapshot_at = m.snapshot_at
+            FOR UPDATE
+        ");
+        $st->execute($sourceIds);
+        $out = [];
+        while ($row = $st->fetch(\PDO::FETCH_ASSOC)) {
+            $out[(int)$row['source_video_id']] = $row;
+        }
+        return $out;
+    }
+
+    /** Point au format d'une ligne de latestForUpdate (dernier point connu pour les lignes suivantes d'un lot). */
+    public static function asRow(MetricsSnapshot $m): array
+    {
+        $row = ['snapshot_at' => $m->snapshot_atIso];
+        foreach (self::ALL_FIELDS as $field) $row[$field] = $m->$field;
+        return $row;
+    }
+
     private function latestForUpdate(int $sourceId): ?array
     {
         $st = $this->pdo()->prepare("
@@ -171,6 +228,18 @@ final class MetricsSnapshotRepository
 
     private function upsert(int $sourceId, MetricsSnapshot $m): void
     {
+        $this->upsertMany([[$sourceId, $m]]);
+    }
+
+    /**
+     * INSERT multi-lignes … ON DUPLICATE KEY UPDATE.
+     *
+     * @param array<int,array{0:int,1:MetricsSnapshot}> $rows
+     */
+    public function upsertMany(array $rows): void
+    {
+        if (!$rows) return;
+        $placeholders = '(' . implode(',', array_fill(0, 2 + count(self::ALL_FIELDS), '?')) . ')';
         $sql = "
         INSERT INTO metric_snapshot
           (source_video_id, snapshot_at,
@@ -179,7 +248,7 @@ final class MetricsSnapshotRepository
            likes, comments, shares,
            reactions_total, reactions_like, reactions_love, reactions_wow, reactions_haha, reactions_sad, reactions_angry)
         VALUES
-          (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)
+          " . implode(",\n          ", array_fill(0, count($rows), $placeholders)) . "
         ON DUPLICATE KEY UPDATE
            views_native=VALUES(views_native),
            avg_watch_seconds=VALUES(avg_watch_seconds),
@@ -198,26 +267,13 @@ final class MetricsSnapshotRepository
            reactions_sad=VALUES(reactions_sad),
            reactions_angry=VALUES(reactions_angry)
         ";
+        $params = [];
+        foreach ($rows as [$sourceId, $m]) {
+            $params[] = $sourceId;
+            $params[] = $m->snapshot_atIso;
+            foreach (self::ALL_FIELDS as $field) $params[] = $m->$field;
+        }
         $st = $this->pdo()->prepare($sql);
-        $st->execute([
-            $sourceId,
-            $m->snapshot_atIso,
-            $m->views_native,
-            $m->avg_watch_seconds,
-            $m->total_watch_seconds,
-            $m->video_length_seconds,
-            $m->reach,
-            $m->unique_viewers,
-            $m->likes,
-            $m->comments,
-            $m->shares,
-            $m->reactions_total,
-            $m->reactions_like,
-            $m->reactions_love,
-            $m->reactions_wow,
-            $m->reactions_haha,
-            $m->reactions_sad,
-            $m->reactions_angry,
-        ]);
+        $st->execute($params);
     }
 }
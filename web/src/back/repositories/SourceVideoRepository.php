@@ -25,6 +25,25 @@ final class SourceVideoRepository
         return $id !== false ? (int)$id : null;
     }
 
+    /**
+     * IDs de plusieurs sources en une requête.
+     *
+     * @param array<int,array{0:string,1:string}> $pairs [platform, platform_video_id]
+     * @return array<string,int> "platform\0platform_video_id" => id (sources connues seulement)
+     */
+    public function findIdsByPlatformAndVideoIds(array $pairs): array
+    {
+        if (!$pairs) return [];
+        $where = implode(' OR ', array_fill(0, count($pairs), '(platform = ? AND platform_video_id = ?)'));
+        $st = $this->pdo()->prepare("SELECT id, platform, platform_video_id FROM source_video WHERE $where");
+        $st->execute(array_merge(...array_map(fn($p) => [$p[0], $p[1]], array_values($pairs))));
+        $out = [];
+        while ($row = $st->fetch(\PDO::FETCH_ASSOC)) {
+            $out[$row['platform'] . "\0" . $row['platform_video_id']] = (int)$row['id'];
+        }
+        return $out;
+    }
+
     public function setPlatformFormatIfNull(int $id, ?string $platformFormat): void
     {
         if (!$platformFormat) return;
@@ -10,6 +10,12 @@ use Web\Repositories\MetricsSnapshotRepository;
 
 final class MetricsIngestService
 {
+    private const MAX_STREAM_ERRORS = 1000;
+    /** Lignes par groupe d'un flux NDJSON (une requête de lecture + un INSERT multi-lignes par groupe). */
+    private const STREAM_GROUP_ROWS = 500;
+    /** Lignes au plus par requête /metrics:stream : borne la transaction unique (voir ingestStream). */
+    public const MAX_STREAM_LINES = 100000;
+
     private \PDO $pdo;
     private SourceVideoRepository $sources;
     private MetricsSnapshotRepository $metrics;
@@ -33,11 +39,7 @@ final class MetricsIngestService
      */
     public function ingestBatch(array $snapshots): array
     {
-        $nowIsoMsUtc = substr(
-            (new \DateTimeImmutable('now', new \DateTimeZone('UTC')))->format('Y-m-d H:i:s.u'),
-            0,
-            23
-        );
+        $nowIsoMsUtc = self::nowIsoMsUtc();
 
         $ok = 0;
         $ko = 0;
@@ -50,32 +52,7 @@ final class MetricsIngestService
         try {
             foreach ($snapshots as $i => $s) {
                 try {
-                    $dto = MetricsSnapshot::fromArray($s, $nowIsoMsUtc);
-
-                    $sourceId = $dto->source_video_id;
-                    if ($sourceId === null) {
-                        $sourceId = $this->sources->findIdByPlatformAndVideoId(
-                            $dto->platform,
-                            (string)$dto->platform_video_id
-                        );
-                        if ($sourceId === null) {
-                            $sourceId = $this->sources->createMinimal(
-                                $dto->platform,
-                                $dto->platform_format,
-                                (string)$dto->platform_video_id
-                            );
-                        } elseif ($dto->platform_format !== null) {
-                            $this->sources->setPlatformFormatIfNull($sourceId, $dto->platform_format);
-                        }
-                    }
-
-                    $decision = $this->metrics->storeIfUseful(
-                        $sourceId,
-                        $dto,
-                        $this->minDeltaAbs,
-                        $this->minDeltaRel,
-                        $this->dailyGuard
-                    );
+                    [$dto, $sourceId, $decision] = $this->ingestOne($s, $nowIsoMsUtc);
 
                     $ok++;
                     $monotonicCorrections += $decision['monotonic_corrections'];
@@ -109,4 +86,202 @@ final class MetricsIngestService
             'items' => $items,
         ];
     }
+
+    /**
+     * Ingestion d'un flux NDJSON (POST /api/v1/metrics:stream) : mêmes règles que ingestBatch, par groupes de
+     * STREAM_GROUP_ROWS lignes (sources résolues et derniers points lus en une requête, INSERT multi-lignes),
+     * sans garder le lot en mémoire ni renvoyer le détail des lignes acceptées (seulement les erreurs, plafonnées).
+     * Une seule transaction, pour que rien ne soit stocké d'un envoi tronqué ou altéré : $finish() est appelé après
+     * la dernière ligne (vérification du trailer) et tout est annulé s'il renvoie une erreur. Sa durée est bornée
+     * par MAX_STREAM_LINES lignes par requête (au-delà : too_many_lines, le batch découpe ses envois en conséquence).
+     *
+     * @param iterable<int, array|string> $lines numéro de ligne => snapshot normalisé, ou message d'erreur
+     * @param callable(): ?string $finish
+     * @return array{ok:int,ko:int,stored:int,skipped:int,monotonic_corrections:int,errors:array<int,array{line:int,message:string}>,errors_truncated:bool,error?:string}
+     */
+    public function ingestStream(iterable $lines, callable $finish): array
+    {
+        $nowIsoMsUtc = self::nowIsoMsUtc();
+        $acc = ['ok' => 0, 'ko' => 0, 'stored' => 0, 'skipped' => 0, 'monotonic_corrections' => 0, 'errors' => []];
+
+        $this->pdo->beginTransaction();
+        try {
+            $group = [];
+            foreach ($lines as $lineNo => $s) {
+                if ($lineNo > self::MAX_STREAM_LINES) {
+                    $this->pdo->rollBack();
+                    return self::rejected($acc, 'too_many_lines');
+                }
+                $group[$lineNo] = $s;
+                if (count($group) >= self::STREAM_GROUP_ROWS) {
+                    $this->ingestGroup($group, $nowIsoMsUtc, $acc);
+                    $group = [];
+                }
+            }
+            $this->ingestGroup($group, $nowIsoMsUtc, $acc);
+            $error = $finish();
+            if ($error !== null) {
+                $this->pdo->rollBack();
+                return self::rejected($acc, $error);
+            }
+            $this->pdo->commit();
+        } catch (\Throwable $e) {
+            if ($this->pdo->inTransaction()) $this->pdo->rollBack();
+            throw $e;
+        }
+
+        return [
+            'ok' => $acc['ok'],
+            'ko' => $acc['ko'],
+            'stored' => $acc['stored'],
+            'skipped' => $acc['skipped'],
+            'monotonic_corrections' => $acc['monotonic_corrections'],
+            'errors' => $acc['errors'],
+            'errors_truncated' => $acc['ko'] > count($acc['errors']),
+        ];
+    }
+
+    /**
+     * Un groupe de lignes : sources résolues en une requête (créées au besoin), derniers points verrouillés
+     * en une requête, décisions de storeIfUseful enchaînées en mémoire, puis un seul INSERT multi-lignes.
+     *
+     * @param array<int, array|string> $group numéro de ligne => snapshot ou message d'erreur
+     */
+    private function ingestGroup(array $group, string $nowIsoMsUtc, array &$acc): void
+    {
+        if (!$group) return;
+        $dtos = [];
+        foreach ($group as $lineNo => $s) {
+            try {
+                if (!is_array($s)) throw new \InvalidArgumentException((string)$s);
+                $dtos[$lineNo] = MetricsSnapshot::fromArray($s, $nowIsoMsUtc);
+            } catch (\Throwable $e) {
+                self::lineError($acc, $lineNo, $e->getMessage());
+            }
+        }
+
+        $sourceIds = $this->resolveSources($dtos, $acc);
+        $previous = $this->metrics->latestForUpdateMany(array_values($sourceIds));
+        $rows = [];
+        foreach ($dtos as $lineNo => $dto) {
+            if (!isset($sourceIds[$lineNo])) continue;
+            $sid = $sourceIds[$lineNo];
+            $decision = $this->metrics->evaluate($sid, $dto, $previous[$sid] ?? null,
+                $this->minDeltaAbs, $this->minDeltaRel, $this->dailyGuard);
+            $acc['ok']++;
+            $acc['monotonic_corrections'] += $decision['monotonic_corrections'];
+            if (!$decision['stored']) { $acc['skipped']++; continue; }
+            $acc['stored']++;
+            $rows[$lineNo] = [$sid, $dto];
+            $previous[$sid] = MetricsSnapshotRepository::asRow($dto);
+        }
+
+        try {
+            $this->metrics->upsertMany($rows);
+        } catch (\PDOException $e) {
+            // une ligne refusée par la base ne doit pas faire perdre le groupe : reprise ligne par ligne
+            foreach ($rows as $lineNo => $row) {
+                try {
+                    $this->metrics->upsertMany([$row]);
+                } catch (\PDOException $rowError) {
+                    $acc['ok']--;
+                    $acc['stored']--;
+                    self::lineError($acc, $lineNo, $rowError->getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param array<int,MetricsSnapshot> $dtos
+     * @return array<int,int> numéro de ligne => source_video_id (lignes en erreur absentes)
+     */
+    private function resolveSources(array $dtos, array &$acc): array
+    {
+        $out = [];
+        $byKey = [];
+        foreach ($dtos as $lineNo => $dto) {
+            if ($dto->source_video_id !== null) {
+                $out[$lineNo] = $dto->source_video_id;
+            } else {
+                $byKey[$dto->platform . "\0" . $dto->platform_video_id][] = $lineNo;
+            }
+        }
+        $known = $this->sources->findIdsByPlatformAndVideoIds(
+            array_map(fn($lineNos) => [$dtos[$lineNos[0]]->platform, (string)$dtos[$lineNos[0]]->platform_video_id], array_values($byKey))
+        );
+        foreach ($byKey as $key => $lineNos) {
+            $dto = $dtos[$lineNos[0]];
+            try {
+                $id = $known[$key] ?? $this->sources->findIdByPlatformAndVideoId($dto->platform, (string)$dto->platform_video_id);
+                if ($id === null) {
+                    $id = $this->sources->createMinimal($dto->platform, $dto->platform_format, (string)$dto->platform_video_id);
+                } elseif ($dto->platform_format !== null) {
+                    $this->sources->setPlatformFormatIfNull($id, $dto->platform_format);
+                }
+                foreach ($lineNos as $lineNo) $out[$lineNo] = $id;
+            } catch (\Throwable $e) {
+                foreach ($lineNos as $lineNo) self::lineError($acc, $lineNo, $e->getMessage());
+            }
+        }
+        return $out;
+    }
+
+    private static function lineError(array &$acc, int $lineNo, string $message): void
+    {
+        $acc['ko']++;
+        if (count($acc['errors']) < self::MAX_STREAM_ERRORS) {
+            $acc['errors'][] = ['line' => $lineNo, 'message' => $message];
+        }
+    }
+
+    private static function rejected(array $acc, string $error): array
+    {
+        return ['ok' => 0, 'ko' => $acc['ok'] + $acc['ko'], 'stored' => 0, 'skipped' => 0, 'monotonic_corrections' => 0,
+                'errors' => $acc['errors'], 'errors_truncated' => $acc['ko'] > count($acc['errors']), 'error' => $error];
+    }
+
+    /**
+     * Résout (ou crée) la source puis applique storeIfUseful.
+     * @return array{0:MetricsSnapshot,1:int,2:array<string,mixed>}
+     */
+    private function ingestOne(array $s, string $nowIsoMsUtc): array
+    {
+        $dto = MetricsSnapshot::fromArray($s, $nowIsoMsUtc);
+
+        $sourceId = $dto->source_video_id;
+        if ($sourceId === null) {
+            $sourceId = $this->sources->findIdByPlatformAndVideoId(
+                $dto->platform,
+                (string)$dto->platform_video_id
+            );
+            if ($sourceId === null) {
+                $sourceId = $this->sources->createMinimal(
+                    $dto->platform,
+                    $dto->platform_format,
+                    (string)$dto->platform_video_id
+                );
+            } elseif ($dto->platform_format !== null) {
+                $this->sources->setPlatformFormatIfNull($sourceId, $dto->platform_format);
+            }
+        }
+
+        $decision = $this->metrics->storeIfUseful(
+            $sourceId,
+            $dto,
+            $this->minDeltaAbs,
+            $this->minDeltaRel,
+            $this->dailyGuard
+        );
+        return [$dto, $sourceId, $decision];
+    }
+
+    private static function nowIsoMsUtc(): string
+    {
+        return substr(
+            (new \DateTimeImmutable('now', new \DateTimeZone('UTC')))->format('Y-m-d H:i:s.u'),
+            0,
+            23
+        );
+    }
 }